@@ -0,0 +1,76 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.benchmark;
+
+import io.anserini.util.FeatureVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speed of building, pruning and normalizing the <code>FeatureVector</code> of a relevance model, as
+ * <code>Rm3Reranker</code> does for every query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeatureVectorBenchmark {
+  // Distinct terms in the feedback documents of a query, and terms kept in the model, as with -rm3.fbTerms.
+  @Param({"1000", "10000"})
+  public int numTerms;
+
+  @Param({"10", "100"})
+  public int fbTerms;
+
+  private String[] terms;
+  private float[] weights;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(SyntheticData.SEED);
+    terms = new String[numTerms];
+    weights = new float[numTerms];
+    for (int i = 0; i < numTerms; i++) {
+      terms[i] = "w" + i;
+      weights[i] = random.nextFloat();
+    }
+  }
+
+  @Benchmark
+  public FeatureVector pruneToSize() {
+    FeatureVector vector = new FeatureVector();
+    for (int i = 0; i < numTerms; i++) {
+      vector.addFeatureValue(terms[i], weights[i]);
+    }
+    return vector.pruneToSize(fbTerms).scaleToUnitL1Norm();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.benchmark;
+
+import io.anserini.search.FlatDenseSearcher;
+import io.anserini.search.ScoredDoc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of exhaustive search over a synthetic flat index, i.e., a scan of
+ * <code>AnseriniLucene99FlatVectorFormat</code> vectors, through <code>FlatDenseSearcher</code> with query vectors
+ * given directly rather than encoded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class FlatVectorBenchmark {
+  private static final int NUM_DOCS = 20_000;
+  private static final int NUM_QUERIES = 100;
+
+  @Param({"128", "768"})
+  public int dimension;
+
+  @Param({"10", "1000"})
+  public int hits;
+
+  private Path dir;
+  private FlatDenseSearcher<String> searcher;
+  private List<float[]> queries;
+  private int next = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("flat-vector-benchmark");
+    SyntheticData.writeJsonDenseVectorCollection(dir.resolve("collection"), NUM_DOCS, dimension);
+    SyntheticData.indexJsonDenseVectorCollection(dir.resolve("collection"), dir.resolve("index"));
+
+    FlatDenseSearcher.Args args = new FlatDenseSearcher.Args();
+    args.index = dir.resolve("index").toString();
+    searcher = new FlatDenseSearcher<>(args);
+    queries = SyntheticData.vectors(NUM_QUERIES, dimension, SyntheticData.SEED + 1);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    searcher.close();
+    SyntheticData.delete(dir);
+  }
+
+  @Benchmark
+  public ScoredDoc[] search() throws Exception {
+    next = (next + 1) % queries.size();
+    return searcher.search(queries.get(next), hits);
+  }
+}
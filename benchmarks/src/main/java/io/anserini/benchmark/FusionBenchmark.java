@@ -0,0 +1,86 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.benchmark;
+
+import io.anserini.fusion.TrecRun;
+import io.anserini.fusion.TrecRunFuser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speed of run fusion: parsing a synthetic TREC run with <code>TrecRun</code>, and fusing two runs with reciprocal
+ * rank fusion and with interpolation, as <code>FuseTrecRuns</code> does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FusionBenchmark {
+  private static final int NUM_TOPICS = 200;
+  private static final int DEPTH = 1000;
+
+  private Path dir;
+  private TrecRun run1;
+  private TrecRun run2;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("fusion-benchmark");
+    SyntheticData.writeRun(dir.resolve("run1.txt"), NUM_TOPICS, DEPTH, SyntheticData.SEED);
+    SyntheticData.writeRun(dir.resolve("run2.txt"), NUM_TOPICS, DEPTH, SyntheticData.SEED + 1);
+    run1 = new TrecRun(dir.resolve("run1.txt"));
+    run2 = new TrecRun(dir.resolve("run2.txt"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    SyntheticData.delete(dir);
+  }
+
+  @Benchmark
+  public TrecRun parse() throws Exception {
+    return new TrecRun(dir.resolve("run1.txt"));
+  }
+
+  // Fusion rescores the runs in place, so each invocation fuses fresh copies; copying is part of what is measured.
+  @Benchmark
+  public TrecRun rrf() throws Exception {
+    return TrecRunFuser.reciprocalRankFusion(List.of(run1.cloneRun(), run2.cloneRun()), 60, DEPTH, DEPTH);
+  }
+
+  @Benchmark
+  public TrecRun interpolation() throws Exception {
+    return TrecRunFuser.interpolation(List.of(run1.cloneRun(), run2.cloneRun()), 0.5, DEPTH, DEPTH);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing throughput, in documents per second, of <code>IndexCollection</code> over a synthetic
+ * <code>JsonCollection</code> (with positions, document vectors and raw documents stored, as the regressions do) and
+ * of <code>IndexFlatDenseVectors</code> over synthetic vectors. Each invocation builds a new index.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class IndexingBenchmark {
+  private static final int NUM_DOCS = 10_000;
+
+  @State(Scope.Benchmark)
+  public static class Collections {
+    private Path dir;
+    private Path index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      dir = Files.createTempDirectory("indexing-benchmark");
+      SyntheticData.writeJsonCollection(dir.resolve("json"), NUM_DOCS, 50_000, 100);
+      SyntheticData.writeJsonDenseVectorCollection(dir.resolve("dense"), NUM_DOCS, 768);
+    }
+
+    @Setup(Level.Invocation)
+    public void newIndex() throws Exception {
+      index = Files.createTempDirectory(dir, "index");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteIndex() throws Exception {
+      SyntheticData.delete(index);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      SyntheticData.delete(dir);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_DOCS)
+  public void jsonCollection(Collections state) throws Exception {
+    SyntheticData.indexJsonCollection(state.dir.resolve("json"), state.index);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_DOCS)
+  public void flatDenseVectors(Collections state) throws Exception {
+    SyntheticData.indexJsonDenseVectorCollection(state.dir.resolve("dense"), state.index);
+  }
+}
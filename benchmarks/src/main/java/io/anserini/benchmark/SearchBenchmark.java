@@ -0,0 +1,138 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.benchmark;
+
+import io.anserini.search.ScoredDoc;
+import io.anserini.search.SimpleImpactSearcher;
+import io.anserini.search.SimpleSearcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of bag-of-words search over a synthetic index: BM25, BM25 with RM3 feedback (which exercises
+ * <code>Rm3Reranker</code> and <code>FeatureVector</code>), and impact search (which exercises
+ * <code>ImpactSimilarity</code>). Each invocation runs the next of a fixed set of queries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+  private static final int NUM_DOCS = 20_000;
+  private static final int VOCAB_SIZE = 50_000;
+  private static final int DOC_LENGTH = 100;
+  private static final int NUM_QUERIES = 100;
+
+  @State(Scope.Benchmark)
+  public static class Bm25 {
+    @Param({"bm25", "bm25+rm3"})
+    public String model;
+
+    @Param({"10", "1000"})
+    public int hits;
+
+    private Path dir;
+    private SimpleSearcher searcher;
+    private List<String> queries;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      dir = Files.createTempDirectory("search-benchmark");
+      SyntheticData.writeJsonCollection(dir.resolve("collection"), NUM_DOCS, VOCAB_SIZE, DOC_LENGTH);
+      SyntheticData.indexJsonCollection(dir.resolve("collection"), dir.resolve("index"));
+
+      searcher = new SimpleSearcher(dir.resolve("index").toString());
+      if (model.equals("bm25+rm3")) {
+        searcher.set_rm3();
+      }
+      queries = SyntheticData.queries(NUM_QUERIES, VOCAB_SIZE, 4);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      searcher.close();
+      SyntheticData.delete(dir);
+    }
+
+    String nextQuery() {
+      next = (next + 1) % queries.size();
+      return queries.get(next);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Impact {
+    @Param({"10", "1000"})
+    public int hits;
+
+    private Path dir;
+    private SimpleImpactSearcher searcher;
+    private List<Map<String, Integer>> queries;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      dir = Files.createTempDirectory("search-benchmark");
+      SyntheticData.writeJsonVectorCollection(dir.resolve("collection"), NUM_DOCS, VOCAB_SIZE, DOC_LENGTH);
+      SyntheticData.indexJsonVectorCollection(dir.resolve("collection"), dir.resolve("index"));
+
+      searcher = new SimpleImpactSearcher(dir.resolve("index").toString());
+      // Learned sparse queries are long, with a weight per expansion term.
+      queries = SyntheticData.impactQueries(NUM_QUERIES, VOCAB_SIZE, 30);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      searcher.close();
+      SyntheticData.delete(dir);
+    }
+
+    Map<String, Integer> nextQuery() {
+      next = (next + 1) % queries.size();
+      return queries.get(next);
+    }
+  }
+
+  @Benchmark
+  public ScoredDoc[] bm25(Bm25 state) throws Exception {
+    return state.searcher.search(state.nextQuery(), state.hits);
+  }
+
+  @Benchmark
+  public ScoredDoc[] impact(Impact state) throws Exception {
+    return state.searcher.search(state.nextQuery(), state.hits);
+  }
+}
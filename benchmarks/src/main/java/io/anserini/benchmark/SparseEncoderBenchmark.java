@@ -0,0 +1,70 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.benchmark;
+
+import io.anserini.encoder.sparse.SparseEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speed of turning the token weights of a learned sparse query into a query string of repeated tokens, as
+ * <code>SparseEncoder.generateEncodedQuery</code> does for every query. The weights stand in for those that the ONNX
+ * model would compute, so that no model is needed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SparseEncoderBenchmark {
+  // Number of tokens with non-zero weight; expanded SPLADE queries have tens to hundreds.
+  @Param({"30", "200"})
+  public int numTokens;
+
+  private Map<String, Float> tokenWeights;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(SyntheticData.SEED);
+    tokenWeights = new LinkedHashMap<>();
+    for (int i = 0; i < numTokens; i++) {
+      tokenWeights.put("w" + i, random.nextFloat() * 3.0f);
+    }
+  }
+
+  @Benchmark
+  public String generateEncodedQuery() {
+    // The weight and quantization ranges of the SPLADE and uniCOIL encoders.
+    return SparseEncoder.generateEncodedQuery(tokenWeights, 5, 256);
+  }
+}
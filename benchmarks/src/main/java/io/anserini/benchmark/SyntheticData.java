@@ -0,0 +1,246 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.benchmark;
+
+import io.anserini.index.IndexCollection;
+import io.anserini.index.IndexFlatDenseVectors;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic collections, queries and runs for the benchmarks, generated from a seed so that every run of a benchmark
+ * sees the same data. Terms are drawn from a vocabulary of "words" <code>w0</code>, <code>w1</code>, ... with a skewed
+ * distribution, so that low-numbered terms are frequent and have long postings, as in natural text.
+ */
+public final class SyntheticData {
+  public static final long SEED = 42L;
+
+  private SyntheticData() {}
+
+  static {
+    // Indexing and searching log progress at INFO, which would drown out the benchmark output.
+    Configurator.setLevel("io.anserini", Level.WARN);
+  }
+
+  /**
+   * Draws a term, with term <i>i</i> roughly <i>1/(i+1)</i> as likely as term 0.
+   *
+   * @param random source of randomness
+   * @param vocabSize size of the vocabulary
+   * @return term
+   */
+  public static String term(Random random, int vocabSize) {
+    return "w" + ((int) Math.pow(vocabSize + 1, random.nextDouble()) - 1);
+  }
+
+  public static String text(Random random, int vocabSize, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(term(random, vocabSize));
+    }
+    return sb.toString();
+  }
+
+  public static List<String> queries(int numQueries, int vocabSize, int length) {
+    Random random = new Random(SEED + 1);
+    List<String> queries = new ArrayList<>();
+    for (int i = 0; i < numQueries; i++) {
+      queries.add(text(random, vocabSize, length));
+    }
+    return queries;
+  }
+
+  public static List<Map<String, Integer>> impactQueries(int numQueries, int vocabSize, int length) {
+    Random random = new Random(SEED + 1);
+    List<Map<String, Integer>> queries = new ArrayList<>();
+    for (int i = 0; i < numQueries; i++) {
+      Map<String, Integer> query = new LinkedHashMap<>();
+      for (int j = 0; j < length; j++) {
+        query.merge(term(random, vocabSize), 1 + random.nextInt(100), Integer::sum);
+      }
+      queries.add(query);
+    }
+    return queries;
+  }
+
+  public static List<float[]> vectors(int numVectors, int dimension, long seed) {
+    Random random = new Random(seed);
+    List<float[]> vectors = new ArrayList<>();
+    for (int i = 0; i < numVectors; i++) {
+      float[] vector = new float[dimension];
+      double norm = 0.0;
+      for (int j = 0; j < dimension; j++) {
+        vector[j] = (float) random.nextGaussian();
+        norm += vector[j] * vector[j];
+      }
+      // Unit length, as the vectors of the dense encoders are.
+      for (int j = 0; j < dimension; j++) {
+        vector[j] = (float) (vector[j] / Math.sqrt(norm));
+      }
+      vectors.add(vector);
+    }
+    return vectors;
+  }
+
+  /**
+   * Writes a collection of documents in the format of <code>JsonCollection</code>.
+   *
+   * @param dir directory of the collection
+   * @param numDocs number of documents
+   * @param vocabSize size of the vocabulary
+   * @param docLength number of terms per document
+   * @throws IOException if error encountered writing the collection
+   */
+  public static void writeJsonCollection(Path dir, int numDocs, int vocabSize, int docLength) throws IOException {
+    Random random = new Random(SEED);
+    Files.createDirectories(dir);
+    try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("docs.jsonl"), StandardCharsets.UTF_8)) {
+      for (int i = 0; i < numDocs; i++) {
+        out.write(String.format("{\"id\": \"doc%d\", \"contents\": \"%s\"}\n", i, text(random, vocabSize, docLength)));
+      }
+    }
+  }
+
+  /**
+   * Writes a collection of documents with term impacts, in the format of <code>JsonVectorCollection</code>.
+   *
+   * @param dir directory of the collection
+   * @param numDocs number of documents
+   * @param vocabSize size of the vocabulary
+   * @param docLength number of terms per document
+   * @throws IOException if error encountered writing the collection
+   */
+  public static void writeJsonVectorCollection(Path dir, int numDocs, int vocabSize, int docLength)
+      throws IOException {
+    Random random = new Random(SEED);
+    Files.createDirectories(dir);
+    try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("docs.jsonl"), StandardCharsets.UTF_8)) {
+      for (int i = 0; i < numDocs; i++) {
+        Map<String, Integer> vector = new LinkedHashMap<>();
+        for (int j = 0; j < docLength; j++) {
+          vector.merge(term(random, vocabSize), 1 + random.nextInt(100), Integer::sum);
+        }
+        StringBuilder sb = new StringBuilder();
+        vector.forEach((term, impact) -> sb.append(sb.isEmpty() ? "" : ", ").append('"').append(term).append("\": ")
+            .append(impact));
+        out.write(String.format("{\"id\": \"doc%d\", \"contents\": \"\", \"vector\": {%s}}\n", i, sb));
+      }
+    }
+  }
+
+  /**
+   * Writes a collection of dense vectors, in the format of <code>JsonDenseVectorCollection</code>.
+   *
+   * @param dir directory of the collection
+   * @param numDocs number of documents
+   * @param dimension dimension of the vectors
+   * @throws IOException if error encountered writing the collection
+   */
+  public static void writeJsonDenseVectorCollection(Path dir, int numDocs, int dimension) throws IOException {
+    Files.createDirectories(dir);
+    try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("docs.jsonl"), StandardCharsets.UTF_8)) {
+      int i = 0;
+      for (float[] vector : vectors(numDocs, dimension, SEED)) {
+        StringBuilder sb = new StringBuilder();
+        for (float v : vector) {
+          sb.append(sb.isEmpty() ? "" : ", ").append(v);
+        }
+        out.write(String.format("{\"docid\": \"doc%d\", \"vector\": [%s]}\n", i++, sb));
+      }
+    }
+  }
+
+  /**
+   * Writes a run in the TREC format, with docids drawn from a common pool so that runs written with different seeds
+   * overlap, as runs to be fused do.
+   *
+   * @param path run file
+   * @param numTopics number of topics
+   * @param depth number of hits per topic
+   * @param seed seed
+   * @throws IOException if error encountered writing the run
+   */
+  public static void writeRun(Path path, int numTopics, int depth, long seed) throws IOException {
+    Random random = new Random(seed);
+    try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      for (int topic = 1; topic <= numTopics; topic++) {
+        float score = 30.0f;
+        List<Integer> docs = random.ints(0, depth * 4).distinct().limit(depth).boxed().toList();
+        for (int rank = 1; rank <= depth; rank++) {
+          score -= random.nextFloat() * 0.05f;
+          out.write(String.format("%d Q0 doc%d %d %.6f synthetic\n", topic, docs.get(rank - 1), rank, score));
+        }
+      }
+    }
+  }
+
+  public static void indexJsonCollection(Path collection, Path index) throws Exception {
+    IndexCollection.Args args = new IndexCollection.Args();
+    args.collectionClass = "JsonCollection";
+    args.input = collection.toString();
+    args.index = index.toString();
+    args.threads = 1;
+    args.storePositions = true;
+    args.storeDocvectors = true;
+    args.storeRaw = true;
+    args.quiet = true;
+    new IndexCollection(args).run();
+  }
+
+  public static void indexJsonVectorCollection(Path collection, Path index) throws Exception {
+    IndexCollection.Args args = new IndexCollection.Args();
+    args.collectionClass = "JsonVectorCollection";
+    args.input = collection.toString();
+    args.index = index.toString();
+    args.threads = 1;
+    args.impact = true;
+    args.pretokenized = true;
+    args.quiet = true;
+    new IndexCollection(args).run();
+  }
+
+  public static void indexJsonDenseVectorCollection(Path collection, Path index) throws Exception {
+    IndexFlatDenseVectors.Args args = new IndexFlatDenseVectors.Args();
+    args.collectionClass = "JsonDenseVectorCollection";
+    args.input = collection.toString();
+    args.index = index.toString();
+    args.threads = 1;
+    args.quiet = true;
+    new IndexFlatDenseVectors(args).run();
+  }
+
+  public static void delete(Path path) throws IOException {
+    if (path != null) {
+      FileUtils.deleteDirectory(path.toFile());
+    }
+  }
+}
@@ -0,0 +1,7 @@
+#!/bin/sh
+
+# Runs the JMH benchmarks (see benchmarks/README.md), writing results as JSON named after the current commit.
+# Arguments are passed on to JMH, e.g., a regexp selecting the benchmarks to run.
+
+mkdir -p runs/benchmarks
+java -jar benchmarks/target/benchmarks.jar -rf json -rff runs/benchmarks/jmh.$(git rev-parse --short HEAD).json "$@"
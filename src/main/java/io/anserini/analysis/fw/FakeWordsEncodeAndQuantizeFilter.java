@@ -33,7 +33,6 @@ import java.util.List;
  */
 public final class FakeWordsEncodeAndQuantizeFilter extends TokenFilter {
 
-  private static final String PREFIX = "f";
   private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
   private final int q;
   private final List<String> fs = new LinkedList<>();
@@ -54,8 +53,8 @@ public final class FakeWordsEncodeAndQuantizeFilter extends TokenFilter {
     if (input.incrementToken()) {
       tokenCount++;
       String token = new String(termAttribute.buffer(), 0, termAttribute.length());
-      int qv = (int) (Double.parseDouble(token) * q);
-      String fw = PREFIX + tokenCount;
+      int qv = FakeWordsEncoderAnalyzer.quantize(token, q);
+      String fw = FakeWordsEncoderAnalyzer.fakeWord(tokenCount);
       for (int i = 0; i < qv - 1; i++) {
         fs.add(fw);
       }
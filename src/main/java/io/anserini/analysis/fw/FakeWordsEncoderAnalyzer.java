@@ -26,15 +26,24 @@ import org.apache.lucene.analysis.Tokenizer;
 /**
  * {@link Analyzer} that encodes input vectors as "fake words", see paper "Large scale indexing
  * and searching deep convolutional neural network features" from Amato et al. (DaWaK 2016).
+ *
+ * By default, each fake word is repeated as many times as its quantized value. With term frequencies, each fake word is
+ * instead emitted once, with its quantized value as a custom term frequency, which gives the same term frequencies and
+ * field lengths with far fewer tokens. Fields analyzed this way have to be indexed without positions, see {@link
+ * org.apache.lucene.analysis.tokenattributes.TermFrequencyAttribute}.
  */
 public class FakeWordsEncoderAnalyzer extends Analyzer {
 
   static final String REMOVE_IT = "_";
 
+  private static final String PREFIX = "f";
+
   public static final int DEFAULT_Q = 80;
 
   private final int q;
 
+  private final boolean termFrequencies;
+
   private final CharArraySet set = new CharArraySet(1, false);
 
   public FakeWordsEncoderAnalyzer() {
@@ -42,13 +51,29 @@ public class FakeWordsEncoderAnalyzer extends Analyzer {
   }
 
   public FakeWordsEncoderAnalyzer(int q) {
+    this(q, false);
+  }
+
+  public FakeWordsEncoderAnalyzer(int q, boolean termFrequencies) {
     this.q = q;
+    this.termFrequencies = termFrequencies;
     this.set.add(REMOVE_IT);
   }
 
+  static String fakeWord(int position) {
+    return PREFIX + position;
+  }
+
+  static int quantize(String token, int q) {
+    return (int) (Double.parseDouble(token) * q);
+  }
+
   @Override
   protected TokenStreamComponents createComponents(String fieldName) {
     Tokenizer t = new FeatureVectorsTokenizer();
+    if (termFrequencies) {
+      return new TokenStreamComponents(t, new FakeWordsTermFrequencyFilter(t, q));
+    }
     TokenFilter filter = new FakeWordsEncodeAndQuantizeFilter(t, q);
     filter = new StopFilter(filter, set);
     return new TokenStreamComponents(t, filter);
@@ -0,0 +1,66 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.analysis.fw;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermFrequencyAttribute;
+
+import java.io.IOException;
+
+/**
+ * {@link TokenFilter} that encodes a real valued token into a single "fake word" token, whose term frequency is the
+ * corresponding quantized input (real) value. This indexes the same as the repeated tokens of {@link
+ * FakeWordsEncodeAndQuantizeFilter}, provided that the field is indexed without positions.
+ *
+ * Note: if quantization leads to zero, the token is dropped.
+ */
+public final class FakeWordsTermFrequencyFilter extends TokenFilter {
+
+  private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+  private final TermFrequencyAttribute termFrequencyAttribute = addAttribute(TermFrequencyAttribute.class);
+  private final int q;
+  private int tokenCount = 0;
+
+  FakeWordsTermFrequencyFilter(TokenStream input, int q) {
+    super(input);
+    this.q = q;
+  }
+
+  @Override
+  public boolean incrementToken() throws IOException {
+    while (input.incrementToken()) {
+      tokenCount++;
+      String token = new String(termAttribute.buffer(), 0, termAttribute.length());
+      int qv = FakeWordsEncoderAnalyzer.quantize(token, q);
+      if (qv > 0) {
+        termAttribute.setEmpty();
+        termAttribute.append(FakeWordsEncoderAnalyzer.fakeWord(tokenCount));
+        termFrequencyAttribute.setTermFrequency(qv);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    this.tokenCount = 0;
+  }
+}
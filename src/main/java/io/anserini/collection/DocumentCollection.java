@@ -35,7 +35,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * <p>A static collection of documents, comprised of one or more {@link FileSegment}s.
@@ -105,6 +104,31 @@ public abstract class DocumentCollection<T extends SourceDocument> implements It
    */
   public abstract FileSegment<T> createFileSegment(BufferedReader bufferedReader) throws IOException;
 
+  /**
+   * Returns whether a file can be split into byte ranges that are read independently with
+   * {@link #createFileSegment(Path, long, long)}. This is only possible for formats with one document per line.
+   *
+   * @param p path
+   * @return whether the file can be split
+   */
+  public boolean isSplittable(Path p) {
+    return false;
+  }
+
+  /**
+   * Creates a {@code FileSegment} over the documents of a file that begin in the byte range {@code [start, end)};
+   * only supported if {@link #isSplittable(Path)} holds for the path.
+   *
+   * @param p path
+   * @param start start of the byte range (inclusive)
+   * @param end end of the byte range (exclusive)
+   * @return {@code FileSegment} over the specified range of the file
+   * @throws IOException if file access error encountered
+   */
+  public FileSegment<T> createFileSegment(Path p, long start, long end) throws IOException {
+    throw new UnsupportedOperationException(String.format("%s cannot be split.", p));
+  }
+
   /**
    * An iterator over {@code FileSegment} for the {@code DocumentCollection} iterable.
    * A collection is comprised of one or more file segments.
@@ -164,15 +188,19 @@ public abstract class DocumentCollection<T extends SourceDocument> implements It
   }
 
   /**
-   * Returns the paths in the collection, taking into account sharding.
+   * Returns the paths in the collection, taking into account sharding. Segments are assigned to shards so as to
+   * balance the total size of each shard; see {@link SegmentPartitioner}.
    *
    * @param currShard the current shard
    * @param shardCount the total number of shards
    * @return file segments in current shard
    */
   public List<Path> getSegmentPaths(int shardCount, int currShard) {
-    List<Path> segments = discover(this.path);
-    return segments.stream().filter(x -> x.toString().hashCode() % shardCount == currShard).collect(Collectors.toList());
+    if (currShard < 0 || currShard >= shardCount) {
+      throw new IllegalArgumentException(String.format("Invalid shard %d out of %d shards.", currShard, shardCount));
+    }
+
+    return SegmentPartitioner.partition(discover(this.path), shardCount, SegmentPartitioner::fileSize).get(currShard);
   }
 
   // Private method for walking a path.
@@ -96,6 +96,17 @@ public class JsonCollection extends DocumentCollection<JsonCollection.Document>
     return new Segment(bufferedReader);
   }
 
+  @Override
+  public boolean isSplittable(Path p) {
+    return p.toString().endsWith(".jsonl");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public FileSegment<JsonCollection.Document> createFileSegment(Path p, long start, long end) throws IOException {
+    return new Segment(p, start, end);
+  }
+
   /**
    * A file in a JSON collection, typically containing multiple documents.
    */
@@ -114,18 +125,30 @@ public class JsonCollection extends DocumentCollection<JsonCollection.Document>
         bufferedReader = new BufferedReader(new FileReader(path.toString()));
       }
 
-      ObjectMapper mapper = new ObjectMapper();
-      iterator = mapper.readerFor(JsonNode.class).readValues(bufferedReader);
-      if (iterator.hasNext()) {
-        node = iterator.next();
-        if (node.isArray()) {
-          iter = node.elements();
-        }
-      }
+      initIterator();
+    }
+
+    /**
+     * Creates a segment over the JSON line objects that begin in the byte range {@code [start, end)} of a file.
+     *
+     * @param path path
+     * @param start start of the byte range (inclusive)
+     * @param end end of the byte range (exclusive)
+     * @throws IOException if file access error encountered
+     */
+    public Segment(Path path, long start, long end) throws IOException {
+      super(path);
+      bufferedReader = new BufferedReader(new InputStreamReader(
+          new LineRangeInputStream(path, start, end, BUFFER_SIZE), StandardCharsets.UTF_8));
+      initIterator();
     }
 
     public Segment(BufferedReader bufferedReader) throws IOException {
       super(bufferedReader);
+      initIterator();
+    }
+
+    private void initIterator() throws IOException {
       ObjectMapper mapper = new ObjectMapper();
       iterator = mapper.readerFor(JsonNode.class).readValues(bufferedReader);
       if (iterator.hasNext()) {
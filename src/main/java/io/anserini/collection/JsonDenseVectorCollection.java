@@ -27,7 +27,8 @@ import java.util.Map;
 
 /**
  * A document collection for encoded dense vectors for ANN (HNSW) search.
- * The "vector" field are concatenated into the "contents" field for indexing.
+ * The "vector" field are concatenated into the "contents" field for indexing, and other scalar fields are kept as
+ * metadata fields.
  */
 public class JsonDenseVectorCollection extends DocumentCollection<JsonDenseVectorCollection.Document> {
   public JsonDenseVectorCollection(Path path) {
@@ -47,11 +48,25 @@ public class JsonDenseVectorCollection extends DocumentCollection<JsonDenseVecto
     return new JsonDenseVectorCollection.Segment<>(bufferedReader);
   }
 
+  @Override
+  public boolean isSplittable(Path p) {
+    return p.toString().endsWith(".jsonl");
+  }
+
+  @Override
+  public FileSegment<JsonDenseVectorCollection.Document> createFileSegment(Path p, long start, long end) throws IOException {
+    return new JsonDenseVectorCollection.Segment<>(p, start, end);
+  }
+
   public static class Segment<T extends JsonDenseVectorCollection.Document> extends JsonCollection.Segment<T> {
     public Segment(Path path) throws IOException {
       super(path);
     }
 
+    public Segment(Path path, long start, long end) throws IOException {
+      super(path, start, end);
+    }
+
     public Segment(BufferedReader bufferedReader) throws IOException {
       super(bufferedReader);
     }
@@ -73,8 +88,13 @@ public class JsonDenseVectorCollection extends DocumentCollection<JsonDenseVecto
       this.raw = json.toPrettyString();
       this.id = json.get("docid").asText();
       this.contents = json.get("vector").toString();
-      // We're not going to index any other fields, so just initialize an empty map.
+      // Other scalar fields are kept as metadata, which the indexers can store next to the vectors for filtering.
       this.fields = new HashMap<>();
+      json.fields().forEachRemaining(e -> {
+        if (!"docid".equals(e.getKey()) && !"vector".equals(e.getKey()) && e.getValue().isValueNode()) {
+          this.fields.put(e.getKey(), e.getValue().asText());
+        }
+      });
     }
 
     @Override
@@ -43,11 +43,25 @@ public class JsonVectorCollection extends DocumentCollection<JsonVectorCollectio
     return new JsonVectorCollection.Segment<>(bufferedReader);
   }
 
+  @Override
+  public boolean isSplittable(Path p) {
+    return p.toString().endsWith(".jsonl");
+  }
+
+  @Override
+  public FileSegment<JsonVectorCollection.Document> createFileSegment(Path p, long start, long end) throws IOException {
+    return new JsonVectorCollection.Segment<>(p, start, end);
+  }
+
   public static class Segment<T extends JsonVectorCollection.Document> extends JsonCollection.Segment<T> {
     public Segment(Path path) throws IOException {
       super(path);
     }
 
+    public Segment(Path path, long start, long end) throws IOException {
+      super(path, start, end);
+    }
+
     public Segment(BufferedReader bufferedReader) throws IOException {
       super(bufferedReader);
     }
@@ -0,0 +1,118 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.collection;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An input stream over the lines of a file that begin within the byte range {@code [start, end)}. A line that
+ * straddles {@code start} belongs to the previous range, and a line that straddles {@code end} is read to completion,
+ * so contiguous ranges that cover a file together yield every line exactly once.
+ */
+final class LineRangeInputStream extends InputStream {
+  private final InputStream in;
+  private final long end;
+  private long pos;
+  private boolean done = false;
+
+  LineRangeInputStream(Path path, long start, long end, int bufferSize) throws IOException {
+    // Start one byte early: if that byte is a newline, then a line begins exactly at start and we keep it.
+    long begin = Math.max(0, start - 1);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    channel.position(begin);
+
+    this.in = new BufferedInputStream(Channels.newInputStream(channel), bufferSize);
+    this.end = end;
+    this.pos = begin;
+
+    if (start > 0) {
+      // Skip the remainder of the line that belongs to the previous range.
+      int b;
+      while ((b = in.read()) != -1) {
+        pos++;
+        if (b == '\n') {
+          break;
+        }
+      }
+      if (b == -1) {
+        done = true;
+      }
+    }
+    if (pos >= end) {
+      done = true;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (done) {
+      return -1;
+    }
+
+    int b = in.read();
+    if (b == -1) {
+      done = true;
+      return -1;
+    }
+
+    pos++;
+    if (b == '\n' && pos >= end) {
+      done = true;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (done) {
+      return -1;
+    }
+    if (len == 0) {
+      return 0;
+    }
+
+    int n = in.read(b, off, len);
+    if (n == -1) {
+      done = true;
+      return -1;
+    }
+
+    if (pos + n >= end) {
+      // The range ends with the first newline at or after position end - 1.
+      for (int i = (int) Math.max(0, end - 1 - pos); i < n; i++) {
+        if (b[off + i] == '\n') {
+          n = i + 1;
+          done = true;
+          break;
+        }
+      }
+    }
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
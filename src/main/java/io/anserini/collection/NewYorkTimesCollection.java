@@ -19,26 +19,20 @@ package io.anserini.collection;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.apache.commons.io.input.ReaderInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -106,24 +100,19 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
     }
 
     @Override
-    protected void readNext() throws IOException, NoSuchElementException {
+    protected void readNext() throws IOException, ParseException, NoSuchElementException {
       if (path != null) {
-        try {
-          if (path != null && path.toString().endsWith(".tgz")) {
-            getNextEntry();
-            bufferedReader = new BufferedReader(new InputStreamReader(tarInput, "UTF-8"));
-            File file = new File(nextEntry.getName()); // this is actually not a real file, only to match the method in Parser
-            bufferedRecord = parser.parseFile(bufferedReader, file);
-          } else {
-            bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(path.toFile()), "UTF-8"));
-            bufferedRecord = parser.parseFile(bufferedReader, path.toFile());
-            atEOF = true; // if it is a xml file, the segment only has one file, boolean to keep track if it's been read.
-          }
-        } catch (IOException e1) {
-          if (path.toString().endsWith(".xml")) {
-            atEOF = true;
+        if (path.toString().endsWith(".tgz")) {
+          getNextEntry();
+          File file = new File(nextEntry.getName()); // this is actually not a real file, only to match the method in Parser
+          // Parse directly off the tarball: the stream ends at the boundary of the current entry, and any unread
+          // remainder of the entry (e.g., after a parse error) is skipped when we advance to the next one.
+          bufferedRecord = parser.parseFile(tarInput, file);
+        } else {
+          atEOF = true; // if it is a xml file, the segment only has one file, boolean to keep track if it's been read.
+          try (InputStream stream = new BufferedInputStream(new FileInputStream(path.toFile()), BUFFER_SIZE)) {
+            bufferedRecord = parser.parseFile(stream, path.toFile());
           }
-          throw e1;
         }
       } else if (bufferedReader != null) {
         bufferedRecord = parser.parseRaw(bufferedReader);
@@ -132,6 +121,18 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
       }
     }
 
+    @Override
+    public void close() {
+      super.close();
+      if (tarInput != null) {
+        try {
+          tarInput.close();
+        } catch (IOException e) {
+          // There's really nothing to be done, so just silently eat the exception.
+        }
+      }
+    }
+
     private void getNextEntry() throws IOException {
       nextEntry = tarInput.getNextEntry();
       if (nextEntry == null) {
@@ -1860,9 +1861,32 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
     /** NITF Constant */
     private static final String GENERAL_DESCRIPTOR_ATTRIBUTE = "general_descriptor";
 
-    public Document parseFile(BufferedReader bRdr, File fileName) throws IOException {
-      RawDocument raw = parseNYTCorpusDocumentFromBufferedReader(bRdr, fileName);
+    /**
+     * Factories are expensive to create but not guaranteed to be thread-safe, so we keep one per indexing thread.
+     */
+    private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      // All documents in the corpus have previously been validated against the NITF DTD, so we never fetch or
+      // process it; this is equivalent to stripping the doctype declaration before parsing.
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+      factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+      // Coalescing gives us one text event per contiguous run of character data, matching DOM text nodes.
+      factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+      return factory;
+    });
+
+    public Document parseFile(InputStream stream, File file) throws IOException, ParseException {
+      // The parser must not close the stream, since it may be positioned on an entry of a tarball.
+      return createDocument(parseNYTCorpusDocument(CloseShieldInputStream.wrap(stream), file));
+    }
+
+    public Document parseFile(BufferedReader bRdr, File file) throws IOException, ParseException {
+      return createDocument(parseNYTCorpusDocumentFromBufferedReader(bRdr, file));
+    }
 
+    private Document createDocument(RawDocument raw) {
       Document d = new Document(raw);
       d.id = String.valueOf(raw.getGuid());
       d.contents = Stream.of(raw.getHeadline(), raw.getArticleAbstract(), raw.getBody())
@@ -1880,22 +1904,18 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
     }
 
     /**
-     * Parse an New York Times Document from a file.
+     * Parse an New York Times Document from a file. The document is not validated against the NITF DTD, as all
+     * documents in the corpus have previously been validated.
      *
      * @param file the file from which to parse the document
-     * @param validating true if the file is to be validated against the NITF DTD and false if it
-     *   is not. It is recommended that validation be disabled, as all documents in the corpus have
-     *   previously been validated against the NITF DTD.
-     * @return the parsed document, or null if an error occurs
-     */
-    public RawDocument parseNYTCorpusDocumentFromFile(File file, boolean validating) {
-      org.w3c.dom.Document document = null;
-      if (validating) {
-        document = loadValidating(file);
-      } else {
-        document = loadNonValidating(file);
+     * @return the parsed document
+     * @throws IOException if error encountered reading the file
+     * @throws ParseException if the file is not well-formed XML
+     */
+    public RawDocument parseNYTCorpusDocumentFromFile(File file) throws IOException, ParseException {
+      try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+        return parseNYTCorpusDocument(stream, file);
       }
-      return parseNYTCorpusDocumentFromDOMDocument(file, document);
     }
 
     /**
@@ -1904,95 +1924,131 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
      *
      * @param file the file from which to parse the document
      * @param bRdr the BufferedReader of file
-     * @return the parsed document, or null if an error occurs
+     * @return the parsed document
+     * @throws ParseException if the document is not well-formed XML
      */
-    public RawDocument parseNYTCorpusDocumentFromBufferedReader(BufferedReader bRdr, File file) {
-      org.w3c.dom.Document document = loadFromBufferedReader(bRdr, file);
+    public RawDocument parseNYTCorpusDocumentFromBufferedReader(BufferedReader bRdr, File file) throws ParseException {
+      XMLStreamReader reader = null;
+      try {
+        reader = XML_INPUT_FACTORY.get().createXMLStreamReader(bRdr);
+        return parseNYTCorpusDocument(reader, file);
+      } catch (XMLStreamException e) {
+        throw toParseException(e, file);
+      } finally {
+        closeQuietly(reader);
+      }
+    }
 
-      return parseNYTCorpusDocumentFromDOMDocument(file, document);
+    private RawDocument parseNYTCorpusDocument(InputStream stream, File file) throws ParseException {
+      XMLStreamReader reader = null;
+      try {
+        reader = XML_INPUT_FACTORY.get().createXMLStreamReader(stream, "UTF-8");
+        return parseNYTCorpusDocument(reader, file);
+      } catch (XMLStreamException e) {
+        throw toParseException(e, file);
+      } finally {
+        closeQuietly(reader);
+      }
     }
 
-    public RawDocument parseNYTCorpusDocumentFromDOMDocument(File file, org.w3c.dom.Document document) {
+    private RawDocument parseNYTCorpusDocument(XMLStreamReader reader, File file) throws XMLStreamException {
       RawDocument ldcDocument = new RawDocument();
       ldcDocument.setSourceFile(file);
-      NodeList children = document.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
-        if (name.equals(NITF_TAG)) {
-          handleNITFNode(child, ldcDocument);
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+          // There is only a single root element, so we can stop as soon as we've seen it.
+          if (reader.getLocalName().equals(NITF_TAG)) {
+            handleNITFNode(reader, ldcDocument);
+          }
+          break;
         }
       }
 
       return ldcDocument;
     }
 
-    private void handleNITFNode(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
+    private ParseException toParseException(XMLStreamException e, File file) {
+      int offset = e.getLocation() == null ? 0 : Math.max(e.getLocation().getCharacterOffset(), 0);
+      LOG.error("Exception processing file " + file + ": " + e.getMessage());
+      return new ParseException("Exception processing file " + file + ": " + e.getMessage(), offset);
+    }
+
+    private void closeQuietly(XMLStreamReader reader) {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // There's really nothing to be done, so just silently eat the exception.
+        }
+      }
+    }
+
+    // Each of the handle* methods below is called with the reader positioned on the start tag of the element it
+    // handles, and returns with the reader positioned on the matching end tag.
+
+    private void handleNITFNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        String name = reader.getLocalName();
         if (name.equals(HEAD_TAG)) {
-          handleHeadNode(child, ldcDocument);
+          handleHeadNode(reader, ldcDocument);
         } else if (name.equals(BODY_TAG)) {
-          handleBodyNode(child, ldcDocument);
+          handleBodyNode(reader, ldcDocument);
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleBodyNode(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
+    private void handleBodyNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        String name = reader.getLocalName();
         if (name.equals(BODY_HEAD_TAG)) {
-          handleBodyHead(child, ldcDocument);
+          handleBodyHead(reader, ldcDocument);
         } else if (name.equals(BODY_CONTENT_TAG)) {
-          handleBodyContent(child, ldcDocument);
+          handleBodyContent(reader, ldcDocument);
         } else if (name.equals(BODY_END_TAG)) {
-          handleBodyEnd(child, ldcDocument);
+          handleBodyEnd(reader, ldcDocument);
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleBodyHead(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
+    private void handleBodyHead(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        String name = reader.getLocalName();
         if (name.equals(DATELINE_TAG)) {
-          handleDatelineNode(ldcDocument, child);
+          handleDatelineNode(reader, ldcDocument);
         } else if (name.equals(ABSTRACT_TAG)) {
-          handleAbstractNode(child, ldcDocument);
+          handleAbstractNode(reader, ldcDocument);
         } else if (name.equals(BYLINE_TAG)) {
-          handleBylineNode(child, ldcDocument);
+          handleBylineNode(reader, ldcDocument);
         } else if (name.equals(HEDLINE_TAG)) {
-          handleHeadlineNode(child, ldcDocument);
+          handleHeadlineNode(reader, ldcDocument);
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleDatelineNode(RawDocument ldcDocument, Node child) {
-      String datelineString = getAllText(child);
-      ldcDocument.setDateline(datelineString.trim());
+    private void handleDatelineNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      ldcDocument.setDateline(getAllText(reader).trim());
     }
 
-    private void handleAbstractNode(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
-        if (name.equals(P_TAG)) {
-          String abstractText = getAllText(child).trim();
-          ldcDocument.setArticleAbstract(abstractText);
+    private void handleAbstractNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        if (reader.getLocalName().equals(P_TAG)) {
+          ldcDocument.setArticleAbstract(getAllText(reader).trim());
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleBylineNode(Node node, RawDocument ldcDocument) {
-      String classAttribute = getAttributeValue(node, CLASS_ATTRIBUTE);
+    private void handleBylineNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      String classAttribute = getAttributeValue(reader, CLASS_ATTRIBUTE);
+      String text = getAllText(reader).trim();
       if (classAttribute != null) {
-        String text = getAllText(node).trim();
         if (classAttribute.equals(NORMALIZED_BYLINE_ATTRIBUTE)) {
           ldcDocument.setNormalizedByline(text);
         } else if (classAttribute.equals(PRINT_BYLINE_ATTRIBUTE)) {
@@ -2001,161 +2057,159 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
       }
     }
 
-    private void handleHeadlineNode(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
-        String text = getAllText(child).trim();
+    private void handleHeadlineNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        String name = reader.getLocalName();
         if (name.equals(HL1_TAG)) {
-          ldcDocument.setHeadline(text);
+          ldcDocument.setHeadline(getAllText(reader).trim());
         } else if (name.equals(HL2_TAG)) {
-          String classAttribute = getAttributeValue(child,
-              CLASS_ATTRIBUTE);
-          if (classAttribute != null
-              && classAttribute.equals(ONLINE_HEADLINE_ATTRIBUTE)) {
+          String classAttribute = getAttributeValue(reader, CLASS_ATTRIBUTE);
+          String text = getAllText(reader).trim();
+          if (classAttribute != null && classAttribute.equals(ONLINE_HEADLINE_ATTRIBUTE)) {
             ldcDocument.setOnlineHeadline(text);
           }
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleBodyContent(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
-        if (name.equals(BLOCK_TAG)) {
-          handleBlockNode(child, ldcDocument);
+    private void handleBodyContent(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        if (reader.getLocalName().equals(BLOCK_TAG)) {
+          handleBlockNode(reader, ldcDocument);
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleBlockNode(Node node, RawDocument ldcDocument) {
-      String classAttribute = getAttributeValue(node, CLASS_ATTRIBUTE);
-      if (classAttribute != null) {
-        if (classAttribute.equals(ONLINE_LEAD_PARAGRAPH_ATTRIBUTE)) {
-          ldcDocument.setOnlineLeadParagraph(parseBlock(node));
-        } else if (classAttribute.equals(LEAD_PARAGRAPH_ATTRIBUTE)) {
-          ldcDocument.setLeadParagraph(parseBlock(node));
-        } else if (classAttribute.equals(FULL_TEXT_ATTRIBUTE)) {
-          ldcDocument.setBody(parseBlock(node));
-        } else if (classAttribute.equals(CORRECTION_TEXT)) {
-          ldcDocument.setCorrectionText(parseBlock(node));
-        }
+    private void handleBlockNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      String classAttribute = getAttributeValue(reader, CLASS_ATTRIBUTE);
+      if (classAttribute == null) {
+        skipElement(reader);
+      } else if (classAttribute.equals(ONLINE_LEAD_PARAGRAPH_ATTRIBUTE)) {
+        ldcDocument.setOnlineLeadParagraph(parseBlock(reader));
+      } else if (classAttribute.equals(LEAD_PARAGRAPH_ATTRIBUTE)) {
+        ldcDocument.setLeadParagraph(parseBlock(reader));
+      } else if (classAttribute.equals(FULL_TEXT_ATTRIBUTE)) {
+        ldcDocument.setBody(parseBlock(reader));
+      } else if (classAttribute.equals(CORRECTION_TEXT)) {
+        ldcDocument.setCorrectionText(parseBlock(reader));
+      } else {
+        skipElement(reader);
       }
     }
 
-    private void handleBodyEnd(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
-        if (name.equals(TAGLINE_TAG)) {
-          String classAttribute = getAttributeValue(child,
-              CLASS_ATTRIBUTE);
-          if (classAttribute != null
-              && classAttribute.equals(AUTHOR_INFO_ATTRIBUTE)) {
-            String text = getAllText(child);
+    private void handleBodyEnd(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        if (reader.getLocalName().equals(TAGLINE_TAG)) {
+          String classAttribute = getAttributeValue(reader, CLASS_ATTRIBUTE);
+          String text = getAllText(reader);
+          if (classAttribute != null && classAttribute.equals(AUTHOR_INFO_ATTRIBUTE)) {
             ldcDocument.setAuthorBiography(text);
           }
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleHeadNode(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
+    private void handleHeadNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        String name = reader.getLocalName();
         if (name.equals(META_TAG)) {
-          handleMetaNode(child, ldcDocument);
+          handleMetaNode(reader, ldcDocument);
+          skipElement(reader);
         } else if (name.equals(DOCDATA_TAG)) {
-          handleDocdataNode(child, ldcDocument);
+          handleDocdataNode(reader, ldcDocument);
         } else if (name.equals(PUBDATA_TAG)) {
-          handlePubdata(child, ldcDocument);
+          handlePubdata(reader, ldcDocument);
+          skipElement(reader);
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handleDocdataNode(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
+    private void handleDocdataNode(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        String name = reader.getLocalName();
         if (name.equals(DOC_ID_TAG)) {
-          handleDocumentIdNode(ldcDocument, child);
+          handleDocumentIdNode(reader, ldcDocument);
+          skipElement(reader);
         } else if (name.equals(SERIES_TAG)) {
-          ldcDocument
-              .setKicker(getAttributeValue(child, SERIES_NAME_TAG));
+          ldcDocument.setKicker(getAttributeValue(reader, SERIES_NAME_TAG));
+          skipElement(reader);
         } else if (name.equals(IDENTIFIED_CONTENT_TAG)) {
-          handleIdentifiedContent(child, ldcDocument);
+          handleIdentifiedContent(reader, ldcDocument);
+        } else {
+          skipElement(reader);
         }
       }
     }
 
-    private void handlePubdata(Node node, RawDocument ldcDocument) {
-      String publicationDateString = getAttributeValue(node,
-          DATE_PUBLICATION_ATTRIBUTE);
+    private void handlePubdata(XMLStreamReader reader, RawDocument ldcDocument) {
+      String publicationDateString = getAttributeValue(reader, DATE_PUBLICATION_ATTRIBUTE);
       if (publicationDateString != null) {
         try {
           Date date = format.parse(publicationDateString);
           ldcDocument.setPublicationDate(date);
         } catch (ParseException e) {
-          //e.printStackTrace();
           LOG.error("Error parsing date from string "
               + publicationDateString + " in file "
               + ldcDocument.getSourceFile() + ".");
         }
-
       }
 
-      String urlString = getAttributeValue(node, EX_REF_ATTRIBUTE);
+      String urlString = getAttributeValue(reader, EX_REF_ATTRIBUTE);
       if (urlString != null) {
         try {
           URL url = new URI(urlString).toURL();
           ldcDocument.setUrl(url);
-        } catch (MalformedURLException | URISyntaxException e) {
-          //e.printStackTrace();
+        } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
           LOG.error("Error parsing url from string " + urlString
               + " in file " + ldcDocument.getSourceFile() + ".");
         }
       }
 
-      String wordCountString = getAttributeValue(node, ITEM_LENGTH_ATTRIBUTE);
+      String wordCountString = getAttributeValue(reader, ITEM_LENGTH_ATTRIBUTE);
       if (wordCountString != null) {
         try {
           Integer wordCount = Integer.parseInt(wordCountString);
           ldcDocument.setWordCount(wordCount);
         } catch (NumberFormatException e) {
-          //e.printStackTrace();
           LOG.error("Error parsing integer from string "
               + wordCountString + " in file "
               + ldcDocument.getSourceFile() + ".");
         }
       }
 
-      String creatorString = getAttributeValue(node, NAME_ATTRIBUTE);
+      String creatorString = getAttributeValue(reader, NAME_ATTRIBUTE);
       if (creatorString != null) {
         ldcDocument.setCredit(creatorString);
       }
     }
 
-    private void handleIdentifiedContent(Node node, RawDocument ldcDocument) {
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
-        String value = getAllText(child).trim();
-        String classAttribute = getAttributeValue(child, CLASS_ATTRIBUTE);
+    private void handleIdentifiedContent(XMLStreamReader reader, RawDocument ldcDocument) throws XMLStreamException {
+      while (nextChild(reader)) {
+        String name = reader.getLocalName();
+        String classAttribute = getAttributeValue(reader, CLASS_ATTRIBUTE);
+        String typeAttribute = getAttributeValue(reader, TYPE_ATTRIBUTE);
+        String value = getAllText(reader).trim();
+
+        if (classAttribute == null) {
+          continue;
+        }
 
         if (name.equals(CLASSIFIER_TAG)) {
-          String typeAttribute = getAttributeValue(child, TYPE_ATTRIBUTE);
+          if (typeAttribute == null) {
+            continue;
+          }
           if (classAttribute.equals(INDEXING_SERVICE_ATTRIBUTE)) {
             if (typeAttribute.equals(DESCRIPTOR_ATTRIBUTE)) {
               ldcDocument.getDescriptors().add(value);
-            } else if (typeAttribute
-                .equals(BIOGRAPHICAL_CATEGORIES_ATTRIBUTE)) {
+            } else if (typeAttribute.equals(BIOGRAPHICAL_CATEGORIES_ATTRIBUTE)) {
               ldcDocument.getBiographicalCategories().add(value);
             } else if (typeAttribute.equals(NAMES_ATTRIBUTE)) {
               ldcDocument.getNames().add(value);
@@ -2163,14 +2217,11 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
           } else if (classAttribute.equals(ONLINE_PRODUCER_ATTRIBUTE)) {
             if (typeAttribute.equals(DESCRIPTOR_ATTRIBUTE)) {
               ldcDocument.getOnlineDescriptors().add(value);
-            } else if (typeAttribute
-                .equals(GENERAL_DESCRIPTOR_ATTRIBUTE)) {
+            } else if (typeAttribute.equals(GENERAL_DESCRIPTOR_ATTRIBUTE)) {
               ldcDocument.getGeneralOnlineDescriptors().add(value);
-            } else if (typeAttribute
-                .equals(TAXONOMIC_CLASSIFIER_ATTRIBUTE)) {
+            } else if (typeAttribute.equals(TAXONOMIC_CLASSIFIER_ATTRIBUTE)) {
               ldcDocument.getTaxonomicClassifiers().add(value);
-            } else if (typeAttribute
-                .equals(TYPES_OF_MATERIAL_ATTRIBUTE)) {
+            } else if (typeAttribute.equals(TYPES_OF_MATERIAL_ATTRIBUTE)) {
               ldcDocument.getTypesOfMaterial().add(value);
             }
           }
@@ -2202,13 +2253,12 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
       }
     }
 
-    private void handleDocumentIdNode(RawDocument ldcDocument, Node child) {
-      String docIdString = getAttributeValue(child, ID_STRING_ATTRIBUTE);
+    private void handleDocumentIdNode(XMLStreamReader reader, RawDocument ldcDocument) {
+      String docIdString = getAttributeValue(reader, ID_STRING_ATTRIBUTE);
       if (docIdString != null) {
         try {
           ldcDocument.setGuid(Integer.parseInt(docIdString));
         } catch (NumberFormatException e) {
-          //e.printStackTrace();
           LOG.error("Error parsing long from string "
               + docIdString + " in file "
               + ldcDocument.getSourceFile() + ".");
@@ -2216,17 +2266,13 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
       }
     }
 
-    private void handleMetaNode(Node node, RawDocument ldcDocument) {
-      NamedNodeMap attributes = node.getAttributes();
-
-      if (attributes.getNamedItem(NAME_ATTRIBUTE) == null
-          || attributes.getNamedItem(CONTENT_ATTRIBUTE) == null) {
+    private void handleMetaNode(XMLStreamReader reader, RawDocument ldcDocument) {
+      String name = getAttributeValue(reader, NAME_ATTRIBUTE);
+      String content = getAttributeValue(reader, CONTENT_ATTRIBUTE);
+      if (name == null || content == null) {
         return;
       }
 
-      String name = attributes.getNamedItem(NAME_ATTRIBUTE).getNodeValue();
-      String content = attributes.getNamedItem(CONTENT_ATTRIBUTE)
-          .getNodeValue();
       try {
         if (name.equals(DSK_ATTRIBUTE)) {
           ldcDocument.setNewsDesk(content);
@@ -2262,176 +2308,23 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
           ldcDocument.setDayOfWeek(content);
         }
 
-      } catch (MalformedURLException | URISyntaxException e) {
-        //e.printStackTrace();
-        LOG.error("Error parsing url from string " + content
+      } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+        // NumberFormatException is an IllegalArgumentException.
+        LOG.error("Error parsing " + name + " from string " + content
             + " in file " + ldcDocument.getSourceFile() + ".");
-      } catch (NumberFormatException e) {
-        //e.printStackTrace();
-        LOG.error("Error parsing integer" + " from string "
-            + content + " in file "
-            + ldcDocument.getSourceFile() + ".");
       } catch (ParseException e) {
-        //e.printStackTrace();
         LOG.error("Error parsing date" + " from string " + content
             + " in file " + ldcDocument.getSourceFile() + ".");
       }
     }
 
-    /**
-     * Load a document from a BufferedReader without validating it.
-     * @param bRdr the BufferedReader that data read in
-     * @param file the file that data stored in
-     * @return the parsed document or null if an error occurs
-     */
-    private org.w3c.dom.Document loadFromBufferedReader(BufferedReader bRdr, File file) {
-      org.w3c.dom.Document document;
-      StringBuffer sb = new StringBuffer();
-      try {
-        String line;
-        while ((line = bRdr.readLine()) != null) {
-          sb.append(line + "\n");
-        }
-        String xmlData = sb.toString();
-        xmlData = xmlData.replace("<!DOCTYPE nitf "
-                + "SYSTEM \"http://www.nitf.org/"
-                + "IPTC/NITF/3.3/specification/dtd/nitf-3-3.dtd\">", "");
-        document = parseStringToDOM(xmlData, "UTF-8", file);
-        return document;
-      } catch (IOException e) {
-        LOG.error("Error loading file " + file + ".");
-      }
-      return null;
-    }
-
-    /**
-     * Load a document without validating it. Since instructing the java.xml
-     * libraries to do this does not actually disable validation, this method
-     * disables validation by removing the doctype declaration from the XML
-     * document before it is parsed.
-     *
-     * @param file the file to parse
-     * @return the parsed document or null if an error occurs
-     */
-    private org.w3c.dom.Document loadNonValidating(File file) {
-      org.w3c.dom.Document document;
-      StringBuffer sb = new StringBuffer();
-      try {
-        BufferedReader in = new BufferedReader(new InputStreamReader(
-            new FileInputStream(file), "UTF8"));
-        String line = null;
-        while ((line = in.readLine()) != null) {
-          sb.append(line + "\n");
-        }
-        String xmlData = sb.toString();
-        xmlData = xmlData.replace("<!DOCTYPE nitf "
-            + "SYSTEM \"http://www.nitf.org/"
-            + "IPTC/NITF/3.3/specification/dtd/nitf-3-3.dtd\">", "");
-        document = parseStringToDOM(xmlData, "UTF-8", file);
-        in.close();
-        return document;
-      } catch (UnsupportedEncodingException e) {
-        //e.printStackTrace();
-        LOG.error("Error loading file " + file + ".");
-      } catch (FileNotFoundException e) {
-        //e.printStackTrace();
-        LOG.error("Error loading file " + file + ".");
-      } catch (IOException e) {
-        //e.printStackTrace();
-        LOG.error("Error loading file " + file + ".");
-      }
-      return null;
-    }
-
-    /**
-     * Parse the specified file into a DOM Document.
-     *
-     * @param file the file to parse.
-     * @return the parsed DOM Document or null if an error occurs
-     */
-    private org.w3c.dom.Document loadValidating(File file) {
-      try {
-        return getDOMObject(file.getAbsolutePath(), true);
-      } catch (SAXException e) {
-        //e.printStackTrace();
-        LOG.error("Error parsing digital document from nitf file "
-            + file + ".");
-      } catch (IOException e) {
-        //e.printStackTrace();
-        LOG.error("Error parsing digital document from nitf file "
-            + file + ".");
-      } catch (ParserConfigurationException e) {
-        //e.printStackTrace();
-        LOG.error("Error parsing digital document from nitf file "
-            + file + ".");
-      }
-      return null;
-    }
-
-    /**
-     * Parse a string to a DOM document.
-     *
-     * @param s a string containing an XML document
-     * @return the DOM document if it can be parsed, or null otherwise
-     */
-    private org.w3c.dom.Document parseStringToDOM(String s, String encoding, File file) {
-      try {
-        DocumentBuilderFactory factory = DocumentBuilderFactory
-            .newInstance();
-        factory.setValidating(false);
-        InputStream is = new ByteArrayInputStream(s.getBytes(encoding));
-        org.w3c.dom.Document doc = factory.newDocumentBuilder().parse(is);
-        is.close();
-        return doc;
-      } catch (SAXException e) {
-        //e.printStackTrace();
-        LOG.error("Exception processing file " + file + ".");
-      } catch (ParserConfigurationException e) {
-        //e.printStackTrace();
-        LOG.error("Exception processing file " + file + ".");
-      } catch (IOException e) {
-        //e.printStackTrace();
-        LOG.error("Exception processing file " + file + ".");
-      }
-      return null;
-    }
-
-    /**
-     * Parse a file containing an XML document, into a DOM object.
-     *
-     * @param filename a path to a valid file
-     * @param validating true iff validating should be turned on
-     * @return a DOM Object containing a parsed XML document or a null value if there
-     *   is an error in parsing
-     * @throws ParserConfigurationException if error encountered
-     * @throws IOException if error encountered
-     * @throws SAXException if error encountered
-     */
-    private org.w3c.dom.Document getDOMObject(String filename, boolean validating)
-        throws SAXException, IOException, ParserConfigurationException {
-      // Create a builder factory
-
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      if (!validating) {
-        factory.setValidating(validating);
-        factory.setSchema(null);
-        factory.setNamespaceAware(false);
-      }
-
-      DocumentBuilder builder = factory.newDocumentBuilder();
-      // Create the builder and parse the file
-      org.w3c.dom.Document doc = builder.parse(new File(filename));
-      return doc;
-    }
-
-    private String parseBlock(Node node) {
-      StringBuffer sb = new StringBuffer();
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node child = children.item(i);
-        String name = child.getNodeName();
-        if (name.equals(P_TAG)) {
-          sb.append(getAllText(child).trim() + "\n");
+    private String parseBlock(XMLStreamReader reader) throws XMLStreamException {
+      StringBuilder sb = new StringBuilder();
+      while (nextChild(reader)) {
+        if (reader.getLocalName().equals(P_TAG)) {
+          sb.append(getAllText(reader).trim()).append('\n');
+        } else {
+          skipElement(reader);
         }
       }
 
@@ -2443,45 +2336,59 @@ public class NewYorkTimesCollection extends DocumentCollection<NewYorkTimesColle
       return null;
     }
 
-    private String getAttributeValue(Node node, String attributeName) {
-      NamedNodeMap attributes = node.getAttributes();
-      if (attributes != null) {
-        Node attribute = attributes.getNamedItem(attributeName);
-        if (attribute != null) {
-          return attribute.getNodeValue();
+    /**
+     * Advances the reader to the start tag of the next child element of the current element.
+     *
+     * @param reader the reader, positioned on a start tag or on the end tag of a previous child
+     * @return true if positioned on the start tag of a child, false if positioned on the end tag of the parent
+     * @throws XMLStreamException if the document is not well-formed
+     */
+    private boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          return true;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          return false;
         }
       }
-      return null;
+      return false;
     }
 
-    private String getAllText(Node node) {
-      List<Node> textNodes = getNodesByTagName(node, "#text");
-      StringBuffer sb = new StringBuffer();
-      for (Node textNode : textNodes) {
-        sb.append(textNode.getNodeValue().trim() + " ");
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+      int depth = 1;
+      while (depth > 0 && reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
       }
-      return sb.toString().trim();
     }
 
-    private List<Node> getNodesByTagName(Node node, String tagName) {
-      List<Node> matches = new ArrayList<Node>();
-      recursiveGetNodesByTagName(node, tagName.toLowerCase(), matches);
-      return matches;
+    private String getAttributeValue(XMLStreamReader reader, String attributeName) {
+      return reader.getAttributeValue(null, attributeName);
     }
 
-    private void recursiveGetNodesByTagName(Node node, String tagName,
-                                            List<Node> matches) {
-      String name = node.getNodeName();
-      if (name != null && name.toLowerCase().equals(tagName)) {
-        matches.add(node);
-      }
-      if (node.getChildNodes() != null
-          && node.getChildNodes().getLength() > 0) {
-        for (int i = 0; i < node.getChildNodes().getLength(); i++) {
-          recursiveGetNodesByTagName(node.getChildNodes().item(i),
-              tagName, matches);
+    /**
+     * Consumes the current element and concatenates all text beneath it, trimming each text node and separating
+     * them by a single space (the same output as walking the text nodes of the equivalent DOM subtree).
+     */
+    private String getAllText(XMLStreamReader reader) throws XMLStreamException {
+      StringBuilder sb = new StringBuilder();
+      int depth = 1;
+      while (depth > 0 && reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+          sb.append(reader.getText().trim()).append(' ');
         }
       }
+      return sb.toString().trim();
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.collection;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Deterministically partitions the file segments of a collection into shards of roughly equal weight. Partitioning
+ * is greedy bin packing (longest processing time first): segments are considered from heaviest to lightest, and each
+ * one is assigned to the currently lightest shard. Ties are broken by path and by shard number, so every node that
+ * partitions the same collection arrives at the same assignment.
+ */
+public final class SegmentPartitioner {
+  private static final Logger LOG = LogManager.getLogger(SegmentPartitioner.class);
+
+  private SegmentPartitioner() {}
+
+  /**
+   * Weight of a segment as its size in bytes on disk.
+   *
+   * @param path segment path
+   * @return size of the file in bytes, or zero if the size cannot be determined
+   */
+  public static long fileSize(Path path) {
+    try {
+      return Files.size(path);
+    } catch (IOException e) {
+      LOG.warn("Unable to determine size of " + path + ", assuming zero.");
+      return 0;
+    }
+  }
+
+  /**
+   * Partitions segments into shards.
+   *
+   * @param paths segment paths
+   * @param shardCount number of shards
+   * @param weight weight of each segment
+   * @return a list of {@code shardCount} shards; within each shard, segments retain their order in {@code paths}
+   */
+  public static List<List<Path>> partition(List<Path> paths, int shardCount, ToLongFunction<Path> weight) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException(String.format("Invalid shard count %d.", shardCount));
+    }
+
+    final int n = paths.size();
+    final long[] weights = new long[n];
+    final String[] names = new String[n];
+    final List<Integer> order = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      weights[i] = weight.applyAsLong(paths.get(i));
+      names[i] = paths.get(i).toString();
+      order.add(i);
+    }
+    order.sort(Comparator.<Integer>comparingLong(i -> -weights[i]).thenComparing(i -> names[i]));
+
+    // Each entry is {load, shard}; the lightest shard, lowest shard number first, is at the head of the queue.
+    PriorityQueue<long[]> shards = new PriorityQueue<>(Math.max(1, shardCount),
+        Comparator.<long[]>comparingLong(s -> s[0]).thenComparingLong(s -> s[1]));
+    for (int s = 0; s < shardCount; s++) {
+      shards.add(new long[] {0, s});
+    }
+
+    final int[] assignment = new int[n];
+    for (int i : order) {
+      long[] lightest = shards.poll();
+      assignment[i] = (int) lightest[1];
+      lightest[0] += weights[i];
+      shards.add(lightest);
+    }
+
+    List<List<Path>> partitions = new ArrayList<>(shardCount);
+    for (int s = 0; s < shardCount; s++) {
+      partitions.add(new ArrayList<>());
+    }
+    for (int i = 0; i < n; i++) {
+      partitions.get(assignment[i]).add(paths.get(i));
+    }
+
+    return partitions;
+  }
+
+  /**
+   * Creates a weight function that estimates the number of documents in each segment. A sample of segments is read in
+   * full to estimate the number of documents per byte for each file type (e.g., {@code .jsonl} vs. {@code .jsonl.gz}),
+   * and the weight of a segment is its size scaled by the estimate for its type. This is useful when a collection
+   * mixes compressed and uncompressed files, for which raw file size is a poor proxy for indexing work.
+   *
+   * @param collection collection
+   * @param paths segment paths
+   * @param sampleSize number of segments to sample
+   * @return weight function
+   */
+  public static ToLongFunction<Path> sampledDocCount(DocumentCollection<?> collection, List<Path> paths, int sampleSize) {
+    // Sample evenly-spaced segments from the paths in sorted order, so that the sample is deterministic.
+    List<Path> sorted = new ArrayList<>(paths);
+    sorted.sort(Comparator.comparing(Path::toString));
+    int step = Math.max(1, sorted.size() / Math.max(1, sampleSize));
+
+    Map<String, long[]> counts = new HashMap<>(); // file type -> {docs, bytes}
+    long[] total = new long[2];
+    for (int i = 0; i < sorted.size() && i / step < sampleSize; i += step) {
+      Path path = sorted.get(i);
+      long docs = 0;
+      try (FileSegment<?> segment = collection.createFileSegment(path)) {
+        for (SourceDocument ignored : segment) {
+          docs++;
+        }
+      } catch (IOException e) {
+        LOG.warn("Unable to sample " + path + ": " + e.getMessage());
+        continue;
+      }
+
+      long bytes = fileSize(path);
+      long[] c = counts.computeIfAbsent(fileType(path), k -> new long[2]);
+      c[0] += docs;
+      c[1] += bytes;
+      total[0] += docs;
+      total[1] += bytes;
+    }
+
+    final double defaultRate = total[1] == 0 ? 1.0 : (double) total[0] / total[1];
+    final Map<String, Double> rates = new HashMap<>();
+    counts.forEach((type, c) -> rates.put(type, c[1] == 0 ? defaultRate : (double) c[0] / c[1]));
+    LOG.info(String.format("Sampled %,d documents in %,d bytes to estimate documents per segment.", total[0], total[1]));
+
+    return path -> Math.round(fileSize(path) * rates.getOrDefault(fileType(path), defaultRate));
+  }
+
+  // Everything after the first '.' of the file name, e.g., "jsonl.gz" for "msmarco_doc_00.jsonl.gz".
+  private static String fileType(Path path) {
+    String name = path.getFileName().toString();
+    int i = name.indexOf('.');
+    return i == -1 ? "" : name.substring(i + 1);
+  }
+}
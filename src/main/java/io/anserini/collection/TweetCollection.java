@@ -43,6 +43,7 @@ import java.util.Optional;
 import java.util.OptionalDouble;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
@@ -103,11 +104,13 @@ public class TweetCollection extends DocumentCollection<TweetCollection.Document
         if (nextRecord == null) {
           throw new NoSuchElementException();
         }
-        parseJson(nextRecord);
+        // A tweet whose creation time does not parse is still indexed, although it counts as skipped.
+        parseJson(nextRecord, doc -> bufferedRecord = doc);
       }
     }
 
-    private void parseJson(String json) throws ParseException {
+    // Hands the document to the consumer as soon as it is created, so that it is available even if parsing fails later.
+    private static Document parseJson(String json, Consumer<Document> created) throws ParseException {
       ObjectMapper mapper = new ObjectMapper();
       Document.TweetObject tweetObj = null;
       try {
@@ -123,85 +126,87 @@ public class TweetCollection extends DocumentCollection<TweetCollection.Document
         throw new ParseException("Ignore deleted tweets", 0);
       }
 
-      bufferedRecord = new TweetCollection.Document();
-      bufferedRecord.id = tweetObj.getIdStr();
-      bufferedRecord.idLong = Long.parseLong(bufferedRecord.id);
-      bufferedRecord.text = tweetObj.getText();
-      bufferedRecord.createdAt = tweetObj.getCreatedAt();
+      Document doc = new TweetCollection.Document();
+      created.accept(doc);
+      doc.id = tweetObj.getIdStr();
+      doc.idLong = Long.parseLong(doc.id);
+      doc.text = tweetObj.getText();
+      doc.createdAt = tweetObj.getCreatedAt();
 
       try {
-        bufferedRecord.timestampMs = OptionalLong.of((new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH)).parse(bufferedRecord.createdAt).getTime());
-        bufferedRecord.epoch = bufferedRecord.timestampMs.isPresent() ? OptionalLong.of(bufferedRecord.timestampMs.getAsLong() / 1000) : OptionalLong.empty();
+        doc.timestampMs = OptionalLong.of((new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH)).parse(doc.createdAt).getTime());
+        doc.epoch = doc.timestampMs.isPresent() ? OptionalLong.of(doc.timestampMs.getAsLong() / 1000) : OptionalLong.empty();
       } catch (ParseException e) {
-        bufferedRecord.timestampMs = OptionalLong.of(-1L);
-        bufferedRecord.epoch = OptionalLong.of(-1L);
+        doc.timestampMs = OptionalLong.of(-1L);
+        doc.epoch = OptionalLong.of(-1L);
         throw e;
       }
 
       if (isFieldAvailable(tweetObj.getInReplyToStatusId())) {
-        bufferedRecord.inReplyToStatusId = tweetObj.getInReplyToStatusId();
+        doc.inReplyToStatusId = tweetObj.getInReplyToStatusId();
       } else {
-        bufferedRecord.inReplyToStatusId = OptionalLong.empty();
+        doc.inReplyToStatusId = OptionalLong.empty();
       }
 
       if (isFieldAvailable(tweetObj.getInReplyToUserId())) {
-        bufferedRecord.inReplyToUserId = tweetObj.getInReplyToUserId();
+        doc.inReplyToUserId = tweetObj.getInReplyToUserId();
       } else {
-        bufferedRecord.inReplyToUserId = OptionalLong.empty();
+        doc.inReplyToUserId = OptionalLong.empty();
       }
 
       if (isFieldAvailable(tweetObj.getRetweetedStatus())) {
-        bufferedRecord.retweetStatusId = tweetObj.getRetweetedStatus().get().getId();
+        doc.retweetStatusId = tweetObj.getRetweetedStatus().get().getId();
         if (isFieldAvailable(tweetObj.getRetweetedStatus().get().getUser())) {
-          bufferedRecord.retweetUserId = tweetObj.getRetweetedStatus().get().getUser().get().getId();
+          doc.retweetUserId = tweetObj.getRetweetedStatus().get().getUser().get().getId();
         } else {
-          bufferedRecord.retweetUserId = OptionalLong.empty();
+          doc.retweetUserId = OptionalLong.empty();
         }
-        bufferedRecord.retweetCount = tweetObj.getRetweetCount();
+        doc.retweetCount = tweetObj.getRetweetCount();
       } else {
-        bufferedRecord.retweetStatusId = OptionalLong.empty();
-        bufferedRecord.retweetUserId = OptionalLong.empty();
-        bufferedRecord.retweetCount = OptionalLong.empty();
+        doc.retweetStatusId = OptionalLong.empty();
+        doc.retweetUserId = OptionalLong.empty();
+        doc.retweetCount = OptionalLong.empty();
       }
 
       if (isFieldAvailable(tweetObj.getCoordinates()) &&
               isFieldAvailable(tweetObj.getCoordinates().get().getCoordinates()) &&
               tweetObj.getCoordinates().get().getCoordinates().get().size() >= 2) {
-        bufferedRecord.longitude = tweetObj.getCoordinates().get().getCoordinates().get().get(0);
-        bufferedRecord.latitude = tweetObj.getCoordinates().get().getCoordinates().get().get(1);
+        doc.longitude = tweetObj.getCoordinates().get().getCoordinates().get().get(0);
+        doc.latitude = tweetObj.getCoordinates().get().getCoordinates().get().get(1);
       } else {
-        bufferedRecord.latitude = OptionalDouble.empty();
-        bufferedRecord.longitude = OptionalDouble.empty();
+        doc.latitude = OptionalDouble.empty();
+        doc.longitude = OptionalDouble.empty();
       }
 
       if (isFieldAvailable(tweetObj.getLang())) {
-        bufferedRecord.lang = tweetObj.getLang();
+        doc.lang = tweetObj.getLang();
       } else {
-        bufferedRecord.lang = Optional.empty();
+        doc.lang = Optional.empty();
       }
 
-      bufferedRecord.followersCount = tweetObj.getUser().getFollowersCount();
-      bufferedRecord.friendsCount = tweetObj.getUser().getFriendsCount();
-      bufferedRecord.statusesCount = tweetObj.getUser().getStatusesCount();
-      bufferedRecord.screenName = tweetObj.getUser().getScreenName();
+      doc.followersCount = tweetObj.getUser().getFollowersCount();
+      doc.friendsCount = tweetObj.getUser().getFriendsCount();
+      doc.statusesCount = tweetObj.getUser().getStatusesCount();
+      doc.screenName = tweetObj.getUser().getScreenName();
 
       if (isFieldAvailable(tweetObj.getUser().getName())) {
-        bufferedRecord.name = tweetObj.getUser().getName();
+        doc.name = tweetObj.getUser().getName();
       } else {
-        bufferedRecord.name = Optional.empty();
+        doc.name = Optional.empty();
       }
 
       if (isFieldAvailable(tweetObj.getUser().getProfileImageUrl())) {
-        bufferedRecord.profileImageUrl = tweetObj.getUser().getProfileImageUrl();
+        doc.profileImageUrl = tweetObj.getUser().getProfileImageUrl();
       } else {
-        bufferedRecord.profileImageUrl = Optional.empty();
+        doc.profileImageUrl = Optional.empty();
       }
 
-      bufferedRecord.jsonString = json;
-      bufferedRecord.jsonObject = tweetObj;
+      doc.jsonString = json;
+      doc.jsonObject = tweetObj;
+      return doc;
     }
 
-    private boolean isFieldAvailable(Object field) {
+    private static boolean isFieldAvailable(Object field) {
       if (field == null) {
         return false;
       }
@@ -255,6 +260,17 @@ public class TweetCollection extends DocumentCollection<TweetCollection.Document
       super();
     }
 
+    /**
+     * Parses a tweet from its JSON, as found in the lines of a collection.
+     *
+     * @param json JSON of the tweet
+     * @return tweet
+     * @throws ParseException if the JSON is not a tweet, is the deletion of one, or its creation time does not parse
+     */
+    public static Document fromString(String json) throws ParseException {
+      return Segment.parseJson(json, doc -> {});
+    }
+
     @Override
     public String id() {
       return id;
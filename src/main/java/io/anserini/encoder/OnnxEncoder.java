@@ -21,7 +21,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 
@@ -35,6 +37,8 @@ import ai.onnxruntime.OrtSession;
 public abstract class OnnxEncoder<T> {
   private static final String CACHE_DIR = Path.of(System.getProperty("user.home"), ".cache", "pyserini", "encoders").toString();
 
+  private static final Map<String, OnnxEncoder<?>> sharedInstances = new HashMap<>();
+
   protected final BertFullTokenizer tokenizer;
 
   protected final DefaultVocabulary vocab;
@@ -106,6 +110,24 @@ public abstract class OnnxEncoder<T> {
 
   public abstract T encode(String query) throws OrtException;
 
+  /**
+   * Returns the shared instance of an encoder, creating it on first use. Creating an encoder reads its vocabulary
+   * and model and starts an ONNX session; since encoding is safe from multiple threads, one instance of each encoder
+   * can serve every searcher in the JVM, e.g., across the conditions of a reproduction run.
+   *
+   * @param className fully qualified name of the encoder class
+   * @return encoder
+   * @throws ReflectiveOperationException if the encoder cannot be created
+   */
+  public static synchronized OnnxEncoder<?> getSharedInstance(String className) throws ReflectiveOperationException {
+    OnnxEncoder<?> encoder = sharedInstances.get(className);
+    if (encoder == null) {
+      encoder = (OnnxEncoder<?>) Class.forName(className).getConstructor().newInstance();
+      sharedInstances.put(className, encoder);
+    }
+    return encoder;
+  }
+
   public OnnxEncoder(String modelName, String modelURL, String vocabName, String vocabURL)
       throws IOException, OrtException, URISyntaxException {
     this.vocab = DefaultVocabulary.builder()
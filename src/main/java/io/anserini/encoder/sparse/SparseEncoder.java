@@ -43,8 +43,12 @@ public abstract class SparseEncoder extends OnnxEncoder<String> {
   }
 
   public String generateEncodedQuery(Map<String, Float> tokenWeightMap) {
+    return generateEncodedQuery(tokenWeightMap, weightRange, quantRange);
+  }
+
+  public static String generateEncodedQuery(Map<String, Float> tokenWeightMap, int weightRange, int quantRange) {
     /*
-     * This function generates the encoded query.
+     * This function generates the encoded query, repeating each token as many times as its quantized weight.
      */
     List<String> encodedQuery = new ArrayList<>();
     for (Map.Entry<String, Float> entry : tokenWeightMap.entrySet()) {
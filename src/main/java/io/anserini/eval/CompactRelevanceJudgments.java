@@ -0,0 +1,172 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Relevance judgments held in compact per-topic arrays, for evaluating many runs against the same qrels: each topic
+ * keeps its judged docids in sorted order alongside their grades, rather than a map of boxed values per document.
+ * Topics are kept in the lexicographic order of their qids, which is the order in which trec_eval evaluates them.
+ */
+public class CompactRelevanceJudgments {
+  /** Grade of documents that are not judged. */
+  public static final int UNJUDGED = Integer.MIN_VALUE;
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  /**
+   * Judgments of a topic.
+   */
+  public static final class Topic {
+    private final String qid;
+    private final String[] docids;
+    private final int[] grades;
+    // Positive grades, in decreasing order, i.e., the gains of the ideal ranking.
+    private final int[] idealGains;
+
+    private Topic(String qid, String[] docids, int[] grades) {
+      this.qid = qid;
+      this.docids = docids;
+      this.grades = grades;
+      this.idealGains = Arrays.stream(grades).filter(g -> g > 0)
+          .boxed().sorted(Collections.reverseOrder()).mapToInt(Integer::intValue).toArray();
+    }
+
+    public String getQid() {
+      return qid;
+    }
+
+    /**
+     * Returns the grade of a document.
+     *
+     * @param docid docid
+     * @return grade, or {@link #UNJUDGED} if the document is not judged
+     */
+    public int getGrade(String docid) {
+      int i = Arrays.binarySearch(docids, docid);
+      return i < 0 ? UNJUDGED : grades[i];
+    }
+
+    /**
+     * Returns the number of relevant documents.
+     *
+     * @param relevanceLevel minimum grade of relevant documents
+     * @return number of documents with a grade of at least <code>relevanceLevel</code>
+     */
+    public int getNumRel(int relevanceLevel) {
+      int n = 0;
+      for (int grade : grades) {
+        if (grade >= relevanceLevel) {
+          n++;
+        }
+      }
+      return n;
+    }
+
+    /**
+     * Returns the positive grades of the judged documents, in decreasing order.
+     *
+     * @return gains of the ideal ranking
+     */
+    public int[] getIdealGains() {
+      return idealGains;
+    }
+
+    public int size() {
+      return docids.length;
+    }
+  }
+
+  private final Map<String, Topic> topics;
+
+  private CompactRelevanceJudgments(Map<String, Topic> topics) {
+    this.topics = topics;
+  }
+
+  /**
+   * Reads qrels in the standard format, i.e., lines with the qid, an unused column, the docid and the grade.
+   *
+   * @param path qrels file
+   * @return judgments
+   * @throws IOException if error encountered reading the file
+   * @throws IllegalArgumentException if a document is judged more than once for the same topic
+   */
+  public static CompactRelevanceJudgments read(Path path) throws IOException {
+    Map<String, List<String[]>> judgments = new LinkedHashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        String[] arr = WHITESPACE.split(line);
+        judgments.computeIfAbsent(arr[0], k -> new ArrayList<>()).add(arr);
+      }
+    }
+
+    Map<String, Topic> topics = new TreeMap<>();
+    judgments.forEach((qid, lines) -> {
+      lines.sort(Comparator.comparing(arr -> arr[2]));
+      String[] docids = new String[lines.size()];
+      int[] grades = new int[lines.size()];
+      for (int i = 0; i < docids.length; i++) {
+        docids[i] = lines.get(i)[2];
+        grades[i] = Integer.parseInt(lines.get(i)[3]);
+        if (i > 0 && docids[i].equals(docids[i - 1])) {
+          throw new IllegalArgumentException("Duplicate judgments of document " + docids[i] + " for topic " + qid);
+        }
+      }
+      topics.put(qid, new Topic(qid, docids, grades));
+    });
+    return new CompactRelevanceJudgments(topics);
+  }
+
+  /**
+   * Returns the judgments of a topic.
+   *
+   * @param qid qid
+   * @return judgments, or null if the topic has none
+   */
+  public Topic getTopic(String qid) {
+    return topics.get(qid);
+  }
+
+  /**
+   * Returns the qids of the judged topics, in lexicographic order.
+   *
+   * @return qids
+   */
+  public Set<String> getQids() {
+    return topics.keySet();
+  }
+}
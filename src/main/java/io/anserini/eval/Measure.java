@@ -0,0 +1,186 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import java.util.Arrays;
+
+/**
+ * An evaluation measure, with the names, parameters and definitions of trec_eval (version 9), plus
+ * <code>judged</code>, the fraction of the top <i>k</i> hits that are judged.
+ */
+final class Measure {
+  /**
+   * Supported measures, in the order in which trec_eval prints them.
+   */
+  enum Type {
+    NUM_Q("num_q", null),
+    MAP("map", null),
+    RECIP_RANK("recip_rank", null),
+    P("P", new int[] {5, 10, 15, 20, 30, 100, 200, 500, 1000}),
+    RECALL("recall", new int[] {5, 10, 15, 20, 30, 100, 200, 500, 1000}),
+    NDCG("ndcg", null),
+    NDCG_CUT("ndcg_cut", new int[] {5, 10, 15, 20, 30, 100, 200, 500, 1000}),
+    JUDGED("judged", new int[] {10});
+
+    private final String name;
+    private final int[] defaultCutoffs;
+
+    Type(String name, int[] defaultCutoffs) {
+      this.name = name;
+      this.defaultCutoffs = defaultCutoffs;
+    }
+  }
+
+  private static final double LOG2 = Math.log(2.0);
+
+  private final Type type;
+  private final int[] cutoffs;
+
+  private Measure(Type type, int[] cutoffs) {
+    this.type = type;
+    this.cutoffs = cutoffs;
+  }
+
+  /**
+   * Parses a measure as given to the <code>-m</code> option of trec_eval, e.g., "map", "P.10" or "ndcg_cut.10,20".
+   * Parameters of measures without cutoffs are ignored, as they are by trec_eval.
+   *
+   * @param spec measure
+   * @return measure
+   * @throws IllegalArgumentException if the measure is not supported
+   */
+  static Measure parse(String spec) {
+    int dot = spec.indexOf('.');
+    String name = dot < 0 ? spec : spec.substring(0, dot);
+    for (Type type : Type.values()) {
+      if (type.name.equals(name)) {
+        if (type.defaultCutoffs == null) {
+          return new Measure(type, null);
+        }
+        int[] cutoffs = dot < 0 ? type.defaultCutoffs :
+            Arrays.stream(spec.substring(dot + 1).split(",")).mapToInt(Integer::parseInt).sorted().toArray();
+        return new Measure(type, cutoffs);
+      }
+    }
+    throw new IllegalArgumentException("Unsupported measure: " + spec);
+  }
+
+  Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the number of values of the measure, i.e., one per cutoff.
+   *
+   * @return number of values
+   */
+  int size() {
+    return cutoffs == null ? 1 : cutoffs.length;
+  }
+
+  /**
+   * Returns the name of a value of the measure, as printed by trec_eval, e.g., "P_10".
+   *
+   * @param i index of the value
+   * @return name
+   */
+  String getName(int i) {
+    return cutoffs == null ? type.name : type.name + "_" + cutoffs[i];
+  }
+
+  /**
+   * Whether the measure is summed over topics, rather than computed per topic and averaged.
+   *
+   * @return whether the measure is only a summary
+   */
+  boolean isSummaryOnly() {
+    return type == Type.NUM_Q;
+  }
+
+  /**
+   * Computes the measure for a topic.
+   *
+   * @param grades grades of the ranked hits, {@link CompactRelevanceJudgments#UNJUDGED} for hits not judged
+   * @param numRel number of relevant documents of the topic
+   * @param judgments judgments of the topic
+   * @param relevanceLevel minimum grade of relevant documents
+   * @param values values of the measure, one per cutoff, to set at <code>offset</code>
+   * @param offset offset of the first value
+   */
+  void compute(int[] grades, int numRel, CompactRelevanceJudgments.Topic judgments, int relevanceLevel,
+               double[] values, int offset) {
+    switch (type) {
+      case NUM_Q -> values[offset] = 1;
+      case MAP -> {
+        int relSoFar = 0;
+        double sum = 0.0;
+        for (int i = 0; i < grades.length; i++) {
+          if (grades[i] >= relevanceLevel) {
+            relSoFar++;
+            sum += (double) relSoFar / (double) (i + 1);
+          }
+        }
+        values[offset] = numRel > 0 ? sum / (double) numRel : 0.0;
+      }
+      case RECIP_RANK -> {
+        values[offset] = 0.0;
+        for (int i = 0; i < grades.length; i++) {
+          if (grades[i] >= relevanceLevel) {
+            values[offset] = 1.0 / (double) (i + 1);
+            break;
+          }
+        }
+      }
+      case P, RECALL, JUDGED -> {
+        for (int c = 0; c < cutoffs.length; c++) {
+          int count = 0;
+          for (int i = 0; i < Math.min(cutoffs[c], grades.length); i++) {
+            if (type == Type.JUDGED ? grades[i] != CompactRelevanceJudgments.UNJUDGED : grades[i] >= relevanceLevel) {
+              count++;
+            }
+          }
+          if (type == Type.RECALL) {
+            values[offset + c] = numRel > 0 ? (double) count / (double) numRel : 0.0;
+          } else {
+            values[offset + c] = (double) count / (double) cutoffs[c];
+          }
+        }
+      }
+      case NDCG -> {
+        double ideal = dcg(judgments.getIdealGains(), Integer.MAX_VALUE);
+        values[offset] = ideal > 0.0 ? dcg(grades, Integer.MAX_VALUE) / ideal : 0.0;
+      }
+      case NDCG_CUT -> {
+        for (int c = 0; c < cutoffs.length; c++) {
+          double ideal = dcg(judgments.getIdealGains(), cutoffs[c]);
+          values[offset + c] = ideal > 0.0 ? dcg(grades, cutoffs[c]) / ideal : 0.0;
+        }
+      }
+    }
+  }
+
+  // Discounted cumulative gain of the top hits, with the grades as gains and log2 discounts, as in trec_eval.
+  private static double dcg(int[] gains, int cutoff) {
+    double sum = 0.0;
+    for (int i = 0; i < Math.min(cutoff, gains.length); i++) {
+      if (gains[i] > 0) {
+        sum += (double) gains[i] / (Math.log((double) (i + 2)) / LOG2);
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,349 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import io.anserini.search.BinaryRun;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates runs in the JVM, as a drop-in replacement for the bundled trec_eval binary for the measures that the
+ * reproduction and regression scripts use: <code>map</code>, <code>P</code>, <code>recall</code>,
+ * <code>recip_rank</code> (with <code>-M</code> for MRR@k), <code>ndcg</code>, <code>ndcg_cut</code> and
+ * <code>num_q</code>, as well as <code>judged</code>. Command-line arguments and output are those of trec_eval, with
+ * the options <code>-q</code>, <code>-c</code>, <code>-M</code> and <code>-l</code>.
+ *
+ * <p>Unlike launching trec_eval once per run and measure, an instance reads each qrels file once, keeping it for
+ * later evaluations, keeps the last run read for evaluating it with further measures, and evaluates the topics of a
+ * run in parallel. Binary runs (see {@link BinaryRun}) are read directly.</p>
+ */
+public class TrecEval implements Closeable {
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private final ExecutorService executor;
+  private final Map<String, CompactRelevanceJudgments> qrelsCache = new ConcurrentHashMap<>();
+  // The last run read, since runs are often evaluated with several measures in a row; keyed by the path, size and
+  // modification time of the file.
+  private String lastRunKey;
+  private Map<String, RankedList> lastRun;
+
+  /**
+   * A run, as ranked lists of docids per topic, in the order in which trec_eval ranks them.
+   */
+  private static final class RankedList {
+    private final List<String> docids = new ArrayList<>();
+    private double[] scores = new double[16];
+
+    private void add(String docid, double score) {
+      if (docids.size() == scores.length) {
+        scores = Arrays.copyOf(scores, 2 * scores.length);
+      }
+      scores[docids.size()] = score;
+      docids.add(docid);
+    }
+
+    // As trec_eval, by decreasing score, breaking ties by decreasing docid.
+    private String[] rank(String qid, int maxDocs) {
+      Set<String> seen = new HashSet<>();
+      for (String docid : docids) {
+        if (!seen.add(docid)) {
+          throw new IllegalArgumentException("Duplicate document " + docid + " for topic " + qid + " in run");
+        }
+      }
+      Integer[] order = new Integer[docids.size()];
+      Arrays.setAll(order, i -> i);
+      Arrays.sort(order, Comparator.<Integer>comparingDouble(i -> -scores[i])
+          .thenComparing(i -> docids.get(i), Comparator.reverseOrder()));
+      String[] ranked = new String[Math.min(maxDocs, order.length)];
+      for (int i = 0; i < ranked.length; i++) {
+        ranked[i] = docids.get(order[i]);
+      }
+      return ranked;
+    }
+  }
+
+  public TrecEval() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param threads number of threads for evaluating topics
+   */
+  public TrecEval(int threads) {
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "trec-eval");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns the judgments of a qrels file or symbol, reading them on first use.
+   *
+   * @param qrels path to a qrels file, or the symbol of known qrels (see {@link Qrels})
+   * @return judgments
+   * @throws IOException if error encountered reading the qrels
+   */
+  public CompactRelevanceJudgments getQrels(String qrels) throws IOException {
+    Path path = new File(qrels).exists() ? Path.of(qrels) : RelevanceJudgments.getQrelsPath(Path.of(qrels));
+    String key = path.toAbsolutePath().normalize().toString();
+    CompactRelevanceJudgments judgments = qrelsCache.get(key);
+    if (judgments == null) {
+      judgments = CompactRelevanceJudgments.read(path);
+      qrelsCache.put(key, judgments);
+    }
+    return judgments;
+  }
+
+  private synchronized Map<String, RankedList> getRun(Path path) throws IOException {
+    String key = path.toAbsolutePath().normalize() + ":" + Files.size(path) + ":" + Files.getLastModifiedTime(path);
+    if (!key.equals(lastRunKey)) {
+      lastRun = readRun(path);
+      lastRunKey = key;
+    }
+    return lastRun;
+  }
+
+  private static Map<String, RankedList> readRun(Path path) throws IOException {
+    Map<String, RankedList> run = new TreeMap<>();
+    if (BinaryRun.isBinaryRun(path)) {
+      try (BinaryRun.Reader reader = new BinaryRun.Reader(path)) {
+        BinaryRun.Topic topic;
+        while ((topic = reader.next()) != null) {
+          RankedList list = run.computeIfAbsent(topic.getQid(), k -> new RankedList());
+          for (int i = 0; i < topic.size(); i++) {
+            // trec_eval reads the scores of the text run, so ties must be broken as they would be there.
+            list.add(topic.getDocid(i), topic.getTextScore(i));
+          }
+        }
+      }
+      return run;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        String[] arr = WHITESPACE.split(line);
+        if (arr.length < 6) {
+          throw new IllegalArgumentException("Malformed line in run " + path + ": " + line);
+        }
+        run.computeIfAbsent(arr[0], k -> new RankedList()).add(arr[2], Double.parseDouble(arr[4]));
+      }
+    }
+    return run;
+  }
+
+  /**
+   * Evaluates a run, with the command-line arguments of trec_eval.
+   *
+   * @param args options, followed by the qrels (a path or a symbol) and the run
+   * @return output lines, as printed by trec_eval
+   * @throws IOException if error encountered reading the qrels or the run
+   * @throws IllegalArgumentException if the arguments are invalid
+   */
+  public List<String> evaluate(String[] args) throws IOException {
+    boolean perQuery = false;
+    boolean complete = false;
+    int maxDocs = Integer.MAX_VALUE;
+    int relevanceLevel = 1;
+    Map<Measure.Type, Measure> selected = new TreeMap<>();
+
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Usage: TrecEval [-q] [-c] [-M num] [-l level] {-m measure}* qrels run");
+    }
+    for (int i = 0; i < args.length - 2; i++) {
+      String arg = args[i];
+      if (arg.equals("-q")) {
+        perQuery = true;
+      } else if (arg.equals("-c")) {
+        complete = true;
+      } else if (arg.startsWith("-m") || arg.startsWith("-M") || arg.startsWith("-l")) {
+        // As with getopt, the value may follow the option directly or as the next argument.
+        String value = arg.length() > 2 ? arg.substring(2) : (i + 1 < args.length - 2 ? args[++i] : null);
+        if (value == null) {
+          throw new IllegalArgumentException("Missing value for option " + arg);
+        }
+        if (arg.startsWith("-m")) {
+          Measure measure = Measure.parse(value);
+          // The first occurrence of a measure wins, as in trec_eval.
+          selected.putIfAbsent(measure.getType(), measure);
+        } else if (arg.startsWith("-M")) {
+          maxDocs = Integer.parseInt(value);
+        } else {
+          relevanceLevel = Integer.parseInt(value);
+        }
+      } else {
+        throw new IllegalArgumentException("Unsupported option " + arg);
+      }
+    }
+    if (selected.isEmpty()) {
+      throw new IllegalArgumentException("No measure given; use -m to select measures.");
+    }
+
+    CompactRelevanceJudgments qrels = getQrels(args[args.length - 2]);
+    Map<String, RankedList> run = getRun(Path.of(args[args.length - 1]));
+    List<Measure> measures = new ArrayList<>(selected.values());
+    return evaluate(qrels, run, measures, perQuery, complete, maxDocs, relevanceLevel);
+  }
+
+  private List<String> evaluate(CompactRelevanceJudgments qrels, Map<String, RankedList> run, List<Measure> measures,
+                                boolean perQuery, boolean complete, int maxDocs, int relevanceLevel) throws IOException {
+    int[] offsets = new int[measures.size() + 1];
+    for (int m = 0; m < measures.size(); m++) {
+      offsets[m + 1] = offsets[m] + measures.get(m).size();
+    }
+
+    // Topics of the run without judgments are ignored.
+    List<String> qids = new ArrayList<>();
+    for (String qid : run.keySet()) {
+      if (qrels.getTopic(qid) != null) {
+        qids.add(qid);
+      }
+    }
+
+    List<Future<double[]>> futures = new ArrayList<>(qids.size());
+    for (String qid : qids) {
+      futures.add(executor.submit(() -> {
+        CompactRelevanceJudgments.Topic judgments = qrels.getTopic(qid);
+        String[] ranked = run.get(qid).rank(qid, maxDocs);
+        int[] grades = new int[ranked.length];
+        for (int i = 0; i < ranked.length; i++) {
+          grades[i] = judgments.getGrade(ranked[i]);
+        }
+        int numRel = judgments.getNumRel(relevanceLevel);
+        double[] values = new double[offsets[measures.size()]];
+        for (int m = 0; m < measures.size(); m++) {
+          measures.get(m).compute(grades, numRel, judgments, relevanceLevel, values, offsets[m]);
+        }
+        return values;
+      }));
+    }
+
+    double[][] perTopic = new double[qids.size()][];
+    try {
+      for (int q = 0; q < qids.size(); q++) {
+        perTopic[q] = futures.get(q).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while evaluating", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+
+    List<String> output = new ArrayList<>();
+    if (perQuery) {
+      for (int q = 0; q < qids.size(); q++) {
+        for (int m = 0; m < measures.size(); m++) {
+          Measure measure = measures.get(m);
+          if (measure.isSummaryOnly()) {
+            continue;
+          }
+          for (int i = 0; i < measure.size(); i++) {
+            output.add(formatLine(measure.getName(i), qids.get(q), perTopic[q][offsets[m] + i]));
+          }
+        }
+      }
+    }
+
+    // With -c, topics that are judged but missing from the run count, with a value of zero.
+    int numQ = complete ? qrels.getQids().size() : qids.size();
+    for (int m = 0; m < measures.size(); m++) {
+      Measure measure = measures.get(m);
+      for (int i = 0; i < measure.size(); i++) {
+        if (measure.isSummaryOnly()) {
+          output.add(String.format(Locale.US, "%-22s\tall\t%d", measure.getName(i), numQ));
+          continue;
+        }
+        // Summed in the order of the topics, as trec_eval does.
+        double sum = 0.0;
+        for (double[] values : perTopic) {
+          sum += values[offsets[m] + i];
+        }
+        output.add(formatLine(measure.getName(i), "all", numQ > 0 ? sum / numQ : 0.0));
+      }
+    }
+    return output;
+  }
+
+  // Values are printed with "%6.4f" by trec_eval; C rounds the exact binary value (ties to even), whereas
+  // String.format rounds the shortest decimal representation, which occasionally differs in the last digit.
+  private static String formatLine(String name, String qid, double value) {
+    String formatted = new BigDecimal(value).setScale(4, RoundingMode.HALF_EVEN).toPlainString();
+    return String.format(Locale.US, "%-22s\t%s\t%6s", name, qid, formatted);
+  }
+
+  /**
+   * Evaluates a run, returning the output as <code>trec_eval.runAndGetOutput</code> does for the trec_eval binary.
+   *
+   * @param args command-line arguments of trec_eval
+   * @return first dimension is for each line, second dimension is for each component
+   */
+  public String[][] runAndGetOutput(String[] args) {
+    try {
+      return evaluate(args).stream().map(line -> WHITESPACE.split(line)).toArray(String[][]::new);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  public static void main(String[] args) {
+    try (TrecEval eval = new TrecEval()) {
+      eval.evaluate(args).forEach(System.out::println);
+    } catch (IllegalArgumentException | IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -31,6 +31,8 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
 
+import io.anserini.search.BinaryRun;
+
 /**
  * Wrapper class for a TREC run.
 */
@@ -67,12 +69,42 @@ public class TrecRun {
   }
 
   /**
-   * Reads a TREC run file and loads its data into the runData list.
+   * Reads a TREC run file and loads its data into the runData list. Both text runs and binary runs
+   * (see {@link BinaryRun}) are accepted.
    * 
    * @param filepath Path to the TREC run file.
    * @throws IOException If the file cannot be read.
    */
   public void readRun(Path filepath) throws IOException {
+    if (BinaryRun.isBinaryRun(filepath)) {
+      readBinaryRun(filepath);
+    } else {
+      readTextRun(filepath);
+    }
+  
+    if (reSort) {
+      runData.sort((record1, record2) -> {
+        int topicComparison = ((String)record1.get(Column.TOPIC)).compareTo((String)(record2.get(Column.TOPIC)));
+        if (topicComparison != 0) {
+          return topicComparison;
+        }
+        return Double.compare((Double)(record2.get(Column.SCORE)), (Double)record1.get(Column.SCORE));
+      });
+      String currentTopic = "";
+      int rank = 1;
+      for (Map<Column, Object> record : runData) {
+        String topic = (String) record.get(Column.TOPIC);
+        if (!topic.equals(currentTopic)) {
+          currentTopic = topic;
+          rank = 1;
+        }
+        record.put(Column.RANK, rank);
+        rank++;
+      }
+    }
+  }
+
+  private void readTextRun(Path filepath) throws IOException {
     try (BufferedReader br = new BufferedReader(new FileReader(filepath.toFile()))) {
       String line;
       while ((line = br.readLine()) != null) {
@@ -97,25 +129,23 @@ public class TrecRun {
         runData.add(record);
       }
     }
-  
-    if (reSort) {
-      runData.sort((record1, record2) -> {
-        int topicComparison = ((String)record1.get(Column.TOPIC)).compareTo((String)(record2.get(Column.TOPIC)));
-        if (topicComparison != 0) {
-          return topicComparison;
-        }
-        return Double.compare((Double)(record2.get(Column.SCORE)), (Double)record1.get(Column.SCORE));
-      });
-      String currentTopic = "";
-      int rank = 1;
-      for (Map<Column, Object> record : runData) {
-        String topic = (String) record.get(Column.TOPIC);
-        if (!topic.equals(currentTopic)) {
-          currentTopic = topic;
-          rank = 1;
+  }
+
+  // Scores of binary runs are read as stored, i.e., without the rounding to six decimal places of text runs.
+  private void readBinaryRun(Path filepath) throws IOException {
+    try (BinaryRun.Reader reader = new BinaryRun.Reader(filepath)) {
+      BinaryRun.Topic topic;
+      while ((topic = reader.next()) != null) {
+        for (int i = 0; i < topic.size(); i++) {
+          Map<Column, Object> record = new EnumMap<>(Column.class);
+          record.put(Column.TOPIC, topic.getQid());
+          record.put(Column.Q0, "Q0");
+          record.put(Column.DOCID, topic.getDocid(i));
+          record.put(Column.RANK, topic.getRank(i));
+          record.put(Column.SCORE, topic.getScore(i));
+          record.put(Column.TAG, topic.getTag());
+          runData.add(record);
         }
-        record.put(Column.RANK, rank);
-        rank++;
       }
     }
   }
@@ -144,11 +174,7 @@ public class TrecRun {
     if (runData.isEmpty()) {
       throw new IllegalStateException("Nothing to save. TrecRun is empty");
     }
-    if (tag != null) {
-      runData.forEach(record -> record.put(Column.TAG, tag));
-    }
-    runData.sort(Comparator.comparing((Map<Column, Object> r) -> Integer.parseInt((String) r.get(Column.TOPIC)))
-      .thenComparing(r -> (Double) r.get(Column.SCORE), Comparator.reverseOrder()));
+    prepareForSave(tag);
     FileUtils.writeLines(outputPath.toFile(), runData.stream()
         .map(record -> record.entrySet().stream()
             .map(entry -> {
@@ -162,6 +188,49 @@ public class TrecRun {
         .collect(Collectors.toList()));
   }
 
+  /**
+   * Saves the TREC run data to a binary run (see {@link BinaryRun}), which {@link BinaryRun} converts to text
+   * identical to the output of {@link #saveToTxt}.
+   * 
+   * @param outputPath Path to the output file.
+   * @param tag Tag to be added to each record in the run. If null, the existing tags are retained.
+   * @throws IOException If an I/O error occurs while writing to the file.
+   * @throws IllegalStateException If the runData list is empty.
+   */
+  public void saveToBinary(Path outputPath, String tag) throws IOException {
+    if (runData.isEmpty()) {
+      throw new IllegalStateException("Nothing to save. TrecRun is empty");
+    }
+    prepareForSave(tag);
+    try (BinaryRun.Writer writer = new BinaryRun.Writer(outputPath, BinaryRun.ScoreType.DOUBLE)) {
+      int start = 0;
+      while (start < runData.size()) {
+        // A block holds consecutive records with the same topic and tag.
+        Object topic = runData.get(start).get(Column.TOPIC);
+        Object recordTag = runData.get(start).get(Column.TAG);
+        int end = start + 1;
+        while (end < runData.size() && runData.get(end).get(Column.TOPIC).equals(topic)
+            && runData.get(end).get(Column.TAG).equals(recordTag)) {
+          end++;
+        }
+        writer.beginTopic((String) topic, (String) recordTag, end - start, true);
+        for (Map<Column, Object> record : runData.subList(start, end)) {
+          writer.writeHit((String) record.get(Column.DOCID), (Integer) record.get(Column.RANK),
+              (Double) record.get(Column.SCORE));
+        }
+        start = end;
+      }
+    }
+  }
+
+  private void prepareForSave(String tag) {
+    if (tag != null) {
+      runData.forEach(record -> record.put(Column.TAG, tag));
+    }
+    runData.sort(Comparator.comparing((Map<Column, Object> r) -> Integer.parseInt((String) r.get(Column.TOPIC)))
+      .thenComparing(r -> (Double) r.get(Column.SCORE), Comparator.reverseOrder()));
+  }
+
   public List<Map<Column, Object>> getDocsByTopic(String topic, int maxDocs) {
     return runData.stream()
         .filter(record -> record.get(Column.TOPIC).equals(topic))  // Filter by topic
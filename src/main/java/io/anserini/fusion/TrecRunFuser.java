@@ -54,6 +54,9 @@ public class TrecRunFuser {
 
     @Option(name = "-depth", metaVar = "[number]", required = false, usage = "Pool depth per topic.")
     public int depth = 1000;
+
+    @Option(name = "-format", metaVar = "[output format]", required = false, usage = "Output format, default \"trec\", alternative \"binary\".")
+    public String format = "trec";
   }
 
   public TrecRunFuser(Args args) {
@@ -118,9 +121,13 @@ public class TrecRunFuser {
     return TrecRun.merge(runs, depth, k);
   }
 
-  private void saveToTxt(TrecRun fusedRun) throws IOException {
+  private void save(TrecRun fusedRun) throws IOException {
     Path outputPath = Paths.get(args.output);
-    fusedRun.saveToTxt(outputPath, args.runtag);
+    if ("binary".equals(args.format)) {
+      fusedRun.saveToBinary(outputPath, args.runtag);
+    } else {
+      fusedRun.saveToTxt(outputPath, args.runtag);
+    }
   }
 
   /**
@@ -148,6 +155,6 @@ public class TrecRunFuser {
             ". Supported methods are: average, rrf, interpolation.");
     }
 
-    saveToTxt(fusedRun);
+    save(fusedRun);
   }
 }
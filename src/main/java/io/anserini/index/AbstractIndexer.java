@@ -18,6 +18,7 @@ package io.anserini.index;
 
 import io.anserini.collection.DocumentCollection;
 import io.anserini.collection.FileSegment;
+import io.anserini.collection.SegmentPartitioner;
 import io.anserini.collection.SourceDocument;
 import io.anserini.index.generator.EmptyDocumentException;
 import io.anserini.index.generator.InvalidDocumentException;
@@ -35,15 +36,21 @@ import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 public abstract class AbstractIndexer implements Runnable {
   private static final Logger LOG = LogManager.getLogger(AbstractIndexer.class);
@@ -86,9 +93,92 @@ public abstract class AbstractIndexer implements Runnable {
     @Option(name = "-shard.current", metaVar = "[n]",
             usage = "The current shard number to generate (indexed from 0).")
     public int shardCurrent = -1;
+
+    @Option(name = "-shard.weight", metaVar = "[weight]",
+            usage = "How to balance shards: 'size' (file size) or 'docs' (document counts estimated from a sample of files). " +
+                "Collections that assign files to shards themselves, e.g., C4Collection, only support 'size'.")
+    public String shardWeight = "size";
+
+    @Option(name = "-shard.sample", metaVar = "[n]",
+            usage = "Number of files to read when estimating document counts with '-shard.weight docs'.")
+    public int shardSample = 20;
+
+    @Option(name = "-shard.manifest", metaVar = "[file]",
+            usage = "Shard manifest: read the shard assignment from this file if it exists, otherwise write it. " +
+                "Not supported by collections that assign files to shards themselves, e.g., C4Collection.")
+    public String shardManifest = null;
+
+    @Option(name = "-split.size", metaVar = "[mb]",
+            usage = "Splits files in line-oriented formats (e.g., JSONL) that are larger than this size into byte ranges indexed in parallel; 0 disables splitting.")
+    public int splitSize = 0;
+
+    @Option(name = "-resume",
+            usage = "Resumes indexing into an existing index, skipping files recorded as completed in its last commit; other files are (re-)indexed idempotently by docid.")
+    public boolean resume = false;
+
+    @Option(name = "-checkpoint.interval", metaVar = "[minutes]",
+            usage = "Commits the index with a record of completed files every this many minutes, so indexing can be resumed after a crash; 0 disables.")
+    public int checkpointInterval = 0;
+
+    @Option(name = "-storeIdRanks",
+            usage = "Stores the lexicographic rank of each docid, so that searches break score ties by docid cheaply.")
+    public boolean storeIdRanks = false;
+  }
+
+  /**
+   * A unit of indexing work: either an entire file segment, or a byte range of a splittable file segment.
+   */
+  public static final class SegmentTask {
+    private final Path path;
+    private final long start;
+    private final long end;
+    private final boolean whole;
+
+    private SegmentTask(Path path, long start, long end, boolean whole) {
+      this.path = path;
+      this.start = start;
+      this.end = end;
+      this.whole = whole;
+    }
+
+    public static SegmentTask of(Path path, long size) {
+      return new SegmentTask(path, 0, size, true);
+    }
+
+    public static SegmentTask of(Path path, long start, long end) {
+      return new SegmentTask(path, start, end, false);
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public long getStart() {
+      return start;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    public long getBytes() {
+      return end - start;
+    }
+
+    public boolean isWholeFile() {
+      return whole;
+    }
+
+    @Override
+    public String toString() {
+      String name = path.getParent() == null ? path.getFileName().toString() :
+          path.getParent().getFileName().toString() + File.separator + path.getFileName().toString();
+      return whole ? name : String.format("%s[%d-%d)", name, start, end);
+    }
   }
 
   public class IndexerThread extends Thread {
+    private final SegmentTask task;
     private final Path inputFile;
     private final LuceneDocumentGenerator<SourceDocument> generator;
     private final Set<String> whitelistDocids;
@@ -98,16 +188,23 @@ public abstract class AbstractIndexer implements Runnable {
     }
 
     public IndexerThread(Path inputFile, LuceneDocumentGenerator<SourceDocument> generator, Set<String> docids) {
-      this.inputFile = inputFile;
+      this(SegmentTask.of(inputFile, SegmentPartitioner.fileSize(inputFile)), generator, docids);
+    }
+
+    public IndexerThread(SegmentTask task, LuceneDocumentGenerator<SourceDocument> generator, Set<String> docids) {
+      this.task = task;
+      this.inputFile = task.getPath();
       this.generator = generator;
       this.whitelistDocids = docids;
 
-      setName(inputFile.getFileName().toString());
+      setName(task.isWholeFile() ? inputFile.getFileName().toString() : task.toString());
     }
 
     @Override
     public void run() {
-      try(FileSegment<? extends SourceDocument> segment = collection.createFileSegment(inputFile)) {
+      try(FileSegment<? extends SourceDocument> segment = task.isWholeFile() ?
+          collection.createFileSegment(inputFile) :
+          collection.createFileSegment(inputFile, task.getStart(), task.getEnd())) {
         // We keep track of two separate counts: the total count of documents in this file segment (cnt),
         // and the number of documents in this current "batch" (batch). We update the global counter every
         // 10k documents: this is so that we get intermediate updates, which is informative if a collection
@@ -128,7 +225,8 @@ public abstract class AbstractIndexer implements Runnable {
             }
 
             Document doc = generator.createDocument(d);
-            if (args.uniqueDocid) {
+            // When resuming, documents from this file may already have been committed, so we update in place.
+            if (args.uniqueDocid || args.resume) {
               // Note that we're reading the config directly, which is within scope.
               writer.updateDocument(new Term("id", d.id()), doc);
             } else {
@@ -161,22 +259,23 @@ public abstract class AbstractIndexer implements Runnable {
         int skipped = segment.getSkippedCount();
         if (skipped > 0) {
           counters.skipped.addAndGet(skipped);
-          LOG.warn(inputFile.getParent().getFileName().toString() + File.separator +
-              inputFile.getFileName().toString() + ": " + skipped + " docs skipped.");
+          LOG.warn(task + ": " + skipped + " docs skipped.");
         }
 
         if (segment.getErrorStatus()) {
           counters.errors.incrementAndGet();
-          LOG.error(inputFile.getParent().getFileName().toString() + File.separator +
-              inputFile.getFileName().toString() + ": error iterating through segment.");
+          LOG.error(task + ": error iterating through segment.");
+        } else {
+          checkpoint.markCompleted(task);
         }
 
         // Log at the debug level because this can be quite noisy if there are lots of file segments.
-        LOG.debug(inputFile.getParent().getFileName().toString() + File.separator +
-            inputFile.getFileName().toString() + ": " + cnt + " docs added.");
+        LOG.debug(task + ": " + cnt + " docs added.");
       } catch (Exception e) {
         e.printStackTrace();
         LOG.error(Thread.currentThread().getName() + ": Unexpected Exception:", e.getMessage());
+      } finally {
+        bytesCompleted.addAndGet(task.getBytes());
       }
     }
   }
@@ -187,6 +286,8 @@ public abstract class AbstractIndexer implements Runnable {
   protected DocumentCollection<? extends SourceDocument> collection;
   protected Class<LuceneDocumentGenerator<? extends SourceDocument>> generatorClass;
   protected IndexWriter writer;
+  protected final AtomicLong bytesCompleted = new AtomicLong();
+  protected IndexCheckpoint checkpoint;
 
   @SuppressWarnings("unchecked")
   public AbstractIndexer(Args args) {
@@ -231,6 +332,23 @@ public abstract class AbstractIndexer implements Runnable {
     } catch (Exception e) {
       throw new IllegalArgumentException(String.format("Unable to load collection class \"%s\".", args.collectionClass));
     }
+
+    // Shard manifests and document-count weights balance the files of the collection themselves, which would silently
+    // replace a collection's own shard assignment (e.g., C4Collection shards by file number); such collections keep it.
+    if (args.shardCount > 1 && (args.shardManifest != null || !args.shardWeight.equals("size")) &&
+        hasOwnSharding(collection)) {
+      throw new IllegalArgumentException(String.format("%s assigns files to shards itself, " +
+          "so -shard.manifest and -shard.weight cannot be used with it.", args.collectionClass));
+    }
+  }
+
+  private static boolean hasOwnSharding(DocumentCollection<?> collection) {
+    try {
+      return collection.getClass().getMethod("getSegmentPaths", int.class, int.class).getDeclaringClass() !=
+          DocumentCollection.class;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
   }
 
   @Override
@@ -238,28 +356,63 @@ public abstract class AbstractIndexer implements Runnable {
     LOG.info("============ Indexing Collection ============");
     final long start = System.nanoTime();
 
-    final List<Path> segmentPaths = args.shardCount > 1 ?
-            collection.getSegmentPaths(args.shardCount, args.shardCurrent) :
-            collection.getSegmentPaths();
+    final List<Path> segmentPaths = args.shardCount > 1 ? getShardSegmentPaths() : collection.getSegmentPaths();
     final int segmentCnt = segmentPaths.size();
+    final List<SegmentTask> tasks = createSegmentTasks(segmentPaths);
+    try {
+      checkpoint = args.resume ? IndexCheckpoint.load(writer.getDirectory(), collectionPath) :
+          new IndexCheckpoint(collectionPath);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (args.resume) {
+      final int before = tasks.size();
+      tasks.removeIf(checkpoint::isCompleted);
+      LOG.info(String.format("Resuming: %,d of %,d tasks already completed, %,d remaining", before - tasks.size(),
+          before, tasks.size()));
+    }
+    final int taskCnt = tasks.size();
+    final long totalBytes = tasks.stream().mapToLong(SegmentTask::getBytes).sum();
 
     final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(args.threads);
     LOG.info(String.format("Thread pool with %s threads initialized.", args.threads));
-    LOG.info(String.format("%,d %s found in %s", segmentCnt, (segmentCnt == 1 ? "file" : "files"), collectionPath));
+    LOG.info(String.format("%,d %s (%,d bytes) found in %s", segmentCnt, (segmentCnt == 1 ? "file" : "files"),
+        totalBytes, collectionPath));
+    if (taskCnt != segmentCnt) {
+      LOG.info(String.format("Files split into %,d tasks of up to %d MB", taskCnt, args.splitSize));
+    }
     LOG.info("Starting to index...");
 
+    ScheduledExecutorService checkpointer = null;
+    if (args.checkpointInterval > 0) {
+      checkpointer = Executors.newSingleThreadScheduledExecutor();
+      checkpointer.scheduleWithFixedDelay(() -> {
+        try {
+          commitCheckpoint();
+        } catch (IOException e) {
+          // A failed checkpoint only means that more work is redone on resume, so keep going.
+          LOG.error("Unable to commit checkpoint", e);
+        }
+      }, args.checkpointInterval, args.checkpointInterval, TimeUnit.MINUTES);
+      LOG.info(String.format("Checkpointing every %d minutes.", args.checkpointInterval));
+    }
+
     // Dispatch to default method to process the segments; subclasses can override this method if desired.
-    processSegments(executor, segmentPaths);
+    processSegments(executor, tasks);
     executor.shutdown();
 
     try {
       // Wait for existing tasks to terminate.
       while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
-        if (segmentCnt == 1) {
-          LOG.info(String.format("%,d documents indexed", counters.indexed.get()));
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final long indexed = counters.indexed.get();
+        final long bytes = bytesCompleted.get();
+        if (taskCnt == 1) {
+          LOG.info(String.format("%,d documents indexed (%.0f docs/s)", indexed, indexed / seconds));
         } else {
-          LOG.info(String.format("%.2f%% of files completed, %,d documents indexed",
-              (double) executor.getCompletedTaskCount() / segmentCnt * 100.0d, counters.indexed.get()));
+          LOG.info(String.format("%.2f%% of bytes completed (%,d of %,d tasks), %,d documents indexed (%.0f docs/s, %.2f MB/s)",
+              totalBytes == 0 ? 0.0d : (double) bytes / totalBytes * 100.0d, executor.getCompletedTaskCount(), taskCnt,
+              indexed, indexed / seconds, bytes / seconds / (1024 * 1024)));
         }
       }
     } catch (InterruptedException ie) {
@@ -269,13 +422,17 @@ public abstract class AbstractIndexer implements Runnable {
       Thread.currentThread().interrupt();
     }
 
-    if (segmentCnt != executor.getCompletedTaskCount()) {
-      throw new RuntimeException("totalFiles = " + segmentCnt +
+    if (checkpointer != null) {
+      checkpointer.shutdownNow();
+    }
+
+    if (taskCnt != executor.getCompletedTaskCount()) {
+      throw new RuntimeException("totalTasks = " + taskCnt +
           " is not equal to completedTaskCount =  " + executor.getCompletedTaskCount());
     }
 
     long numIndexed = writer.getDocStats().maxDoc;
-    if (numIndexed != counters.indexed.get()) {
+    if (numIndexed != counters.indexed.get() && !args.resume) {
       // We want to log a warning here, as opposed to throw an exception, because for certain collections,
       // this might be expected. For example, when indexing tweets - if a tweet is delivered multiple times
       // (i.e., same docid), with -uniqueDocid we're going to update the doc in the index in place, leading
@@ -284,9 +441,12 @@ public abstract class AbstractIndexer implements Runnable {
           numIndexed, counters.indexed.get()));
     }
 
-    // Do a final commit.
+    // Do a final commit, recording all completed tasks so that indexing can later be resumed.
     try {
-      writer.commit();
+      if (args.storeIdRanks) {
+        LOG.info(String.format("Stored the ranks of %,d docids", IndexIdRanks.write(writer)));
+      }
+      commitCheckpoint();
       if (args.optimize) {
         writer.forceMerge(1);
       }
@@ -315,18 +475,105 @@ public abstract class AbstractIndexer implements Runnable {
     final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     LOG.info(String.format("Total %,d documents indexed in %s", numIndexed,
         DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss")));
+    LOG.info(String.format("Throughput: %.0f docs/s, %.2f MB/s", counters.indexed.get() / (durationMillis / 1000.0),
+        totalBytes / (durationMillis / 1000.0) / (1024 * 1024)));
+  }
+
+  /**
+   * Commits the index along with the set of tasks completed so far. Only tasks whose documents have all been added
+   * to the writer are marked as completed, so the recorded tasks are always fully contained in the commit.
+   *
+   * @throws IOException if error encountered committing the index
+   */
+  protected synchronized void commitCheckpoint() throws IOException {
+    writer.setLiveCommitData(checkpoint.toUserData().entrySet());
+    writer.commit();
+    LOG.debug(String.format("Checkpoint committed with %,d completed tasks.", checkpoint.size()));
+  }
+
+  /**
+   * Turns segment paths into indexing tasks. Files in splittable formats that are larger than {@code -split.size} are
+   * split into byte ranges, and tasks are ordered from largest to smallest: since idle threads take the next task
+   * from a shared queue, this keeps a few large files from being scheduled last and stretching the tail of the job.
+   *
+   * @param segmentPaths segment paths
+   * @return tasks, largest first
+   */
+  protected List<SegmentTask> createSegmentTasks(List<Path> segmentPaths) {
+    final long splitBytes = (long) args.splitSize * 1024 * 1024;
+    List<SegmentTask> tasks = new ArrayList<>();
+    for (Path path : segmentPaths) {
+      long size = SegmentPartitioner.fileSize(path);
+      if (splitBytes > 0 && size > splitBytes && collection.isSplittable(path)) {
+        for (long offset = 0; offset < size; offset += splitBytes) {
+          tasks.add(SegmentTask.of(path, offset, Math.min(offset + splitBytes, size)));
+        }
+      } else {
+        tasks.add(SegmentTask.of(path, size));
+      }
+    }
+
+    // The sort is stable, so ties retain discovery order.
+    tasks.sort(Comparator.comparingLong(SegmentTask::getBytes).reversed());
+    return tasks;
+  }
+
+  private List<Path> getShardSegmentPaths() {
+    if (args.shardManifest == null && args.shardWeight.equals("size")) {
+      return collection.getSegmentPaths(args.shardCount, args.shardCurrent);
+    }
+
+    try {
+      ShardManifest manifest;
+      Path manifestPath = args.shardManifest == null ? null : Paths.get(args.shardManifest);
+      if (manifestPath != null && Files.exists(manifestPath)) {
+        manifest = ShardManifest.read(manifestPath);
+        LOG.info(String.format("Shard assignment read from manifest %s", manifestPath));
+        if (manifest.getShardCount() != args.shardCount) {
+          throw new IllegalArgumentException(String.format("Shard manifest %s has %d shards, but %d were requested.",
+              manifestPath, manifest.getShardCount(), args.shardCount));
+        }
+      } else {
+        List<Path> paths = collection.getSegmentPaths();
+        ToLongFunction<Path> weight;
+        if (args.shardWeight.equals("size")) {
+          weight = SegmentPartitioner::fileSize;
+        } else if (args.shardWeight.equals("docs")) {
+          weight = SegmentPartitioner.sampledDocCount(collection, paths, args.shardSample);
+        } else {
+          throw new IllegalArgumentException(String.format("Unknown shard weight \"%s\".", args.shardWeight));
+        }
+
+        manifest = ShardManifest.create(collectionPath, paths, args.shardCount, weight, args.shardWeight);
+        if (manifestPath != null) {
+          manifest.write(manifestPath);
+          LOG.info(String.format("Shard assignment written to manifest %s", manifestPath));
+        }
+      }
+
+      LOG.info(String.format("Shard %d of %d has weight %,d (%s)", args.shardCurrent, args.shardCount,
+          manifest.getShardWeight(args.shardCurrent), manifest.getWeight()));
+      return manifest.getSegmentPaths(collectionPath, args.shardCurrent);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Hook to decorate the document generator of each thread, e.g., to add fields; by default, returns it unchanged.
+  protected LuceneDocumentGenerator<SourceDocument> wrapGenerator(LuceneDocumentGenerator<SourceDocument> generator) {
+    return generator;
   }
 
   // Default method to process the segments; subclasses can override this method if desired.
-  protected void processSegments(ThreadPoolExecutor executor, List<Path> segmentPaths) {
-    segmentPaths.forEach((segmentPath) -> {
+  protected void processSegments(ThreadPoolExecutor executor, List<SegmentTask> tasks) {
+    tasks.forEach((task) -> {
       try {
         // Each thread gets its own document generator, so we don't need to make any assumptions about its thread safety.
         @SuppressWarnings("unchecked")
         LuceneDocumentGenerator<SourceDocument> generator = (LuceneDocumentGenerator<SourceDocument>)
                 generatorClass.getDeclaredConstructor((Class<?> []) null).newInstance();
 
-        executor.execute(new IndexerThread(segmentPath, generator));
+        executor.execute(new IndexerThread(task, wrapGenerator(generator), null));
       } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
         throw new IllegalArgumentException(String.format("Unable to load LuceneDocumentGenerator \"%s\".", generatorClass.getSimpleName()));
       }
@@ -32,4 +32,10 @@ public final class Constants {
 
   // This is the name of the field in the Lucene document where the vector document is stored.
   public static final String VECTOR = "vector";
+
+  // This is the name of the binary doc values field in the Lucene document where the SimHash sketch is stored.
+  public static final String SIMHASH = "simhash";
+
+  // This is the name of the numeric doc values field in the Lucene document where the rank of the docid is stored.
+  public static final String ID_RANK = "id_rank";
 }
@@ -0,0 +1,144 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Tracks which indexing tasks (file segments, or byte ranges thereof) have been fully added to an index. The set of
+ * completed tasks is stored in the user data of each index commit, so it is always consistent with the documents in
+ * that commit. Each task is recorded with a fingerprint of its file (size, modification time and a checksum of the
+ * head and tail of the file), so that files modified since they were indexed are indexed again on resume.
+ */
+public final class IndexCheckpoint {
+  public static final String USER_DATA_KEY = "anserini.checkpoint";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final int FINGERPRINT_BYTES = 1 << 16;
+
+  private final Path collectionPath;
+  private final Map<String, String> completed = new ConcurrentHashMap<>();
+
+  public IndexCheckpoint(Path collectionPath) {
+    this.collectionPath = collectionPath.toAbsolutePath().normalize();
+  }
+
+  /**
+   * Loads the checkpoint stored in the latest commit of an index.
+   *
+   * @param directory index directory
+   * @param collectionPath root of the collection
+   * @return the checkpoint, which is empty if the index does not exist or has no checkpoint
+   * @throws IOException if error encountered reading the index
+   */
+  public static IndexCheckpoint load(Directory directory, Path collectionPath) throws IOException {
+    IndexCheckpoint checkpoint = new IndexCheckpoint(collectionPath);
+    if (!DirectoryReader.indexExists(directory)) {
+      return checkpoint;
+    }
+
+    String json = SegmentInfos.readLatestCommit(directory).getUserData().get(USER_DATA_KEY);
+    if (json != null) {
+      checkpoint.completed.putAll(MAPPER.readValue(json, new TypeReference<Map<String, String>>() {}));
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Returns whether a task has been completed, and its file has not changed since.
+   *
+   * @param task task
+   * @return whether the task has been completed
+   */
+  public boolean isCompleted(AbstractIndexer.SegmentTask task) {
+    String fingerprint = completed.get(key(task));
+    return fingerprint != null && fingerprint.equals(fingerprint(task.getPath()));
+  }
+
+  /**
+   * Records that all documents of a task have been added to the index writer.
+   *
+   * @param task task
+   */
+  public void markCompleted(AbstractIndexer.SegmentTask task) {
+    completed.put(key(task), fingerprint(task.getPath()));
+  }
+
+  public int size() {
+    return completed.size();
+  }
+
+  /**
+   * Returns the checkpoint as commit user data, for {@link org.apache.lucene.index.IndexWriter#setLiveCommitData}.
+   *
+   * @return commit user data
+   */
+  public Map<String, String> toUserData() {
+    Map<String, String> userData = new HashMap<>();
+    try {
+      // Sort the tasks so the serialized form is stable.
+      userData.put(USER_DATA_KEY, MAPPER.writeValueAsString(new TreeMap<>(completed)));
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+    return userData;
+  }
+
+  // Tasks are keyed by path relative to the collection root, so that a collection may be moved between runs.
+  private String key(AbstractIndexer.SegmentTask task) {
+    Path path = task.getPath().toAbsolutePath().normalize();
+    String relative = path.startsWith(collectionPath) ? collectionPath.relativize(path).toString() : path.toString();
+    return task.isWholeFile() ? relative : String.format("%s@%d-%d", relative, task.getStart(), task.getEnd());
+  }
+
+  private static String fingerprint(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      CRC32 crc = new CRC32();
+      ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_BYTES);
+      for (long position : new long[] {0, Math.max(0, size - FINGERPRINT_BYTES)}) {
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+          // Keep reading until the buffer is full or we reach the end of the file.
+        }
+        buffer.flip();
+        crc.update(buffer);
+      }
+      return String.format("%d:%d:%08x", size, Files.getLastModifiedTime(path).toMillis(), crc.getValue());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
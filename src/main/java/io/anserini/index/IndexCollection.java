@@ -24,6 +24,7 @@ import io.anserini.analysis.HuggingFaceTokenizerAnalyzer;
 import io.anserini.analysis.TweetAnalyzer;
 import io.anserini.collection.SourceDocument;
 import io.anserini.index.generator.LuceneDocumentGenerator;
+import io.anserini.index.generator.SimHashDocumentGenerator;
 import io.anserini.search.similarity.AccurateBM25Similarity;
 import io.anserini.search.similarity.ImpactSimilarity;
 import org.apache.commons.io.FileUtils;
@@ -46,7 +47,6 @@ import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -89,6 +89,10 @@ public final class IndexCollection extends AbstractIndexer {
         usage = "Boolean switch to store raw source documents.")
     public boolean storeRaw = false;
 
+    @Option(name = "-storeSimHash",
+        usage = "Boolean switch to store SimHash sketches of documents; speeds up near-duplicate detection.")
+    public boolean storeSimHash = false;
+
     @Option(name = "-keepStopwords",
         usage = "Boolean switch to keep stopwords.")
     public boolean keepStopwords = false;
@@ -187,7 +191,7 @@ public final class IndexCollection extends AbstractIndexer {
     } else {
       config.setSimilarity(new BM25Similarity());
     }
-    config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+    config.setOpenMode(args.append || args.resume ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
     config.setRAMBufferSizeMB(args.memoryBuffer);
     config.setUseCompoundFile(false);
     config.setMergeScheduler(new ConcurrentMergeScheduler());
@@ -204,6 +208,7 @@ public final class IndexCollection extends AbstractIndexer {
     LOG.info(" + Store docvectors? " + args.storeDocvectors);
     LOG.info(" + Store document \"contents\" field? " + args.storeContents);
     LOG.info(" + Store document \"raw\" field? " + args.storeRaw);
+    LOG.info(" + Store SimHash sketches? " + args.storeSimHash);
     LOG.info(" + Additional fields to index: " + Arrays.toString(args.fields));
     LOG.info(" + Whitelist: " + args.whitelist);
     LOG.info(" + Pretokenized?: " + args.pretokenized);
@@ -254,15 +259,23 @@ public final class IndexCollection extends AbstractIndexer {
     }
   }
 
-  protected void processSegments(ThreadPoolExecutor executor, List<Path> segmentPaths) {
-    segmentPaths.forEach((segmentPath) -> {
+  @Override
+  protected LuceneDocumentGenerator<SourceDocument> wrapGenerator(LuceneDocumentGenerator<SourceDocument> generator) {
+    if (((Args) this.args).storeSimHash) {
+      return new SimHashDocumentGenerator<>(generator, writer.getAnalyzer());
+    }
+    return generator;
+  }
+
+  protected void processSegments(ThreadPoolExecutor executor, List<SegmentTask> tasks) {
+    tasks.forEach((task) -> {
       try {
         // Each thread gets its own document generator, so we don't need to make any assumptions about its thread safety.
         @SuppressWarnings("unchecked")
         LuceneDocumentGenerator<SourceDocument> generator = (LuceneDocumentGenerator<SourceDocument>)
                 generatorClass.getDeclaredConstructor(Args.class).newInstance(this.args);
 
-        executor.execute(new AbstractIndexer.IndexerThread(segmentPath, generator, whitelistDocids));
+        executor.execute(new AbstractIndexer.IndexerThread(task, wrapGenerator(generator), whitelistDocids));
       } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
         throw new IllegalArgumentException(String.format("Unable to load LuceneDocumentGenerator \"%s\".", generatorClass.getSimpleName()));
       }
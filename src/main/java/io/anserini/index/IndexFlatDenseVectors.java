@@ -18,8 +18,11 @@ package io.anserini.index;
 
 import io.anserini.collection.SourceDocument;
 import io.anserini.index.codecs.AnseriniLucene99FlatVectorFormat;
+import io.anserini.index.codecs.AnseriniLucene99LowBitQuantizedVectorsFormat;
 import io.anserini.index.codecs.AnseriniLucene99ScalarQuantizedVectorsFormat;
 import io.anserini.index.generator.LuceneDocumentGenerator;
+import io.anserini.index.generator.MetadataDocumentGenerator;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.codecs.KnnVectorsFormat;
@@ -37,10 +40,12 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public final class IndexFlatDenseVectors extends AbstractIndexer {
@@ -50,11 +55,28 @@ public final class IndexFlatDenseVectors extends AbstractIndexer {
     @Option(name = "-generator", metaVar = "[class]", usage = "Document generator class in io.anserini.index.generator.")
     public String generatorClass = "DenseVectorDocumentGenerator";
 
-    @Option(name = "-quantize.int8", usage = "Quantize vectors into int8.")
+    @Option(name = "-quantize.int8", forbids = {"-quantize.int4", "-quantize.binary"},
+        usage = "Quantize vectors into int8.")
     public boolean quantizeInt8 = false;
 
+    @Option(name = "-quantize.int4", forbids = {"-quantize.int8", "-quantize.binary"},
+        usage = "Store int4 codes of vectors, which are searched first, alongside the float vectors.")
+    public boolean quantizeInt4 = false;
+
+    @Option(name = "-quantize.binary", forbids = {"-quantize.int8", "-quantize.int4"},
+        usage = "Store 1-bit codes of vectors, which are searched first, alongside the float vectors.")
+    public boolean quantizeBinary = false;
+
     @Option(name = "-storeVectors", usage = "Boolean switch to store raw raw vectors.")
     public boolean storeVectors = false;
+
+    @Option(name = "-fields", handler = StringArrayOptionHandler.class,
+        usage = "Metadata fields to index as keywords for filtering searches (space separated).")
+    public String[] fields = new String[]{};
+
+    @Option(name = "-fields.long", handler = StringArrayOptionHandler.class,
+        usage = "Metadata fields to index as longs for filtering searches by ranges (space separated).")
+    public String[] longFields = new String[]{};
   }
 
   @SuppressWarnings("unchecked")
@@ -68,6 +90,12 @@ public final class IndexFlatDenseVectors extends AbstractIndexer {
       throw new IllegalArgumentException(String.format("Unable to load generator class \"%s\".", args.generatorClass));
     }
 
+    for (String field : ArrayUtils.addAll(args.fields, args.longFields)) {
+      if (Constants.ID.equals(field) || Constants.VECTOR.equals(field)) {
+        throw new IllegalArgumentException(String.format("Metadata field \"%s\" is reserved.", field));
+      }
+    }
+
     try {
       final Directory dir = FSDirectory.open(Paths.get(args.index));
       final IndexWriterConfig config;
@@ -80,6 +108,15 @@ public final class IndexFlatDenseVectors extends AbstractIndexer {
                 return new DelegatingKnnVectorsFormat(new AnseriniLucene99ScalarQuantizedVectorsFormat(), 4096);
               }
             });
+      } else if (args.quantizeInt4 || args.quantizeBinary) {
+        final int bits = args.quantizeInt4 ? 4 : 1;
+        config = new IndexWriterConfig().setCodec(
+            new Lucene99Codec() {
+              @Override
+              public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                return new DelegatingKnnVectorsFormat(new AnseriniLucene99LowBitQuantizedVectorsFormat(bits), 4096);
+              }
+            });
       } else {
         config = new IndexWriterConfig().setCodec(
             new Lucene99Codec() {
@@ -90,7 +127,7 @@ public final class IndexFlatDenseVectors extends AbstractIndexer {
             });
       }
 
-      config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+      config.setOpenMode(args.resume ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
       config.setRAMBufferSizeMB(args.memoryBuffer);
       config.setUseCompoundFile(false);
       config.setMergeScheduler(new ConcurrentMergeScheduler());
@@ -104,6 +141,19 @@ public final class IndexFlatDenseVectors extends AbstractIndexer {
     LOG.info(" + Generator: " + args.generatorClass);
     LOG.info(" + Store document vectors? " + args.storeVectors);
     LOG.info(" + Int8 quantization? " + args.quantizeInt8);
+    LOG.info(" + Int4 quantization? " + args.quantizeInt4);
+    LOG.info(" + Binary quantization? " + args.quantizeBinary);
+    LOG.info(" + Metadata fields: " + Arrays.toString(args.fields));
+    LOG.info(" + Long metadata fields: " + Arrays.toString(args.longFields));
+  }
+
+  @Override
+  protected LuceneDocumentGenerator<SourceDocument> wrapGenerator(LuceneDocumentGenerator<SourceDocument> generator) {
+    final Args args = (Args) this.args;
+    if (args.fields.length > 0 || args.longFields.length > 0) {
+      return new MetadataDocumentGenerator<>(generator, args.fields, args.longFields);
+    }
+    return generator;
   }
 
   // Solution provided by Solr, see https://www.mail-archive.com/java-user@lucene.apache.org/msg52149.html
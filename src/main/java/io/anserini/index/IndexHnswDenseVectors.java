@@ -18,6 +18,8 @@ package io.anserini.index;
 
 import io.anserini.collection.SourceDocument;
 import io.anserini.index.generator.LuceneDocumentGenerator;
+import io.anserini.index.generator.MetadataDocumentGenerator;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.codecs.KnnVectorsFormat;
@@ -39,10 +41,12 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public final class IndexHnswDenseVectors extends AbstractIndexer {
@@ -64,6 +68,14 @@ public final class IndexHnswDenseVectors extends AbstractIndexer {
     @Option(name = "-storeVectors", usage = "Boolean switch to store raw raw vectors.")
     public boolean storeVectors = false;
 
+    @Option(name = "-fields", handler = StringArrayOptionHandler.class,
+        usage = "Metadata fields to index as keywords for filtering searches (space separated).")
+    public String[] fields = new String[]{};
+
+    @Option(name = "-fields.long", handler = StringArrayOptionHandler.class,
+        usage = "Metadata fields to index as longs for filtering searches by ranges (space separated).")
+    public String[] longFields = new String[]{};
+
     @Option(name = "-noMerge", usage = "Do not merge segments (fast indexing, slow retrieval).")
     public boolean noMerge = false;
 
@@ -93,6 +105,12 @@ public final class IndexHnswDenseVectors extends AbstractIndexer {
       throw new IllegalArgumentException(String.format("Unable to load generator class \"%s\".", args.generatorClass));
     }
 
+    for (String field : ArrayUtils.addAll(args.fields, args.longFields)) {
+      if (Constants.ID.equals(field) || Constants.VECTOR.equals(field)) {
+        throw new IllegalArgumentException(String.format("Metadata field \"%s\" is reserved.", field));
+      }
+    }
+
     try {
       final Directory dir = FSDirectory.open(Paths.get(args.index));
       final IndexWriterConfig config;
@@ -117,7 +135,7 @@ public final class IndexHnswDenseVectors extends AbstractIndexer {
             });
       }
 
-      config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+      config.setOpenMode(args.resume ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
       config.setRAMBufferSizeMB(args.memoryBuffer);
       config.setRAMPerThreadHardLimitMB(args.maxThreadMemoryBeforeFlush);
       config.setUseCompoundFile(false);
@@ -152,6 +170,8 @@ public final class IndexHnswDenseVectors extends AbstractIndexer {
     LOG.info(" + efC: " + args.efC);
     LOG.info(" + Store document vectors? " + args.storeVectors);
     LOG.info(" + Int8 quantization? " + args.quantizeInt8);
+    LOG.info(" + Metadata fields: " + Arrays.toString(args.fields));
+    LOG.info(" + Long metadata fields: " + Arrays.toString(args.longFields));
     LOG.info(" + Codec: " + this.writer.getConfig().getCodec());
     LOG.info(" + MemoryBuffer: " + args.memoryBuffer);
     LOG.info(" + MaxThreadMemoryBeforeFlush: " + args.maxThreadMemoryBeforeFlush);
@@ -168,6 +188,15 @@ public final class IndexHnswDenseVectors extends AbstractIndexer {
     }
   }
 
+  @Override
+  protected LuceneDocumentGenerator<SourceDocument> wrapGenerator(LuceneDocumentGenerator<SourceDocument> generator) {
+    final Args args = (Args) this.args;
+    if (args.fields.length > 0 || args.longFields.length > 0) {
+      return new MetadataDocumentGenerator<>(generator, args.fields, args.longFields);
+    }
+    return generator;
+  }
+
   // Solution provided by Solr, see https://www.mail-archive.com/java-user@lucene.apache.org/msg52149.html
   // This class exists because Lucene95HnswVectorsFormat's getMaxDimensions method is final and we
   // need to workaround that constraint to allow more than the default number of dimensions.
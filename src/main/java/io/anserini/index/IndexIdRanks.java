@@ -0,0 +1,178 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldExistsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the rank of each docid, in the lexicographic order of its bytes, as a numeric doc values field. Searches
+ * then break score ties by comparing ranks instead of docids, which gives the same order as sorting on the docid, see
+ * {@link io.anserini.search.TieBreakingCollectorManager}. Ranks are computed over the whole index, so this runs after
+ * indexing, either with {@code -storeIdRanks} or on an existing index with this program. Documents added afterwards
+ * have no rank until it is run again, and searches fall back to sorting on the docid when they need one.
+ */
+public final class IndexIdRanks implements Runnable {
+  private static final Logger LOG = LogManager.getLogger(IndexIdRanks.class);
+
+  public static class Args {
+    @Option(name = "-index", metaVar = "[path]", required = true, usage = "Index path.")
+    public String index;
+
+    @Option(name = "-options", usage = "Print information about options.")
+    public Boolean options = false;
+  }
+
+  private final Args args;
+
+  public IndexIdRanks(Args args) {
+    this.args = args;
+  }
+
+  /**
+   * Stores the rank of the docid of every live document in the index of a writer. Documents with the same docid get
+   * the same rank. The ranks are visible once the writer commits.
+   *
+   * @param writer index writer
+   * @return number of distinct docids
+   * @throws IOException if error encountered reading or updating the index
+   */
+  public static long write(IndexWriter writer) throws IOException {
+    List<BytesRef> docids = new ArrayList<>();
+    try (DirectoryReader reader = DirectoryReader.open(writer)) {
+      // Doc values can only be updated in a field that already exists, so a placeholder document without a docid
+      // creates it, and is deleted right away.
+      if (FieldInfos.getMergedFieldInfos(reader).fieldInfo(Constants.ID_RANK) == null) {
+        Document placeholder = new Document();
+        placeholder.add(new NumericDocValuesField(Constants.ID_RANK, -1));
+        writer.addDocument(placeholder);
+        writer.deleteDocuments(new BooleanQuery.Builder()
+            .add(new FieldExistsQuery(Constants.ID_RANK), BooleanClause.Occur.FILTER)
+            .add(new FieldExistsQuery(Constants.ID), BooleanClause.Occur.MUST_NOT).build());
+      }
+
+      for (LeafReaderContext context : reader.leaves()) {
+        // These are the values that sorting on the docid compares.
+        BinaryDocValues values = DocValues.getBinary(context.reader(), Constants.ID);
+        Bits liveDocs = context.reader().getLiveDocs();
+        for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            docids.add(BytesRef.deepCopyOf(values.binaryValue()));
+          }
+        }
+      }
+    }
+
+    // BytesRef compares unsigned bytes, just as sorting on the docid does.
+    docids.sort(null);
+    long rank = 0;
+    BytesRef previous = null;
+    for (BytesRef docid : docids) {
+      if (!docid.equals(previous)) {
+        writer.updateNumericDocValue(new Term(Constants.ID, docid), Constants.ID_RANK, rank++);
+        previous = docid;
+      }
+    }
+
+    return rank;
+  }
+
+  @Override
+  public void run() {
+    LOG.info("============ Storing Docid Ranks ============");
+    final long start = System.nanoTime();
+
+    // No documents are analyzed, so the analyzer is irrelevant. Segments are not merged either, since that would
+    // rewrite them with the default codec rather than the codec each was written with.
+    final IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer());
+    config.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+    config.setUseCompoundFile(false);
+    config.setMergePolicy(NoMergePolicy.INSTANCE);
+
+    try (Directory dir = FSDirectory.open(Paths.get(args.index));
+         IndexWriter writer = new IndexWriter(dir, config)) {
+      long count = write(writer);
+      writer.commit();
+      LOG.info(String.format("Stored the ranks of %,d docids", count));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    LOG.info(String.format("Ranks stored in %s", DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss")));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Args rankArgs = new Args();
+    CmdLineParser parser = new CmdLineParser(rankArgs, ParserProperties.defaults().withUsageWidth(120));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      if (rankArgs.options) {
+        System.err.printf("Options for %s:\n\n", IndexIdRanks.class.getSimpleName());
+        parser.printUsage(System.err);
+
+        List<String> required = new ArrayList<>();
+        parser.getOptions().forEach((option) -> {
+          if (option.option.required()) {
+            required.add(option.option.toString());
+          }
+        });
+
+        System.err.printf("\nRequired options are %s\n", required);
+      } else {
+        System.err.printf("Error: %s. For help, use \"-options\" to print out information about options.\n", e.getMessage());
+      }
+
+      return;
+    }
+
+    new IndexIdRanks(rankArgs).run();
+  }
+}
@@ -87,7 +87,7 @@ public final class IndexInvertedDenseVectors extends AbstractIndexer {
 
     Analyzer vectorAnalyzer;
     if (args.encoding.equalsIgnoreCase(FW)) {
-      vectorAnalyzer = new FakeWordsEncoderAnalyzer(args.q);
+      vectorAnalyzer = new FakeWordsEncoderAnalyzer(args.q, true);
     } else if (args.encoding.equalsIgnoreCase(LEXLSH)) {
       vectorAnalyzer = new LexicalLshAnalyzer(args.decimals, args.ngrams, args.hashCount, args.bucketCount, args.hashSetSize);
     } else {
@@ -101,7 +101,7 @@ public final class IndexInvertedDenseVectors extends AbstractIndexer {
     try {
       final Directory dir = FSDirectory.open(Paths.get(args.index));
       final IndexWriterConfig config = new IndexWriterConfig(analyzer);
-      config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+      config.setOpenMode(args.resume ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
       config.setRAMBufferSizeMB(args.memoryBuffer);
       config.setUseCompoundFile(false);
       config.setMergeScheduler(new ConcurrentMergeScheduler());
@@ -0,0 +1,148 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide registry of shared, reference-counted index readers, for components (e.g., rerankers that draw
+ * feedback documents from an external index) that need a reader on an index other than the one being searched.
+ * Each index is opened once, when it is first acquired, and is closed when the last holder releases it; in between,
+ * every holder shares the same reader, so segments are opened and term dictionaries are loaded only once.
+ *
+ * <p>Every call to {@link #acquire} must be paired with a call to {@link #release}, typically in the
+ * {@code close()} method of the holder.</p>
+ *
+ * <p>By default, an index is closed as soon as it has no holders. Processes that run many searches in sequence
+ * (e.g., reproduction runs) can keep a bounded number of such idle indexes open with {@link #setMaxIdle}, so that
+ * a later search on the same index does not open it again.</p>
+ */
+public final class IndexReaderRegistry {
+  private static final Logger LOG = LogManager.getLogger(IndexReaderRegistry.class);
+
+  private static final class Entry {
+    final Path path;
+    final IndexReader reader;
+    int refCount;
+
+    Entry(Path path, IndexReader reader) {
+      this.path = path;
+      this.reader = reader;
+    }
+  }
+
+  private static final Map<Path, Entry> byPath = new HashMap<>();
+  private static final Map<IndexReader, Entry> byReader = new IdentityHashMap<>();
+  // Open indexes without holders, least recently released first.
+  private static final LinkedHashMap<Path, Entry> idle = new LinkedHashMap<>();
+  private static int maxIdle = 0;
+
+  private IndexReaderRegistry() {}
+
+  /**
+   * Acquires the shared reader on an index, opening the index if no other holder has it open.
+   *
+   * @param indexPath index path
+   * @return the shared reader, which must not be closed directly
+   * @throws IOException if error encountered opening the index
+   * @throws IllegalArgumentException if the index does not exist
+   */
+  public static synchronized IndexReader acquire(String indexPath) throws IOException {
+    Path path = Paths.get(indexPath).toAbsolutePath().normalize();
+    Entry entry = byPath.get(path);
+    if (entry == null) {
+      if (!Files.exists(path) || !Files.isDirectory(path) || !Files.isReadable(path)) {
+        throw new IllegalArgumentException(indexPath + " does not exist or is not a directory.");
+      }
+      entry = new Entry(path, DirectoryReader.open(FSDirectory.open(path)));
+      byPath.put(path, entry);
+      byReader.put(entry.reader, entry);
+      LOG.info("Opened shared index reader on " + path);
+    } else if (entry.refCount == 0) {
+      idle.remove(path);
+    }
+    entry.refCount++;
+    return entry.reader;
+  }
+
+  /**
+   * Releases a reader obtained from {@link #acquire}, closing it if this was the last holder.
+   *
+   * @param reader reader
+   * @throws IOException if error encountered closing the index
+   * @throws IllegalArgumentException if the reader was not acquired from this registry
+   */
+  public static synchronized void release(IndexReader reader) throws IOException {
+    Entry entry = byReader.get(reader);
+    if (entry == null || entry.refCount == 0) {
+      throw new IllegalArgumentException("Reader was not acquired from the registry, or has already been released.");
+    }
+    if (--entry.refCount == 0) {
+      idle.put(entry.path, entry);
+      closeIdle(maxIdle);
+    }
+  }
+
+  /**
+   * Sets the maximum number of indexes to keep open without holders; beyond that, the least recently released are
+   * closed. Setting it to zero, the default, closes every index without holders.
+   *
+   * @param max maximum number of idle indexes
+   * @throws IOException if error encountered closing an index
+   */
+  public static synchronized void setMaxIdle(int max) throws IOException {
+    maxIdle = max;
+    closeIdle(max);
+  }
+
+  private static void closeIdle(int keep) throws IOException {
+    Iterator<Entry> iterator = idle.values().iterator();
+    while (idle.size() > keep) {
+      Entry entry = iterator.next();
+      iterator.remove();
+      byPath.remove(entry.path);
+      byReader.remove(entry.reader);
+      entry.reader.close();
+      LOG.info("Closed shared index reader on " + entry.path);
+    }
+  }
+
+  /**
+   * Returns the number of holders of the shared reader on an index.
+   *
+   * @param indexPath index path
+   * @return number of holders, or zero if the index is not open
+   */
+  public static synchronized int getRefCount(String indexPath) {
+    Entry entry = byPath.get(Paths.get(indexPath).toAbsolutePath().normalize());
+    return entry == null ? 0 : entry.refCount;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges shard indexes (e.g., built with {@code -shard.count} and {@code -shard.current}) into a single index.
+ * Segments of the shards are first copied as-is (preserving the codec each shard was written with), and then
+ * optionally merged down to a maximum number of segments, with independent merges running in parallel.
+ */
+public final class MergeIndexes implements Runnable {
+  private static final Logger LOG = LogManager.getLogger(MergeIndexes.class);
+
+  public static class Args {
+    @Option(name = "-input", metaVar = "[paths]", handler = StringArrayOptionHandler.class, required = true,
+        usage = "Shard indexes to merge (space separated).")
+    public String[] inputs;
+
+    @Option(name = "-index", metaVar = "[path]", required = true, usage = "Path of the merged index.")
+    public String index;
+
+    @Option(name = "-threads", metaVar = "[num]", usage = "Number of merge threads.")
+    public int threads = 4;
+
+    @Option(name = "-maxSegments", metaVar = "[num]",
+        usage = "If set, merges the index down to at most this many segments; 1 is equivalent to '-optimize' in indexing.")
+    public int maxSegments = -1;
+
+    @Option(name = "-options", usage = "Print information about options.")
+    public Boolean options = false;
+  }
+
+  private final Args args;
+
+  public MergeIndexes(Args args) {
+    this.args = args;
+
+    LOG.info("============ Loading Merge Configuration ============");
+    LOG.info("MergeIndexes settings:");
+    LOG.info(" + Inputs: " + String.join(", ", args.inputs));
+    LOG.info(" + Index path: " + args.index);
+    LOG.info(" + Threads: " + args.threads);
+    LOG.info(" + Max segments: " + args.maxSegments);
+  }
+
+  @Override
+  public void run() {
+    LOG.info("============ Merging Indexes ============");
+    final long start = System.nanoTime();
+
+    ConcurrentMergeScheduler scheduler = new ConcurrentMergeScheduler();
+    scheduler.setMaxMergesAndThreads(Math.max(args.threads, 1) + 5, Math.max(args.threads, 1));
+
+    // No documents are analyzed when merging, so the analyzer is irrelevant.
+    final IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer());
+    config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+    config.setUseCompoundFile(false);
+    config.setMergeScheduler(scheduler);
+
+    List<Directory> inputs = new ArrayList<>();
+    try (Directory dir = FSDirectory.open(Paths.get(args.index));
+         IndexWriter writer = new IndexWriter(dir, config)) {
+      for (String input : args.inputs) {
+        inputs.add(FSDirectory.open(Paths.get(input)));
+      }
+
+      writer.addIndexes(inputs.toArray(new Directory[0]));
+      writer.commit();
+      LOG.info(String.format("Copied %d shards: %,d documents in %d segments", inputs.size(),
+          writer.getDocStats().numDocs, SegmentInfos.readLatestCommit(dir).size()));
+
+      if (args.maxSegments > 0) {
+        writer.forceMerge(args.maxSegments);
+        writer.commit();
+        LOG.info(String.format("Merged down to %d segments", SegmentInfos.readLatestCommit(dir).size()));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      for (Directory input : inputs) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          // There's really nothing to be done, so just silently eat the exception.
+        }
+      }
+    }
+
+    final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    LOG.info(String.format("Merging complete in %s", DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss")));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Args mergeArgs = new Args();
+    CmdLineParser parser = new CmdLineParser(mergeArgs, ParserProperties.defaults().withUsageWidth(120));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      if (mergeArgs.options) {
+        System.err.printf("Options for %s:\n\n", MergeIndexes.class.getSimpleName());
+        parser.printUsage(System.err);
+
+        List<String> required = new ArrayList<>();
+        parser.getOptions().forEach((option) -> {
+          if (option.option.required()) {
+            required.add(option.option.toString());
+          }
+        });
+
+        System.err.printf("\nRequired options are %s\n", required);
+      } else {
+        System.err.printf("Error: %s. For help, use \"-options\" to print out information about options.\n", e.getMessage());
+      }
+
+      return;
+    }
+
+    new MergeIndexes(mergeArgs).run();
+  }
+}
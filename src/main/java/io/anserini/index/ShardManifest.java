@@ -0,0 +1,166 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.anserini.collection.SegmentPartitioner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * A persisted assignment of the file segments of a collection to shards. The first indexing job of a multi-node
+ * build computes the assignment and writes the manifest; every other job reads it back, so that all shards are
+ * guaranteed to agree on the assignment even if files are added to the collection in the meantime. Segment paths
+ * are stored relative to the collection root, so the manifest can be shared across hosts that mount the collection
+ * at different locations.
+ */
+public final class ShardManifest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final String weight;
+  private final List<List<String>> shards;
+  private final long[] shardWeights;
+
+  private ShardManifest(String weight, List<List<String>> shards, long[] shardWeights) {
+    this.weight = weight;
+    this.shards = shards;
+    this.shardWeights = shardWeights;
+  }
+
+  /**
+   * Computes a manifest by partitioning segments with {@link SegmentPartitioner}.
+   *
+   * @param collectionPath root of the collection
+   * @param paths segment paths
+   * @param shardCount number of shards
+   * @param weight weight of each segment
+   * @param weightName description of the weight function, recorded in the manifest
+   * @return the manifest
+   */
+  public static ShardManifest create(Path collectionPath, List<Path> paths, int shardCount,
+                                     ToLongFunction<Path> weight, String weightName) {
+    List<List<Path>> partitions = SegmentPartitioner.partition(paths, shardCount, weight);
+    List<List<String>> shards = new ArrayList<>(shardCount);
+    long[] shardWeights = new long[shardCount];
+    for (int s = 0; s < shardCount; s++) {
+      List<String> files = new ArrayList<>();
+      for (Path p : partitions.get(s)) {
+        files.add(relativize(collectionPath, p));
+        shardWeights[s] += weight.applyAsLong(p);
+      }
+      shards.add(files);
+    }
+
+    return new ShardManifest(weightName, shards, shardWeights);
+  }
+
+  /**
+   * Reads a manifest from a file.
+   *
+   * @param file manifest file
+   * @return the manifest
+   * @throws IOException if error encountered reading the manifest
+   */
+  public static ShardManifest read(Path file) throws IOException {
+    JsonNode root = MAPPER.readTree(file.toFile());
+    List<List<String>> shards = new ArrayList<>();
+    List<Long> shardWeights = new ArrayList<>();
+    for (JsonNode shard : root.get("shards")) {
+      List<String> files = new ArrayList<>();
+      shard.get("files").forEach(f -> files.add(f.asText()));
+      shards.add(files);
+      shardWeights.add(shard.get("weight").asLong());
+    }
+
+    return new ShardManifest(root.get("weight").asText(), shards,
+        shardWeights.stream().mapToLong(Long::longValue).toArray());
+  }
+
+  /**
+   * Writes the manifest to a file. The manifest is first written to a temporary file and then atomically moved into
+   * place, so concurrent jobs never observe a partially-written manifest.
+   *
+   * @param file manifest file
+   * @throws IOException if error encountered writing the manifest
+   */
+  public void write(Path file) throws IOException {
+    ObjectNode root = MAPPER.createObjectNode();
+    root.put("weight", weight);
+    root.put("shardCount", shards.size());
+    ArrayNode shardsNode = root.putArray("shards");
+    for (int s = 0; s < shards.size(); s++) {
+      ObjectNode shard = shardsNode.addObject();
+      shard.put("shard", s);
+      shard.put("weight", shardWeights[s]);
+      ArrayNode files = shard.putArray("files");
+      shards.get(s).forEach(files::add);
+    }
+
+    Path absolute = file.toAbsolutePath();
+    Path tmp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+    try {
+      MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), root);
+      Files.move(tmp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  public int getShardCount() {
+    return shards.size();
+  }
+
+  public String getWeight() {
+    return weight;
+  }
+
+  public long getShardWeight(int shard) {
+    return shardWeights[shard];
+  }
+
+  /**
+   * Returns the segment paths assigned to a shard.
+   *
+   * @param collectionPath root of the collection
+   * @param shard shard number
+   * @return segment paths, resolved against the collection root
+   */
+  public List<Path> getSegmentPaths(Path collectionPath, int shard) {
+    if (shard < 0 || shard >= shards.size()) {
+      throw new IllegalArgumentException(String.format("Invalid shard %d out of %d shards.", shard, shards.size()));
+    }
+
+    List<Path> paths = new ArrayList<>();
+    shards.get(shard).forEach(f -> paths.add(collectionPath.resolve(f)));
+    return paths;
+  }
+
+  // Use forward slashes regardless of platform, so manifests are portable.
+  private static String relativize(Path collectionPath, Path p) {
+    return collectionPath.toAbsolutePath().normalize().relativize(p.toAbsolutePath().normalize())
+        .toString().replace(p.getFileSystem().getSeparator(), "/");
+  }
+}
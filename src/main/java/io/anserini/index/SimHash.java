@@ -0,0 +1,182 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SimHash (Charikar, STOC 2002) sketches of document vectors, for finding near-duplicate documents. Each bit of a
+ * sketch is the sign of the projection of the term frequency vector of a document onto a pseudo-random hyperplane,
+ * so the fraction of bits on which the sketches of two documents differ estimates the angle between their vectors,
+ * i.e., their cosine similarity.
+ *
+ * <p>Sketches can be computed at indexing time (see the <code>-storeSimHash</code> option of {@link IndexCollection})
+ * and stored in the {@link Constants#SIMHASH} binary doc values field, or on demand from document vectors. Term hashes
+ * depend only on the characters of the term, so sketches from either source are comparable.</p>
+ */
+public final class SimHash {
+  /** Number of 64-bit words in a sketch. */
+  public static final int WORDS = 4;
+  /** Number of bits in a sketch. */
+  public static final int BITS = WORDS * 64;
+
+  private SimHash() {}
+
+  /**
+   * Accumulates weighted terms into a sketch.
+   */
+  public static final class Builder {
+    private final long[] weights = new long[BITS];
+
+    /**
+     * Adds a term.
+     *
+     * @param term term
+     * @param weight weight of the term, e.g., its frequency in the document
+     */
+    public void add(String term, long weight) {
+      long h = hash(term);
+      for (int w = 0; w < WORDS; w++) {
+        h = mix(h);
+        long bits = h;
+        int base = w * 64;
+        for (int b = 0; b < 64; b++) {
+          weights[base + b] += (bits & 1L) != 0 ? weight : -weight;
+          bits >>>= 1;
+        }
+      }
+    }
+
+    public long[] build() {
+      long[] sketch = new long[WORDS];
+      for (int i = 0; i < BITS; i++) {
+        if (weights[i] > 0) {
+          sketch[i >>> 6] |= 1L << i;
+        }
+      }
+      return sketch;
+    }
+  }
+
+  /**
+   * Computes the sketch of a document vector.
+   *
+   * @param termFreqs term frequencies
+   * @return sketch
+   */
+  public static long[] compute(Map<String, Long> termFreqs) {
+    Builder builder = new Builder();
+    termFreqs.forEach(builder::add);
+    return builder.build();
+  }
+
+  /**
+   * Returns the number of bits on which two sketches differ.
+   *
+   * @param a first sketch
+   * @param b second sketch
+   * @return Hamming distance
+   */
+  public static int distance(long[] a, long[] b) {
+    int d = 0;
+    for (int i = 0; i < WORDS; i++) {
+      d += Long.bitCount(a[i] ^ b[i]);
+    }
+    return d;
+  }
+
+  /**
+   * Returns <code>length</code> (at most 32) consecutive bits of a sketch, starting at bit <code>start</code>.
+   *
+   * @param sketch sketch
+   * @param start index of the first bit
+   * @param length number of bits
+   * @return bits, in the low-order bits of the result
+   */
+  public static int getBits(long[] sketch, int start, int length) {
+    int word = start >>> 6;
+    int shift = start & 63;
+    long bits = sketch[word] >>> shift;
+    if (shift + length > 64 && word + 1 < WORDS) {
+      bits |= sketch[word + 1] << (64 - shift);
+    }
+    return (int) (bits & ((1L << length) - 1));
+  }
+
+  public static BytesRef toBytesRef(long[] sketch) {
+    byte[] bytes = new byte[WORDS * 8];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (sketch[i >>> 3] >>> ((i & 7) * 8));
+    }
+    return new BytesRef(bytes);
+  }
+
+  public static long[] fromBytesRef(BytesRef bytes) {
+    if (bytes.length != WORDS * 8) {
+      throw new IllegalArgumentException("Expected a sketch of " + WORDS * 8 + " bytes, got " + bytes.length + ".");
+    }
+    long[] sketch = new long[WORDS];
+    for (int i = 0; i < bytes.length; i++) {
+      sketch[i >>> 3] |= (bytes.bytes[bytes.offset + i] & 0xFFL) << ((i & 7) * 8);
+    }
+    return sketch;
+  }
+
+  /**
+   * Reads the sketch of a document stored at indexing time.
+   *
+   * @param reader index reader
+   * @param docid Lucene docid
+   * @return sketch, or null if the document has none
+   * @throws IOException if error encountered reading the index
+   */
+  public static long[] read(IndexReader reader, int docid) throws IOException {
+    List<LeafReaderContext> leaves = reader.leaves();
+    LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docid, leaves));
+    BinaryDocValues values = leaf.reader().getBinaryDocValues(Constants.SIMHASH);
+    if (values == null || !values.advanceExact(docid - leaf.docBase)) {
+      return null;
+    }
+    return fromBytesRef(values.binaryValue());
+  }
+
+  // 64-bit FNV-1a over the UTF-16 code units of the term; stable across JVMs, since sketches may be stored.
+  private static long hash(String term) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < term.length(); i++) {
+      h ^= term.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  // SplitMix64 finalizer, to derive well-mixed words from the term hash.
+  private static long mix(long z) {
+    z += 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,665 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import io.anserini.analysis.TweetAnalyzer;
+import io.anserini.collection.TweetCollection;
+import io.anserini.index.IndexCollection.Args;
+import io.anserini.index.generator.GeneratorException;
+import io.anserini.index.generator.TweetGenerator;
+import io.anserini.search.ScoredDocs;
+import io.anserini.search.TieBreakingCollectorManager;
+import io.anserini.search.query.BagOfWordsQueryGenerator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Indexes a live stream of tweets so that they become searchable within a refresh interval, without building a
+ * static index with {@link IndexCollection}. Tweets are indexed into partitions, each a sub-index of the tweets created
+ * within one time bucket, so that merges never mix tweets from different buckets. Each partition is reopened in near
+ * real time by a {@link SearcherManager}, which a background thread refreshes periodically. Once the stream has moved
+ * past a partition, the background thread seals it: the partition is committed, and searched read only without a
+ * writer, so that only the latest partitions hold writers.</p>
+ *
+ * <p>Searches for tweets up to a tweet id skip whole partitions: partitions whose tweets all come after that id are not
+ * searched at all, and the range filter on tweet ids is only added if some searched partition has later tweets, which
+ * is usually the latest one only. Term statistics are those of the searched partitions, i.e., of the tweets up to the
+ * newest searched partition, rather than of the whole stream.</p>
+ */
+public class TweetStreamIndexer implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(TweetStreamIndexer.class);
+
+  public static final Duration DEFAULT_PARTITION_SIZE = Duration.ofDays(1);
+  public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+  // Tweet ids are Snowflake ids since November 2010, whose upper bits are milliseconds since this epoch.
+  private static final long SNOWFLAKE_EPOCH = 1288834974657L;
+  private static final String ID_LONG = TweetGenerator.TweetField.ID_LONG.name;
+
+  private final Path indexPath;
+  private final Analyzer analyzer;
+  private final TweetGenerator generator;
+  private final long partitionMillis;
+  private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+  private final ScheduledExecutorService refresher;
+
+  private record Lease(SearcherManager manager, IndexSearcher searcher) {}
+
+  /**
+   * A partition is written to, and searched in near real time, while the stream is in its time bucket or the next one.
+   * After that it is sealed: it is committed, its writer is closed, and it is searched read only. A writer is opened
+   * again if late tweets arrive, or tweets in it are deleted.
+   */
+  private final class Partition implements Closeable {
+    final long start;
+    private final Directory directory;
+    // Guards the writer and the manager, which are replaced when the partition is sealed or written to again.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Null while the partition is sealed.
+    private IndexWriter writer;
+    private SearcherManager manager;
+    // Bounds of the tweet ids of a sealed partition, or the widest bounds while it is written to.
+    private long minId;
+    private long maxId;
+
+    Partition(long start, boolean create) throws IOException {
+      this.start = start;
+      this.directory = FSDirectory.open(indexPath.resolve(Long.toString(start)));
+      try {
+        if (create || !DirectoryReader.indexExists(directory)) {
+          openWriter();
+        } else {
+          openReader();
+        }
+      } catch (IOException | RuntimeException e) {
+        directory.close();
+        throw e;
+      }
+    }
+
+    private void openWriter() throws IOException {
+      final IndexWriterConfig config = new IndexWriterConfig(analyzer);
+      config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+      config.setUseCompoundFile(false);
+      config.setMergeScheduler(new ConcurrentMergeScheduler());
+
+      writer = new IndexWriter(directory, config);
+      manager = new SearcherManager(writer, null);
+      minId = Long.MIN_VALUE;
+      maxId = Long.MAX_VALUE;
+    }
+
+    private void openReader() throws IOException {
+      manager = new SearcherManager(directory, null);
+      IndexSearcher searcher = manager.acquire();
+      try {
+        IndexReader reader = searcher.getIndexReader();
+        byte[] min = PointValues.getMinPackedValue(reader, ID_LONG);
+        // An empty partition has bounds that no id falls within.
+        minId = min == null ? Long.MAX_VALUE : LongPoint.decodeDimension(min, 0);
+        maxId = min == null ? Long.MIN_VALUE : LongPoint.decodeDimension(PointValues.getMaxPackedValue(reader, ID_LONG), 0);
+      } finally {
+        manager.release(searcher);
+      }
+    }
+
+    // Must hold the write lock.
+    private void ensureWritable() throws IOException {
+      if (writer == null) {
+        LOG.info("Reopening sealed partition " + start + " for writing");
+        manager.close();
+        openWriter();
+      }
+    }
+
+    boolean isWritable() {
+      lock.readLock().lock();
+      try {
+        return writer != null;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    void addDocument(Document doc) throws IOException {
+      lock.readLock().lock();
+      try {
+        if (writer != null) {
+          writer.addDocument(doc);
+          return;
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+
+      lock.writeLock().lock();
+      try {
+        ensureWritable();
+        writer.addDocument(doc);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    void deleteTweet(long id) throws IOException {
+      lock.readLock().lock();
+      try {
+        if (writer != null) {
+          writer.deleteDocuments(LongPoint.newExactQuery(ID_LONG, id));
+          return;
+        } else if (id < minId || id > maxId) {
+          return;
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+
+      lock.writeLock().lock();
+      try {
+        ensureWritable();
+        writer.deleteDocuments(LongPoint.newExactQuery(ID_LONG, id));
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    void refresh(boolean blocking) throws IOException {
+      lock.readLock().lock();
+      try {
+        // Sealed partitions do not change.
+        if (writer == null) {
+          return;
+        }
+        if (blocking) {
+          manager.maybeRefreshBlocking();
+        } else {
+          manager.maybeRefresh();
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    void commit() throws IOException {
+      lock.readLock().lock();
+      try {
+        if (writer != null) {
+          writer.commit();
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    void seal() throws IOException {
+      lock.writeLock().lock();
+      try {
+        if (writer == null) {
+          return;
+        }
+        manager.close();
+        try {
+          writer.commit();
+        } finally {
+          writer.close();
+          writer = null;
+        }
+        openReader();
+        LOG.info("Sealed partition " + start);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    // Returns a searcher over the partition, or null if it is sealed and has no tweets up to the tweet id.
+    Lease acquire(long maxId) throws IOException {
+      lock.readLock().lock();
+      try {
+        if (writer == null && minId > maxId) {
+          return null;
+        }
+        return new Lease(manager, manager.acquire());
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      lock.writeLock().lock();
+      try (Directory ignored = directory) {
+        manager.close();
+        if (writer != null) {
+          try {
+            writer.commit();
+          } finally {
+            writer.close();
+          }
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * A point-in-time view of the partitions that hold tweets up to a tweet id, which must be closed after searching.
+   */
+  public final class Snapshot implements Closeable {
+    private final List<Lease> leases = new ArrayList<>();
+    private MultiReader reader;
+    private final IndexSearcher searcher;
+    private final long maxId;
+    private final int searched;
+    private boolean filtered = false;
+
+    private Snapshot(long maxId) throws IOException {
+      this.maxId = maxId;
+      List<IndexReader> readers = new ArrayList<>();
+      try {
+        for (Partition partition : partitions.values()) {
+          Lease lease = partition.acquire(maxId);
+          if (lease == null) {
+            continue;
+          }
+          leases.add(lease);
+
+          IndexReader reader = lease.searcher().getIndexReader();
+          byte[] min = PointValues.getMinPackedValue(reader, ID_LONG);
+          if (min == null || LongPoint.decodeDimension(min, 0) > maxId) {
+            continue;
+          }
+          filtered |= LongPoint.decodeDimension(PointValues.getMaxPackedValue(reader, ID_LONG), 0) > maxId;
+          readers.add(reader);
+        }
+      } catch (IOException | RuntimeException e) {
+        close();
+        throw e;
+      }
+
+      searched = readers.size();
+      // The multi-reader holds a reference to each partition reader, which it gives back when closed.
+      reader = new MultiReader(readers.toArray(new IndexReader[0]), false);
+      searcher = new IndexSearcher(reader);
+      searcher.setSimilarity(new BM25Similarity(0.9f, 0.4f));
+    }
+
+    /**
+     * Returns a searcher over the partitions that have tweets up to the tweet id.
+     *
+     * @return searcher
+     */
+    public IndexSearcher searcher() {
+      return searcher;
+    }
+
+    /**
+     * Returns the number of partitions searched.
+     *
+     * @return number of partitions searched
+     */
+    public int partitions() {
+      return searched;
+    }
+
+    /**
+     * Returns whether some searched partition has tweets after the tweet id, so that queries need to filter them out.
+     *
+     * @return whether queries need a filter
+     */
+    public boolean isFiltered() {
+      return filtered;
+    }
+
+    /**
+     * Restricts a query to the tweets up to the tweet id, if needed.
+     *
+     * @param query query
+     * @return query, with a filter on tweet ids if needed
+     */
+    public Query filter(Query query) {
+      if (!filtered) {
+        return query;
+      }
+      return new BooleanQuery.Builder()
+          .add(LongPoint.newRangeQuery(ID_LONG, 0L, maxId), BooleanClause.Occur.FILTER)
+          .add(query, BooleanClause.Occur.MUST)
+          .build();
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOException exception = null;
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          exception = e;
+        }
+        reader = null;
+      }
+      for (Lease lease : leases) {
+        try {
+          lease.manager().release(lease.searcher());
+        } catch (IOException e) {
+          exception = e;
+        }
+      }
+      leases.clear();
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  }
+
+  private static Args parseArgs(String[] argv) throws CmdLineException {
+    Args args = new Args();
+    CmdLineParser parser = new CmdLineParser(args);
+    parser.parseArgument(argv);
+
+    return args;
+  }
+
+  public TweetStreamIndexer(String[] argv) throws Exception {
+    this(parseArgs(argv), DEFAULT_PARTITION_SIZE, DEFAULT_REFRESH_INTERVAL);
+  }
+
+  public TweetStreamIndexer(String indexPath) throws Exception {
+    this(new String[] {
+        "-input", "",
+        "-index", indexPath,
+        "-collection", "TweetCollection"});
+  }
+
+  /**
+   * Opens an index of a stream of tweets, creating it if needed; existing partitions are appended to.
+   *
+   * @param args indexing arguments; the index path and the tweet options are used
+   * @param partitionSize length of the time bucket of the tweets of each partition
+   * @param refreshInterval interval at which partitions are reopened to make new tweets searchable
+   * @throws IOException if error encountered opening the index
+   */
+  public TweetStreamIndexer(Args args, Duration partitionSize, Duration refreshInterval) throws IOException {
+    if (partitionSize.toMillis() <= 0 || refreshInterval.toMillis() <= 0) {
+      throw new IllegalArgumentException("Partition size and refresh interval must be at least a millisecond.");
+    }
+
+    this.indexPath = Paths.get(args.index);
+    this.analyzer = new TweetAnalyzer(args.tweetStemming);
+    this.generator = new TweetGenerator(args);
+    this.partitionMillis = partitionSize.toMillis();
+    Files.createDirectories(indexPath);
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexPath, Files::isDirectory)) {
+      for (Path path : stream) {
+        try {
+          long start = Long.parseLong(path.getFileName().toString());
+          partitions.put(start, new Partition(start, false));
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring " + path + ", which is not a partition.");
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      closePartitions();
+      throw e;
+    }
+    LOG.info(String.format("Opened %d partitions of %s", partitions.size(), indexPath));
+
+    refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "tweet-stream-refresher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    refresher.scheduleWithFixedDelay(this::maybeRefresh,
+        refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private Partition partition(long start) throws IOException {
+    Partition partition = partitions.get(start);
+    if (partition == null) {
+      synchronized (partitions) {
+        partition = partitions.get(start);
+        if (partition == null) {
+          partition = new Partition(start, true);
+          partitions.put(start, partition);
+          LOG.info("Created partition " + start);
+        }
+      }
+    }
+    return partition;
+  }
+
+  // The creation time of tweets, or the time in their Snowflake ids for tweets without one.
+  private long partitionStart(TweetCollection.Document tweet) {
+    long timestamp = tweet.getTimestampMs() != null && tweet.getTimestampMs().isPresent() && tweet.getTimestampMs().getAsLong() >= 0 ?
+        tweet.getTimestampMs().getAsLong() : (tweet.getIdLong() >> 22) + SNOWFLAKE_EPOCH;
+    return Math.floorDiv(timestamp, partitionMillis) * partitionMillis;
+  }
+
+  /**
+   * Adds a tweet to the partition of its creation time.
+   *
+   * @param tweet tweet
+   * @return whether the tweet was added, which it is not if it is skipped, e.g., as a retweet, or empty
+   */
+  public boolean addTweet(TweetCollection.Document tweet) {
+    try {
+      partition(partitionStart(tweet)).addDocument(generator.createDocument(tweet));
+    } catch (GeneratorException e) {
+      LOG.debug("Skipped tweet " + tweet.id() + ": " + e.getClass().getSimpleName());
+      return false;
+    } catch (IOException e) {
+      LOG.error(e);
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Adds a tweet, given as JSON.
+   *
+   * @param json JSON of the tweet
+   * @return whether the tweet was added
+   */
+  public boolean addRawTweet(String json) {
+    try {
+      return addTweet(TweetCollection.Document.fromString(json));
+    } catch (ParseException e) {
+      LOG.debug("Skipped tweet: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Deletes a tweet, from whichever partition holds it.
+   *
+   * @param id tweet id
+   * @throws IOException if error encountered deleting the tweet
+   */
+  public void deleteTweet(long id) throws IOException {
+    for (Partition partition : partitions.values()) {
+      partition.deleteTweet(id);
+    }
+  }
+
+  private void maybeRefresh() {
+    try {
+      seal();
+    } catch (IOException e) {
+      LOG.error("Unable to seal partitions", e);
+    }
+    for (Partition partition : partitions.values()) {
+      try {
+        partition.refresh(false);
+      } catch (IOException e) {
+        LOG.error("Unable to refresh partition " + partition.start, e);
+      }
+    }
+  }
+
+  /**
+   * Seals the partitions that the stream has moved past, i.e., those before the bucket preceding the latest partition,
+   * committing them and closing their writers. This is done periodically by the background refresh.
+   *
+   * @throws IOException if error encountered committing or closing
+   */
+  public void seal() throws IOException {
+    if (partitions.isEmpty()) {
+      return;
+    }
+    for (Partition partition : partitions.headMap(partitions.lastKey() - partitionMillis, false).values()) {
+      partition.seal();
+    }
+  }
+
+  /**
+   * Makes all tweets added so far searchable, without waiting for the next refresh.
+   *
+   * @throws IOException if error encountered refreshing
+   */
+  public void refresh() throws IOException {
+    for (Partition partition : partitions.values()) {
+      partition.refresh(true);
+    }
+  }
+
+  /**
+   * Commits all partitions, so that the tweets added so far survive a restart.
+   *
+   * @throws IOException if error encountered committing
+   */
+  public void commit() throws IOException {
+    for (Partition partition : partitions.values()) {
+      partition.commit();
+    }
+  }
+
+  /**
+   * Returns the start times of the partitions, in milliseconds since the epoch.
+   *
+   * @return start times of the partitions, in ascending order
+   */
+  public List<Long> getPartitions() {
+    return List.copyOf(partitions.keySet());
+  }
+
+  /**
+   * Returns the start times of the partitions that are written to, rather than sealed.
+   *
+   * @return start times of the writable partitions, in ascending order
+   */
+  public List<Long> getWritablePartitions() {
+    return partitions.values().stream().filter(Partition::isWritable).map(partition -> partition.start).toList();
+  }
+
+  /**
+   * Acquires a view of the partitions that have tweets up to a tweet id, as of the last refresh.
+   *
+   * @param maxId largest tweet id to search
+   * @return snapshot, which must be closed
+   * @throws IOException if error encountered acquiring the partitions
+   */
+  public Snapshot acquire(long maxId) throws IOException {
+    return new Snapshot(maxId);
+  }
+
+  /**
+   * Searches the tweets up to a tweet id, breaking score ties by tweet id, most recent first.
+   *
+   * @param q query
+   * @param maxId largest tweet id to search
+   * @param hits number of hits
+   * @return hits
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDocs search(String q, long maxId, int hits) throws IOException {
+    Query query = new BagOfWordsQueryGenerator().buildQuery(Constants.CONTENTS, analyzer, q);
+    try (Snapshot snapshot = acquire(maxId)) {
+      TopDocs rs = TieBreakingCollectorManager.searchBreakingTiesByTweetid(snapshot.searcher(), snapshot.filter(query), hits);
+      return ScoredDocs.fromTopDocs(rs, snapshot.searcher());
+    }
+  }
+
+  private void closePartitions() throws IOException {
+    IOException exception = null;
+    for (Partition partition : partitions.values()) {
+      try {
+        partition.close();
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+    partitions.clear();
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Stops refreshing, and commits and closes all partitions.
+   *
+   * @throws IOException if error encountered committing or closing
+   */
+  @Override
+  public void close() throws IOException {
+    refresher.shutdownNow();
+    try {
+      refresher.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    closePartitions();
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index.codecs;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.FlatVectorsFormat;
+import org.apache.lucene.codecs.FlatVectorsReader;
+import org.apache.lucene.codecs.FlatVectorsWriter;
+import org.apache.lucene.codecs.KnnFieldVectorsWriter;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.KnnVectorsReader;
+import org.apache.lucene.codecs.KnnVectorsWriter;
+import org.apache.lucene.codecs.lucene99.Lucene99FlatVectorsFormat;
+import org.apache.lucene.codecs.perfield.PerFieldKnnVectorsFormat;
+import org.apache.lucene.index.ByteVectorValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.MergeState;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Sorter;
+import org.apache.lucene.index.VectorEncoding;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.KnnCollector;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.hnsw.OrdinalTranslatedKnnCollector;
+import org.apache.lucene.util.hnsw.RandomVectorScorer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Flat vectors format that stores, alongside the float vectors of {@link Lucene99FlatVectorsFormat}, a 4-bit or 1-bit
+ * code of every vector. Searches scan the codes only, which are about 8 or 32 times smaller than the float vectors,
+ * and collect estimated scores; the float vectors remain available to re-score a shortlist exactly, as
+ * {@link io.anserini.search.FlatDenseSearcher} does.
+ */
+public class AnseriniLucene99LowBitQuantizedVectorsFormat extends KnnVectorsFormat {
+
+  static final String NAME = "AnseriniLucene99LowBitQuantizedVectorsFormat";
+
+  static final String META_CODEC_NAME = "AnseriniLowBitQuantizedVectorsMeta";
+  static final String DATA_CODEC_NAME = "AnseriniLowBitQuantizedVectorsData";
+  static final String META_EXTENSION = "vlqm";
+  static final String DATA_EXTENSION = "vlqd";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  private final FlatVectorsFormat format = new Lucene99FlatVectorsFormat();
+  private final int bits;
+
+  /**
+   * Constructor used when reading, since the number of bits of the codes is read from the index.
+   */
+  public AnseriniLucene99LowBitQuantizedVectorsFormat() {
+    this(4);
+  }
+
+  /**
+   * Creates a format that writes codes with the given number of bits per dimension.
+   *
+   * @param bits bits per dimension, 4 or 1
+   */
+  public AnseriniLucene99LowBitQuantizedVectorsFormat(int bits) {
+    super(NAME);
+    if (bits != 4 && bits != 1) {
+      throw new IllegalArgumentException("Codes must have 4 bits or 1 bit per dimension, not " + bits + ".");
+    }
+    this.bits = bits;
+  }
+
+  /**
+   * Returns whether the vectors of a field are written in this format.
+   *
+   * @param fieldInfo field, or null if the field does not exist
+   * @return whether the vectors of the field are written in this format
+   */
+  public static boolean isLowBitQuantized(FieldInfo fieldInfo) {
+    return fieldInfo != null && NAME.equals(fieldInfo.getAttribute(PerFieldKnnVectorsFormat.PER_FIELD_FORMAT_KEY));
+  }
+
+  @Override
+  public KnnVectorsWriter fieldsWriter(SegmentWriteState state) throws IOException {
+    FlatVectorsWriter writer = format.fieldsWriter(state);
+    try {
+      return new AnseriniLucene99LowBitQuantizedVectorWriter(state, writer, bits);
+    } catch (IOException | RuntimeException e) {
+      IOUtils.closeWhileHandlingException(writer);
+      throw e;
+    }
+  }
+
+  @Override
+  public KnnVectorsReader fieldsReader(SegmentReadState state) throws IOException {
+    FlatVectorsReader reader = format.fieldsReader(state);
+    try {
+      return new AnseriniLucene99LowBitQuantizedVectorReader(state, reader);
+    } catch (IOException | RuntimeException e) {
+      IOUtils.closeWhileHandlingException(reader);
+      throw e;
+    }
+  }
+
+  // Codes of the vectors of a field, collected as the float vectors are added.
+  private static class FieldCodes extends KnnFieldVectorsWriter<float[]> {
+    private final FieldInfo fieldInfo;
+    private final int bits;
+    private final List<Integer> docIds = new ArrayList<>();
+    private final List<byte[]> codes = new ArrayList<>();
+
+    FieldCodes(FieldInfo fieldInfo, int bits) {
+      this.fieldInfo = fieldInfo;
+      this.bits = bits;
+    }
+
+    @Override
+    public void addValue(int docID, float[] vectorValue) {
+      docIds.add(docID);
+      codes.add(LowBitQuantizer.encode(vectorValue, bits));
+    }
+
+    @Override
+    public float[] copyValue(float[] vectorValue) {
+      return ArrayUtil.copyOfSubArray(vectorValue, 0, vectorValue.length);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return codes.size() * (long) (LowBitQuantizer.codeLength(fieldInfo.getVectorDimension(), bits) + 48);
+    }
+  }
+
+  public static class AnseriniLucene99LowBitQuantizedVectorWriter extends KnnVectorsWriter {
+
+    private final FlatVectorsWriter writer;
+    private final int bits;
+    private final List<FieldCodes> fields = new ArrayList<>();
+    private IndexOutput meta;
+    private IndexOutput data;
+
+    public AnseriniLucene99LowBitQuantizedVectorWriter(SegmentWriteState state, FlatVectorsWriter writer, int bits)
+        throws IOException {
+      super();
+      this.writer = writer;
+      this.bits = bits;
+
+      boolean success = false;
+      try {
+        meta = state.directory.createOutput(
+            IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, META_EXTENSION), state.context);
+        data = state.directory.createOutput(
+            IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, DATA_EXTENSION), state.context);
+        CodecUtil.writeIndexHeader(meta, META_CODEC_NAME, VERSION_CURRENT, state.segmentInfo.getId(),
+            state.segmentSuffix);
+        CodecUtil.writeIndexHeader(data, DATA_CODEC_NAME, VERSION_CURRENT, state.segmentInfo.getId(),
+            state.segmentSuffix);
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeWhileHandlingException(meta, data);
+        }
+      }
+    }
+
+    @Override
+    public KnnFieldVectorsWriter<?> addField(FieldInfo fieldInfo) throws IOException {
+      // Byte vectors are compact already, so they are only written as flat vectors.
+      if (fieldInfo.getVectorEncoding() != VectorEncoding.FLOAT32) {
+        return writer.addField(fieldInfo, null);
+      }
+      FieldCodes field = new FieldCodes(fieldInfo, bits);
+      fields.add(field);
+      return writer.addField(fieldInfo, field);
+    }
+
+    @Override
+    public void flush(int maxDoc, Sorter.DocMap sortMap) throws IOException {
+      writer.flush(maxDoc, sortMap);
+      for (FieldCodes field : fields) {
+        // Codes are written in the order of the ordinals of the flat vectors, i.e., by (sorted) docid.
+        IntStream order = IntStream.range(0, field.codes.size());
+        if (sortMap != null) {
+          order = order.boxed()
+              .sorted(Comparator.comparingInt(i -> sortMap.oldToNew(field.docIds.get(i))))
+              .mapToInt(Integer::intValue);
+        }
+        long offset = data.getFilePointer();
+        for (int i : order.toArray()) {
+          byte[] code = field.codes.get(i);
+          data.writeBytes(code, code.length);
+        }
+        writeMeta(field.fieldInfo, field.codes.size(), offset);
+      }
+    }
+
+    @Override
+    public void mergeOneField(FieldInfo fieldInfo, MergeState mergeState) throws IOException {
+      writer.mergeOneField(fieldInfo, mergeState);
+      if (fieldInfo.getVectorEncoding() != VectorEncoding.FLOAT32) {
+        return;
+      }
+
+      // The codes are quantized again from the merged float vectors, in the same order as they are written.
+      FloatVectorValues values = KnnVectorsWriter.MergedVectorValues.mergeFloatVectorValues(fieldInfo, mergeState);
+      long offset = data.getFilePointer();
+      int count = 0;
+      for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+        byte[] code = LowBitQuantizer.encode(values.vectorValue(), bits);
+        data.writeBytes(code, code.length);
+        count++;
+      }
+      writeMeta(fieldInfo, count, offset);
+    }
+
+    private void writeMeta(FieldInfo fieldInfo, int count, long offset) throws IOException {
+      meta.writeInt(fieldInfo.number);
+      meta.writeByte((byte) bits);
+      meta.writeVInt(fieldInfo.getVectorDimension());
+      meta.writeVInt(count);
+      meta.writeVLong(offset);
+      meta.writeVLong(data.getFilePointer() - offset);
+    }
+
+    @Override
+    public void finish() throws IOException {
+      writer.finish();
+      meta.writeInt(-1);
+      CodecUtil.writeFooter(meta);
+      CodecUtil.writeFooter(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOUtils.close(meta, data, writer);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return writer.ramBytesUsed() + fields.stream().mapToLong(FieldCodes::ramBytesUsed).sum();
+    }
+  }
+
+  public static class AnseriniLucene99LowBitQuantizedVectorReader extends KnnVectorsReader {
+
+    private record FieldEntry(int bits, int dimension, int size, long offset, long length) {}
+
+    private final FlatVectorsReader reader;
+    private final FieldInfos fieldInfos;
+    private final Map<Integer, FieldEntry> fields = new HashMap<>();
+    private final IndexInput data;
+
+    public AnseriniLucene99LowBitQuantizedVectorReader(SegmentReadState state, FlatVectorsReader reader)
+        throws IOException {
+      super();
+      this.reader = reader;
+      this.fieldInfos = state.fieldInfos;
+
+      String metaName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, META_EXTENSION);
+      try (ChecksumIndexInput meta = state.directory.openChecksumInput(metaName, state.context)) {
+        Throwable priorE = null;
+        try {
+          CodecUtil.checkIndexHeader(meta, META_CODEC_NAME, VERSION_START, VERSION_CURRENT,
+              state.segmentInfo.getId(), state.segmentSuffix);
+          for (int number = meta.readInt(); number != -1; number = meta.readInt()) {
+            fields.put(number, new FieldEntry(meta.readByte(), meta.readVInt(), meta.readVInt(), meta.readVLong(),
+                meta.readVLong()));
+          }
+        } catch (Throwable t) {
+          priorE = t;
+        } finally {
+          CodecUtil.checkFooter(meta, priorE);
+        }
+      }
+
+      String dataName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, DATA_EXTENSION);
+      IndexInput in = state.directory.openInput(dataName, state.context);
+      boolean success = false;
+      try {
+        CodecUtil.checkIndexHeader(in, DATA_CODEC_NAME, VERSION_START, VERSION_CURRENT,
+            state.segmentInfo.getId(), state.segmentSuffix);
+        CodecUtil.retrieveChecksum(in);
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeWhileHandlingException(in);
+        }
+      }
+      this.data = in;
+    }
+
+    @Override
+    public void checkIntegrity() throws IOException {
+      reader.checkIntegrity();
+      CodecUtil.checksumEntireFile(data);
+    }
+
+    @Override
+    public FloatVectorValues getFloatVectorValues(String field) throws IOException {
+      return reader.getFloatVectorValues(field);
+    }
+
+    @Override
+    public ByteVectorValues getByteVectorValues(String field) throws IOException {
+      return reader.getByteVectorValues(field);
+    }
+
+    @Override
+    public void search(String field, float[] target, KnnCollector knnCollector, Bits acceptDocs) throws IOException {
+      // The scorer of the flat vectors is only used to map ordinals to docids, and to filter them.
+      RandomVectorScorer ordinals = reader.getRandomVectorScorer(field, target);
+      FieldInfo fieldInfo = fieldInfos.fieldInfo(field);
+      FieldEntry entry = fields.get(fieldInfo.number);
+
+      LowBitQuantizer.Scorer scorer =
+          new LowBitQuantizer.Scorer(target, entry.bits(), fieldInfo.getVectorSimilarityFunction());
+      IndexInput codes = data.slice("codes", entry.offset(), entry.length());
+      byte[] code = new byte[LowBitQuantizer.codeLength(entry.dimension(), entry.bits())];
+
+      OrdinalTranslatedKnnCollector collector = new OrdinalTranslatedKnnCollector(knnCollector, ordinals::ordToDoc);
+      Bits acceptedOrds = ordinals.getAcceptOrds(acceptDocs);
+      for (int i = 0; i < entry.size(); i++) {
+        codes.readBytes(code, 0, code.length);
+        if (acceptedOrds == null || acceptedOrds.get(i)) {
+          collector.collect(i, scorer.score(code));
+          collector.incVisitedCount(1);
+        }
+      }
+    }
+
+    @Override
+    public void search(String field, byte[] target, KnnCollector knnCollector, Bits acceptDocs) throws IOException {
+      RandomVectorScorer scorer = reader.getRandomVectorScorer(field, target);
+      OrdinalTranslatedKnnCollector collector = new OrdinalTranslatedKnnCollector(knnCollector, scorer::ordToDoc);
+      Bits acceptedOrds = scorer.getAcceptOrds(acceptDocs);
+      for (int i = 0; i < scorer.maxOrd(); i++) {
+        if (acceptedOrds == null || acceptedOrds.get(i)) {
+          collector.collect(i, scorer.score(i));
+          collector.incVisitedCount(1);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOUtils.close(data, reader);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return reader.ramBytesUsed();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index.codecs;
+
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.VectorUtil;
+
+/**
+ * Quantizes float vectors into 4-bit or 1-bit codes, and estimates the similarity of a float query to a code.
+ *
+ * <p>Each vector is quantized on its own, as value ≈ offset + scale * level. With 4 bits, levels are 0 to 15 between
+ * the minimum and maximum value of the vector, clipped to four standard deviations around the mean, since a few
+ * outlying dimensions would otherwise leave most values with the same level. With 1 bit, levels are -1 or +1 by sign,
+ * and the scale is the mean magnitude of the values. A code holds the offset, the scale and the squared norm of the
+ * vector, followed by the levels, packed two or eight per byte.</p>
+ *
+ * <p>The query is not quantized. Instead, the contribution of every possible byte of levels at every position is
+ * tabulated once per query, so that estimating a dot product takes one table lookup per byte of code.</p>
+ */
+final class LowBitQuantizer {
+  static final int HEADER_BYTES = 3 * Float.BYTES;
+  private static final float CLIP_DEVIATIONS = 4.0f;
+
+  private LowBitQuantizer() {}
+
+  static int codeLength(int dimension, int bits) {
+    return HEADER_BYTES + (dimension * bits + 7) / 8;
+  }
+
+  private static float level(int value, int bits) {
+    return bits == 1 ? (value == 1 ? 1.0f : -1.0f) : value;
+  }
+
+  static byte[] encode(float[] vector, int bits) {
+    byte[] code = new byte[codeLength(vector.length, bits)];
+    float offset;
+    float scale;
+    float squaredNorm = VectorUtil.dotProduct(vector, vector);
+
+    if (bits == 4) {
+      float min = Float.POSITIVE_INFINITY;
+      float max = Float.NEGATIVE_INFINITY;
+      float sum = 0.0f;
+      for (float value : vector) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+      }
+      float mean = sum / vector.length;
+      float deviation = (float) Math.sqrt(Math.max(0.0f, squaredNorm / vector.length - mean * mean));
+      min = Math.max(min, mean - CLIP_DEVIATIONS * deviation);
+      max = Math.min(max, mean + CLIP_DEVIATIONS * deviation);
+
+      offset = min;
+      scale = (max - min) / 15.0f;
+      for (int i = 0; i < vector.length; i++) {
+        int level = scale == 0.0f ? 0 : Math.max(0, Math.min(15, Math.round((vector[i] - min) / scale)));
+        code[HEADER_BYTES + i / 2] |= (byte) (level << ((i & 1) * 4));
+      }
+    } else {
+      float magnitude = 0.0f;
+      for (float value : vector) {
+        magnitude += Math.abs(value);
+      }
+      offset = 0.0f;
+      scale = magnitude / vector.length;
+      for (int i = 0; i < vector.length; i++) {
+        if (vector[i] > 0.0f) {
+          code[HEADER_BYTES + i / 8] |= (byte) (1 << (i & 7));
+        }
+      }
+    }
+
+    BitUtil.VH_LE_FLOAT.set(code, 0, offset);
+    BitUtil.VH_LE_FLOAT.set(code, Float.BYTES, scale);
+    BitUtil.VH_LE_FLOAT.set(code, 2 * Float.BYTES, squaredNorm);
+    return code;
+  }
+
+  /**
+   * Estimates the similarity of a query to codes, on the same scale as {@link VectorSimilarityFunction#compare}.
+   */
+  static final class Scorer {
+    private final VectorSimilarityFunction similarity;
+    private final int levelBytes;
+    // Sum of query value times level, over the dimensions of each byte of levels, for each possible byte.
+    private final float[] table;
+    private final float querySum;
+    private final float querySquaredNorm;
+
+    Scorer(float[] query, int bits, VectorSimilarityFunction similarity) {
+      this.similarity = similarity;
+      this.levelBytes = codeLength(query.length, bits) - HEADER_BYTES;
+      this.table = new float[levelBytes * 256];
+
+      int perByte = 8 / bits;
+      int mask = (1 << bits) - 1;
+      for (int j = 0; j < levelBytes; j++) {
+        for (int value = 0; value < 256; value++) {
+          float sum = 0.0f;
+          for (int t = 0; t < perByte && j * perByte + t < query.length; t++) {
+            sum += query[j * perByte + t] * level((value >>> (t * bits)) & mask, bits);
+          }
+          table[(j << 8) | value] = sum;
+        }
+      }
+
+      float sum = 0.0f;
+      for (float value : query) {
+        sum += value;
+      }
+      this.querySum = sum;
+      this.querySquaredNorm = VectorUtil.dotProduct(query, query);
+    }
+
+    float score(byte[] code) {
+      float offset = (float) BitUtil.VH_LE_FLOAT.get(code, 0);
+      float scale = (float) BitUtil.VH_LE_FLOAT.get(code, Float.BYTES);
+      float squaredNorm = (float) BitUtil.VH_LE_FLOAT.get(code, 2 * Float.BYTES);
+
+      float sum = 0.0f;
+      for (int j = 0; j < levelBytes; j++) {
+        sum += table[(j << 8) | (code[HEADER_BYTES + j] & 0xFF)];
+      }
+      float dot = offset * querySum + scale * sum;
+
+      return switch (similarity) {
+        case EUCLIDEAN -> 1.0f / (1.0f + Math.max(0.0f, querySquaredNorm + squaredNorm - 2.0f * dot));
+        case DOT_PRODUCT -> Math.max((1.0f + dot) / 2.0f, 0.0f);
+        case COSINE -> {
+          float norms = (float) Math.sqrt((double) querySquaredNorm * squaredNorm);
+          float cosine = norms == 0.0f ? 0.0f : Math.max(-1.0f, Math.min(1.0f, dot / norms));
+          yield (1.0f + cosine) / 2.0f;
+        }
+        case MAXIMUM_INNER_PRODUCT -> VectorUtil.scaleMaxInnerProductScore(dot);
+      };
+    }
+  }
+}
@@ -25,8 +25,9 @@ import io.anserini.index.IndexInvertedDenseVectors;
 import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.util.BytesRef;
 
 import java.util.ArrayList;
@@ -37,6 +38,16 @@ import java.util.ArrayList;
  * @param <T> type of the source document
  */
 public class InvertedDenseVectorDocumentGenerator<T extends SourceDocument> implements LuceneDocumentGenerator<T> {
+  // Encoded vectors are bags of words, so positions are not indexed. This also allows analyzers to set custom term
+  // frequencies, see FakeWordsEncoderAnalyzer.
+  private static final FieldType VECTOR_FIELD_TYPE = new FieldType();
+
+  static {
+    VECTOR_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+    VECTOR_FIELD_TYPE.setTokenized(true);
+    VECTOR_FIELD_TYPE.freeze();
+  }
+
   public InvertedDenseVectorDocumentGenerator() {
   }
 
@@ -77,7 +88,7 @@ public class InvertedDenseVectorDocumentGenerator<T extends SourceDocument> impl
     // This is needed to break score ties by docid.
     document.add(new BinaryDocValuesField(Constants.ID, new BytesRef(id)));
 
-    document.add(new TextField(Constants.VECTOR, sb.toString(), Field.Store.NO));
+    document.add(new Field(Constants.VECTOR, sb.toString(), VECTOR_FIELD_TYPE));
 
     return document;
   }
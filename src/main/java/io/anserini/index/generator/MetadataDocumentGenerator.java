@@ -0,0 +1,79 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index.generator;
+
+import io.anserini.collection.MultifieldSourceDocument;
+import io.anserini.collection.SourceDocument;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+
+/**
+ * Wraps another generator, adding to each document the metadata fields of its source document, so that searches can
+ * be restricted by them. Keyword fields are indexed as single terms, for term and term set queries; long fields are
+ * indexed as points and doc values, for exact and range queries with {@link LongField}. All are stored.
+ *
+ * @param <T> type of the source document
+ */
+public class MetadataDocumentGenerator<T extends SourceDocument> implements LuceneDocumentGenerator<T> {
+  private final LuceneDocumentGenerator<T> generator;
+  private final String[] keywordFields;
+  private final String[] longFields;
+
+  /**
+   * Constructor.
+   *
+   * @param generator generator creating the documents
+   * @param keywordFields metadata fields to index as keywords
+   * @param longFields metadata fields to index as longs
+   */
+  public MetadataDocumentGenerator(LuceneDocumentGenerator<T> generator, String[] keywordFields, String[] longFields) {
+    this.generator = generator;
+    this.keywordFields = keywordFields;
+    this.longFields = longFields;
+  }
+
+  @Override
+  public Document createDocument(T src) throws GeneratorException {
+    Document document = generator.createDocument(src);
+    if (!(src instanceof MultifieldSourceDocument)) {
+      return document;
+    }
+
+    // Documents without a field are indexed all the same, and simply do not match any filter on it.
+    MultifieldSourceDocument multifield = (MultifieldSourceDocument) src;
+    for (String field : keywordFields) {
+      String value = multifield.fields().get(field);
+      if (value != null) {
+        document.add(new StringField(field, value, Field.Store.YES));
+      }
+    }
+    for (String field : longFields) {
+      String value = multifield.fields().get(field);
+      if (value != null) {
+        try {
+          document.add(new LongField(field, Long.parseLong(value), Field.Store.YES));
+        } catch (NumberFormatException e) {
+          throw new InvalidDocumentException();
+        }
+      }
+    }
+
+    return document;
+  }
+}
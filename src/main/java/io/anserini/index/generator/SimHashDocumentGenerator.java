@@ -0,0 +1,58 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index.generator;
+
+import io.anserini.analysis.AnalyzerUtils;
+import io.anserini.collection.SourceDocument;
+import io.anserini.index.Constants;
+import io.anserini.index.SimHash;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+
+/**
+ * Wraps another generator, adding to each document the {@link SimHash} sketch of its analyzed "contents" field, so
+ * that near-duplicate detection at search time does not need to decode document vectors.
+ *
+ * @param <T> type of the source document
+ */
+public class SimHashDocumentGenerator<T extends SourceDocument> implements LuceneDocumentGenerator<T> {
+  private final LuceneDocumentGenerator<T> generator;
+  private final Analyzer analyzer;
+
+  /**
+   * Constructor.
+   *
+   * @param generator generator creating the documents
+   * @param analyzer analyzer of the "contents" field
+   */
+  public SimHashDocumentGenerator(LuceneDocumentGenerator<T> generator, Analyzer analyzer) {
+    this.generator = generator;
+    this.analyzer = analyzer;
+  }
+
+  @Override
+  public Document createDocument(T src) throws GeneratorException {
+    Document document = generator.createDocument(src);
+    String contents = document.get(Constants.CONTENTS);
+    if (contents != null) {
+      long[] sketch = SimHash.compute(AnalyzerUtils.computeDocumentVector(analyzer, contents));
+      document.add(new BinaryDocValuesField(Constants.SIMHASH, SimHash.toBytesRef(sketch)));
+    }
+    return document;
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.ltr.feature;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.OptionHandlerFilter;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * IBM Model 1 translation table, p(target | source), stored in compressed sparse row (CSR) form. Rows are indexed by
+ * target (i.e., query) word, and each row holds the source (i.e., document) words that translate to it, sorted by id,
+ * with their probabilities. This takes 8 bytes per entry instead of the hundred or so bytes of a map of boxed
+ * entries, and lets a scorer fetch the row of a query word once and then look up each document word by binary search.
+ *
+ * <p>A table can be built directly from the GIZA++ output (vocabularies {@code source.vcb} and {@code target.vcb},
+ * and binary table {@code output.t1.5.bin}), or converted once with {@link #main} into a single file that loads with
+ * a bulk read or is memory-mapped, and so can be shared by every JVM on a host through the page cache.</p>
+ */
+public final class TranslationTable {
+  private static final Logger LOG = LogManager.getLogger(TranslationTable.class);
+
+  public static final String SOURCE_VOCAB = "source.vcb";
+  public static final String TARGET_VOCAB = "target.vcb";
+  public static final String GIZA_TABLE = "output.t1.5.bin";
+  public static final String COMPACT_TABLE = "output.t1.5.csr";
+
+  public static final String NULL_WORD = "@NULL@";
+
+  private static final int MAGIC = 0x49424d31; // "IBM1"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 28;
+
+  private final float selfTrans;
+  private final Map<String, Integer> sourceLookup;
+  private final Map<String, Integer> targetLookup;
+  private final int numSources;
+  private final int numTargets;
+  private final IntBuffer offsets;
+  private final IntBuffer sources;
+  private final FloatBuffer probs;
+
+  private TranslationTable(float selfTrans, String[] sourceWords, String[] targetWords,
+                           IntBuffer offsets, IntBuffer sources, FloatBuffer probs) {
+    this.selfTrans = selfTrans;
+    this.sourceLookup = lookup(sourceWords);
+    this.targetLookup = lookup(targetWords);
+    this.numSources = sourceWords.length;
+    this.numTargets = targetWords.length;
+    this.offsets = offsets;
+    this.sources = sources;
+    this.probs = probs;
+  }
+
+  /**
+   * Builds a table from GIZA++ output. Translation probabilities are rescaled with self-translation: every
+   * probability of a non-null source word is discounted by {@code 1 - selfTrans}, and {@code selfTrans} is added to
+   * the probability of a word translating to itself. The arithmetic is that of the original rescaling, in which
+   * {@code selfTrans} is added in double precision, so that probabilities are identical to the last bit.
+   *
+   * @param dir directory with GIZA++ output
+   * @param selfTrans self-translation probability
+   * @return the table
+   * @throws IOException if error encountered reading GIZA++ output
+   */
+  public static TranslationTable fromGiza(Path dir, double selfTrans) throws IOException {
+    String[] sourceWords = readVocab(dir.resolve(SOURCE_VOCAB));
+    if (sourceWords.length == 0) {
+      sourceWords = new String[1];
+    }
+    sourceWords[0] = NULL_WORD;
+    String[] targetWords = readVocab(dir.resolve(TARGET_VOCAB));
+
+    Path tableFile = dir.resolve(GIZA_TABLE);
+    long records = Files.size(tableFile) / 12;
+    if (records > Integer.MAX_VALUE - 8) {
+      throw new IOException(String.format("%s has too many entries (%,d).", tableFile, records));
+    }
+
+    final int n = (int) records;
+    int[] src = new int[n];
+    int[] tgt = new int[n];
+    float[] prob = new float[n];
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tableFile), 1 << 16))) {
+      for (int i = 0; i < n; i++) {
+        src[i] = in.readInt();
+        tgt[i] = in.readInt();
+        prob[i] = in.readFloat();
+        if (src[i] < 0 || src[i] >= sourceWords.length || sourceWords[src[i]] == null) {
+          throw new IOException(String.format("Unknown source word id %d in %s.", src[i], tableFile));
+        }
+        if (tgt[i] < 0 || tgt[i] >= targetWords.length || targetWords[tgt[i]] == null) {
+          throw new IOException(String.format("Unknown target word id %d in %s.", tgt[i], tableFile));
+        }
+      }
+    }
+
+    // Counting sort of the entries by target word; within a target, entries keep their order in the file.
+    int[] rowStart = new int[targetWords.length + 1];
+    for (int i = 0; i < n; i++) {
+      rowStart[tgt[i] + 1]++;
+    }
+    for (int t = 0; t < targetWords.length; t++) {
+      rowStart[t + 1] += rowStart[t];
+    }
+    long[] keys = new long[n];
+    int[] fill = Arrays.copyOf(rowStart, targetWords.length);
+    for (int i = 0; i < n; i++) {
+      // Sort key is the source word, then the position in the file, so the last of duplicate entries wins.
+      keys[fill[tgt[i]]++] = ((long) src[i] << 32) | i;
+    }
+    tgt = null;
+
+    int[] offsets = new int[targetWords.length + 1];
+    int size = 0;
+    for (int t = 0; t < targetWords.length; t++) {
+      offsets[t] = size;
+      Arrays.sort(keys, rowStart[t], rowStart[t + 1]);
+      for (int k = rowStart[t]; k < rowStart[t + 1]; k++) {
+        if (k + 1 < rowStart[t + 1] && (keys[k + 1] >>> 32) == (keys[k] >>> 32)) {
+          continue;
+        }
+        int s = (int) (keys[k] >>> 32);
+        float p = prob[(int) keys[k]];
+        if (s > 0) {
+          p *= (float) (1 - selfTrans);
+        }
+        if (sourceWords[s].equals(targetWords[t])) {
+          p = (float) (p + selfTrans);
+        }
+        // Entries are compacted in place: the write position never overtakes the read position.
+        keys[size++] = ((long) s << 32) | Float.floatToRawIntBits(p);
+      }
+    }
+    offsets[targetWords.length] = size;
+
+    int[] sources = new int[size];
+    float[] probs = new float[size];
+    for (int k = 0; k < size; k++) {
+      sources[k] = (int) (keys[k] >>> 32);
+      probs[k] = Float.intBitsToFloat((int) keys[k]);
+    }
+
+    return new TranslationTable((float) selfTrans, sourceWords, targetWords,
+        IntBuffer.wrap(offsets), IntBuffer.wrap(sources), FloatBuffer.wrap(probs));
+  }
+
+  /**
+   * Loads a table converted with {@link #write}.
+   *
+   * @param file table file
+   * @param mmap whether to memory-map the table instead of reading it onto the heap
+   * @return the table
+   * @throws IOException if error encountered reading the table
+   */
+  public static TranslationTable load(Path file, boolean mmap) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      readFully(channel, header, 0);
+      header.flip();
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException(String.format("%s is not a translation table.", file));
+      }
+      float selfTrans = header.getFloat();
+      int numSources = header.getInt();
+      int numTargets = header.getInt();
+      int size = header.getInt();
+      int vocabBytes = header.getInt();
+
+      ByteBuffer vocab = ByteBuffer.allocate(vocabBytes);
+      readFully(channel, vocab, HEADER_BYTES);
+      String[] sourceWords = new String[numSources];
+      String[] targetWords = new String[numTargets];
+      try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(vocab.array()))) {
+        readWords(in, sourceWords);
+        readWords(in, targetWords);
+      }
+
+      long position = HEADER_BYTES + (long) vocabBytes;
+      IntBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (numTargets + 1)).asIntBuffer();
+      position += 4L * (numTargets + 1);
+      IntBuffer sources = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * size).asIntBuffer();
+      position += 4L * size;
+      FloatBuffer probs = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * size).asFloatBuffer();
+
+      if (!mmap) {
+        int[] o = new int[numTargets + 1];
+        int[] s = new int[size];
+        float[] p = new float[size];
+        offsets.get(o);
+        sources.get(s);
+        probs.get(p);
+        offsets = IntBuffer.wrap(o);
+        sources = IntBuffer.wrap(s);
+        probs = FloatBuffer.wrap(p);
+      }
+
+      return new TranslationTable(selfTrans, sourceWords, targetWords, offsets, sources, probs);
+    }
+  }
+
+  /**
+   * Writes the table to a single file that can be loaded with {@link #load}.
+   *
+   * @param file table file
+   * @throws IOException if error encountered writing the table
+   */
+  public void write(Path file) throws IOException {
+    ByteArrayOutputStream vocab = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(vocab)) {
+      writeWords(out, words(sourceLookup, numSources));
+      writeWords(out, words(targetLookup, numTargets));
+    }
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeFloat(selfTrans);
+      out.writeInt(numSources);
+      out.writeInt(numTargets);
+      out.writeInt(size());
+      out.writeInt(vocab.size());
+      vocab.writeTo(out);
+      for (int t = 0; t <= numTargets; t++) {
+        out.writeInt(offsets.get(t));
+      }
+      for (int k = 0; k < size(); k++) {
+        out.writeInt(sources.get(k));
+      }
+      for (int k = 0; k < size(); k++) {
+        out.writeFloat(probs.get(k));
+      }
+    }
+  }
+
+  public float getSelfTrans() {
+    return selfTrans;
+  }
+
+  /**
+   * Returns the number of (source, target) entries in the table.
+   *
+   * @return number of entries
+   */
+  public int size() {
+    return offsets.get(numTargets);
+  }
+
+  /**
+   * Returns the id of a source (document) word. As in GIZA++, words not in the source vocabulary map to the null word.
+   *
+   * @param word word
+   * @return id of the word, or zero if the word is not in the source vocabulary
+   */
+  public int getSourceId(String word) {
+    return sourceLookup.getOrDefault(word, 0);
+  }
+
+  /**
+   * Returns the id of a target (query) word.
+   *
+   * @param word word
+   * @return id of the word, or -1 if the word is not in the target vocabulary
+   */
+  public int getTargetId(String word) {
+    return targetLookup.getOrDefault(word, -1);
+  }
+
+  /**
+   * Returns the start of the row of a target word, for use with {@link #getProbability}.
+   *
+   * @param targetId target word id
+   * @return start of the row
+   */
+  public int getRowStart(int targetId) {
+    return offsets.get(targetId);
+  }
+
+  /**
+   * Returns the end (exclusive) of the row of a target word, for use with {@link #getProbability}.
+   *
+   * @param targetId target word id
+   * @return end of the row
+   */
+  public int getRowEnd(int targetId) {
+    return offsets.get(targetId + 1);
+  }
+
+  /**
+   * Returns the probability of a source word translating to the target word of a row.
+   *
+   * @param rowStart start of the row, from {@link #getRowStart}
+   * @param rowEnd end of the row, from {@link #getRowEnd}
+   * @param sourceId source word id
+   * @return the translation probability, or zero if there is no entry for the source word
+   */
+  public float getProbability(int rowStart, int rowEnd, int sourceId) {
+    int lo = rowStart;
+    int hi = rowEnd - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int s = sources.get(mid);
+      if (s < sourceId) {
+        lo = mid + 1;
+      } else if (s > sourceId) {
+        hi = mid - 1;
+      } else {
+        return probs.get(mid);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the probability of a source word translating to a target word.
+   *
+   * @param source source word
+   * @param target target word
+   * @return the translation probability, or zero if there is no entry
+   */
+  public float getProbability(String source, String target) {
+    int targetId = getTargetId(target);
+    if (targetId < 0) {
+      return 0;
+    }
+    return getProbability(getRowStart(targetId), getRowEnd(targetId), getSourceId(source));
+  }
+
+  // GIZA++ vocabulary files have lines of the form "id word frequency".
+  private static String[] readVocab(Path file) throws IOException {
+    Map<Integer, String> words = new HashMap<>();
+    int max = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split("\\s");
+        int id = Integer.parseInt(parts[0]);
+        words.put(id, parts[1]);
+        max = Math.max(max, id);
+      }
+    }
+
+    String[] vocab = new String[words.isEmpty() ? 0 : max + 1];
+    words.forEach((id, word) -> vocab[id] = word);
+    return vocab;
+  }
+
+  private static Map<String, Integer> lookup(String[] words) {
+    Map<String, Integer> lookup = new HashMap<>(words.length * 2);
+    for (int i = 0; i < words.length; i++) {
+      if (words[i] != null) {
+        lookup.put(words[i], i);
+      }
+    }
+    return lookup;
+  }
+
+  private static String[] words(Map<String, Integer> lookup, int size) {
+    String[] words = new String[size];
+    lookup.forEach((word, id) -> words[id] = word);
+    return words;
+  }
+
+  // Ids not in the vocabulary are written as null entries, so that ids are preserved.
+  private static void writeWords(DataOutputStream out, String[] words) throws IOException {
+    for (String word : words) {
+      out.writeBoolean(word != null);
+      if (word != null) {
+        out.writeUTF(word);
+      }
+    }
+  }
+
+  private static void readWords(DataInputStream in, String[] words) throws IOException {
+    for (int i = 0; i < words.length; i++) {
+      words[i] = in.readBoolean() ? in.readUTF() : null;
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Truncated translation table.");
+      }
+    }
+  }
+
+  public static class Args {
+    @Option(name = "-input", metaVar = "[path]", required = true,
+        usage = "Directory with GIZA++ output: source.vcb, target.vcb and output.t1.5.bin.")
+    public String input;
+
+    @Option(name = "-output", metaVar = "[file]",
+        usage = "Output file; defaults to output.t1.5.csr in the input directory, where IbmModel1 looks for it.")
+    public String output;
+
+    @Option(name = "-selfTrans", metaVar = "[prob]", usage = "Self-translation probability.")
+    public double selfTrans = IbmModel1.SELF_TRANS;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Args convertArgs = new Args();
+    CmdLineParser parser = new CmdLineParser(convertArgs, ParserProperties.defaults().withUsageWidth(120));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.err.println(String.format("Example: %s %s",
+          TranslationTable.class.getSimpleName(), parser.printExample(OptionHandlerFilter.REQUIRED)));
+      return;
+    }
+
+    Path input = Paths.get(convertArgs.input);
+    Path output = convertArgs.output == null ? input.resolve(COMPACT_TABLE) : Paths.get(convertArgs.output);
+
+    final long start = System.currentTimeMillis();
+    TranslationTable table = fromGiza(input, convertArgs.selfTrans);
+    table.write(output);
+    LOG.info(String.format("Wrote %,d entries (%,d source words, %,d target words) to %s in %d ms.",
+        table.size(), table.numSources, table.numTargets, output, System.currentTimeMillis() - start));
+  }
+}
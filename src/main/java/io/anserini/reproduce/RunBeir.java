@@ -16,15 +16,46 @@
 
 package io.anserini.reproduce;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.ParserProperties;
+
 import io.anserini.reproduce.RunRepro.TrecEvalMetricDefinitions;
 
 public class RunBeir {
 
   public static void main(String[] args) throws Exception {
-    RunRepro repro = new RunRepro("beir", new BeirMetricDefinitions());
+    RunRepro.Args beirArgs = new RunRepro.Args();
+    CmdLineParser parser = new CmdLineParser(beirArgs, ParserProperties.defaults().withUsageWidth(120));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      if (beirArgs.options) {
+        System.err.printf("Options for %s:\n\n", RunBeir.class.getSimpleName());
+        parser.printUsage(System.err);
+
+        List<String> required = new ArrayList<>();
+        parser.getOptions().forEach((option) -> {
+          if (option.option.required()) {
+            required.add(option.option.toString());
+          }
+        });
+
+        System.err.printf("\nRequired options are %s\n", required);
+      } else {
+        System.err.printf("Error: %s. For help, use \"-options\" to print out information about options.\n", e.getMessage());
+      }
+
+      return;
+    }
+
+    RunRepro repro = new RunRepro("beir", new BeirMetricDefinitions(), beirArgs.inProcess, beirArgs.concurrency);
     repro.run();
   }
 
@@ -32,9 +32,7 @@ import org.kohsuke.args4j.ParserProperties;
 import io.anserini.reproduce.RunRepro.TrecEvalMetricDefinitions;
 
 public class RunMsMarco {
-  public static class Args {
-    @Option(name = "-options", usage = "Print information about options.")
-    public Boolean options = false;
+  public static class Args extends RunRepro.Args {
     @Option(name = "-collection", usage = "MS MARCO version {'msmarco-v1-passage' (default), 'msmarco-v2.1'}.")
     public String MsMarcoVersion = "msmarco-v1-passage";
   }
@@ -73,7 +71,8 @@ public class RunMsMarco {
         System.exit(1);
     }
 
-    RunRepro repro = new RunRepro(MsMarcoArgs.MsMarcoVersion, new MsMarcoMetricDefinitions());
+    RunRepro repro = new RunRepro(MsMarcoArgs.MsMarcoVersion, new MsMarcoMetricDefinitions(),
+        MsMarcoArgs.inProcess, MsMarcoArgs.concurrency);
     repro.run();
   }
 
@@ -17,19 +17,37 @@
 package io.anserini.reproduce;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.io.File;
 
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.kohsuke.args4j.Option;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.exc.StreamReadException;
 import com.fasterxml.jackson.databind.DatabindException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
+import io.anserini.eval.TrecEval;
+import io.anserini.index.IndexReaderRegistry;
+
 public class RunRepro {
   // ANSI escape code for red text
   private static final String RED = "\u001B[31m";
@@ -38,12 +56,35 @@ public class RunRepro {
 
   private static final String FAIL = RED + "[FAIL]" + RESET;
 
+  public static class Args {
+    @Option(name = "-options", usage = "Print information about options.")
+    public Boolean options = false;
+
+    @Option(name = "-inProcess", usage = "Run conditions inside this JVM, sharing open indexes, topics and encoders " +
+        "across conditions, rather than forking a JVM per run.")
+    public Boolean inProcess = false;
+
+    @Option(name = "-concurrency", metaVar = "[number]", usage = "Maximum number of runs in progress at once.")
+    public int concurrency = 1;
+  }
+
   private final String COLLECTION;
   private final TrecEvalMetricDefinitions metricDefinitions;
+  private final boolean inProcess;
+  private final int concurrency;
 
   public RunRepro(String collection, TrecEvalMetricDefinitions metrics) {
+    this(collection, metrics, false, 1);
+  }
+
+  public RunRepro(String collection, TrecEvalMetricDefinitions metrics, boolean inProcess, int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Concurrency must be at least 1");
+    }
     COLLECTION = collection;
     metricDefinitions = metrics;
+    this.inProcess = inProcess;
+    this.concurrency = concurrency;
   }
 
   public void run() throws StreamReadException, DatabindException, IOException, InterruptedException, URISyntaxException {
@@ -58,11 +99,32 @@ public class RunRepro {
     Config config = mapper.readValue(RunRepro.class.getClassLoader()
         .getResourceAsStream("reproduce/" + COLLECTION + ".yaml"), Config.class);
 
+    Level level = LogManager.getLogger("io.anserini").getLevel();
+    if (inProcess) {
+      // Readers released by one condition stay open for the next condition on the same index; output of the runs is
+      // kept off the console, as it is when each run is a separate process.
+      IndexReaderRegistry.setMaxIdle(concurrency + 1);
+      Configurator.setLevel("io.anserini", Level.WARN);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    try (TrecEval eval = new TrecEval()) {
+      run(config, fatjarPath, executor, eval);
+    } finally {
+      executor.shutdownNow();
+      if (inProcess) {
+        IndexReaderRegistry.setMaxIdle(0);
+        Configurator.setLevel("io.anserini", level);
+      }
+    }
+  }
+
+  private void run(Config config, String fatjarPath, ExecutorService executor, TrecEval eval) throws InterruptedException {
+    // Runs over the same index are chained, so that at most one of them at a time opens (or downloads) the index and
+    // the others reuse it; chains over different indexes run concurrently, up to the concurrency limit.
+    List<Run> runs = new ArrayList<>();
+    Map<String, List<Run>> chains = new LinkedHashMap<>();
     for (Condition condition : config.conditions) {
-      System.out.println(String.format("# Running condition \"%s\": %s \n", condition.name, condition.display));
       for (Topic topic : condition.topics) {
-        System.out.println("  - topic_key: " + topic.topic_key + "\n");
-
         final String output = String.format("runs/run.%s.%s.%s.txt", COLLECTION, condition.name, topic.topic_key);
 
         final String command = condition.command
@@ -71,58 +133,166 @@ public class RunRepro {
             .replace("$topics", topic.topic_key)
             .replace("$output", output);
 
-        System.out.println("    Running retrieval command: " + command);
-
-        ProcessBuilder pb = new ProcessBuilder(command.split(" "));
-        Process process = pb.start();
-        int resultCode = process.waitFor();
-        if (resultCode == 0) {
-          System.out.println("    Run successfully completed!");
-        } else {
-          System.out.println("    Run failed!");
+        Run run = new Run(condition, topic, output, command);
+        runs.add(run);
+        chains.computeIfAbsent(getIndex(command, runs.size()), k -> new ArrayList<>()).add(run);
+      }
+    }
+    for (List<Run> chain : chains.values()) {
+      executor.submit(() -> {
+        for (Run run : chain) {
+          try {
+            // The searchers report some errors, e.g., a missing index, without failing, so a run that did not write
+            // its output failed; output of an earlier run is removed so that it is not mistaken for this one.
+            Path output = Paths.get(run.output);
+            Files.deleteIfExists(output);
+            boolean succeeded = execute(run.command);
+            if (succeeded && !Files.exists(output)) {
+              throw new IOException("No run written to " + run.output);
+            }
+            run.result.complete(succeeded);
+          } catch (Throwable t) {
+            run.result.completeExceptionally(t);
+          }
         }
-        System.out.println();
+      });
+    }
+
+    Condition previous = null;
+    for (Run run : runs) {
+      if (run.condition != previous) {
+        System.out.println(String.format("# Running condition \"%s\": %s \n", run.condition.name, run.condition.display));
+        previous = run.condition;
+      }
+      Topic topic = run.topic;
+      String output = run.output;
+      System.out.println("  - topic_key: " + topic.topic_key + "\n");
+      System.out.println("    Running retrieval command: " + run.command);
+
+      boolean succeeded;
+      String runError = null;
+      try {
+        succeeded = run.result.get();
+      } catch (ExecutionException e) {
+        succeeded = false;
+        runError = e.getCause().getMessage() != null ? e.getCause().getMessage() : e.getCause().toString();
+      }
+      if (succeeded) {
+        System.out.println("    Run successfully completed!");
+      } else {
+        System.out.println("    Run failed!" + (runError == null ? "" : " (" + runError + ")"));
+      }
+      System.out.println();
 
-        // running the evaluation command
-        Map<String, Map<String, String>> evalCommands = metricDefinitions.getMetricDefinitions().get(COLLECTION);
-        InputStream stdout = null;
+      // running the evaluation command
+      Map<String, Map<String, String>> evalCommands = metricDefinitions.getMetricDefinitions().get(COLLECTION);
 
-        for (Map<String, Double> expected : topic.scores) {
-          for (String metric : expected.keySet()) {
-            String evalKey = topic.eval_key;
-            if (!evalCommands.get(evalKey).containsKey(metric)) {
-              continue; // skip metric unintended to test
-            }
+      for (Map<String, Double> expected : topic.scores) {
+        for (String metric : expected.keySet()) {
+          String evalKey = topic.eval_key;
+          if (!evalCommands.get(evalKey).containsKey(metric)) {
+            continue; // skip metric unintended to test
+          }
+
+          // Evaluated in the JVM, which reads the qrels of each eval key once, rather than with a trec_eval process
+          // per metric.
+          String evalArgs = "$metric $evalKey $output"
+              .replace("$metric", evalCommands.get(evalKey).get(metric))
+              .replace("$evalKey", evalKey)
+              .replace("$output", output);
+
+          String[][] evalOutput;
+          String evalError = null;
+          try {
+            evalOutput = eval.runAndGetOutput(evalArgs.split(" "));
+          } catch (RuntimeException e) {
+            evalOutput = null;
+            evalError = e.getMessage() != null ? e.getMessage() : e.toString();
+          }
+          if (evalOutput != null && evalOutput.length > 0) {
+            double score = Double.parseDouble(evalOutput[evalOutput.length - 1][2]);
+            double delta = Math.abs(score - expected.get(metric));
 
-            String evalCmd = "java -cp $fatjarPath trec_eval $metric $evalKey $output"
-                .replace("$fatjarPath", fatjarPath)
-                .replace("$metric", evalCommands.get(evalKey).get(metric))
-                .replace("$evalKey", evalKey)
-                .replace("$output", output);
-
-            pb = new ProcessBuilder(evalCmd.split(" "));
-            process = pb.start();
-
-            resultCode = process.waitFor();
-            stdout = process.getInputStream();
-            if (resultCode == 0) {
-              String scoreString = new String(stdout.readAllBytes()).replaceAll(".*?(\\d+\\.\\d+)$", "$1").trim();
-              double score = Double.parseDouble(scoreString);
-              double delta = Math.abs(score - expected.get(metric));
-
-              if (delta > 0.00005) {
-                System.out.println(String.format("    %7s: %.4f %s expected %.4f", metric, score, FAIL, expected.get(metric)));
-              } else {
-                System.out.println(String.format("    %7s: %.4f [OK]", metric, score));
-              }
+            if (delta > 0.00005) {
+              System.out.println(String.format("    %7s: %.4f %s expected %.4f", metric, score, FAIL, expected.get(metric)));
             } else {
-              System.out.println("Evaluation command failed for metric: " + metric);
+              System.out.println(String.format("    %7s: %.4f [OK]", metric, score));
             }
+          } else {
+            System.out.println("Evaluation command failed for metric: " + metric +
+                (evalError == null ? "" : " (" + evalError + ")"));
           }
-          System.out.println();
+        }
+        System.out.println();
+      }
+    }
+  }
+
+  // Returns the index a command searches, or a key of its own if the command names none.
+  private static String getIndex(String command, int n) {
+    String[] tokens = command.split(" ");
+    for (int i = 0; i < tokens.length - 1; i++) {
+      if (tokens[i].equals("-index")) {
+        return tokens[i + 1];
+      }
+    }
+    return "#" + n;
+  }
+
+  private boolean execute(String command) throws Exception {
+    String[] tokens = command.split(" ");
+    if (inProcess) {
+      int main = 0;
+      while (main < tokens.length && !tokens[main].startsWith("io.anserini.")) {
+        main++;
+      }
+      // A command may need a JDK module that this JVM was not started with, e.g., jdk.incubator.vector; such runs
+      // still fork, rather than run without the module.
+      boolean modulesPresent = true;
+      for (int i = 0; i < main - 1; i++) {
+        if (tokens[i].equals("--add-modules") && ModuleLayer.boot().findModule(tokens[i + 1]).isEmpty()) {
+          modulesPresent = false;
+        }
+      }
+      if (main < tokens.length && modulesPresent) {
+        try {
+          Class.forName(tokens[main]).getMethod("main", String[].class)
+              .invoke(null, (Object) Arrays.copyOfRange(tokens, main + 1, tokens.length));
+          return true;
+        } catch (InvocationTargetException e) {
+          // What the searcher threw is why the run failed.
+          throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (ReflectiveOperationException e) {
+          return false;
         }
       }
     }
+
+    try {
+      ProcessBuilder pb = new ProcessBuilder(tokens);
+      Process process = pb.start();
+      return process.waitFor() == 0;
+    } catch (IOException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static class Run {
+    private final Condition condition;
+    private final Topic topic;
+    private final String output;
+    private final String command;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    private Run(Condition condition, Topic topic, String output, String command) {
+      this.condition = condition;
+      this.topic = topic;
+      this.output = output;
+      this.command = command;
+    }
   }
 
   public static class Config {
@@ -0,0 +1,283 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.rerank;
+
+import io.anserini.analysis.AnalyzerUtils;
+import io.anserini.index.Constants;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of decoded document vectors (terms and their frequencies, from term vectors or from re-analyzing the
+ * stored raw field), shared across queries by the feedback rerankers. Popular documents appear in the feedback sets
+ * of many queries, and of every configuration in a parameter sweep, so caching saves decoding their vectors again
+ * and again.
+ *
+ * <p>Vectors are stored compactly: an array of terms and a parallel array of frequencies, with terms interned in a
+ * dictionary shared by all vectors, so each occurrence of a term costs a reference rather than a string. The cache
+ * is split into independently-locked stripes, each evicting its least recently used vectors when it exceeds its share
+ * of the memory budget. Vectors are keyed by reader, field and Lucene docid; the cache assumes a single analyzer, as
+ * is the case within one run of {@link io.anserini.search.SearchCollection}.</p>
+ */
+public final class DocumentVectorCache {
+  private static final int STRIPES = 16;
+  // Rough per-entry overhead: key, map entry, vector object and array headers.
+  private static final long ENTRY_BYTES = 160;
+  // Rough overhead of a term in the dictionary: map node, string object and array header.
+  private static final long TERM_BYTES = 80;
+
+  /**
+   * A document vector: terms, in the order in which they were decoded, and their frequencies.
+   */
+  public static final class DocumentVector {
+    private final String[] terms;
+    private final int[] freqs;
+
+    private DocumentVector(String[] terms, int[] freqs) {
+      this.terms = terms;
+      this.freqs = freqs;
+    }
+
+    public int size() {
+      return terms.length;
+    }
+
+    public String getTerm(int i) {
+      return terms[i];
+    }
+
+    public int getFreq(int i) {
+      return freqs[i];
+    }
+
+    private long ramBytesUsed() {
+      return ENTRY_BYTES + 8L * terms.length;
+    }
+  }
+
+  private static final class Key {
+    private final Object reader;
+    private final String field;
+    private final int docid;
+
+    private Key(Object reader, String field, int docid) {
+      this.reader = reader;
+      this.field = field;
+      this.docid = docid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return reader == other.reader && docid == other.docid && field.equals(other.field);
+    }
+
+    @Override
+    public int hashCode() {
+      return (System.identityHashCode(reader) * 31 + field.hashCode()) * 31 + docid;
+    }
+  }
+
+  private final class Stripe extends LinkedHashMap<Key, DocumentVector> {
+    private long bytes = 0;
+
+    Stripe() {
+      super(16, 0.75f, true);
+    }
+
+    synchronized void add(Key key, DocumentVector vector) {
+      DocumentVector previous = put(key, vector);
+      bytes += vector.ramBytesUsed() - (previous == null ? 0 : previous.ramBytesUsed());
+      Iterator<Map.Entry<Key, DocumentVector>> it = entrySet().iterator();
+      while (bytes > maxBytes / STRIPES && it.hasNext()) {
+        DocumentVector evicted = it.next().getValue();
+        it.remove();
+        bytes -= evicted.ramBytesUsed();
+        evictions.increment();
+      }
+    }
+  }
+
+  private final long maxBytes;
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final ConcurrentHashMap<String, String> dictionary = new ConcurrentHashMap<>();
+  private final AtomicLong dictionaryBytes = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxBytes approximate memory budget in bytes, for vectors and for the term dictionary
+   */
+  public DocumentVectorCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Returns the vector of a document, decoding it on a cache miss.
+   *
+   * @param reader index reader
+   * @param field field
+   * @param docid Lucene docid
+   * @param analyzer analyzer for re-analyzing the stored raw field if the document has no term vector
+   * @param parser collection class for parsing the stored raw field, or null
+   * @return the vector, or null if the document has no term vector and the raw field cannot be re-analyzed
+   * @throws IOException if error encountered reading the document
+   */
+  public DocumentVector get(IndexReader reader, String field, int docid, Analyzer analyzer, Class parser)
+      throws IOException {
+    IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+    Key key = new Key(helper == null ? reader : helper.getKey(), field, docid);
+    Stripe stripe = stripes[Math.floorMod(key.hashCode(), STRIPES)];
+
+    DocumentVector vector;
+    synchronized (stripe) {
+      vector = stripe.get(key);
+    }
+    if (vector != null) {
+      hits.increment();
+      return vector;
+    }
+
+    // Decode outside the lock; two threads may decode the same document, which is harmless.
+    misses.increment();
+    vector = read(reader, field, docid, analyzer, parser, this);
+    if (vector != null) {
+      stripe.add(key, vector);
+    }
+    return vector;
+  }
+
+  /**
+   * Decodes the vector of a document, without caching.
+   *
+   * @param reader index reader
+   * @param field field
+   * @param docid Lucene docid
+   * @param analyzer analyzer for re-analyzing the stored raw field if the document has no term vector
+   * @param parser collection class for parsing the stored raw field, or null
+   * @return the vector, or null if the document has no term vector and the raw field cannot be re-analyzed
+   * @throws IOException if error encountered reading the document
+   */
+  public static DocumentVector read(IndexReader reader, String field, int docid, Analyzer analyzer, Class parser)
+      throws IOException {
+    return read(reader, field, docid, analyzer, parser, null);
+  }
+
+  private static DocumentVector read(IndexReader reader, String field, int docid, Analyzer analyzer, Class parser,
+                                     DocumentVectorCache cache) throws IOException {
+    Terms terms = reader.termVectors().get(docid, field);
+    if (terms != null) {
+      int size = (int) terms.size();
+      String[] termArray = new String[size];
+      int[] freqArray = new int[size];
+      TermsEnum termsEnum = terms.iterator();
+      BytesRef text;
+      int i = 0;
+      while ((text = termsEnum.next()) != null) {
+        termArray[i] = cache == null ? text.utf8ToString() : cache.intern(text.utf8ToString());
+        freqArray[i] = (int) termsEnum.totalTermFreq();
+        i++;
+      }
+      return new DocumentVector(termArray, freqArray);
+    }
+
+    if (parser == null) {
+      return null;
+    }
+    Map<String, Long> termFreqMap = AnalyzerUtils.computeDocumentVector(analyzer, parser,
+        reader.storedFields().document(docid).getField(Constants.RAW).stringValue());
+    String[] termArray = new String[termFreqMap.size()];
+    int[] freqArray = new int[termFreqMap.size()];
+    int i = 0;
+    for (Map.Entry<String, Long> entry : termFreqMap.entrySet()) {
+      termArray[i] = cache == null ? entry.getKey() : cache.intern(entry.getKey());
+      freqArray[i] = entry.getValue().intValue();
+      i++;
+    }
+    return new DocumentVector(termArray, freqArray);
+  }
+
+  private String intern(String term) {
+    String canonical = dictionary.putIfAbsent(term, term);
+    if (canonical != null) {
+      return canonical;
+    }
+    // The dictionary only saves memory by sharing strings across vectors, so when it outgrows its share of the
+    // budget, it is simply cleared; cached vectors keep their references.
+    if (dictionaryBytes.addAndGet(TERM_BYTES + 2L * term.length()) > maxBytes / 4) {
+      dictionary.clear();
+      dictionaryBytes.set(0);
+    }
+    return term;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Returns the approximate memory used by the cached vectors and the term dictionary.
+   *
+   * @return memory used in bytes
+   */
+  public long ramBytesUsed() {
+    long bytes = dictionaryBytes.get();
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        bytes += stripe.bytes;
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    long hits = getHits();
+    long lookups = hits + getMisses();
+    return String.format("Document vector cache: %,d lookups, %.1f%% hits, %,d evictions, %.1f MB used of %.1f MB",
+        lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups, getEvictions(),
+        ramBytesUsed() / 1048576.0, maxBytes / 1048576.0);
+  }
+}
@@ -18,7 +18,17 @@ package io.anserini.rerank;
 
 import io.anserini.search.ScoredDocs;
 
+import java.io.IOException;
+
 public interface Reranker<T> {
   ScoredDocs rerank(ScoredDocs docs, RerankerContext<T> context);
   String tag();
+
+  /**
+   * Releases resources held by this reranker (e.g., shared readers on external indexes). Called once, when the
+   * searcher that owns the reranker is closed.
+   *
+   * @throws IOException if error encountered releasing resources
+   */
+  default void close() throws IOException {}
 }
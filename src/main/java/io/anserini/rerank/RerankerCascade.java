@@ -18,6 +18,7 @@ package io.anserini.rerank;
 
 import io.anserini.search.ScoredDocs;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,4 +69,15 @@ public class RerankerCascade {
 
     return results;
   }
+
+  /**
+   * Closes the rerankers in this cascade.
+   *
+   * @throws IOException if error encountered closing a reranker
+   */
+  public void close() throws IOException {
+    for (Reranker reranker : rerankers) {
+      reranker.close();
+    }
+  }
 }
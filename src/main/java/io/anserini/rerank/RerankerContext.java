@@ -17,6 +17,8 @@
 package io.anserini.rerank;
 
 import io.anserini.search.SearchCollection;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 
@@ -36,6 +38,8 @@ public class RerankerContext<K> {
 
   public Map<String, Float> feedbackTerms;
 
+  private DocumentVectorCache documentVectorCache;
+
   public RerankerContext(IndexSearcher searcher, K queryId, Query query, String queryDocId, String queryText,
       List<String> queryTokens, Query filter, SearchCollection.Args searchArgs) throws IOException {
     this.searcher = searcher;
@@ -79,4 +83,36 @@ public class RerankerContext<K> {
   public SearchCollection.Args getSearchArgs() {
     return searchArgs;
   }
+
+  public DocumentVectorCache getDocumentVectorCache() {
+    return documentVectorCache;
+  }
+
+  /**
+   * Sets the cache of document vectors shared across queries, which feedback rerankers draw from.
+   *
+   * @param documentVectorCache cache, or null to decode document vectors on every request
+   * @return this context for method chaining
+   */
+  public RerankerContext<K> setDocumentVectorCache(DocumentVectorCache documentVectorCache) {
+    this.documentVectorCache = documentVectorCache;
+    return this;
+  }
+
+  /**
+   * Returns the vector of a feedback document, from the shared cache if there is one.
+   *
+   * @param reader index reader
+   * @param field field
+   * @param docid Lucene docid
+   * @param analyzer analyzer for re-analyzing the stored raw field if the document has no term vector
+   * @param parser collection class for parsing the stored raw field, or null
+   * @return the vector, or null if the document has no term vector and the raw field cannot be re-analyzed
+   * @throws IOException if error encountered reading the document
+   */
+  public DocumentVectorCache.DocumentVector getDocumentVector(IndexReader reader, String field, int docid,
+                                                             Analyzer analyzer, Class parser) throws IOException {
+    return documentVectorCache == null ? DocumentVectorCache.read(reader, field, docid, analyzer, parser) :
+        documentVectorCache.get(reader, field, docid, analyzer, parser);
+  }
 }
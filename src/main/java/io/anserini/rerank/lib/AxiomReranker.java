@@ -16,13 +16,15 @@
 
 package io.anserini.rerank.lib;
 
-import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.index.Constants;
+import io.anserini.index.IndexReaderRegistry;
 import io.anserini.index.generator.TweetGenerator;
+import io.anserini.rerank.DocumentVectorCache.DocumentVector;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.search.ScoredDocs;
 import io.anserini.search.SearchCollection;
+import io.anserini.search.TieBreakingCollectorManager;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.io.IOUtils;
@@ -31,13 +33,8 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.TermVectors;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
@@ -47,7 +44,6 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
@@ -55,7 +51,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
@@ -69,6 +64,8 @@ import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
 import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_TWEETID;
@@ -116,6 +113,7 @@ public class AxiomReranker<T> implements Reranker<T> {
   // external sources for searching the expansion
   // terms. Typically, we build another index
   // separately and include its information here.
+  private final IndexReader externalReader; // shared reader on the external index, see IndexReaderRegistry
   public static ScoreDoc[] internalDocidsCache; // When enabling the deterministic reranking we could cache all the
   // internal Docids for all queries
   public static List<String> externalDocidsCache; // When enabling the deterministic reranking we can opt to read sorted docids
@@ -147,6 +145,7 @@ public class AxiomReranker<T> implements Reranker<T> {
     this.beta = beta;
     this.originalIndexPath = originalIndexPath;
     this.externalIndexPath = externalIndexPath;
+    this.externalReader = externalIndexPath == null ? null : IndexReaderRegistry.acquire(externalIndexPath);
     this.outputQuery = outputQuery;
     this.searchTweets = searchTweets;
 
@@ -179,7 +178,7 @@ public class AxiomReranker<T> implements Reranker<T> {
       // Select R*M docs from the original ranking list as the reranking pool
       Set<Integer> usedDocs = selectDocs(docs, context);
       // Extract an inverted list from the reranking pool
-      Map<String, Set<Integer>> termInvertedList = extractTerms(usedDocs, context, null);
+      TermIncidence termInvertedList = extractTerms(usedDocs, context, null);
       // Calculate all the terms in the reranking pool and pick top K of them
       Map<String, Double> expandedTermScores = computeTermScore(termInvertedList, context);
 
@@ -237,9 +236,9 @@ public class AxiomReranker<T> implements Reranker<T> {
     if (context.getSearchArgs().arbitraryScoreTieBreak) {
       rs = searcher.search(finalQuery, context.getSearchArgs().hits);
     } else if (context.getSearchArgs().searchTweets) {
-      rs = searcher.search(finalQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_TWEETID, true);
+      rs = TieBreakingCollectorManager.searchBreakingTiesByTweetid(searcher, finalQuery, context.getSearchArgs().hits);
     } else {
-      rs = searcher.search(finalQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_DOCID, true);
+      rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, finalQuery, context.getSearchArgs().hits);
     }
 
     return ScoredDocs.fromTopDocs(rs, searcher);
@@ -276,18 +275,18 @@ public class AxiomReranker<T> implements Reranker<T> {
    * cache.
    */
   private ScoreDoc[] buildInternalDocidsCache(String indexPath, boolean searchTweets) throws IOException {
-    Path index = Paths.get(indexPath);
-    if (!Files.exists(index) || !Files.isDirectory(index) || !Files.isReadable(index)) {
-      throw new IllegalArgumentException(indexPath + " does not exist or is not a directory.");
-    }
-    IndexReader reader = DirectoryReader.open(FSDirectory.open(index));
-    IndexSearcher searcher = new IndexSearcher(reader);
-    if (searchTweets) {
-      return searcher.search(new FieldExistsQuery(TweetGenerator.TweetField.ID_LONG.name), reader.maxDoc(),
-          BREAK_SCORE_TIES_BY_TWEETID).scoreDocs;
+    IndexReader reader = IndexReaderRegistry.acquire(indexPath);
+    try {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      if (searchTweets) {
+        return searcher.search(new FieldExistsQuery(TweetGenerator.TweetField.ID_LONG.name), reader.maxDoc(),
+            BREAK_SCORE_TIES_BY_TWEETID).scoreDocs;
+      }
+      return searcher.search(new FieldExistsQuery(Constants.ID), reader.maxDoc(),
+          BREAK_SCORE_TIES_BY_DOCID).scoreDocs;
+    } finally {
+      IndexReaderRegistry.release(reader);
     }
-    return searcher.search(new FieldExistsQuery(Constants.ID), reader.maxDoc(),
-        BREAK_SCORE_TIES_BY_DOCID).scoreDocs;
   }
 
   /**
@@ -300,13 +299,8 @@ public class AxiomReranker<T> implements Reranker<T> {
    * @return Top ranked ScoredDocuments from searching external index
    */
   private ScoredDocs processExternalContext(ScoredDocs docs, RerankerContext<T> context) throws IOException {
-    if (this.externalIndexPath != null) {
-      Path indexPath = Paths.get(this.externalIndexPath);
-      if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-        throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-      }
-      IndexReader reader = DirectoryReader.open(FSDirectory.open(indexPath));
-      IndexSearcher searcher = new IndexSearcher(reader);
+    if (this.externalReader != null) {
+      IndexSearcher searcher = new IndexSearcher(this.externalReader);
       searcher.setSimilarity(context.getIndexSearcher().getSimilarity());
 
       SearchCollection.Args args = new SearchCollection.Args();
@@ -354,12 +348,8 @@ public class AxiomReranker<T> implements Reranker<T> {
     if (docidSet.size() < targetSize) {
       IndexReader reader;
       IndexSearcher searcher;
-      if (this.externalIndexPath != null) {
-        Path indexPath = Paths.get(this.externalIndexPath);
-        if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-          throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-        }
-        reader = DirectoryReader.open(FSDirectory.open(indexPath));
+      if (this.externalReader != null) {
+        reader = this.externalReader;
         searcher = new IndexSearcher(reader);
       } else {
         searcher = context.getIndexSearcher();
@@ -396,68 +386,38 @@ public class AxiomReranker<T> implements Reranker<T> {
    * @param docIds        The reranking pool, see {@link #selectDocs} for explanations
    * @param context       An instance of RerankerContext
    * @param filterPattern A Regex pattern that terms are collected only they matches the pattern, could be null
-   * @return A Map of <term -> Set<docId>> kind of a small inverted list where the Set of docIds is where the term occurs
+   * @return A small inverted index of the pool, with the documents in which each term occurs as a bitset
    */
-  private Map<String, Set<Integer>> extractTerms(Set<Integer> docIds, RerankerContext<T> context,
-                                                 Pattern filterPattern) throws Exception, IOException {
+  private TermIncidence extractTerms(Set<Integer> docIds, RerankerContext<T> context,
+                                     Pattern filterPattern) throws Exception, IOException {
     IndexReader reader;
     IndexSearcher searcher;
-    if (this.externalIndexPath != null) {
-      Path indexPath = Paths.get(this.externalIndexPath);
-      if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-        throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-      }
-      reader = DirectoryReader.open(FSDirectory.open(indexPath));
+    if (this.externalReader != null) {
+      reader = this.externalReader;
       searcher = new IndexSearcher(reader);
     } else {
       searcher = context.getIndexSearcher();
       reader = searcher.getIndexReader();
     }
-    Map<String, Set<Integer>> termDocidSets = new HashMap<>();
-    StoredFields storedFields = reader.storedFields();
-    TermVectors termVectors = reader.termVectors();
+    TermIncidence.Builder builder = new TermIncidence.Builder(docIds.size());
     for (int docid : docIds) {
-      Terms terms = termVectors.get(docid, Constants.CONTENTS);
-      if (terms == null) {
-        if (parser == null) {
-          LOG.warn("Document vector not stored for docid: " + docid + "\n" +
-                  "Please make sure if provided index have stored doc vectors available or search with input -collection param");
-          continue;
-        }
-        Map<String, Long> termFreqMap = AnalyzerUtils.computeDocumentVector(analyzer, parser,
-            storedFields.document(docid).getField(Constants.RAW).stringValue());
-        for (String term : termFreqMap.keySet()) {
-          // We do some noisy filtering here ... pure empirical heuristic
-          if (term.length() < 2) continue;
-          if (!term.matches("[a-z]+")) continue;
-          if (filterPattern == null || filterPattern.matcher(term).matches()) {
-            if (!termDocidSets.containsKey(term)) {
-              termDocidSets.put(term, new HashSet<>());
-            }
-            termDocidSets.get(term).add(docid);
-          }
-        }
-      } else {
-        TermsEnum te = terms.iterator();
-        if (te == null) {
-          LOG.warn("Document vector not stored for docid: " + docid);
-          continue;
-        }
-        while ((te.next()) != null) {
-          String term = te.term().utf8ToString();
-          // We do some noisy filtering here ... pure empirical heuristic
-          if (term.length() < 2) continue;
-          if (!term.matches("[a-z]+")) continue;
-          if (filterPattern == null || filterPattern.matcher(term).matches()) {
-            if (!termDocidSets.containsKey(term)) {
-              termDocidSets.put(term, new HashSet<>());
-            }
-            termDocidSets.get(term).add(docid);
-          }
+      builder.nextDocument();
+      DocumentVector vector = context.getDocumentVector(reader, Constants.CONTENTS, docid, analyzer, parser);
+      if (vector == null) {
+        LOG.warn("Document vector not stored for docid: " + docid + "\n" +
+                "Please make sure if provided index have stored doc vectors available or search with input -collection param");
+        continue;
+      }
+      for (int i = 0; i < vector.size(); i++) {
+        String term = vector.getTerm(i);
+        // We do some noisy filtering here ... pure empirical heuristic
+        if (!TermIncidence.isCandidate(term)) continue;
+        if (filterPattern == null || filterPattern.matcher(term).matches()) {
+          builder.addTerm(term);
         }
       }
     }
-    return termDocidSets;
+    return builder.build();
   }
 
   /**
@@ -475,12 +435,14 @@ public class AxiomReranker<T> implements Reranker<T> {
    * PriorityQueue, only the top {@code K} are kept.
    * 3. Add the scores of the same term together and pick the top {@code M} ones.
    *
-   * @param termInvertedList A Map of <term -> Set<docId>> where the Set of docIds is where the term occurs
+   * The scores of the reranking pool for different query terms are computed in parallel.
+   *
+   * @param termInvertedList A small inverted index of the reranking pool, see {@link #extractTerms}
    * @param context          An instance of RerankerContext
    * @return Map<String, Double> Top terms and their weight scores in a HashMap
    */
   private Map<String, Double> computeTermScore(
-      Map<String, Set<Integer>> termInvertedList, RerankerContext<T> context) throws IOException {
+      TermIncidence termInvertedList, RerankerContext<T> context) throws IOException {
     class ScoreComparator implements Comparator<Pair<String, Double>> {
       public int compare(Pair<String, Double> a, Pair<String, Double> b) {
         int cmp = Double.compare(b.getRight(), a.getRight());
@@ -494,12 +456,8 @@ public class AxiomReranker<T> implements Reranker<T> {
 
     // get collection statistics so that we can get idf later on.
     IndexReader reader;
-    if (this.externalIndexPath != null) {
-      Path indexPath = Paths.get(this.externalIndexPath);
-      if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-        throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-      }
-      reader = DirectoryReader.open(FSDirectory.open(indexPath));
+    if (this.externalReader != null) {
+      reader = this.externalReader;
     } else {
       IndexSearcher searcher = context.getIndexSearcher();
       reader = searcher.getIndexReader();
@@ -513,15 +471,11 @@ public class AxiomReranker<T> implements Reranker<T> {
       queryTermsCounts.put(qt, queryTermsCounts.getOrDefault(qt, 0) + 1);
     }
 
-    Set<Integer> allDocIds = new HashSet<>();
-    for (Set<Integer> s : termInvertedList.values()) {
-      allDocIds.addAll(s);
-    }
-    int docIdsCount = allDocIds.size();
-
     // Each priority queue corresponds to a query term: The p-queue itself stores all terms
     // in the reranking pool and their reranking scores to the query term.
-    List<PriorityQueue<Pair<String, Double>>> allTermScoresPQ = new ArrayList<>();
+    List<String> scoredTerms = new ArrayList<>();
+    List<Float> scoredIdfs = new ArrayList<>();
+    List<Integer> scoredQtfs = new ArrayList<>();
     for (Map.Entry<String, Integer> q : queryTermsCounts.entrySet()) {
       String queryTerm = q.getKey();
       long df = reader.docFreq(new Term(Constants.CONTENTS, queryTerm));
@@ -530,23 +484,33 @@ public class AxiomReranker<T> implements Reranker<T> {
       }
       float idf = (float) Math.log((1 + docCount) / df);
       int qtf = q.getValue();
-      if (termInvertedList.containsKey(queryTerm)) {
-        PriorityQueue<Pair<String, Double>> termScorePQ = new PriorityQueue<>(new ScoreComparator());
-        double selfMI = computeMutualInformation(termInvertedList.get(queryTerm), termInvertedList.get(queryTerm), docIdsCount);
-        for (Map.Entry<String, Set<Integer>> termEntry : termInvertedList.entrySet()) {
-          double score;
-          if (termEntry.getKey().equals(queryTerm)) { // The mutual information to itself will always be 1
-            score = idf * qtf;
-          } else {
-            double crossMI = computeMutualInformation(termInvertedList.get(queryTerm), termEntry.getValue(), docIdsCount);
-            score = idf * beta * qtf * crossMI / selfMI;
-          }
-          termScorePQ.add(Pair.of(termEntry.getKey(), score));
-        }
-        allTermScoresPQ.add(termScorePQ);
+      if (termInvertedList.getOrdinal(queryTerm) != -1) {
+        scoredTerms.add(queryTerm);
+        scoredIdfs.add(idf);
+        scoredQtfs.add(qtf);
       }
     }
 
+    List<PriorityQueue<Pair<String, Double>>> allTermScoresPQ = IntStream.range(0, scoredTerms.size()).parallel()
+        .mapToObj(i -> {
+          int queryOrdinal = termInvertedList.getOrdinal(scoredTerms.get(i));
+          float idf = scoredIdfs.get(i);
+          int qtf = scoredQtfs.get(i);
+          PriorityQueue<Pair<String, Double>> termScorePQ = new PriorityQueue<>(new ScoreComparator());
+          double selfMI = termInvertedList.getMutualInformation(queryOrdinal, queryOrdinal);
+          for (int t = 0; t < termInvertedList.size(); t++) {
+            double score;
+            if (t == queryOrdinal) { // The mutual information to itself will always be 1
+              score = idf * qtf;
+            } else {
+              double crossMI = termInvertedList.getMutualInformation(queryOrdinal, t);
+              score = idf * beta * qtf * crossMI / selfMI;
+            }
+            termScorePQ.add(Pair.of(termInvertedList.getTerm(t), score));
+          }
+          return termScorePQ;
+        }).collect(Collectors.toList());
+
     Map<String, Double> aggTermScores = new HashMap<>();
     for (PriorityQueue<Pair<String, Double>> termScores : allTermScoresPQ) {
       for (int i = 0; i < Math.min(termScores.size(), Math.max(this.M, this.K)); i++) {
@@ -573,38 +537,11 @@ public class AxiomReranker<T> implements Reranker<T> {
     return resultTermScores;
   }
 
-  private double computeMutualInformation(Set<Integer> docidsX, Set<Integer> docidsY, int totalDocCount) {
-    int x1 = docidsX.size(), y1 = docidsY.size(); //document that x occurres
-    int x0 = totalDocCount - x1, y0 = totalDocCount - y1; //document num that x doesn't occurres
-
-    if (x1 == 0 || x0 == 0 || y1 == 0 || y0 == 0) {
-      return 0;
+  @Override
+  public void close() throws IOException {
+    if (this.externalReader != null) {
+      IndexReaderRegistry.release(this.externalReader);
     }
-
-    float pX0 = 1.0f * x0 / totalDocCount;
-    float pX1 = 1.0f * x1 / totalDocCount;
-    float pY0 = 1.0f * y0 / totalDocCount;
-    float pY1 = 1.0f * y1 / totalDocCount;
-
-    //get the intersection of docIds
-    Set<Integer> docidsXClone = new HashSet<>(docidsX); // directly operate on docidsX will change it permanently
-    docidsXClone.retainAll(docidsY);
-    int numXY11 = docidsXClone.size();
-    int numXY10 = numXY10 = x1 - numXY11;    //doc num that x occurs but y doesn't
-    int numXY01 = y1 - numXY11;    // doc num that y occurs but x doesn't
-    int numXY00 = totalDocCount - numXY11 - numXY10 - numXY01; //doc num that neither x nor y occurs
-
-    float pXY11 = 1.0f * numXY11 / totalDocCount;
-    float pXY10 = 1.0f * numXY10 / totalDocCount;
-    float pXY01 = 1.0f * numXY01 / totalDocCount;
-    float pXY00 = 1.0f * numXY00 / totalDocCount;
-
-    double m00 = 0, m01 = 0, m10 = 0, m11 = 0;
-    if (pXY00 != 0) m00 = pXY00 * Math.log(pXY00 / (pX0 * pY0));
-    if (pXY01 != 0) m01 = pXY01 * Math.log(pXY01 / (pX0 * pY1));
-    if (pXY10 != 0) m10 = pXY10 * Math.log(pXY10 / (pX1 * pY0));
-    if (pXY11 != 0) m11 = pXY11 * Math.log(pXY11 / (pX1 * pY1));
-    return m00 + m10 + m01 + m11;
   }
 
   @Override
@@ -16,18 +16,17 @@
 
 package io.anserini.rerank.lib;
 
-import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.index.Constants;
+import io.anserini.rerank.DocumentVectorCache.DocumentVector;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.search.ScoredDocs;
+import io.anserini.search.TieBreakingCollectorManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
@@ -36,7 +35,6 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.BM25Similarity;
-import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -48,9 +46,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
-import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_TWEETID;
-
 class BM25PrfSimilarity extends BM25Similarity {
 
   BM25PrfSimilarity(float k1, float b) {
@@ -102,7 +97,7 @@ public class BM25PrfReranker implements Reranker {
     searcher.setSimilarity(new BM25PrfSimilarity(k1, b));
 
     boolean useRf = (context.getSearchArgs().rf_qrels != null);
-    PrfFeatures fv = expandQuery((List<String>) context.getQueryTokens(), docs, reader, useRf);
+    PrfFeatures fv = expandQuery((List<String>) context.getQueryTokens(), docs, reader, context, useRf);
     Query newQuery = fv.toQuery();
 
     if (this.outputQuery) {
@@ -119,9 +114,9 @@ public class BM25PrfReranker implements Reranker {
       if (context.getSearchArgs().arbitraryScoreTieBreak) {
         rs = searcher.search(newQuery, context.getSearchArgs().hits);
       } else if (context.getSearchArgs().searchTweets) {
-        rs = searcher.search(newQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_TWEETID, true);
+        rs = TieBreakingCollectorManager.searchBreakingTiesByTweetid(searcher, newQuery, context.getSearchArgs().hits);
       } else {
-        rs = searcher.search(newQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_DOCID, true);
+        rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, newQuery, context.getSearchArgs().hits);
       }
     } catch (IOException e) {
       e.printStackTrace();
@@ -131,7 +126,8 @@ public class BM25PrfReranker implements Reranker {
     return ScoredDocs.fromTopDocs(rs, searcher);
   }
 
-  private PrfFeatures expandQuery(List<String> originalTerms, ScoredDocs docs, IndexReader reader, boolean useRf) {
+  private PrfFeatures expandQuery(List<String> originalTerms, ScoredDocs docs, IndexReader reader,
+                                  RerankerContext context, boolean useRf) {
     PrfFeatures newFeatures = new PrfFeatures();
 
     Set<String> vocab = new HashSet<>();
@@ -150,20 +146,13 @@ public class BM25PrfReranker implements Reranker {
         if (useRf && docs.scores[i] <= 0) {
           continue;
         }
-        Terms terms = reader.termVectors().get(docs.lucene_docids[i], field);
-        if (terms != null) {
-          Set<String> termsStr = getTermsStr(terms);
-          docToTermsMap.put(docs.lucene_docids[i], termsStr);
-          vocab.addAll(termsStr);
-        } else {
-          if (parser == null) {
-            throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
-          }
-          Map<String, Long> termFreqMap = AnalyzerUtils.computeDocumentVector(analyzer, parser,
-              reader.storedFields().document(docs.lucene_docids[i]).getField(Constants.RAW).stringValue());
-          docToTermsMap.put(docs.lucene_docids[i], termFreqMap.keySet());
-          vocab.addAll(termFreqMap.keySet());
+        DocumentVector vector = context.getDocumentVector(reader, field, docs.lucene_docids[i], analyzer, parser);
+        if (vector == null) {
+          throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
         }
+        Set<String> termsStr = getTermsStr(vector);
+        docToTermsMap.put(docs.lucene_docids[i], termsStr);
+        vocab.addAll(termsStr);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -226,22 +215,10 @@ public class BM25PrfReranker implements Reranker {
     return "BM25PRF(fbDocs=" + fbDocs + ",fbTerms=" + fbTerms + ",k1=" + k1 + ",b=" + b + ",newTermWeight=" + newTermWeight;
   }
 
-  private Set<String> getTermsStr(Terms terms) {
+  private Set<String> getTermsStr(DocumentVector vector) {
     Set<String> termsStr = new HashSet<>();
-
-    try {
-      TermsEnum termsEnum = terms.iterator();
-
-      BytesRef text;
-      while ((text = termsEnum.next()) != null) {
-        String term = text.utf8ToString();
-        termsStr.add(term);
-
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-      // Return empty feature vector
-      return termsStr;
+    for (int i = 0; i < vector.size(); i++) {
+      termsStr.add(vector.getTerm(i));
     }
 
     return termsStr;
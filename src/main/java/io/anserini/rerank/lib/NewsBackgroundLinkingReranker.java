@@ -16,19 +16,18 @@
 
 package io.anserini.rerank.lib;
 
-import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.index.Constants;
 import io.anserini.index.IndexReaderUtils;
+import io.anserini.index.SimHash;
+import io.anserini.rerank.DocumentVectorCache.DocumentVector;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.search.ScoredDocs;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.StoredFields;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,17 +41,29 @@ import static io.anserini.index.generator.WashingtonPostGenerator.WashingtonPost
  * TREC News Track Background Linking task postprocessing.
  * Near-duplicate documents (similar/same with the query docid) will be removed by comparing
  * their cosine similarity with the query docid.
+ *
+ * Near-duplicates within the results are found either by comparing every pair of documents, or, with LSH, by
+ * comparing only the pairs whose SimHash sketches fall into a common bucket (see SimHashBuckets), which takes
+ * roughly linear time but may miss a small fraction of the pairs near the similarity threshold.
  */
 public class NewsBackgroundLinkingReranker implements Reranker {
+  private static final double DUPLICATE_THRESHOLD = 0.9;
+
   private final Analyzer analyzer;
   private final Class parser;
+  private final boolean lsh;
 
   public NewsBackgroundLinkingReranker(Analyzer analyzer, Class parser) {
+    this(analyzer, parser, false);
+  }
+
+  public NewsBackgroundLinkingReranker(Analyzer analyzer, Class parser, boolean lsh) {
     assert analyzer != null;
     assert parser != null;
 
     this.analyzer = analyzer;
     this.parser = parser;
+    this.lsh = lsh;
   }
 
   @Override
@@ -62,25 +73,34 @@ public class NewsBackgroundLinkingReranker implements Reranker {
 
     IndexReader reader = context.getIndexSearcher().getIndexReader();
     String queryDocId = context.getQueryDocId();
-    final Map<String, Long> queryTermsMap = convertDocVectorToMap(reader, queryDocId);
+    final Map<String, Long> queryTermsMap = convertDocVectorToMap(reader, context, queryDocId);
 
     List<Map<String, Long>> docsVectorsMap = new ArrayList<>();
     for (int i = 0; i < docs.lucene_documents.length; i++) {
-      String docid = docs.lucene_documents[i].getField(Constants.ID).stringValue();
-      docsVectorsMap.add(convertDocVectorToMap(reader, docid));
+      docsVectorsMap.add(convertDocVectorToMap(reader, context, docs.lucene_docids[i]));
     }
 
     // remove the duplicates: 1. the same doc with the query doc 2. duplicated docs in the results
+    SimHashBuckets buckets = lsh ? new SimHashBuckets(getSketches(reader, docs, docsVectorsMap)) : null;
     Set<Integer> toRemove = new HashSet<>();
     for (int i = 0; i < docs.lucene_documents.length; i++) {
       if (toRemove.contains(i)) continue;
-      if (computeCosineSimilarity(queryTermsMap, docsVectorsMap.get(i)) >= 0.9) {
+      if (computeCosineSimilarity(queryTermsMap, docsVectorsMap.get(i)) >= DUPLICATE_THRESHOLD) {
         toRemove.add(i);
         continue;
       }
-      for (int j = i + 1; j < docs.lucene_documents.length; j++) {
-        if (computeCosineSimilarity(docsVectorsMap.get(i), docsVectorsMap.get(j)) >= 0.9) {
-          toRemove.add(j);
+      if (buckets != null) {
+        // Only the candidates from the LSH buckets are verified with the exact similarity.
+        for (int j : buckets.getCandidates(i)) {
+          if (computeCosineSimilarity(docsVectorsMap.get(i), docsVectorsMap.get(j)) >= DUPLICATE_THRESHOLD) {
+            toRemove.add(j);
+          }
+        }
+      } else {
+        for (int j = i + 1; j < docs.lucene_documents.length; j++) {
+          if (computeCosineSimilarity(docsVectorsMap.get(i), docsVectorsMap.get(j)) >= DUPLICATE_THRESHOLD) {
+            toRemove.add(j);
+          }
         }
       }
     }
@@ -121,26 +141,24 @@ public class NewsBackgroundLinkingReranker implements Reranker {
     return scoredDocs;
   }
 
-  private Map<String, Long> convertDocVectorToMap(IndexReader reader, String docid) {
+  private Map<String, Long> convertDocVectorToMap(IndexReader reader, RerankerContext context, String docid) {
+    try {
+      return convertDocVectorToMap(reader, context, IndexReaderUtils.convertDocidToLuceneDocid(reader, docid));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+    return new HashMap<>();
+  }
+
+  private Map<String, Long> convertDocVectorToMap(IndexReader reader, RerankerContext context, int luceneDocid) {
     Map<String, Long> m = new HashMap<>();
     try {
-      StoredFields storedFields = reader.storedFields();
-      Terms terms = reader.termVectors().get(
-          IndexReaderUtils.convertDocidToLuceneDocid(reader, docid), Constants.CONTENTS);
-      if (terms != null) {
-        TermsEnum it = terms.iterator();
-        while (it.next() != null) {
-          String term = it.term().utf8ToString();
-          long tf = it.totalTermFreq();
-          m.put(term, tf);
-        }
-      } else {
-        if (parser == null) {
-          throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
-        }
-        Map<String, Long> termFreqMap = AnalyzerUtils.computeDocumentVector(analyzer, parser,
-            storedFields.document(IndexReaderUtils.convertDocidToLuceneDocid(reader, docid)).getField(Constants.RAW).stringValue());
-        return termFreqMap;
+      DocumentVector vector = context.getDocumentVector(reader, Constants.CONTENTS, luceneDocid, analyzer, parser);
+      if (vector == null) {
+        throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
+      }
+      for (int i = 0; i < vector.size(); i++) {
+        m.put(vector.getTerm(i), (long) vector.getFreq(i));
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -148,6 +166,21 @@ public class NewsBackgroundLinkingReranker implements Reranker {
     return m;
   }
 
+  // Sketches stored at indexing time if available, otherwise computed from the document vectors.
+  private List<long[]> getSketches(IndexReader reader, ScoredDocs docs, List<Map<String, Long>> docsVectorsMap) {
+    List<long[]> sketches = new ArrayList<>();
+    for (int i = 0; i < docs.lucene_documents.length; i++) {
+      long[] sketch = null;
+      try {
+        sketch = SimHash.read(reader, docs.lucene_docids[i]);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      sketches.add(sketch != null ? sketch : SimHash.compute(docsVectorsMap.get(i)));
+    }
+    return sketches;
+  }
+
   private double dotProduct(Map<String, Long> profile1, Map<String, Long> profile2) {
     // Loop over the smallest map
     Map<String, Long> small_profile = profile2;
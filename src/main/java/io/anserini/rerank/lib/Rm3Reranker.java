@@ -16,19 +16,18 @@
 
 package io.anserini.rerank.lib;
 
-import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.index.Constants;
+import io.anserini.rerank.DocumentVectorCache.DocumentVector;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.search.ScoredDocs;
+import io.anserini.search.TieBreakingCollectorManager;
 import io.anserini.util.FeatureVector;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
@@ -36,7 +35,6 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -47,9 +45,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
-import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_TWEETID;
-
 public class Rm3Reranker implements Reranker {
   private static final Logger LOG = LogManager.getLogger(Rm3Reranker.class);
 
@@ -85,7 +80,7 @@ public class Rm3Reranker implements Reranker {
     FeatureVector qfv = FeatureVector.fromTerms(context.getQueryTokens()).scaleToUnitL1Norm();
 
     boolean useRf = (context.getSearchArgs().rf_qrels != null);
-    FeatureVector rm = estimateRelevanceModel(docs, reader, context.getSearchArgs().searchTweets, useRf);
+    FeatureVector rm = estimateRelevanceModel(docs, reader, context, context.getSearchArgs().searchTweets, useRf);
 
     rm = FeatureVector.interpolate(qfv, rm, originalQueryWeight);
 
@@ -126,9 +121,9 @@ public class Rm3Reranker implements Reranker {
       if (context.getSearchArgs().arbitraryScoreTieBreak) {
         rs = searcher.search(finalQuery, context.getSearchArgs().hits);
       } else if (context.getSearchArgs().searchTweets) {
-        rs = searcher.search(finalQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_TWEETID, true);
+        rs = TieBreakingCollectorManager.searchBreakingTiesByTweetid(searcher, finalQuery, context.getSearchArgs().hits);
       } else {
-        rs = searcher.search(finalQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_DOCID, true);
+        rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, finalQuery, context.getSearchArgs().hits);
       }
     } catch (IOException e) {
       e.printStackTrace();
@@ -138,7 +133,8 @@ public class Rm3Reranker implements Reranker {
     return ScoredDocs.fromTopDocs(rs, searcher);
   }
 
-  private FeatureVector estimateRelevanceModel(ScoredDocs docs, IndexReader reader, boolean tweetsearch, boolean useRf) {
+  private FeatureVector estimateRelevanceModel(ScoredDocs docs, IndexReader reader, RerankerContext context,
+                                               boolean tweetsearch, boolean useRf) {
     FeatureVector f = new FeatureVector();
 
     Set<String> vocab = new HashSet<>();
@@ -156,18 +152,11 @@ public class Rm3Reranker implements Reranker {
         continue;
       }
       try {
-        FeatureVector docVector;
-        Terms terms = reader.termVectors().get(docs.lucene_docids[i], field);
-        if (terms != null) {
-          docVector = createdFeatureVector(terms, reader, tweetsearch);
-        } else {
-          if (parser == null) {
-            throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
-          }
-          Map<String, Long> termFreqMap = AnalyzerUtils.computeDocumentVector(analyzer, parser,
-              reader.storedFields().document(docs.lucene_docids[i]).getField(Constants.RAW).stringValue());
-          docVector = createdFeatureVectorOnTheFly(termFreqMap, reader, tweetsearch);
+        DocumentVector vector = context.getDocumentVector(reader, field, docs.lucene_docids[i], analyzer, parser);
+        if (vector == null) {
+          throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
         }
+        FeatureVector docVector = createdFeatureVector(vector, reader, tweetsearch);
 
         docVector.pruneToSize(fbTerms);
         vocab.addAll(docVector.getFeatures());
@@ -205,16 +194,13 @@ public class Rm3Reranker implements Reranker {
     return f;
   }
 
-  private FeatureVector createdFeatureVector(Terms terms, IndexReader reader, boolean tweetsearch) {
+  private FeatureVector createdFeatureVector(DocumentVector vector, IndexReader reader, boolean tweetsearch) {
     FeatureVector f = new FeatureVector();
 
     try {
       int numDocs = reader.numDocs();
-      TermsEnum termsEnum = terms.iterator();
-
-      BytesRef text;
-      while ((text = termsEnum.next()) != null) {
-        String term = text.utf8ToString();
+      for (int i = 0; i < vector.size(); i++) {
+        String term = vector.getTerm(i);
 
         if (term.length() < 2 || term.length() > 20) continue;
         if (this.filterTerms && !term.matches("[a-z0-9]+")) continue;
@@ -263,71 +249,7 @@ public class Rm3Reranker implements Reranker {
           }
         } else if (ratio > 0.1f) continue;
 
-        int freq = (int) termsEnum.totalTermFreq();
-        f.addFeatureValue(term, (float) freq);
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-      // Return empty feature vector
-      return f;
-    }
-
-    return f;
-  }
-
-  private FeatureVector createdFeatureVectorOnTheFly(Map<String, Long> terms, IndexReader reader, boolean tweetsearch) {
-    FeatureVector f = new FeatureVector();
-
-    try {
-      int numDocs = reader.numDocs();
-      for (String term : terms.keySet()) {
-        if (term.length() < 2 || term.length() > 20) continue;
-        if (this.filterTerms && !term.matches("[a-z0-9]+")) continue;
-
-        // This seemingly arbitrary logic needs some explanation. See following PR for details:
-        //   https://github.com/castorini/Anserini/pull/289
-        //
-        // We have long known that stopwords have a big impact in RM3. If we include stopwords
-        // in feedback, effectiveness is affected negatively. In the previous implementation, we
-        // built custom stopwords lists by selecting top k terms from the collection. We only
-        // had two stopwords lists, for gov2 and for Twitter. The gov2 list is used on all
-        // collections other than Twitter.
-        //
-        // The logic below instead uses a df threshold: If a term appears in more than n percent
-        // of the documents, then it is discarded as a feedback term. This heuristic has the
-        // advantage of getting rid of collection-specific stopwords lists, but at the cost of
-        // introducing an additional tuning parameter.
-        //
-        // Cognizant of the dangers of (essentially) tuning on test data, here's what I
-        // (@lintool) did:
-        //
-        // + For newswire collections, I picked a number, 10%, that seemed right. This value
-        //   actually increased effectiveness in most conditions across all newswire collections.
-        //
-        // + This 10% value worked fine on web collections; effectiveness didn't change much.
-        //
-        // Since this was the first and only heuristic value I selected, we're not really tuning
-        // parameters.
-        //
-        // The 10% threshold, however, doesn't work well on tweets because tweets are much
-        // shorter. Based on a list terms in the collection by df: For the Tweets2011 collection,
-        // I found a threshold close to a nice round number that approximated the length of the
-        // current stopwords list, by eyeballing the df values. This turned out to be 1%. I did
-        // this again for the Tweets2013 collection, using the same approach, and obtained a value
-        // of 0.7%.
-        //
-        // With both values, we obtained effectiveness pretty close to the old values with the
-        // custom stopwords list.
-        int df = reader.docFreq(new Term(Constants.CONTENTS, term));
-        float ratio = (float) df / numDocs;
-        if (tweetsearch) {
-          if (numDocs > 100000000) { // Probably Tweets2013
-            if (ratio > 0.007f) continue;
-          } else {
-            if (ratio > 0.01f) continue;
-          }
-        } else if (ratio > 0.1f) continue;
-        f.addFeatureValue(term, (float) terms.get(term));
+        f.addFeatureValue(term, (float) vector.getFreq(i));
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -18,18 +18,17 @@ package io.anserini.rerank.lib;
 
 import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.index.Constants;
+import io.anserini.rerank.DocumentVectorCache.DocumentVector;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.search.ScoredDocs;
+import io.anserini.search.TieBreakingCollectorManager;
 import io.anserini.util.FeatureVector;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
@@ -37,7 +36,6 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -47,8 +45,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
-
 public class RocchioReranker implements Reranker {
   private static final Logger LOG = LogManager.getLogger(RocchioReranker.class);
 
@@ -100,7 +96,7 @@ public class RocchioReranker implements Reranker {
     boolean relevantFlag;
     try {
       relevantFlag = true;
-      meanRelevantDocumentVector = computeMeanOfDocumentVectors(docs, reader, context.getSearchArgs().searchTweets, topFbTerms, topFbDocs, relevantFlag);
+      meanRelevantDocumentVector = computeMeanOfDocumentVectors(docs, reader, context, context.getSearchArgs().searchTweets, topFbTerms, topFbDocs, relevantFlag);
     } catch (IOException e) {
       // If we run into any issues, just return the original results - as if we never performed feedback.
       e.printStackTrace();
@@ -112,7 +108,7 @@ public class RocchioReranker implements Reranker {
     if (useNegative != false) {
       try {
         relevantFlag = false;
-        meanNonRelevantDocumentVector = computeMeanOfDocumentVectors(docs, reader, context.getSearchArgs().searchTweets, bottomFbTerms, bottomFbDocs, relevantFlag);
+        meanNonRelevantDocumentVector = computeMeanOfDocumentVectors(docs, reader, context, context.getSearchArgs().searchTweets, bottomFbTerms, bottomFbDocs, relevantFlag);
       } catch (IOException e) {
         // If we run into any issues, just return the original results - as if we never performed feedback.
         e.printStackTrace();
@@ -160,7 +156,7 @@ public class RocchioReranker implements Reranker {
       if (context.getSearchArgs().arbitraryScoreTieBreak) {
         results = searcher.search(finalQuery, context.getSearchArgs().hits);
       } else {
-        results = searcher.search(finalQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_DOCID, true);
+        results = TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, finalQuery, context.getSearchArgs().hits);
       }
     } catch (IOException e) {
       e.printStackTrace();
@@ -170,16 +166,14 @@ public class RocchioReranker implements Reranker {
     return ScoredDocs.fromTopDocs(results, searcher);
   }
 
-  private FeatureVector computeMeanOfDocumentVectors(ScoredDocs docs, IndexReader reader, boolean tweetsearch, int fbTerms, int fbDocs, boolean relevantFlag) throws IOException, NullPointerException {
+  private FeatureVector computeMeanOfDocumentVectors(ScoredDocs docs, IndexReader reader, RerankerContext context, boolean tweetsearch, int fbTerms, int fbDocs, boolean relevantFlag) throws IOException, NullPointerException {
     FeatureVector f = new FeatureVector();
 
     Set<String> vocab = new HashSet<>();
     int numdocs;
-    FeatureVector docVector;
     numdocs = docs.lucene_documents.length < fbDocs ? docs.lucene_documents.length : fbDocs;
 
     List<FeatureVector> docvectors = new ArrayList<>();
-    StoredFields storedFields = reader.storedFields();
     for (int i = 0; i < numdocs; i++) {
       int docid;
       if (relevantFlag) {
@@ -187,17 +181,11 @@ public class RocchioReranker implements Reranker {
       } else {
         docid = docs.lucene_docids[docs.lucene_docids.length - i - 1];
       }
-      Terms terms = reader.termVectors().get(docid, field);
-      if (terms != null) {
-        docVector = createDocumentVector(terms, reader, tweetsearch);
-      } else {
-        if (parser == null) {
-          throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
-        }
-        Map<String, Long> termFreqMap = AnalyzerUtils.computeDocumentVector(analyzer, parser,
-            storedFields.document(docid).getField(Constants.RAW).stringValue());
-        docVector = createDocumentVectorOnTheFly(termFreqMap, reader, tweetsearch);
+      DocumentVector vector = context.getDocumentVector(reader, field, docid, analyzer, parser);
+      if (vector == null) {
+        throw new NullPointerException("Please provide an index with stored doc vectors or input -collection param");
       }
+      FeatureVector docVector = createDocumentVector(vector, reader, tweetsearch);
       vocab.addAll(docVector.getFeatures());
       docvectors.add(docVector);
     }
@@ -228,14 +216,12 @@ public class RocchioReranker implements Reranker {
     return f;
   }
 
-  private FeatureVector createDocumentVector(Terms terms, IndexReader reader, boolean tweetsearch) throws IOException {
+  private FeatureVector createDocumentVector(DocumentVector vector, IndexReader reader, boolean tweetsearch) throws IOException {
     FeatureVector f = new FeatureVector();
-    BytesRef text;
 
     int numDocs = reader.numDocs();
-    TermsEnum termsEnum = terms.iterator();
-    while ((text = termsEnum.next()) != null) {
-      String term = text.utf8ToString();
+    for (int i = 0; i < vector.size(); i++) {
+      String term = vector.getTerm(i);
 
       // We're using similar heuristics as in the RM3 implementation. See comments there.
       if (term.length() < 2 || term.length() > 20) continue;
@@ -249,30 +235,7 @@ public class RocchioReranker implements Reranker {
         }
       } else if (ratio > 0.1f) continue;
 
-      f.addFeatureValue(term, (float) termsEnum.totalTermFreq());
-    }
-
-    return f;
-  }
-
-  private FeatureVector createDocumentVectorOnTheFly(Map<String, Long> terms, IndexReader reader, boolean tweetsearch) throws IOException {
-    FeatureVector f = new FeatureVector();
-
-    int numDocs = reader.numDocs();
-    for (String term : terms.keySet()) {
-      // We're using similar heuristics as in the RM3 implementation. See comments there.
-      if (term.length() < 2 || term.length() > 20) continue;
-      int df = reader.docFreq(new Term(Constants.CONTENTS, term));
-      float ratio = (float) df / numDocs;
-      if (tweetsearch) {
-        if (numDocs > 100000000) {
-          if (ratio > 0.007f) continue;
-        } else {
-          if (ratio > 0.01f) continue;
-        }
-      } else if (ratio > 0.1f) continue;
-
-      f.addFeatureValue(term, (float) terms.get(term));
+      f.addFeatureValue(term, (float) vector.getFreq(i));
     }
 
     return f;
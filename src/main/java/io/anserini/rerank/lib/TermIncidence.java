@@ -0,0 +1,242 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.rerank.lib;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Term-document incidence over a small pool of documents (e.g., the reranking pool of {@link AxiomReranker}), with
+ * one dense bitset per term over the documents of the pool. The number of documents in which two terms co-occur is
+ * the population count of the AND of their bitsets, so computing the mutual information of a pair of terms takes
+ * a handful of word operations rather than a set intersection. Instances are immutable once built, and safe to
+ * query from multiple threads.
+ */
+final class TermIncidence {
+  private final List<String> terms;
+  private final Map<String, Integer> ordinals;
+  private final long[][] bits;
+  private final int[] docFreqs;
+  private final int docCount;
+
+  private TermIncidence(List<String> terms, Map<String, Integer> ordinals, long[][] bits, int docCount) {
+    this.terms = terms;
+    this.ordinals = ordinals;
+    this.bits = bits;
+    this.docCount = docCount;
+    this.docFreqs = new int[bits.length];
+    for (int t = 0; t < bits.length; t++) {
+      for (long word : bits[t]) {
+        docFreqs[t] += Long.bitCount(word);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of distinct terms.
+   *
+   * @return number of terms
+   */
+  public int size() {
+    return terms.size();
+  }
+
+  public String getTerm(int ordinal) {
+    return terms.get(ordinal);
+  }
+
+  /**
+   * Returns the ordinal of a term.
+   *
+   * @param term term
+   * @return ordinal of the term, or -1 if the term does not occur in the pool
+   */
+  public int getOrdinal(String term) {
+    return ordinals.getOrDefault(term, -1);
+  }
+
+  /**
+   * Returns the number of documents in the pool that contain at least one term.
+   *
+   * @return number of documents
+   */
+  public int getDocCount() {
+    return docCount;
+  }
+
+  public int getDocFreq(int ordinal) {
+    return docFreqs[ordinal];
+  }
+
+  /**
+   * Returns the number of documents in the pool that contain both terms.
+   *
+   * @param x ordinal of the first term
+   * @param y ordinal of the second term
+   * @return number of documents
+   */
+  public int getCooccurrence(int x, int y) {
+    long[] bx = bits[x];
+    long[] by = bits[y];
+    int count = 0;
+    for (int i = 0; i < bx.length; i++) {
+      count += Long.bitCount(bx[i] & by[i]);
+    }
+    return count;
+  }
+
+  /**
+   * Computes the mutual information of the occurrence of two terms in the documents of the pool.
+   *
+   * @param x ordinal of the first term
+   * @param y ordinal of the second term
+   * @return mutual information
+   */
+  public double getMutualInformation(int x, int y) {
+    int totalDocCount = docCount;
+    int x1 = docFreqs[x], y1 = docFreqs[y]; // documents in which x (y) occurs
+    int x0 = totalDocCount - x1, y0 = totalDocCount - y1; // documents in which x (y) does not occur
+
+    if (x1 == 0 || x0 == 0 || y1 == 0 || y0 == 0) {
+      return 0;
+    }
+
+    float pX0 = 1.0f * x0 / totalDocCount;
+    float pX1 = 1.0f * x1 / totalDocCount;
+    float pY0 = 1.0f * y0 / totalDocCount;
+    float pY1 = 1.0f * y1 / totalDocCount;
+
+    int numXY11 = x == y ? x1 : getCooccurrence(x, y);
+    int numXY10 = x1 - numXY11; // documents in which x occurs but y does not
+    int numXY01 = y1 - numXY11; // documents in which y occurs but x does not
+    int numXY00 = totalDocCount - numXY11 - numXY10 - numXY01; // documents in which neither x nor y occurs
+
+    float pXY11 = 1.0f * numXY11 / totalDocCount;
+    float pXY10 = 1.0f * numXY10 / totalDocCount;
+    float pXY01 = 1.0f * numXY01 / totalDocCount;
+    float pXY00 = 1.0f * numXY00 / totalDocCount;
+
+    double m00 = 0, m01 = 0, m10 = 0, m11 = 0;
+    if (pXY00 != 0) m00 = pXY00 * Math.log(pXY00 / (pX0 * pY0));
+    if (pXY01 != 0) m01 = pXY01 * Math.log(pXY01 / (pX0 * pY1));
+    if (pXY10 != 0) m10 = pXY10 * Math.log(pXY10 / (pX1 * pY0));
+    if (pXY11 != 0) m11 = pXY11 * Math.log(pXY11 / (pX1 * pY1));
+    return m00 + m10 + m01 + m11;
+  }
+
+  /**
+   * Whether a term is worth considering as an expansion term: at least two characters, all lowercase ASCII letters.
+   * This is an empirical heuristic for filtering out noise such as numbers, and is equivalent to (but, unlike
+   * {@link String#matches}, does not compile a regex for every call) {@code term.length() >= 2 && term.matches("[a-z]+")}.
+   *
+   * @param term term
+   * @return whether the term is a candidate
+   */
+  public static boolean isCandidate(CharSequence term) {
+    if (term.length() < 2) {
+      return false;
+    }
+    for (int i = 0; i < term.length(); i++) {
+      char c = term.charAt(i);
+      if (c < 'a' || c > 'z') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Same as {@link #isCandidate(CharSequence)}, on the UTF-8 bytes of a term, so that rejected terms need not be
+   * decoded. A term of lowercase ASCII letters has one byte per character.
+   *
+   * @param term term
+   * @return whether the term is a candidate
+   */
+  public static boolean isCandidate(BytesRef term) {
+    if (term.length < 2) {
+      return false;
+    }
+    for (int i = term.offset; i < term.offset + term.length; i++) {
+      byte b = term.bytes[i];
+      if (b < 'a' || b > 'z') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Builds the incidence one document at a time.
+   */
+  public static final class Builder {
+    private final int words;
+    private final List<String> terms = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<long[]> bits = new ArrayList<>();
+    private int doc = -1;
+    private boolean docHasTerms;
+    private int docCount;
+
+    /**
+     * Creates a builder.
+     *
+     * @param maxDocs maximum number of documents in the pool
+     */
+    public Builder(int maxDocs) {
+      this.words = Math.max(1, (maxDocs + 63) >>> 6);
+    }
+
+    /**
+     * Starts the next document of the pool.
+     */
+    public void nextDocument() {
+      if (docHasTerms) {
+        docCount++;
+      }
+      doc++;
+      docHasTerms = false;
+      if (doc >= words << 6) {
+        throw new IllegalStateException("More documents than the maximum of " + (words << 6) + ".");
+      }
+    }
+
+    /**
+     * Adds a term to the current document.
+     *
+     * @param term term
+     */
+    public void addTerm(String term) {
+      Integer ordinal = ordinals.get(term);
+      if (ordinal == null) {
+        ordinal = terms.size();
+        ordinals.put(term, ordinal);
+        terms.add(term);
+        bits.add(new long[words]);
+      }
+      bits.get(ordinal)[doc >>> 6] |= 1L << doc;
+      docHasTerms = true;
+    }
+
+    public TermIncidence build() {
+      return new TermIncidence(terms, ordinals, bits.toArray(new long[0][]), docCount + (docHasTerms ? 1 : 0));
+    }
+  }
+}
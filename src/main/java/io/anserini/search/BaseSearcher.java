@@ -19,10 +19,15 @@ package io.anserini.search;
 import io.anserini.index.Constants;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -56,6 +61,7 @@ import java.util.Set;
 public class BaseSearcher<K extends Comparable<K>> {
   protected final BaseSearchArgs args;
   private IndexSearcher searcher;
+  private QueryResultCache resultCache;
 
   /**
    * Creates an instance of this class with supplied arguments.
@@ -95,6 +101,55 @@ public class BaseSearcher<K extends Comparable<K>> {
     return this.searcher;
   }
 
+  /**
+   * Sets the cache of search results shared across queries, or disables caching if null. Cached results are keyed by
+   * the query, the configuration of this searcher and the number of hits, so the configuration must not be changed
+   * after results are cached.
+   *
+   * @param resultCache cache of search results
+   */
+  public void setResultCache(QueryResultCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Returns the cache of search results, or null if results are not cached.
+   *
+   * @return the cache of search results
+   */
+  public QueryResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * Returns cached results for a query, searching on a cache miss, or always searching if results are not cached.
+   *
+   * @param qid query id, which only affects results with docid-as-qid removal
+   * @param query query, compared with {@link Object#equals}
+   * @param k number of hits
+   * @param loader searches on a cache miss
+   * @return results
+   * @throws IOException if error encountered during search
+   */
+  protected ScoredDoc[] cachedSearch(K qid, Object query, int k, QueryResultCache.Loader loader) throws IOException {
+    if (resultCache == null) {
+      return loader.load();
+    }
+
+    return resultCache.get(searcher.getIndexReader(), args, args.removeQuery ? Arrays.asList(qid, query) : query,
+        k, loader);
+  }
+
+  /**
+   * Creates a filter that restricts search results to the documents with the given collection docids.
+   *
+   * @param docids collection docids
+   * @return filter matching the documents with the given docids
+   */
+  public static Query docidFilter(Collection<String> docids) {
+    return new TermInSetQuery(Constants.ID, docids.stream().map(BytesRef::new).toList());
+  }
+
   /**
    * Processes Lucene {@link TopDocs} for a query based on the configuration for duplicate removal, docid-as-qid
    * removal, and MaxP. By default, retains references to the original Lucene docs (which can be memory intensive for
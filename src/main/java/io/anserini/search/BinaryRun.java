@@ -0,0 +1,389 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compact binary format for runs, which avoids formatting and re-parsing text runs between retrieval, fusion and
+ * evaluation. A run is a header followed by a sequence of topic blocks, each holding the qid, the run tag, and the
+ * hits of the topic: the docid, the rank (only if ranks are not simply 1, 2, 3...), and the raw score. Docids are
+ * dictionary-encoded: the first occurrence of a docid is written in full and assigned the next ordinal, and later
+ * occurrences are written as the ordinal.
+ *
+ * <p>Scores are written as floats (for runs written by {@link RunOutputWriter}) or doubles (for runs written by
+ * {@link io.anserini.fusion.TrecRun}); {@link #main} converts a binary run to the text format, byte-for-byte
+ * identical to the text run that the same writer would have produced.</p>
+ */
+public final class BinaryRun {
+  // "ARUN"
+  private static final int MAGIC = 0x4152554e;
+  private static final int VERSION = 1;
+
+  private static final byte END = 0;
+  private static final byte TOPIC = 1;
+  private static final byte EXPLICIT_RANKS = 1;
+
+  /**
+   * Precision of the scores of a run.
+   */
+  public enum ScoreType {
+    FLOAT, DOUBLE
+  }
+
+  private BinaryRun() {}
+
+  /**
+   * Checks whether a file is a binary run.
+   *
+   * @param path path
+   * @return whether the file starts with the binary run header
+   * @throws IOException if error encountered reading the file
+   */
+  public static boolean isBinaryRun(Path path) throws IOException {
+    if (!Files.isRegularFile(path) || Files.size(path) < 4) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+      return in.readInt() == MAGIC;
+    }
+  }
+
+  /**
+   * The hits of a topic.
+   */
+  public static final class Topic {
+    private final String qid;
+    private final String tag;
+    private final String[] docids;
+    private final int[] ranks;
+    private final double[] scores;
+    private final ScoreType scoreType;
+
+    private Topic(String qid, String tag, String[] docids, int[] ranks, double[] scores, ScoreType scoreType) {
+      this.qid = qid;
+      this.scoreType = scoreType;
+      this.tag = tag;
+      this.docids = docids;
+      this.ranks = ranks;
+      this.scores = scores;
+    }
+
+    public String getQid() {
+      return qid;
+    }
+
+    public String getTag() {
+      return tag;
+    }
+
+    public int size() {
+      return docids.length;
+    }
+
+    public String getDocid(int i) {
+      return docids[i];
+    }
+
+    public int getRank(int i) {
+      return ranks == null ? i + 1 : ranks[i];
+    }
+
+    public double getScore(int i) {
+      return scores[i];
+    }
+
+    /**
+     * Returns a score as it would be read back from the text run, i.e., rounded to six decimal places, so that tools
+     * that break ties on equal scores see the same ties in both formats.
+     *
+     * @param i index of the hit
+     * @return score, rounded as in the text run
+     */
+    public double getTextScore(int i) {
+      StringBuilder sb = new StringBuilder(16);
+      if (scoreType == ScoreType.FLOAT) {
+        RunOutputWriter.appendScore(sb, (float) scores[i]);
+      } else {
+        sb.append(String.format(Locale.US, "%.6f", scores[i]));
+      }
+      return Double.parseDouble(sb.toString());
+    }
+  }
+
+  /**
+   * Writes a binary run, one topic at a time: {@link #beginTopic} followed by a {@link #writeHit} for each hit.
+   */
+  public static final class Writer implements Closeable {
+    private final DataOutputStream out;
+    private final ScoreType scoreType;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private boolean explicitRanks;
+    private int remaining = 0;
+
+    public Writer(Path path, ScoreType scoreType) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+      this.scoreType = scoreType;
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeByte(scoreType.ordinal());
+    }
+
+    /**
+     * Starts a topic block.
+     *
+     * @param qid qid
+     * @param tag run tag
+     * @param size number of hits that follow
+     * @param explicitRanks whether ranks are stored, rather than implied by the order of the hits
+     * @throws IOException if error encountered writing the run
+     */
+    public void beginTopic(String qid, String tag, int size, boolean explicitRanks) throws IOException {
+      checkComplete();
+      out.writeByte(TOPIC);
+      out.writeUTF(qid);
+      out.writeUTF(tag);
+      writeVInt(size);
+      out.writeByte(explicitRanks ? EXPLICIT_RANKS : 0);
+      this.explicitRanks = explicitRanks;
+      this.remaining = size;
+    }
+
+    /**
+     * Writes a hit of the current topic.
+     *
+     * @param docid docid
+     * @param rank rank, ignored unless the topic has explicit ranks
+     * @param score score
+     * @throws IOException if error encountered writing the run
+     */
+    public void writeHit(String docid, int rank, double score) throws IOException {
+      if (remaining-- <= 0) {
+        throw new IllegalStateException("More hits than declared for the topic.");
+      }
+      Integer ordinal = dictionary.get(docid);
+      if (ordinal == null) {
+        dictionary.put(docid, dictionary.size());
+        writeVInt(0);
+        out.writeUTF(docid);
+      } else {
+        writeVInt(ordinal + 1);
+      }
+      if (explicitRanks) {
+        writeVInt(rank);
+      }
+      if (scoreType == ScoreType.FLOAT) {
+        out.writeFloat((float) score);
+      } else {
+        out.writeDouble(score);
+      }
+    }
+
+    private void checkComplete() {
+      if (remaining != 0) {
+        throw new IllegalStateException("Topic ended with " + remaining + " hits missing.");
+      }
+    }
+
+    private void writeVInt(int i) throws IOException {
+      while ((i & ~0x7F) != 0) {
+        out.writeByte((i & 0x7F) | 0x80);
+        i >>>= 7;
+      }
+      out.writeByte(i);
+    }
+
+    @Override
+    public void close() throws IOException {
+      checkComplete();
+      out.writeByte(END);
+      out.close();
+    }
+  }
+
+  /**
+   * Reads a binary run, one topic at a time.
+   */
+  public static final class Reader implements Closeable {
+    private final DataInputStream in;
+    private final ScoreType scoreType;
+    private final List<String> dictionary = new ArrayList<>();
+
+    public Reader(Path path) throws IOException {
+      this(Files.newInputStream(path));
+    }
+
+    public Reader(InputStream stream) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a binary run.");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported binary run version " + version + ".");
+      }
+      this.scoreType = ScoreType.values()[in.readByte()];
+    }
+
+    public ScoreType getScoreType() {
+      return scoreType;
+    }
+
+    /**
+     * Reads the next topic.
+     *
+     * @return the topic, or null at the end of the run
+     * @throws IOException if error encountered reading the run
+     */
+    public Topic next() throws IOException {
+      byte marker = in.readByte();
+      if (marker == END) {
+        return null;
+      } else if (marker != TOPIC) {
+        throw new IOException("Corrupt binary run: unexpected block marker " + marker + ".");
+      }
+      String qid = in.readUTF();
+      String tag = in.readUTF();
+      int size = readVInt();
+      boolean explicitRanks = in.readByte() == EXPLICIT_RANKS;
+
+      String[] docids = new String[size];
+      int[] ranks = explicitRanks ? new int[size] : null;
+      double[] scores = new double[size];
+      for (int i = 0; i < size; i++) {
+        int ordinal = readVInt();
+        if (ordinal == 0) {
+          docids[i] = in.readUTF();
+          dictionary.add(docids[i]);
+        } else {
+          docids[i] = dictionary.get(ordinal - 1);
+        }
+        if (explicitRanks) {
+          ranks[i] = readVInt();
+        }
+        scores[i] = scoreType == ScoreType.FLOAT ? in.readFloat() : in.readDouble();
+      }
+      return new Topic(qid, tag, docids, ranks, scores, scoreType);
+    }
+
+    private int readVInt() throws IOException {
+      int i = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = in.readByte();
+        i |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return i;
+        }
+        if (shift > 28) {
+          throw new IOException("Corrupt binary run: malformed integer.");
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Converts a binary run to text.
+   *
+   * @param input binary run
+   * @param output text run
+   * @param format "trec" or "msmarco"
+   * @throws IOException if error encountered reading or writing the runs
+   */
+  public static void toText(Path input, Path output, String format) throws IOException {
+    try (Reader reader = new Reader(input);
+         PrintWriter out = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+      boolean msmarco = "msmarco".equals(format);
+      StringBuilder line = new StringBuilder();
+      Topic topic;
+      while ((topic = reader.next()) != null) {
+        for (int i = 0; i < topic.size(); i++) {
+          line.setLength(0);
+          if (msmarco) {
+            line.append(topic.getQid()).append('\t').append(topic.getDocid(i)).append('\t').append(topic.getRank(i));
+          } else {
+            line.append(topic.getQid()).append(" Q0 ").append(topic.getDocid(i)).append(' ')
+                .append(topic.getRank(i)).append(' ');
+            if (reader.getScoreType() == ScoreType.FLOAT) {
+              RunOutputWriter.appendScore(line, (float) topic.getScore(i));
+            } else {
+              // As written by TrecRun.
+              line.append(String.format("%.6f", topic.getScore(i)));
+            }
+            line.append(' ').append(topic.getTag());
+          }
+          line.append('\n');
+          out.append(line);
+        }
+      }
+    } catch (EOFException e) {
+      throw new IOException("Truncated binary run: " + input, e);
+    }
+  }
+
+  public static class Args {
+    @Option(name = "-input", metaVar = "[file]", required = true, usage = "Binary run.")
+    public String input;
+
+    @Option(name = "-output", metaVar = "[file]", required = true, usage = "Text run.")
+    public String output;
+
+    @Option(name = "-format", metaVar = "[output format]", usage = "Output format, default \"trec\", alternative \"msmarco\".")
+    public String format = "trec";
+  }
+
+  public static void main(String[] argv) throws Exception {
+    Args args = new Args();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(100));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      return;
+    }
+
+    toText(Paths.get(args.input), Paths.get(args.output), args.format);
+  }
+}
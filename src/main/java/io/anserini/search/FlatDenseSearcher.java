@@ -17,31 +17,44 @@
 package io.anserini.search;
 
 import ai.onnxruntime.OrtException;
+import io.anserini.encoder.OnnxEncoder;
 import io.anserini.encoder.dense.DenseEncoder;
 import io.anserini.index.Constants;
+import io.anserini.index.IndexReaderRegistry;
+import io.anserini.index.codecs.AnseriniLucene99LowBitQuantizedVectorsFormat;
 import io.anserini.search.query.VectorQueryGenerator;
 import io.anserini.util.PrebuiltIndexHandler;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FloatVectorValues;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.search.TotalHits;
 import org.kohsuke.args4j.Option;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -68,11 +81,24 @@ public class FlatDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
 
     @Option(name ="-encoder", metaVar = "[encoder]", usage = "Dense encoder to use.")
     public String encoder = null;
+
+    // Only applies to indexes with int4 or binary codes (-quantize.int4 or -quantize.binary), which are searched for a
+    // shortlist of oversample * hits documents that are then re-scored with the float vectors. A larger factor trades
+    // speed for recall. The shortlist is sized by a fixed factor rather than derived from a recall target: the recall
+    // of a factor depends on the collection, the queries and the number of bits, and measuring it takes exact scans of
+    // the float vectors, the very cost that the codes avoid. Choose the factor offline, with the recall measured on
+    // sample queries; binary codes need a larger factor than int4 codes for the same recall.
+    @Option(name = "-oversample", metaVar = "[factor]",
+        usage = "Factor by which to oversample the shortlist re-scored with float vectors, for quantized indexes. " +
+            "A fixed factor, not a recall target, since recall depends on the data and can only be measured with " +
+            "exact scans; tune it offline against the recall measured on sample queries.")
+    public float oversample = 4.0f;
   }
 
   private final IndexReader reader;
   private final VectorQueryGenerator generator;
   private final DenseEncoder encoder;
+  private final boolean lowBitQuantized;
   // Dummy, but needed for KnnFloatVectorQuery
   private final int DUMMY_EF_SEARCH = 1000;
 
@@ -101,12 +127,18 @@ public class FlatDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
     }
 
     try {
-      this.reader = DirectoryReader.open(FSDirectory.open(indexPath));
-    } catch (IOException e) {
+      this.reader = IndexReaderRegistry.acquire(indexPath.toString());
+    } catch (IOException | IllegalArgumentException e) {
       throw new IllegalArgumentException(String.format("\"%s\" does not appear to be a valid index.", args.index));
     }
 
     setIndexSearcher(new IndexSearcher(this.reader));
+    this.lowBitQuantized = reader.leaves().stream().anyMatch(leaf ->
+        AnseriniLucene99LowBitQuantizedVectorsFormat.isLowBitQuantized(
+            leaf.reader().getFieldInfos().fieldInfo(Constants.VECTOR)));
+    if (args.oversample < 1.0f) {
+      throw new IllegalArgumentException("Oversampling factor must be at least 1.");
+    }
 
     try {
       this.generator = (VectorQueryGenerator) Class
@@ -118,9 +150,8 @@ public class FlatDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
 
     if (args.encoder != null) {
       try {
-        encoder = (DenseEncoder) Class
-            .forName(String.format("io.anserini.encoder.dense.%sEncoder", args.encoder))
-            .getConstructor().newInstance();
+        encoder = (DenseEncoder) OnnxEncoder.getSharedInstance(
+            String.format("io.anserini.encoder.dense.%sEncoder", args.encoder));
       } catch (Exception e) {
         throw new IllegalArgumentException(String.format("Unable to load Encoder \"%s\".", args.encoder));
       }
@@ -207,12 +238,48 @@ public class FlatDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
    * @throws IOException if error encountered during search
    */
   public ScoredDoc[] search(@Nullable K qid, float[] query, int k) throws IOException {
-    KnnFloatVectorQuery vectorQuery = new KnnFloatVectorQuery(Constants.VECTOR, query, DUMMY_EF_SEARCH);
-    TopDocs topDocs = getIndexSearcher().search(vectorQuery, k, BREAK_SCORE_TIES_BY_DOCID, true);
+    return search(qid, query, k, (Query) null);
+  }
+
+  /**
+   * Searches the documents that match a filter with a query vector. Only the documents that match the filter are
+   * scored, so that k hits are returned as long as k documents match.
+   *
+   * @param qid query id
+   * @param query query vector
+   * @param k number of hits
+   * @param filter filter on the documents to search, or null to search all documents
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, float[] query, int k, @Nullable Query filter) throws IOException {
+    if (lowBitQuantized) {
+      int shortlist = (int) Math.ceil(k * ((Args) args).oversample);
+      TopDocs topDocs = getIndexSearcher().search(
+          new KnnFloatVectorQuery(Constants.VECTOR, query, shortlist, filter), shortlist);
+      return super.processLuceneTopDocs(qid, rescore(query, topDocs, k));
+    }
+
+    KnnFloatVectorQuery vectorQuery = new KnnFloatVectorQuery(Constants.VECTOR, query, DUMMY_EF_SEARCH, filter);
+    TopDocs topDocs = TieBreakingCollectorManager.searchBreakingTiesByDocid(getIndexSearcher(), vectorQuery, k);
 
     return super.processLuceneTopDocs(qid, topDocs);
   }
 
+  /**
+   * Searches the documents with the given docids with a query vector.
+   *
+   * @param qid query id
+   * @param query query vector
+   * @param k number of hits
+   * @param docids docids of the documents to search
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, float[] query, int k, Collection<String> docids) throws IOException {
+    return search(qid, query, k, docidFilter(docids));
+  }
+
   /**
    * Searches the collection with a string query that will be encoded by the underlying encoder.
    *
@@ -235,22 +302,83 @@ public class FlatDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
    * @throws IOException if error encountered during search
    */
   public ScoredDoc[] search(@Nullable K qid, String query, int k) throws IOException {
-    if (encoder != null) {
-      try {
-        return search(qid, encoder.encode(query), k);
-      } catch (OrtException e) {
-        throw new RuntimeException("Error encoding query.");
+    return search(qid, query, k, (Query) null);
+  }
+
+  /**
+   * Searches the documents that match a filter with a string query that will be encoded by the underlying encoder.
+   *
+   * @param qid query id
+   * @param query query
+   * @param k number of hits
+   * @param filter filter on the documents to search, or null to search all documents
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, String query, int k, @Nullable Query filter) throws IOException {
+    // Cached by the query string, so that a hit also saves encoding the query.
+    return cachedSearch(qid, Arrays.asList(query, filter), k, () -> {
+      if (encoder != null) {
+        try {
+          return search(qid, encoder.encode(query), k, filter);
+        } catch (OrtException e) {
+          throw new RuntimeException("Error encoding query.");
+        }
       }
-    }
 
-    KnnFloatVectorQuery vectorQuery = generator.buildQuery(Constants.VECTOR, query, DUMMY_EF_SEARCH);
-    TopDocs topDocs = getIndexSearcher().search(vectorQuery, k, BREAK_SCORE_TIES_BY_DOCID, true);
+      KnnFloatVectorQuery vectorQuery = generator.buildQuery(Constants.VECTOR, query, DUMMY_EF_SEARCH);
+      return search(qid, vectorQuery.getTargetCopy(), k, filter);
+    });
+  }
 
-    return super.processLuceneTopDocs(qid, topDocs);
+  /**
+   * Searches the documents with the given docids with a string query that will be encoded by the underlying encoder.
+   *
+   * @param qid query id
+   * @param query query
+   * @param k number of hits
+   * @param docids docids of the documents to search
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, String query, int k, Collection<String> docids) throws IOException {
+    return search(qid, query, k, docidFilter(docids));
+  }
+
+  // Re-scores hits from the codes of a quantized index, whose scores are estimates, with the float vectors, and
+  // returns the top k, breaking ties by docid as BREAK_SCORE_TIES_BY_DOCID does.
+  private TopDocs rescore(float[] query, TopDocs shortlist, int k) throws IOException {
+    ScoreDoc[] hits = shortlist.scoreDocs;
+    // Vectors are read in docid order, as the vector values of each segment can only advance.
+    Arrays.sort(hits, Comparator.comparingInt(hit -> hit.doc));
+    List<LeafReaderContext> leaves = reader.leaves();
+    LeafReaderContext leaf = null;
+    FloatVectorValues values = null;
+    for (ScoreDoc hit : hits) {
+      if (leaf == null || hit.doc >= leaf.docBase + leaf.reader().maxDoc()) {
+        leaf = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+        values = leaf.reader().getFloatVectorValues(Constants.VECTOR);
+      }
+      values.advance(hit.doc - leaf.docBase);
+      hit.score = leaf.reader().getFieldInfos().fieldInfo(Constants.VECTOR).getVectorSimilarityFunction()
+          .compare(query, values.vectorValue());
+    }
+
+    Map<Integer, String> docids = new HashMap<>();
+    Arrays.sort(hits, Comparator.comparing((ScoreDoc hit) -> hit.score, Comparator.reverseOrder())
+        .thenComparing(hit -> docids.computeIfAbsent(hit.doc, doc -> {
+          try {
+            return getIndexSearcher().storedFields().document(doc).get(Constants.ID);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        })));
+    return new TopDocs(new TotalHits(hits.length, TotalHits.Relation.EQUAL_TO),
+        Arrays.copyOf(hits, Math.min(k, hits.length)));
   }
 
   @Override
   public void close() throws IOException {
-    reader.close();
+    IndexReaderRegistry.release(reader);
   }
 }
@@ -17,22 +17,23 @@
 package io.anserini.search;
 
 import ai.onnxruntime.OrtException;
+import io.anserini.encoder.OnnxEncoder;
 import io.anserini.encoder.dense.DenseEncoder;
 import io.anserini.index.Constants;
+import io.anserini.index.IndexReaderRegistry;
 import io.anserini.search.query.VectorQueryGenerator;
 import io.anserini.util.PrebuiltIndexHandler;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
 import org.kohsuke.args4j.Option;
 
 import javax.annotation.Nullable;
@@ -41,6 +42,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.concurrent.CompletionException;
@@ -102,8 +105,8 @@ public class HnswDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
     }
 
     try {
-      this.reader = DirectoryReader.open(FSDirectory.open(indexPath));
-    } catch (IOException e) {
+      this.reader = IndexReaderRegistry.acquire(indexPath.toString());
+    } catch (IOException | IllegalArgumentException e) {
       throw new IllegalArgumentException(String.format("\"%s\" does not appear to be a valid index.", args.index));
     }
 
@@ -119,9 +122,8 @@ public class HnswDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
 
     if (args.encoder != null) {
       try {
-        encoder = (DenseEncoder) Class
-            .forName(String.format("io.anserini.encoder.dense.%sEncoder", args.encoder))
-            .getConstructor().newInstance();
+        encoder = (DenseEncoder) OnnxEncoder.getSharedInstance(
+            String.format("io.anserini.encoder.dense.%sEncoder", args.encoder));
       } catch (Exception e) {
         throw new IllegalArgumentException(String.format("Unable to load Encoder \"%s\".", args.encoder));
       }
@@ -208,12 +210,42 @@ public class HnswDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
    * @throws IOException if error encountered during search
    */
   public ScoredDoc[] search(@Nullable K qid, float[] query, int k) throws IOException {
-    KnnFloatVectorQuery vectorQuery = new KnnFloatVectorQuery(Constants.VECTOR, query, ((Args) args).efSearch);
-    TopDocs topDocs = getIndexSearcher().search(vectorQuery, k, BREAK_SCORE_TIES_BY_DOCID, true);
+    return search(qid, query, k, (Query) null);
+  }
+
+  /**
+   * Searches the documents that match a filter with a query vector. The filter is applied while the graph is searched,
+   * rather than to its results, so that k hits are returned as long as k documents match. If fewer documents match
+   * than would be visited in the graph, they are scored exactly instead.
+   *
+   * @param qid query id
+   * @param query query vector
+   * @param k number of hits
+   * @param filter filter on the documents to search, or null to search all documents
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, float[] query, int k, @Nullable Query filter) throws IOException {
+    KnnFloatVectorQuery vectorQuery = new KnnFloatVectorQuery(Constants.VECTOR, query, ((Args) args).efSearch, filter);
+    TopDocs topDocs = TieBreakingCollectorManager.searchBreakingTiesByDocid(getIndexSearcher(), vectorQuery, k);
 
     return super.processLuceneTopDocs(qid, topDocs);
   }
 
+  /**
+   * Searches the documents with the given docids with a query vector.
+   *
+   * @param qid query id
+   * @param query query vector
+   * @param k number of hits
+   * @param docids docids of the documents to search
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, float[] query, int k, Collection<String> docids) throws IOException {
+    return search(qid, query, k, docidFilter(docids));
+  }
+
   /**
    * Searches the collection with a string query that will be encoded by the underlying encoder.
    *
@@ -236,22 +268,51 @@ public class HnswDenseSearcher<K extends Comparable<K>> extends BaseSearcher<K>
    * @throws IOException if error encountered during search
    */
   public ScoredDoc[] search(@Nullable K qid, String query, int k) throws IOException {
-    if (encoder != null) {
-      try {
-        return search(qid, encoder.encode(query), k);
-      } catch (OrtException e) {
-        throw new RuntimeException("Error encoding query.");
+    return search(qid, query, k, (Query) null);
+  }
+
+  /**
+   * Searches the documents that match a filter with a string query that will be encoded by the underlying encoder.
+   *
+   * @param qid query id
+   * @param query query
+   * @param k number of hits
+   * @param filter filter on the documents to search, or null to search all documents
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, String query, int k, @Nullable Query filter) throws IOException {
+    // Cached by the query string, so that a hit also saves encoding the query.
+    return cachedSearch(qid, Arrays.asList(query, filter), k, () -> {
+      if (encoder != null) {
+        try {
+          return search(qid, encoder.encode(query), k, filter);
+        } catch (OrtException e) {
+          throw new RuntimeException("Error encoding query.");
+        }
       }
-    }
 
-    KnnFloatVectorQuery vectorQuery = generator.buildQuery(Constants.VECTOR, query, ((Args) args).efSearch);
-    TopDocs topDocs = getIndexSearcher().search(vectorQuery, k, BREAK_SCORE_TIES_BY_DOCID, true);
+      KnnFloatVectorQuery vectorQuery = generator.buildQuery(Constants.VECTOR, query, ((Args) args).efSearch);
+      return search(qid, vectorQuery.getTargetCopy(), k, filter);
+    });
+  }
 
-    return super.processLuceneTopDocs(qid, topDocs);
+  /**
+   * Searches the documents with the given docids with a string query that will be encoded by the underlying encoder.
+   *
+   * @param qid query id
+   * @param query query
+   * @param k number of hits
+   * @param docids docids of the documents to search
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, String query, int k, Collection<String> docids) throws IOException {
+    return search(qid, query, k, docidFilter(docids));
   }
 
   @Override
   public void close() throws IOException {
-    reader.close();
+    IndexReaderRegistry.release(reader);
   }
 }
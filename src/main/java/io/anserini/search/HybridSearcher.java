@@ -0,0 +1,457 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import ai.onnxruntime.OrtException;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.Option;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Searcher for hybrid retrieval that runs a sparse leg ({@link SimpleSearcher} with BM25, or
+ * {@link SimpleImpactSearcher}) and a dense leg ({@link HnswDenseSearcher} or {@link FlatDenseSearcher}) of each query
+ * concurrently, and fuses their results in memory. The fusion methods are those of
+ * {@link io.anserini.fusion.TrecRunFuser}, applied to ranked lists instead of run files, so that hybrid results are
+ * available from a single call.</p>
+ *
+ * <p>The legs retrieve <code>-depth</code> hits each. Documents are matched across legs by their collection docid;
+ * a document retrieved by only one leg contributes nothing from the other. Since the legs search different indexes,
+ * the Lucene docid and document of a fused hit are those of the first leg (sparse, then dense) that retrieved it.</p>
+ *
+ * @param <K> type of qid, typically string or integer
+ */
+public class HybridSearcher<K extends Comparable<K>> implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(HybridSearcher.class);
+
+  public static final String METHOD_RRF = "rrf";
+  public static final String METHOD_INTERPOLATION = "interpolation";
+  public static final String METHOD_AVERAGE = "average";
+
+  /**
+   * This class holds arguments for configuring the hybrid searcher. Note that, explicitly, there are no arguments that
+   * define queries and outputs, since this class is meant to be called interactively.
+   */
+  public static class Args {
+    @Option(name = "-sparse.index", metaVar = "[path]", required = true, usage = "Path to the Lucene inverted index.")
+    public String sparseIndex;
+
+    @Option(name = "-sparse.impact", usage = "Search the sparse index with impact scores instead of BM25.")
+    public Boolean sparseImpact = false;
+
+    @Option(name = "-sparse.encoder", metaVar = "[encoder]", depends = {"-sparse.impact"},
+        usage = "Sparse query encoder to use; queries are taken to be encoded already if unset.")
+    public String sparseEncoder = null;
+
+    @Option(name = "-dense.index", metaVar = "[path]", required = true, usage = "Path to the Lucene vector index.")
+    public String denseIndex;
+
+    @Option(name = "-dense.flat", usage = "Search the dense index exhaustively instead of with HNSW.")
+    public Boolean denseFlat = false;
+
+    @Option(name = "-dense.encoder", metaVar = "[encoder]", usage = "Dense encoder to use.")
+    public String denseEncoder = null;
+
+    @Option(name = "-dense.efSearch", metaVar = "[number]", usage = "efSearch parameter for HNSW search.")
+    public int denseEfSearch = 100;
+
+    @Option(name = "-fusion", metaVar = "[method]", usage = "Fusion method: rrf, interpolation, or average.")
+    public String fusion = METHOD_RRF;
+
+    @Option(name = "-rrf_k", metaVar = "[number]", usage = "Parameter k needed for reciprocal rank fusion.")
+    public int rrf_k = 60;
+
+    @Option(name = "-alpha", metaVar = "[value]", usage = "Weight of the sparse leg in interpolation.")
+    public double alpha = 0.5;
+
+    // Sparse and dense scores are on very different scales, so they usually need normalization before interpolation
+    // or averaging. It is off by default for parity with FuseTrecRuns.
+    @Option(name = "-normalize", usage = "Min-max normalize the scores of each leg before fusion.")
+    public Boolean normalize = false;
+
+    @Option(name = "-depth", metaVar = "[number]", usage = "Number of hits to retrieve from each leg.")
+    public int depth = 1000;
+  }
+
+  /**
+   * Retrieval leg of a hybrid searcher.
+   */
+  private interface Leg<K> extends Closeable {
+    ScoredDoc[] search(@Nullable K qid, String query, int k) throws IOException;
+  }
+
+  private final Args args;
+  private final Leg<K> sparse;
+  private final Leg<K> dense;
+  // Searches the sparse leg of each query while the calling thread searches the dense leg.
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  /**
+   * Creates a hybrid searcher.
+   *
+   * @param args configuration of the legs and of fusion
+   * @throws IOException if errors encountered during initialization
+   */
+  public HybridSearcher(Args args) throws IOException {
+    if (!args.fusion.equals(METHOD_RRF) && !args.fusion.equals(METHOD_INTERPOLATION) &&
+        !args.fusion.equals(METHOD_AVERAGE)) {
+      throw new IllegalArgumentException("Unknown fusion method: " + args.fusion +
+          ". Supported methods are: average, rrf, interpolation.");
+    }
+    this.args = args;
+    this.sparse = createSparseLeg(args);
+    try {
+      this.dense = createDenseLeg(args);
+    } catch (RuntimeException e) {
+      sparse.close();
+      throw e;
+    }
+  }
+
+  private static <K> Leg<K> createSparseLeg(Args args) throws IOException {
+    if (args.sparseImpact) {
+      SimpleImpactSearcher searcher = args.sparseEncoder == null ?
+          new SimpleImpactSearcher(args.sparseIndex) : new SimpleImpactSearcher(args.sparseIndex, args.sparseEncoder);
+      // Creates the IndexSearcher, which is otherwise created by the first search, racing with concurrent searches.
+      searcher.get_total_num_docs();
+      return new Leg<>() {
+        @Override
+        public ScoredDoc[] search(K qid, String query, int k) throws IOException {
+          try {
+            return searcher.search(query, k);
+          } catch (OrtException e) {
+            throw new RuntimeException("Error encoding query.");
+          }
+        }
+
+        @Override
+        public void close() {
+          searcher.close();
+        }
+      };
+    }
+
+    SimpleSearcher searcher = new SimpleSearcher(args.sparseIndex);
+    searcher.get_total_num_docs();
+    return new Leg<>() {
+      @Override
+      public ScoredDoc[] search(K qid, String query, int k) throws IOException {
+        return searcher.search(query, k);
+      }
+
+      @Override
+      public void close() throws IOException {
+        searcher.close();
+      }
+    };
+  }
+
+  private static <K extends Comparable<K>> Leg<K> createDenseLeg(Args args) {
+    if (args.denseFlat) {
+      FlatDenseSearcher.Args denseArgs = new FlatDenseSearcher.Args();
+      denseArgs.index = args.denseIndex;
+      denseArgs.encoder = args.denseEncoder;
+      FlatDenseSearcher<K> searcher = new FlatDenseSearcher<>(denseArgs);
+      return new Leg<>() {
+        @Override
+        public ScoredDoc[] search(K qid, String query, int k) throws IOException {
+          return searcher.search(qid, query, k);
+        }
+
+        @Override
+        public void close() throws IOException {
+          searcher.close();
+        }
+      };
+    }
+
+    HnswDenseSearcher.Args denseArgs = new HnswDenseSearcher.Args();
+    denseArgs.index = args.denseIndex;
+    denseArgs.encoder = args.denseEncoder;
+    denseArgs.efSearch = args.denseEfSearch;
+    HnswDenseSearcher<K> searcher = new HnswDenseSearcher<>(denseArgs);
+    return new Leg<>() {
+      @Override
+      public ScoredDoc[] search(K qid, String query, int k) throws IOException {
+        return searcher.search(qid, query, k);
+      }
+
+      @Override
+      public void close() throws IOException {
+        searcher.close();
+      }
+    };
+  }
+
+  /**
+   * Searches the collection in batch using multiple threads, with the same query for both legs, which requires a
+   * dense encoder.
+   *
+   * @param queries list of queries
+   * @param qids list of unique query ids
+   * @param k number of hits
+   * @param threads number of threads
+   * @return a map of query id to search results
+   */
+  public SortedMap<K, ScoredDoc[]> batch_search(List<String> queries, List<K> qids, int k, int threads) {
+    return batch_search(queries, queries, qids, k, threads);
+  }
+
+  /**
+   * Searches the collection in batch using multiple threads, with separate queries for the two legs, e.g., for a dense
+   * leg without an encoder, which takes query vectors.
+   *
+   * @param sparseQueries list of queries for the sparse leg
+   * @param denseQueries list of queries for the dense leg
+   * @param qids list of unique query ids
+   * @param k number of hits
+   * @param threads number of threads
+   * @return a map of query id to search results
+   */
+  public SortedMap<K, ScoredDoc[]> batch_search(List<String> sparseQueries, List<String> denseQueries, List<K> qids,
+                                                int k, int threads) {
+    final SortedMap<K, ScoredDoc[]> results = new ConcurrentSkipListMap<>();
+    final AtomicInteger cnt = new AtomicInteger();
+    final long start = System.nanoTime();
+
+    try(ThreadPoolExecutor queryExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads)) {
+      assert qids.size() == sparseQueries.size() && qids.size() == denseQueries.size();
+      for (int i = 0; i < qids.size(); i++) {
+        K qid = qids.get(i);
+        String sparseQuery = sparseQueries.get(i);
+        String denseQuery = denseQueries.get(i);
+
+        // This is the per-query execution, in parallel.
+        queryExecutor.execute(() -> {
+          try {
+            results.put(qid, search(qid, sparseQuery, denseQuery, k));
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+
+          int n = cnt.incrementAndGet();
+          if (n % 100 == 0) {
+            LOG.info("{} queries processed", n);
+          }
+        });
+      }
+
+      queryExecutor.shutdown();
+
+      try {
+        // Wait for existing tasks to terminate.
+        while (!queryExecutor.awaitTermination(1, TimeUnit.MINUTES));
+      } catch (InterruptedException ie) {
+        // (Re-)Cancel if current thread also interrupted.
+        queryExecutor.shutdownNow();
+        // Preserve interrupt status.
+        Thread.currentThread().interrupt();
+      }
+    }
+    final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+    LOG.info("{} queries processed in {}{}", qids.size(),
+        DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss"),
+        String.format(" = ~%.2f q/s", qids.size() / (durationMillis / 1000.0)));
+
+    return results;
+  }
+
+  /**
+   * Searches the collection with the same query for both legs, which requires a dense encoder.
+   *
+   * @param query query
+   * @param k number of hits
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(String query, int k) throws IOException {
+    return search(null, query, query, k);
+  }
+
+  /**
+   * Searches the collection with the same query for both legs, which requires a dense encoder.
+   *
+   * @param qid query id
+   * @param query query
+   * @param k number of hits
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, String query, int k) throws IOException {
+    return search(qid, query, query, k);
+  }
+
+  /**
+   * Searches the collection with separate queries for the two legs. The legs are searched concurrently.
+   *
+   * @param qid query id
+   * @param sparseQuery query for the sparse leg
+   * @param denseQuery query for the dense leg: text to encode, or a query vector if there is no dense encoder
+   * @param k number of hits
+   * @return array of search results
+   * @throws IOException if error encountered during search
+   */
+  public ScoredDoc[] search(@Nullable K qid, String sparseQuery, String denseQuery, int k) throws IOException {
+    CompletableFuture<ScoredDoc[]> sparseHits = CompletableFuture.supplyAsync(() -> {
+      try {
+        return sparse.search(qid, sparseQuery, args.depth);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+    ScoredDoc[] denseHits = dense.search(qid, denseQuery, args.depth);
+
+    List<ScoredDoc[]> legs;
+    try {
+      legs = List.of(sparseHits.join(), denseHits);
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException ioe) {
+        throw ioe;
+      }
+      throw e;
+    }
+    if (args.normalize) {
+      legs = legs.stream().map(HybridSearcher::normalize).toList();
+    }
+
+    return switch (args.fusion) {
+      case METHOD_INTERPOLATION -> interpolation(legs, args.alpha, args.depth, k);
+      case METHOD_AVERAGE -> average(legs, args.depth, k);
+      default -> reciprocalRankFusion(legs, args.rrf_k, args.depth, k);
+    };
+  }
+
+  /**
+   * Min-max normalizes the scores of a ranked list to [0, 1]. If all scores are equal, they are all normalized to 1.
+   *
+   * @param hits ranked list
+   * @return ranked list with normalized scores
+   */
+  public static ScoredDoc[] normalize(ScoredDoc[] hits) {
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (ScoredDoc hit : hits) {
+      min = Math.min(min, hit.score);
+      max = Math.max(max, hit.score);
+    }
+    ScoredDoc[] normalized = new ScoredDoc[hits.length];
+    for (int i = 0; i < hits.length; i++) {
+      float score = max > min ? (hits[i].score - min) / (max - min) : 1.0f;
+      normalized[i] = new ScoredDoc(hits[i].docid, hits[i].lucene_docid, score, hits[i].lucene_document);
+    }
+    return normalized;
+  }
+
+  /**
+   * Performs reciprocal rank fusion on ranked lists, as {@link io.anserini.fusion.TrecRunFuser#reciprocalRankFusion}.
+   *
+   * @param legs ranked lists
+   * @param rrf_k parameter to avoid vanishing importance of lower-ranked documents
+   * @param depth maximum number of results from each ranked list to consider
+   * @param k length of the fused ranked list
+   * @return fused ranked list
+   */
+  public static ScoredDoc[] reciprocalRankFusion(List<ScoredDoc[]> legs, int rrf_k, int depth, int k) {
+    return fuse(legs, null, rrf_k, depth, k);
+  }
+
+  /**
+   * Performs fusion by interpolation on exactly two ranked lists, as
+   * {@link io.anserini.fusion.TrecRunFuser#interpolation}: score = alpha * first score + (1 - alpha) * second score.
+   *
+   * @param legs ranked lists, exactly two
+   * @param alpha weight of the first ranked list
+   * @param depth maximum number of results from each ranked list to consider
+   * @param k length of the fused ranked list
+   * @return fused ranked list
+   */
+  public static ScoredDoc[] interpolation(List<ScoredDoc[]> legs, double alpha, int depth, int k) {
+    if (legs.size() != 2) {
+      throw new IllegalArgumentException("Interpolation requires exactly 2 runs");
+    }
+    return fuse(legs, new double[] {alpha, 1 - alpha}, 0, depth, k);
+  }
+
+  /**
+   * Performs fusion by averaging the scores of ranked lists, as {@link io.anserini.fusion.TrecRunFuser#average}.
+   *
+   * @param legs ranked lists
+   * @param depth maximum number of results from each ranked list to consider
+   * @param k length of the fused ranked list
+   * @return fused ranked list
+   */
+  public static ScoredDoc[] average(List<ScoredDoc[]> legs, int depth, int k) {
+    double[] weights = new double[legs.size()];
+    Arrays.fill(weights, 1.0 / legs.size());
+    return fuse(legs, weights, 0, depth, k);
+  }
+
+  // Sums, per docid, the weighted scores of the ranked lists, or their reciprocal ranks if weights is null. Ties are
+  // broken by docid, the convention of the searchers.
+  private static ScoredDoc[] fuse(List<ScoredDoc[]> legs, double[] weights, int rrf_k, int depth, int k) {
+    Map<String, ScoredDoc> docs = new LinkedHashMap<>();
+    Map<String, Double> scores = new LinkedHashMap<>();
+    for (int i = 0; i < legs.size(); i++) {
+      ScoredDoc[] hits = legs.get(i);
+      for (int rank = 0; rank < Math.min(depth, hits.length); rank++) {
+        ScoredDoc hit = hits[rank];
+        double score = weights == null ? 1.0 / (rrf_k + rank + 1) : hit.score * weights[i];
+        docs.putIfAbsent(hit.docid, hit);
+        scores.merge(hit.docid, score, Double::sum);
+      }
+    }
+
+    List<Map.Entry<String, Double>> sorted = new ArrayList<>(scores.entrySet());
+    sorted.sort(Map.Entry.<String, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+    ScoredDoc[] results = new ScoredDoc[Math.min(k, sorted.size())];
+    for (int i = 0; i < results.length; i++) {
+      ScoredDoc doc = docs.get(sorted.get(i).getKey());
+      results[i] = new ScoredDoc(doc.docid, doc.lucene_docid, sorted.get(i).getValue().floatValue(),
+          doc.lucene_document);
+    }
+    return results;
+  }
+
+  @Override
+  public void close() throws IOException {
+    executor.shutdown();
+    try {
+      sparse.close();
+    } finally {
+      dense.close();
+    }
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.util.LatencyHistogram;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up an index before it serves traffic. Index files are memory mapped, so postings, term dictionaries, doc
+ * values and HNSW graphs are read from disk the first time each of their pages is accessed, which makes the first
+ * queries after a deploy or an install several times slower than the rest. Warming up takes up to three steps:
+ *
+ * <ul>
+ *   <li>preloading the files with the given extensions into the page cache, see {@link #preload};</li>
+ *   <li>replaying sample queries until their 99th percentile latency stabilizes, see {@link #replay};</li>
+ *   <li>reporting how much of each type of file is in the page cache, see {@link #residency}.</li>
+ * </ul>
+ *
+ * <p>Servers call these before accepting traffic. Run as a program, this warms the page cache, which is shared with
+ * other processes on the host, but not their JIT compilers.</p>
+ */
+public final class IndexWarmer {
+  private static final Logger LOG = LogManager.getLogger(IndexWarmer.class);
+
+  /** Extensions of the files that queries read most: term dictionaries, postings, doc values, norms and vectors. */
+  public static final String[] DEFAULT_PRELOAD = {"tip", "tim", "doc", "dvd", "nvd", "vec", "vex", "veq"};
+
+  // Files are mapped in regions of at most this size to check their residency, one chunk of pages at a time.
+  private static final long RESIDENCY_REGION = 1L << 30;
+  private static final int RESIDENCY_CHUNK = 1 << 16;
+
+  public static class Args {
+    @Option(name = "-index", metaVar = "[path]", required = true, usage = "Path to Lucene index.")
+    public String index;
+
+    @Option(name = "-preload", metaVar = "[extensions]", handler = StringArrayOptionHandler.class,
+        usage = "Extensions of the index files to preload into the page cache; indexes with compound files need \"cfs\".")
+    public String[] preload = DEFAULT_PRELOAD;
+
+    @Option(name = "-noPreload", forbids = {"-preload"}, usage = "Do not preload any index files.")
+    public boolean noPreload = false;
+
+    @Option(name = "-residency", usage = "Report the page cache residency of the index files before and after warming up.")
+    public boolean residency = false;
+
+    @Option(name = "-topics", metaVar = "[file]", usage = "Topics file, or name of topics, whose queries to replay.")
+    public String topics;
+
+    @Option(name = "-topicReader", metaVar = "[class]", usage = "TopicReader to use.")
+    public String topicReader = "TsvString";
+
+    @Option(name = "-topicField", metaVar = "[field]", usage = "Topic field that should be used as the query.")
+    public String topicField = "title";
+
+    @Option(name = "-searcher", metaVar = "[searcher]", usage = "Searcher to replay the queries with: \"bm25\", \"impact\", \"hnsw\" or \"flat\".")
+    public String searcher = "bm25";
+
+    @Option(name = "-encoder", metaVar = "[encoder]", usage = "Query encoder of the impact, HNSW or flat searcher.")
+    public String encoder = null;
+
+    @Option(name = "-efSearch", metaVar = "[number]", usage = "efSearch parameter for HNSW search.")
+    public int efSearch = 100;
+
+    @Option(name = "-hits", metaVar = "[number]", usage = "Number of hits to retrieve per query.")
+    public int hits = 10;
+
+    @Option(name = "-rounds", metaVar = "[number]", usage = "Maximum number of rounds of replaying the queries.")
+    public int rounds = 10;
+
+    @Option(name = "-tolerance", metaVar = "[ratio]",
+        usage = "Relative change in 99th percentile latency between rounds below which latency is considered stable.")
+    public double tolerance = 0.1;
+
+    @Option(name = "-options", usage = "Print information about options.")
+    public Boolean options = false;
+  }
+
+  /**
+   * Searches with a query, for replay.
+   */
+  @FunctionalInterface
+  public interface QueryRunner {
+    void search(String query) throws Exception;
+  }
+
+  /**
+   * Page cache residency of index files.
+   *
+   * @param bytes size of the files
+   * @param residentBytes bytes of the files in the page cache
+   */
+  public record Residency(long bytes, long residentBytes) {
+    public double fraction() {
+      return bytes == 0 ? 1.0 : (double) residentBytes / bytes;
+    }
+  }
+
+  /**
+   * Outcome of replaying queries.
+   *
+   * @param p99s 99th percentile latency of each round, in microseconds
+   * @param stable whether the latency stabilized before the maximum number of rounds
+   */
+  public record Replay(List<Long> p99s, boolean stable) {}
+
+  private IndexWarmer() {}
+
+  private static String extension(String name) {
+    String extension = IndexFileNames.getExtension(name);
+    return extension == null ? "" : extension;
+  }
+
+  /**
+   * Loads the files of an index with the given extensions into the page cache, using the preloading of {@link
+   * MMapDirectory}. Pages stay in the page cache after this returns, for as long as there is room for them, so readers
+   * opened on the index afterwards find them there.
+   *
+   * @param indexPath index path
+   * @param extensions extensions of the files to load, e.g., {@code "tim"} or {@code "vex"}
+   * @return number of bytes loaded
+   * @throws IOException if error encountered reading the index
+   */
+  public static long preload(Path indexPath, Collection<String> extensions) throws IOException {
+    Set<String> preloaded = Set.copyOf(extensions);
+    long bytes = 0;
+    try (MMapDirectory directory = new MMapDirectory(indexPath)) {
+      directory.setPreload((name, context) -> preloaded.contains(extension(name)));
+      for (String name : directory.listAll()) {
+        if (preloaded.contains(extension(name))) {
+          try (IndexInput input = directory.openInput(name, IOContext.READ)) {
+            bytes += input.length();
+          }
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns how much of the files of an index are in the page cache, per extension. Residency is checked without
+   * reading the files, in chunks of 64 KB, each of which counts as resident only if all its pages are.
+   *
+   * @param indexPath index path
+   * @return residency of the files with each extension
+   * @throws IOException if error encountered reading the index
+   */
+  public static SortedMap<String, Residency> residency(Path indexPath) throws IOException {
+    SortedMap<String, Residency> residency = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(indexPath, Files::isRegularFile)) {
+      for (Path file : files) {
+        long[] counts = countResidentBytes(file);
+        residency.merge(extension(file.getFileName().toString()), new Residency(counts[0], counts[1]),
+            (a, b) -> new Residency(a.bytes() + b.bytes(), a.residentBytes() + b.residentBytes()));
+      }
+    }
+    return residency;
+  }
+
+  private static long[] countResidentBytes(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long resident = 0;
+      for (long start = 0; start < size; start += RESIDENCY_REGION) {
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(RESIDENCY_REGION, size - start));
+        for (int offset = 0; offset < region.capacity(); offset += RESIDENCY_CHUNK) {
+          int length = Math.min(RESIDENCY_CHUNK, region.capacity() - offset);
+          if (region.slice(offset, length).isLoaded()) {
+            resident += length;
+          }
+        }
+      }
+      return new long[] {size, resident};
+    }
+  }
+
+  /**
+   * Replays queries in rounds until the 99th percentile latency of a round is within a tolerance of that of the
+   * previous round, or until the maximum number of rounds. Queries that fail count with the time they took.
+   *
+   * @param queries queries to replay
+   * @param runner searches with a query
+   * @param maxRounds maximum number of rounds
+   * @param tolerance relative change in 99th percentile latency between rounds below which latency is stable
+   * @return latencies of the rounds, and whether they stabilized
+   */
+  public static Replay replay(List<String> queries, QueryRunner runner, int maxRounds, double tolerance) {
+    if (queries.isEmpty() || maxRounds < 1 || tolerance < 0.0) {
+      throw new IllegalArgumentException("Queries and rounds must not be empty, and tolerance must not be negative.");
+    }
+
+    List<Long> p99s = new ArrayList<>();
+    for (int round = 1; round <= maxRounds; round++) {
+      LatencyHistogram latencies = new LatencyHistogram();
+      int errors = 0;
+      for (String query : queries) {
+        long start = System.nanoTime();
+        try {
+          runner.search(query);
+        } catch (Exception e) {
+          errors++;
+          LOG.debug("Query failed: {}", query, e);
+        }
+        latencies.record((System.nanoTime() - start) / 1000);
+      }
+
+      long p99 = latencies.getValueAtPercentile(99.0);
+      LOG.info(String.format("Round %d: p50 = %,d us, p99 = %,d us%s", round, latencies.getValueAtPercentile(50.0),
+          p99, errors > 0 ? String.format(" (%,d queries failed)", errors) : ""));
+      boolean stable = !p99s.isEmpty() && Math.abs(p99 - p99s.get(p99s.size() - 1)) <= tolerance * p99s.get(p99s.size() - 1);
+      p99s.add(p99);
+      if (stable) {
+        return new Replay(p99s, true);
+      }
+    }
+    return new Replay(p99s, false);
+  }
+
+  private static void logResidency(SortedMap<String, Residency> residency) {
+    long bytes = 0;
+    long residentBytes = 0;
+    for (var entry : residency.entrySet()) {
+      LOG.info(String.format(" + %-6s %,16d bytes, %5.1f%% resident", entry.getKey().isEmpty() ? "(none)" : entry.getKey(),
+          entry.getValue().bytes(), 100.0 * entry.getValue().fraction()));
+      bytes += entry.getValue().bytes();
+      residentBytes += entry.getValue().residentBytes();
+    }
+    LOG.info(String.format(" = %-6s %,16d bytes, %5.1f%% resident", "all", bytes,
+        100.0 * new Residency(bytes, residentBytes).fraction()));
+  }
+
+  /**
+   * Warms up an index.
+   *
+   * @param args arguments
+   * @return outcome of replaying the queries, or {@code null} if there were no topics to replay
+   * @throws IOException if error encountered reading the index or the topics
+   */
+  public static Replay warmUp(Args args) throws IOException {
+    Path indexPath = Path.of(args.index);
+    if (!Files.isDirectory(indexPath)) {
+      throw new IllegalArgumentException(String.format("Index path \"%s\" does not exist or is not a directory.", args.index));
+    }
+
+    LOG.info("============ Warming Up Index ============");
+    LOG.info("Index: " + indexPath);
+    if (args.residency) {
+      LOG.info("Page cache residency before warming up:");
+      logResidency(residency(indexPath));
+    }
+
+    if (!args.noPreload) {
+      final long start = System.nanoTime();
+      long bytes = preload(indexPath, Arrays.asList(args.preload));
+      final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      LOG.info(String.format("Preloaded %,d bytes of %s files in %s", bytes, Arrays.toString(args.preload),
+          DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss")));
+    }
+
+    Replay replay = null;
+    if (args.topics != null) {
+      ReplayQueries.Args replayArgs = new ReplayQueries.Args();
+      replayArgs.index = args.index;
+      replayArgs.searcher = args.searcher;
+      replayArgs.encoder = args.encoder;
+      replayArgs.efSearch = args.efSearch;
+      replayArgs.hits = args.hits;
+      replayArgs.topics = args.topics;
+      replayArgs.topicReader = args.topicReader;
+      replayArgs.topicField = args.topicField;
+
+      List<String> queries = ReplayQueries.readTopics(replayArgs).stream().map(ReplayQueries.Query::text).toList();
+      try (ReplayQueries.Target target = ReplayQueries.createTarget(replayArgs)) {
+        LOG.info(String.format("Replaying %,d queries with the %s searcher...", queries.size(), args.searcher));
+        replay = replay(queries, target::search, args.rounds, args.tolerance);
+      }
+      LOG.info(replay.stable() ? String.format("Latency stabilized after %d rounds", replay.p99s().size()) :
+          String.format("Latency did not stabilize within %d rounds", args.rounds));
+    }
+
+    if (args.residency) {
+      LOG.info("Page cache residency after warming up:");
+      logResidency(residency(indexPath));
+    }
+    return replay;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Args warmerArgs = new Args();
+    CmdLineParser parser = new CmdLineParser(warmerArgs, ParserProperties.defaults().withUsageWidth(120));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      if (warmerArgs.options) {
+        System.err.printf("Options for %s:\n\n", IndexWarmer.class.getSimpleName());
+        parser.printUsage(System.err);
+
+        List<String> required = new ArrayList<>();
+        parser.getOptions().forEach((option) -> {
+          if (option.option.required()) {
+            required.add(option.option.toString());
+          }
+        });
+
+        System.err.printf("\nRequired options are %s\n", required);
+      } else {
+        System.err.printf("Error: %s. For help, use \"-options\" to print out information about options.\n", e.getMessage());
+      }
+
+      return;
+    }
+
+    try {
+      warmUp(warmerArgs);
+    } catch (IllegalArgumentException e) {
+      System.err.printf("Error: %s\n", e.getMessage());
+    }
+  }
+}
@@ -184,7 +184,7 @@ public class InvertedDenseSearcher<K extends Comparable<K>> extends BaseSearcher
    * @throws IOException if error encountered during search
    */
   public ScoredDoc[] search(@Nullable K qid, String query, int k) throws IOException {
-    TopDocs topDocs = getIndexSearcher().search(generator.buildQuery(query), k, BREAK_SCORE_TIES_BY_DOCID, true);
+    TopDocs topDocs = TieBreakingCollectorManager.searchBreakingTiesByDocid(getIndexSearcher(), generator.buildQuery(query), k);
 
     return super.processLuceneTopDocs(qid, topDocs);
   }
@@ -0,0 +1,153 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes the results of topics searched in parallel as soon as they are ready, in a fixed order. Results that
+ * complete out of order wait in a reorder buffer until the topics before them have been written. To bound the size
+ * of the buffer (and so the memory held by results), callers {@link #acquire} a slot before searching each topic,
+ * which blocks while too many topics are in flight; the slot is freed when the topic is written.
+ *
+ * @param <K> type of qid
+ */
+public class OrderedRunOutputWriter<K extends Comparable<K>> implements Closeable {
+  /**
+   * A topic to write, at its position in the output.
+   *
+   * @param <K> type of qid
+   */
+  public static final class Entry<K> {
+    private final K qid;
+    private final String query;
+
+    public Entry(K qid, String query) {
+      this.qid = qid;
+      this.query = query;
+    }
+
+    public K getQid() {
+      return qid;
+    }
+
+    public String getQuery() {
+      return query;
+    }
+  }
+
+  private final RunOutputWriter<K> out;
+  private final List<Entry<K>> order;
+  private final Semaphore slots;
+  // Results that are ready but wait for earlier topics, by position; null values mark topics that failed.
+  private final Map<Integer, ScoredDoc[]> pending = new HashMap<>();
+  private int next = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param out writer
+   * @param order topics, in the order in which to write them
+   * @param window maximum number of topics in flight, i.e., acquired but not yet written
+   */
+  public OrderedRunOutputWriter(RunOutputWriter<K> out, List<Entry<K>> order, int window) {
+    this.out = out;
+    this.order = order;
+    this.slots = new Semaphore(window);
+  }
+
+  /**
+   * Acquires a slot for searching a topic, waiting while too many topics are in flight.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void acquire() throws InterruptedException {
+    slots.acquire();
+  }
+
+  /**
+   * Adds the results of a topic, writing them, and any buffered results that follow, if all topics before it have
+   * been written. A topic that fails to be written is passed over like a skipped one, so that the topics after it are
+   * still written; the first failure is then thrown. Either way, the topic is not to be skipped afterwards.
+   *
+   * @param position position of the topic in the output
+   * @param results results
+   * @throws JsonProcessingException if error encountered writing reranker requests
+   */
+  public synchronized void write(int position, ScoredDoc[] results) throws JsonProcessingException {
+    pending.put(position, results);
+    Exception failure = null;
+    while (pending.containsKey(next)) {
+      ScoredDoc[] hits = pending.remove(next);
+      try {
+        if (hits != null) {
+          Entry<K> entry = order.get(next);
+          out.writeTopic(entry.getQid(), entry.getQuery(), hits);
+        }
+      } catch (JsonProcessingException | RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      } finally {
+        next++;
+        slots.release();
+      }
+    }
+
+    if (failure instanceof JsonProcessingException) {
+      throw (JsonProcessingException) failure;
+    } else if (failure != null) {
+      throw (RuntimeException) failure;
+    }
+  }
+
+  /**
+   * Marks a topic as failed, so that the topics after it are not held back.
+   *
+   * @param position position of the topic in the output
+   */
+  public void skip(int position) {
+    try {
+      write(position, null);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the number of topics whose results are buffered, waiting for earlier topics.
+   *
+   * @return number of buffered topics
+   */
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.AlreadyClosedException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of search results, shared across queries and requests. Query traffic is usually skewed towards a few
+ * popular queries, whose results can be served from the cache rather than computed again.
+ *
+ * <p>Results are keyed by the index reader, the configuration of the searcher (e.g., its similarity and reranker
+ * cascade), the query after analysis (e.g., the Lucene {@link org.apache.lucene.search.Query}, so that queries that
+ * analyze the same share results) and the number of hits. The reader is identified by its cache key, which changes
+ * whenever the reader is reopened, including near-real-time reopens without a new commit, so results of an older view
+ * of the index are never returned; they are dropped as soon as that reader is closed. Readers without a cache key, such
+ * as {@link org.apache.lucene.index.MultiReader}s over several readers, which are often short-lived, are not
+ * cached.</p>
+ *
+ * <p>The cache is split into independently-locked stripes, each evicting its least recently used results when it
+ * exceeds its share of the memory budget or of the maximum number of entries. Entries can also expire after a time to
+ * live, for indexes that change without their readers being reopened.</p>
+ */
+public final class QueryResultCache {
+  private static final int STRIPES = 16;
+  // Rough per-entry overhead: key, map entry, entry object and array header.
+  private static final long ENTRY_BYTES = 200;
+  // Rough per-hit overhead: hit object and docid string header.
+  private static final long HIT_BYTES = 80;
+  // Rough per-field overhead of stored documents kept with hits.
+  private static final long FIELD_BYTES = 64;
+
+  /**
+   * Computes results on a cache miss.
+   */
+  @FunctionalInterface
+  public interface Loader {
+    ScoredDoc[] load() throws IOException;
+  }
+
+  private record Key(Object reader, Object configuration, Object query, int k) {}
+
+  private static final class Entry {
+    private final ScoredDoc[] results;
+    private final long bytes;
+    private final long createdNanos;
+
+    private Entry(ScoredDoc[] results) {
+      this.results = results;
+      this.bytes = ramBytesUsed(results);
+      this.createdNanos = System.nanoTime();
+    }
+  }
+
+  private final class Stripe extends LinkedHashMap<Key, Entry> {
+    private long bytes = 0;
+
+    Stripe() {
+      super(16, 0.75f, true);
+    }
+
+    synchronized Entry lookup(Key key) {
+      Entry entry = get(key);
+      if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.createdNanos > ttlNanos) {
+        remove(key);
+        bytes -= entry.bytes;
+        expirations.increment();
+        return null;
+      }
+      return entry;
+    }
+
+    synchronized void add(Key key, Entry entry) {
+      Entry previous = put(key, entry);
+      bytes += entry.bytes - (previous == null ? 0 : previous.bytes);
+      Iterator<Map.Entry<Key, Entry>> it = entrySet().iterator();
+      while ((bytes > maxBytes / STRIPES || size() > maxEntriesPerStripe) && it.hasNext()) {
+        Entry evicted = it.next().getValue();
+        it.remove();
+        bytes -= evicted.bytes;
+        evictions.increment();
+      }
+    }
+
+    synchronized void removeReader(Object reader) {
+      Iterator<Map.Entry<Key, Entry>> it = entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Key, Entry> next = it.next();
+        if (reader == null || next.getKey().reader() == reader) {
+          it.remove();
+          bytes -= next.getValue().bytes;
+          invalidations.increment();
+        }
+      }
+    }
+  }
+
+  private final long maxBytes;
+  private final int maxEntriesPerStripe;
+  private final long ttlNanos;
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  // Readers whose closing drops their results.
+  private final Set<Object> readers = ConcurrentHashMap.newKeySet();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  /**
+   * Creates a cache without a time to live.
+   *
+   * @param maxBytes approximate memory budget in bytes
+   * @param maxEntries maximum number of results
+   */
+  public QueryResultCache(long maxBytes, int maxEntries) {
+    this(maxBytes, maxEntries, null);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxBytes approximate memory budget in bytes
+   * @param maxEntries maximum number of results
+   * @param ttl time after which results expire, or null if they do not
+   */
+  public QueryResultCache(long maxBytes, int maxEntries, Duration ttl) {
+    if (maxBytes <= 0 || maxEntries <= 0 || (ttl != null && (ttl.isNegative() || ttl.isZero()))) {
+      throw new IllegalArgumentException("Memory budget, number of entries and time to live must be positive.");
+    }
+    this.maxBytes = maxBytes;
+    this.maxEntriesPerStripe = Math.max(1, (maxEntries + STRIPES - 1) / STRIPES);
+    this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Returns the results of a query, computing them on a cache miss. Results are shared, so callers must not modify
+   * the hits; the array itself is a copy.
+   *
+   * @param reader index reader searched
+   * @param configuration configuration of the searcher, compared with {@link Object#equals}
+   * @param query analyzed query, compared with {@link Object#equals}
+   * @param k number of hits
+   * @param loader computes the results on a cache miss
+   * @return results
+   * @throws IOException if error encountered computing the results
+   */
+  public ScoredDoc[] get(IndexReader reader, Object configuration, Object query, int k, Loader loader)
+      throws IOException {
+    IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+    if (helper == null) {
+      misses.increment();
+      return loader.load();
+    }
+
+    Object readerKey = helper.getKey();
+    Key key = new Key(readerKey, configuration, query, k);
+    Stripe stripe = stripes[Math.floorMod(key.hashCode(), STRIPES)];
+    Entry entry = stripe.lookup(key);
+    if (entry != null) {
+      hits.increment();
+      return entry.results.clone();
+    }
+
+    // Listen for the reader closing before computing, so that results of a reader closed meanwhile are not kept.
+    misses.increment();
+    if (readers.add(readerKey)) {
+      try {
+        helper.addClosedListener(this::invalidate);
+      } catch (AlreadyClosedException e) {
+        invalidate(readerKey);
+        return loader.load();
+      }
+    }
+
+    // Compute outside the lock; two threads may compute the same results, which is harmless.
+    ScoredDoc[] results = loader.load();
+    if (readers.contains(readerKey)) {
+      stripe.add(key, new Entry(results.clone()));
+      // The reader may have closed after the check, and its results been dropped before these were added.
+      if (!readers.contains(readerKey)) {
+        stripe.removeReader(readerKey);
+      }
+    }
+    return results;
+  }
+
+  private void invalidate(Object readerKey) {
+    readers.remove(readerKey);
+    for (Stripe stripe : stripes) {
+      stripe.removeReader(readerKey);
+    }
+  }
+
+  /**
+   * Drops all results.
+   */
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      stripe.removeReader(null);
+    }
+  }
+
+  private static long ramBytesUsed(ScoredDoc[] results) {
+    long bytes = ENTRY_BYTES + 8L * results.length;
+    for (ScoredDoc hit : results) {
+      bytes += HIT_BYTES + (hit.docid == null ? 0 : 2L * hit.docid.length());
+      if (hit.lucene_document != null) {
+        for (IndexableField field : hit.lucene_document.getFields()) {
+          bytes += FIELD_BYTES;
+          if (field.stringValue() != null) {
+            bytes += 2L * field.stringValue().length();
+          } else if (field.binaryValue() != null) {
+            bytes += field.binaryValue().length;
+          }
+        }
+      }
+    }
+    return bytes;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public long getExpirations() {
+    return expirations.sum();
+  }
+
+  public long getInvalidations() {
+    return invalidations.sum();
+  }
+
+  /**
+   * Returns the number of cached results.
+   *
+   * @return number of cached results
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns the approximate memory used by the cached results.
+   *
+   * @return memory used in bytes
+   */
+  public long ramBytesUsed() {
+    long bytes = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        bytes += stripe.bytes;
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    long hits = getHits();
+    long lookups = hits + getMisses();
+    return String.format("Query result cache: %,d lookups, %.1f%% hits, %,d evictions, %,d expirations, " +
+            "%,d invalidations, %.1f MB used of %.1f MB", lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+        getEvictions(), getExpirations(), getInvalidations(), ramBytesUsed() / 1048576.0, maxBytes / 1048576.0);
+  }
+}
@@ -0,0 +1,547 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.search.topicreader.TopicReader;
+import io.anserini.search.topicreader.Topics;
+import io.anserini.util.LatencyHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator that replays queries, from a topics file or from a timestamped query log, against an in-process
+ * searcher (BM25, impact, HNSW or flat) or against the REST API of the server, and reports the distribution of query
+ * latencies per query type.
+ *
+ * <p>Queries arrive either in a closed loop, with a number of clients each issuing its next query as soon as its
+ * previous one completes, or in an open loop, at a given rate (or at the times of the query log) regardless of how
+ * many queries are outstanding. In an open loop, the latency of a query is measured from the time it was due to
+ * arrive, so that time spent waiting for a busy searcher counts, as it does for users; measuring from the time the
+ * query was actually issued would hide exactly the queueing that makes tails long. Queries that arrive during the
+ * warmup phase are run but not measured.</p>
+ */
+public final class ReplayQueries implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(ReplayQueries.class);
+
+  /** Query type of queries from topics, and of queries in a query log without types. */
+  public static final String DEFAULT_TYPE = "query";
+  /** Name under which the latencies of queries of all types are reported. */
+  public static final String ALL_TYPES = "all";
+
+  public static class Args {
+    @Option(name = "-searcher", metaVar = "[searcher]",
+        usage = "Searcher to query: \"bm25\", \"impact\", \"hnsw\", \"flat\" or \"http\" (the REST API at -url).")
+    public String searcher = "bm25";
+
+    @Option(name = "-index", metaVar = "[path]", forbids = {"-url"}, usage = "Path to Lucene index.")
+    public String index;
+
+    @Option(name = "-url", metaVar = "[url]", forbids = {"-index"},
+        usage = "Search endpoint of the REST API, e.g., http://localhost:8081/api/v1.0/indexes/msmarco-v1-passage/search")
+    public String url;
+
+    @Option(name = "-encoder", metaVar = "[encoder]", usage = "Query encoder of the impact, HNSW or flat searcher.")
+    public String encoder = null;
+
+    @Option(name = "-efSearch", metaVar = "[number]", usage = "efSearch parameter for HNSW search.")
+    public int efSearch = 100;
+
+    @Option(name = "-topics", metaVar = "[file]", forbids = {"-queryLog"}, usage = "Topics file, or name of topics.")
+    public String topics;
+
+    @Option(name = "-topicReader", metaVar = "[class]", usage = "TopicReader to use.")
+    public String topicReader = "TsvString";
+
+    @Option(name = "-topicField", metaVar = "[field]", usage = "Topic field that should be used as the query.")
+    public String topicField = "title";
+
+    @Option(name = "-queryLog", metaVar = "[file]", forbids = {"-topics", "-rate"},
+        usage = "Query log: lines of a timestamp in milliseconds, an optional query type and a query, separated by " +
+            "tabs. Queries arrive at the times of the log.")
+    public String queryLog;
+
+    @Option(name = "-speedup", metaVar = "[ratio]", usage = "Ratio by which to speed up the replay of the query log.")
+    public double speedup = 1.0;
+
+    @Option(name = "-rate", metaVar = "[qps]", forbids = {"-queryLog"},
+        usage = "Arrival rate of queries, in queries per second, for an open loop; if not set, queries arrive in a closed loop.")
+    public double rate = 0.0;
+
+    @Option(name = "-arrival", metaVar = "[process]",
+        usage = "Arrivals at the given rate: \"poisson\" (exponential gaps) or \"uniform\" (equal gaps).")
+    public String arrival = "poisson";
+
+    @Option(name = "-clients", metaVar = "[number]", usage = "Number of clients of a closed loop.")
+    public int clients = 1;
+
+    @Option(name = "-threads", metaVar = "[number]", usage = "Number of threads running the queries of an open loop.")
+    public int threads = 16;
+
+    @Option(name = "-warmup", metaVar = "[seconds]", usage = "Length of the warmup phase, whose queries are not measured.")
+    public double warmup = 0.0;
+
+    @Option(name = "-queries", metaVar = "[number]",
+        usage = "Number of queries to measure, cycling through the topics; by default, as many as there are topics.")
+    public int queries = 0;
+
+    @Option(name = "-duration", metaVar = "[seconds]", usage = "Maximum length of the measured phase.")
+    public double duration = 0.0;
+
+    @Option(name = "-hits", metaVar = "[number]", usage = "Number of hits to retrieve per query.")
+    public int hits = 10;
+
+    @Option(name = "-histograms", metaVar = "[directory]",
+        usage = "Directory to which to write the latency distribution of each query type, in HdrHistogram's .hgrm format.")
+    public String histograms = null;
+
+    @Option(name = "-seed", metaVar = "[number]", usage = "Seed of Poisson arrivals.")
+    public long seed = 42L;
+
+    @Option(name = "-options", usage = "Print information about options.")
+    public Boolean options = false;
+  }
+
+  /**
+   * Searcher under load.
+   */
+  interface Target extends Closeable {
+    void search(String query) throws Exception;
+  }
+
+  record Query(String type, String text, long arrivalNanos) {}
+
+  private final Args args;
+  private final List<Query> queries;
+  private final Target target;
+  private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+  private final AtomicLong measuredEnd = new AtomicLong();
+  private long measuredStart;
+
+  public ReplayQueries(Args args) throws IOException {
+    this.args = args;
+    if (args.queryLog == null && args.topics == null) {
+      throw new IllegalArgumentException("Either -topics or -queryLog must be given.");
+    }
+    if (args.speedup <= 0.0 || args.rate < 0.0 || args.clients < 1 || args.threads < 1) {
+      throw new IllegalArgumentException("Speedup, rate, clients and threads must be positive.");
+    }
+    if (!args.arrival.equals("poisson") && !args.arrival.equals("uniform")) {
+      throw new IllegalArgumentException(String.format("Unknown arrival process \"%s\".", args.arrival));
+    }
+    this.queries = args.queryLog != null ? readQueryLog(Path.of(args.queryLog), args.speedup) : readTopics(args);
+    if (queries.isEmpty()) {
+      throw new IllegalArgumentException("No queries to replay.");
+    }
+    this.target = createTarget(args);
+
+    LOG.info("============ Initializing {} ============", this.getClass().getSimpleName());
+    LOG.info("Searcher: {}", args.searcher);
+    LOG.info("Queries: {} from {}", queries.size(), args.queryLog != null ? args.queryLog : args.topics);
+    LOG.info("Arrivals: {}", args.queryLog != null ? "query log (speedup " + args.speedup + ")" :
+        args.rate > 0.0 ? args.arrival + " at " + args.rate + " qps" : "closed loop with " + args.clients + " clients");
+  }
+
+  private static List<Query> readQueryLog(Path path, double speedup) throws IOException {
+    List<Query> queries = new ArrayList<>();
+    double first = Double.NaN;
+    double previous = Double.NEGATIVE_INFINITY;
+    for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+      if (line.isBlank()) {
+        continue;
+      }
+      String[] arr = line.split("\t", 3);
+      if (arr.length < 2) {
+        throw new IllegalArgumentException("Malformed query log line: " + line);
+      }
+      double time = Double.parseDouble(arr[0]);
+      if (time < previous) {
+        throw new IllegalArgumentException("Query log is not in order of time at line: " + line);
+      }
+      if (Double.isNaN(first)) {
+        first = time;
+      }
+      previous = time;
+      long arrival = (long) ((time - first) / speedup * 1_000_000.0);
+      queries.add(arr.length == 3 ? new Query(arr[1], arr[2], arrival) : new Query(DEFAULT_TYPE, arr[1], arrival));
+    }
+    return queries;
+  }
+
+  static List<Query> readTopics(Args args) throws IOException {
+    SortedMap<Object, Map<String, String>> topics;
+    Path path = Path.of(args.topics);
+    if (Files.isRegularFile(path)) {
+      try {
+        @SuppressWarnings("unchecked")
+        TopicReader<Object> reader = (TopicReader<Object>) Class
+            .forName(String.format("io.anserini.search.topicreader.%sTopicReader", args.topicReader))
+            .getConstructor(Path.class).newInstance(path);
+        topics = reader.read();
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalArgumentException(String.format("Unable to load topic reader \"%s\".", args.topicReader));
+      }
+    } else {
+      Topics ref = Topics.getByName(args.topics);
+      if (ref == null) {
+        throw new IllegalArgumentException(String.format("\"%s\" does not refer to valid topics.", args.topics));
+      }
+      topics = TopicReader.getTopics(ref);
+    }
+
+    List<Query> queries = new ArrayList<>();
+    for (Map<String, String> topic : topics.values()) {
+      String query = topic.get(args.topicField);
+      if (query == null) {
+        throw new IllegalArgumentException(String.format("Unable to read topic field \"%s\".", args.topicField));
+      }
+      queries.add(new Query(DEFAULT_TYPE, query, 0L));
+    }
+    return queries;
+  }
+
+  static Target createTarget(Args args) throws IOException {
+    if (args.searcher.equals("http")) {
+      if (args.url == null) {
+        throw new IllegalArgumentException("Searcher \"http\" requires -url.");
+      }
+      HttpClient client = HttpClient.newHttpClient();
+      return new Target() {
+        @Override
+        public void search(String query) throws Exception {
+          URI uri = URI.create(String.format("%s?query=%s&hits=%d", args.url,
+              URLEncoder.encode(query, StandardCharsets.UTF_8), args.hits));
+          HttpResponse<Void> response =
+              client.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding());
+          if (response.statusCode() != 200) {
+            throw new IOException("HTTP status " + response.statusCode());
+          }
+        }
+
+        @Override
+        public void close() {
+          client.close();
+        }
+      };
+    }
+
+    if (args.index == null) {
+      throw new IllegalArgumentException(String.format("Searcher \"%s\" requires -index.", args.searcher));
+    }
+    switch (args.searcher) {
+      case "bm25" -> {
+        SimpleSearcher searcher = new SimpleSearcher(args.index);
+        return new Target() {
+          @Override
+          public void search(String query) throws IOException {
+            searcher.search(query, args.hits);
+          }
+
+          @Override
+          public void close() throws IOException {
+            searcher.close();
+          }
+        };
+      }
+      case "impact" -> {
+        SimpleImpactSearcher searcher = args.encoder == null ?
+            new SimpleImpactSearcher(args.index) : new SimpleImpactSearcher(args.index, args.encoder);
+        return new Target() {
+          @Override
+          public void search(String query) throws Exception {
+            searcher.search(query, args.hits);
+          }
+
+          @Override
+          public void close() {
+            searcher.close();
+          }
+        };
+      }
+      case "hnsw" -> {
+        HnswDenseSearcher.Args searcherArgs = new HnswDenseSearcher.Args();
+        searcherArgs.index = args.index;
+        searcherArgs.encoder = args.encoder;
+        searcherArgs.efSearch = args.efSearch;
+        HnswDenseSearcher<String> searcher = new HnswDenseSearcher<>(searcherArgs);
+        return new Target() {
+          @Override
+          public void search(String query) throws IOException {
+            searcher.search(query, args.hits);
+          }
+
+          @Override
+          public void close() throws IOException {
+            searcher.close();
+          }
+        };
+      }
+      case "flat" -> {
+        FlatDenseSearcher.Args searcherArgs = new FlatDenseSearcher.Args();
+        searcherArgs.index = args.index;
+        searcherArgs.encoder = args.encoder;
+        FlatDenseSearcher<String> searcher = new FlatDenseSearcher<>(searcherArgs);
+        return new Target() {
+          @Override
+          public void search(String query) throws IOException {
+            searcher.search(query, args.hits);
+          }
+
+          @Override
+          public void close() throws IOException {
+            searcher.close();
+          }
+        };
+      }
+      default -> throw new IllegalArgumentException(String.format("Unknown searcher \"%s\".", args.searcher));
+    }
+  }
+
+  /**
+   * Replays the queries.
+   *
+   * @return latencies of the measured queries that succeeded, in microseconds, per query type and over all types
+   * @throws InterruptedException if interrupted while waiting for queries
+   */
+  public SortedMap<String, LatencyHistogram> run() throws InterruptedException {
+    // Search once before the target is shared across threads: the Lucene searchers create their IndexSearcher on
+    // the first query, which is not safe to race.
+    execute(queries.get(0), System.nanoTime(), false);
+    latencies.clear();
+    errors.clear();
+    long warmupNanos = (long) (args.warmup * 1e9);
+    long durationNanos = args.duration > 0.0 ? (long) (args.duration * 1e9) : Long.MAX_VALUE;
+    // By default, the query log is replayed once, as are the topics after the warmup.
+    long limit = args.queries > 0 ? args.queries : args.queryLog != null ? Long.MAX_VALUE : queries.size();
+
+    long start = System.nanoTime();
+    measuredStart = start + warmupNanos;
+    measuredEnd.set(measuredStart);
+    if (args.queryLog == null && args.rate == 0.0) {
+      runClosedLoop(start, warmupNanos, durationNanos, limit);
+    } else {
+      runOpenLoop(start, warmupNanos, durationNanos, limit);
+    }
+
+    SortedMap<String, LatencyHistogram> results = new TreeMap<>(latencies);
+    LatencyHistogram all = new LatencyHistogram();
+    latencies.values().forEach(all::add);
+    results.put(ALL_TYPES, all);
+    return results;
+  }
+
+  private void runClosedLoop(long start, long warmupNanos, long durationNanos, long limit)
+      throws InterruptedException {
+    AtomicLong next = new AtomicLong();
+    AtomicLong measured = new AtomicLong();
+    ExecutorService clients = Executors.newFixedThreadPool(args.clients);
+    for (int c = 0; c < args.clients; c++) {
+      clients.execute(() -> {
+        while (true) {
+          Query query = queries.get((int) (next.getAndIncrement() % queries.size()));
+          long begin = System.nanoTime();
+          boolean isMeasured = begin - start >= warmupNanos;
+          if (isMeasured && (begin - start - warmupNanos >= durationNanos || measured.incrementAndGet() > limit)) {
+            return;
+          }
+          execute(query, begin, isMeasured);
+        }
+      });
+    }
+    clients.shutdown();
+    clients.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  private void runOpenLoop(long start, long warmupNanos, long durationNanos, long limit)
+      throws InterruptedException {
+    Random random = new Random(args.seed);
+    ExecutorService workers = Executors.newFixedThreadPool(args.threads);
+    long measured = 0;
+    long arrival = 0;
+    for (long i = 0; ; i++) {
+      Query query;
+      if (args.queryLog != null) {
+        if (i >= queries.size()) {
+          break;
+        }
+        query = queries.get((int) i);
+        arrival = query.arrivalNanos();
+      } else {
+        query = queries.get((int) (i % queries.size()));
+        if (i > 0) {
+          double gap = args.arrival.equals("uniform") ? 1.0 / args.rate : -Math.log(1.0 - random.nextDouble()) / args.rate;
+          arrival += (long) (gap * 1e9);
+        }
+      }
+
+      boolean isMeasured = arrival >= warmupNanos;
+      if (isMeasured && (arrival - warmupNanos >= durationNanos || ++measured > limit)) {
+        break;
+      }
+      // Sleep until the query is due; a query that is already due, because the scheduler fell behind, is issued at
+      // once, and its latency is still measured from the time it was due.
+      long due = start + arrival;
+      for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+      final Query q = query;
+      workers.execute(() -> execute(q, due, isMeasured));
+    }
+    workers.shutdown();
+    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  private void execute(Query query, long due, boolean isMeasured) {
+    try {
+      target.search(query.text());
+      long end = System.nanoTime();
+      if (isMeasured) {
+        latencies.computeIfAbsent(query.type(), k -> new LatencyHistogram()).record((end - due) / 1000);
+        measuredEnd.accumulateAndGet(end, Math::max);
+      }
+    } catch (Exception e) {
+      if (isMeasured) {
+        errors.computeIfAbsent(query.type(), k -> new LongAdder()).increment();
+      }
+      LOG.debug("Query failed: {}", query.text(), e);
+    }
+  }
+
+  /**
+   * Returns the number of measured queries that failed.
+   *
+   * @param type query type, or {@link #ALL_TYPES}
+   * @return number of failed queries
+   */
+  public long getErrors(String type) {
+    if (type.equals(ALL_TYPES)) {
+      return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+    LongAdder count = errors.get(type);
+    return count == null ? 0 : count.sum();
+  }
+
+  /**
+   * Prints a table of latency percentiles, in milliseconds, per query type.
+   *
+   * @param results latencies returned by {@link #run()}
+   * @param out stream
+   */
+  public void printReport(SortedMap<String, LatencyHistogram> results, PrintStream out) {
+    double seconds = Math.max(measuredEnd.get() - measuredStart, 1) / 1e9;
+    out.println(String.format(Locale.US, "%-16s %8s %7s %9s %9s %9s %9s %9s %9s %9s", "type", "count", "errors",
+        "qps", "mean", "p50", "p90", "p99", "p99.9", "max"));
+    results.forEach((type, histogram) -> out.println(String.format(Locale.US,
+        "%-16s %8d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f", type, histogram.getTotalCount(), getErrors(type),
+        histogram.getTotalCount() / seconds, histogram.getMean() / 1000.0,
+        histogram.getValueAtPercentile(50.0) / 1000.0, histogram.getValueAtPercentile(90.0) / 1000.0,
+        histogram.getValueAtPercentile(99.0) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+        histogram.getMax() / 1000.0)));
+  }
+
+  /**
+   * Writes the latency distribution of each query type, in milliseconds, to a file per type in HdrHistogram's .hgrm
+   * format.
+   *
+   * @param results latencies returned by {@link #run()}
+   * @param dir directory
+   * @throws IOException if error encountered writing the files
+   */
+  public static void writeHistograms(SortedMap<String, LatencyHistogram> results, Path dir) throws IOException {
+    Files.createDirectories(dir);
+    for (Map.Entry<String, LatencyHistogram> entry : results.entrySet()) {
+      try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(entry.getKey() + ".hgrm")), false,
+          StandardCharsets.UTF_8)) {
+        entry.getValue().outputPercentileDistribution(out, 1000.0);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    target.close();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Args replayArgs = new Args();
+    CmdLineParser parser = new CmdLineParser(replayArgs, ParserProperties.defaults().withUsageWidth(120));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      if (replayArgs.options) {
+        System.err.printf("Options for %s:\n\n", ReplayQueries.class.getSimpleName());
+        parser.printUsage(System.err);
+
+        List<String> required = new ArrayList<>();
+        parser.getOptions().forEach((option) -> {
+          if (option.option.required()) {
+            required.add(option.option.toString());
+          }
+        });
+
+        System.err.printf("\nRequired options are %s\n", required);
+      } else {
+        System.err.printf("Error: %s. For help, use \"-options\" to print out information about options.\n", e.getMessage());
+      }
+
+      return;
+    }
+
+    // We're at top-level already inside a main; makes no sense to propagate exceptions further, so reformat the
+    // exception messages and display on console.
+    try (ReplayQueries replay = new ReplayQueries(replayArgs)) {
+      SortedMap<String, LatencyHistogram> results = replay.run();
+      replay.printReport(results, System.out);
+      if (replayArgs.histograms != null) {
+        writeHistograms(results, Path.of(replayArgs.histograms));
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.printf("Error: %s\n", e.getMessage());
+    }
+  }
+}
@@ -25,6 +25,7 @@ import io.anserini.index.Constants;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -38,13 +39,22 @@ import java.util.Map;
 
 public class RunOutputWriter<K extends Comparable<K>> implements Closeable {
   private final PrintWriter out;
+  private final BinaryRun.Writer binaryOut;
   private final String format;
   private final String runtag;
   private final ObjectMapper mapper = new ObjectMapper(); // For JSON serialization
   private final PrintWriter outputRerankerRequests;
+  private final StringBuilder line = new StringBuilder();
+  private char[] chars = new char[8192];
 
   public RunOutputWriter(String output, String format, String runtag, String outputRerankerRequests) throws IOException {
-    this.out = new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8));
+    if ("binary".equals(format)) {
+      this.out = null;
+      this.binaryOut = new BinaryRun.Writer(Paths.get(output), BinaryRun.ScoreType.FLOAT);
+    } else {
+      this.out = new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8));
+      this.binaryOut = null;
+    }
     this.format = format;
     this.runtag = runtag;
     this.outputRerankerRequests = outputRerankerRequests == null ? null : new PrintWriter(Files.newBufferedWriter(Paths.get(outputRerankerRequests), StandardCharsets.UTF_8));
@@ -70,9 +80,24 @@ public class RunOutputWriter<K extends Comparable<K>> implements Closeable {
       queryMap.put("candidates", candidates);
       outputRerankerRequests.println(mapper.writeValueAsString(queryMap));
     }
+    // Lines are formatted into a reusable buffer rather than with String.format, which allocates a formatter, a
+    // boxed argument array and intermediate strings for every line; for runs with millions of lines, that adds up.
+    String qidString = qid.toString();
+    if (binaryOut != null) {
+      try {
+        binaryOut.beginTopic(qidString, runtag, results.length, false);
+        for (ScoredDoc r : results) {
+          binaryOut.writeHit(r.docid, rank++, r.score);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return;
+    }
+    line.setLength(0);
     if ("msmarco".equals(format)) {
       for (ScoredDoc r : results) {
-        out.append(String.format(Locale.US, "%s\t%s\t%d\n", qid, r.docid, rank));
+        line.append(qidString).append('\t').append(r.docid).append('\t').append(rank).append('\n');
         rank++;
       }
     } else {
@@ -84,15 +109,61 @@ public class RunOutputWriter<K extends Comparable<K>> implements Closeable {
       // + the fifth column shows the score (integer or floating point) that generated the ranking.
       // + the sixth column is called the "run tag" and should be a unique identifier for your
       for (ScoredDoc r : results) {
-        out.append(String.format(Locale.US, "%s Q0 %s %d %f %s\n", qid, r.docid, rank, r.score, runtag));
+        line.append(qidString).append(" Q0 ").append(r.docid).append(' ').append(rank).append(' ');
+        appendScore(line, r.score);
+        line.append(' ').append(runtag).append('\n');
         rank++;
       }
     }
+    if (chars.length < line.length()) {
+      chars = new char[Math.max(line.length(), 2 * chars.length)];
+    }
+    line.getChars(0, line.length(), chars, 0);
+    out.write(chars, 0, line.length());
+  }
+
+  /**
+   * Appends a score as <code>String.format(Locale.US, "%f", score)</code> would, i.e., rounded half-up to six
+   * decimal places, but without allocating. Java rounds the shortest decimal representation of the value, which
+   * differs from the exact binary value by less than the value's ulp; the two can therefore only round differently
+   * when the value is within an ulp of a tie, so values near ties (and large or non-finite values) fall back to
+   * String.format.
+   *
+   * @param sb builder to append to
+   * @param score score
+   */
+  static void appendScore(StringBuilder sb, float score) {
+    double abs = Math.abs((double) score);
+    if (abs < 1e6) {
+      // The product is below 1e12, so it is within 1e-4 of the exact product.
+      double scaled = abs * 1e6;
+      double floor = Math.floor(scaled);
+      double frac = scaled - floor;
+      if (Math.abs(frac - 0.5) > 1e-3) {
+        long units = (long) floor + (frac > 0.5 ? 1 : 0);
+        // Like String.format, keep the sign of negative values that round to zero, and of negative zero.
+        if (Math.copySign(1.0f, score) < 0) {
+          sb.append('-');
+        }
+        sb.append(units / 1000000).append('.');
+        long decimals = units % 1000000;
+        for (long p = 100000; p > decimals && p > 1; p /= 10) {
+          sb.append('0');
+        }
+        sb.append(decimals);
+        return;
+      }
+    }
+    sb.append(String.format(Locale.US, "%f", score));
   }
 
   @Override
   public void close() throws IOException {
-    out.close();
+    if (binaryOut != null) {
+      binaryOut.close();
+    } else {
+      out.close();
+    }
     if (outputRerankerRequests != null) {
       outputRerankerRequests.close();
     }
@@ -16,8 +16,6 @@
 
 package io.anserini.search;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-
 import io.anserini.analysis.AnalyzerMap;
 import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.analysis.AutoCompositeAnalyzer;
@@ -26,10 +24,13 @@ import io.anserini.analysis.DefaultEnglishAnalyzer;
 import io.anserini.analysis.HuggingFaceTokenizerAnalyzer;
 import io.anserini.analysis.TweetAnalyzer;
 import io.anserini.collection.DocumentCollection;
+import io.anserini.encoder.OnnxEncoder;
 import io.anserini.encoder.sparse.SparseEncoder;
 import io.anserini.index.Constants;
+import io.anserini.index.IndexReaderRegistry;
 import io.anserini.index.generator.TweetGenerator;
 import io.anserini.index.generator.WashingtonPostGenerator;
+import io.anserini.rerank.DocumentVectorCache;
 import io.anserini.rerank.RerankerCascade;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.lib.AxiomReranker;
@@ -56,7 +57,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.lucene.document.LongPoint;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
@@ -82,7 +82,6 @@ import org.apache.lucene.search.similarities.LMDirichletSimilarity;
 import org.apache.lucene.search.similarities.LMJelinekMercerSimilarity;
 import org.apache.lucene.search.similarities.LambdaDF;
 import org.apache.lucene.search.similarities.NormalizationH2;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -111,7 +110,6 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -201,6 +199,10 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
         "for the TREC News Track Background Linking task.")
     public boolean backgroundLinkingDatefilter = false;
 
+    @Option(name = "-backgroundLinking.lsh", usage = "Boolean switch to find near-duplicate articles among the results " +
+        "with SimHash LSH buckets instead of comparing every pair; uses sketches stored with -storeSimHash if available.")
+    public boolean backgroundLinkingLsh = false;
+
     @Option(name = "-stemmer", usage = "Stemmer: one of the following porter,krovetz,none. Default porter")
     public String stemmer = "porter";
 
@@ -228,10 +230,14 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
     @Option(name = "-rf.qrels", metaVar = "[file]", usage = "qrels file used for relevance feedback")
     public String rf_qrels = null;
 
+    @Option(name = "-docVectorCache", metaVar = "[MB]", usage = "memory budget of the cache of feedback document " +
+        "vectors shared by all queries and rerankers (including background linking); 0 to disable.")
+    public int docVectorCache = 256;
+
     @Option(name = "-runtag", metaVar = "[tag]", usage = "runtag")
     public String runtag = "Anserini";
 
-    @Option(name = "-format", metaVar = "[output format]", usage = "Output format, default \"trec\", alternative \"msmarco\".")
+    @Option(name = "-format", metaVar = "[output format]", usage = "Output format, default \"trec\", alternatives \"msmarco\" and \"binary\".")
     public String format = "trec";
 
     @Option(name = "-encoder", usage = "Query encoder for supervised sparse retrieval tasks")
@@ -681,12 +687,13 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
         if (args.arbitraryScoreTieBreak) {// Figure out how to break the scoring ties.
           rs = getIndexSearcher().search(query, (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits);
         } else {
-          rs = getIndexSearcher().search(query, (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits, BREAK_SCORE_TIES_BY_DOCID, true);
+          rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(getIndexSearcher(), query, (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits);
         }
       }
 
       List<String> queryTokens = AnalyzerUtils.analyze(analyzer, queryString);
-      RerankerContext<T> context = new RerankerContext<>(getIndexSearcher(), qid, query, null, queryString, queryTokens, null, args);
+      RerankerContext<T> context = new RerankerContext<>(getIndexSearcher(), qid, query, null, queryString, queryTokens, null, args)
+          .setDocumentVectorCache(docVectorCache);
       ScoredDocs scoredFbDocs;
       if (isRerank && args.rf_qrels != null) {
         if (hasRelDocs) {
@@ -732,18 +739,18 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
       if (args.arbitraryScoreTieBreak) {
         rs = getIndexSearcher().search(query, (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits);
       } else {
-        rs = getIndexSearcher().search(query, (isRerank && args.rf_qrels == null) ? args.rerankcutoff :
-            args.hits, BREAK_SCORE_TIES_BY_DOCID, true);
+        rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(getIndexSearcher(), query,
+            (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits);
       }
 
       RerankerContext<T> context = new RerankerContext<>(getIndexSearcher(), qid, query, docid,
-          StringUtils.join(", ", terms), terms, null, args);
+          StringUtils.join(", ", terms), terms, null, args).setDocumentVectorCache(docVectorCache);
 
       // Run the existing cascade.
       ScoredDocs docs = cascade.run(ScoredDocs.fromTopDocs(rs, getIndexSearcher()), context);
 
       // Perform post-processing (e.g., date filter, dedupping, etc.) as a final step.
-      return new NewsBackgroundLinkingReranker(analyzer, collectionClass).rerank(docs, context);
+      return new NewsBackgroundLinkingReranker(analyzer, collectionClass, args.backgroundLinkingLsh).rerank(docs, context);
     }
 
     public ScoredDocs searchTweets(T qid,
@@ -780,12 +787,13 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
         if (args.arbitraryScoreTieBreak) {// Figure out how to break the scoring ties.
           rs = getIndexSearcher().search(compositeQuery, (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits);
         } else {
-          rs = getIndexSearcher().search(compositeQuery, (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits,
-              BREAK_SCORE_TIES_BY_TWEETID, true);
+          rs = TieBreakingCollectorManager.searchBreakingTiesByTweetid(getIndexSearcher(), compositeQuery,
+              (isRerank && args.rf_qrels == null) ? args.rerankcutoff : args.hits);
         }
       }
 
-      RerankerContext<T> context = new RerankerContext<>(getIndexSearcher(), qid, keywordQuery, null, queryString, queryTokens, filter, args);
+      RerankerContext<T> context = new RerankerContext<>(getIndexSearcher(), qid, keywordQuery, null, queryString, queryTokens, filter, args)
+          .setDocumentVectorCache(docVectorCache);
       ScoredDocs scoredFbDocs;
       if (isRerank && args.rf_qrels != null) {
         if (hasRelDocs) {
@@ -828,9 +836,8 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
       // Initialize query encoder if specified
       if (args.encoder != null) {
         try {
-          this.queryEncoder = (SparseEncoder) Class
-              .forName(String.format("io.anserini.encoder.sparse.%sEncoder", args.encoder))
-              .getConstructor().newInstance();
+          this.queryEncoder = (SparseEncoder) OnnxEncoder.getSharedInstance(
+              String.format("io.anserini.encoder.sparse.%sEncoder", args.encoder));
         } catch (Exception e) {
           throw new RuntimeException();
         }
@@ -840,135 +847,153 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void run() {
       // A short descriptor of the ranking setup.
       final String desc = String.format("ranker: %s, reranker: %s", taggedSimilarity.getTag(), cascade.getTag());
 
+      // The order in which to write the topics, and the keys under which to search them.
+      List<T> keys = new ArrayList<>();
+      List<OrderedRunOutputWriter.Entry<T>> order = new ArrayList<>();
+      getOutputOrder(keys, order);
+
       // ThreadPool for parallelizing the execution of individual queries:
       ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(args.threads);
-      // Data structure for holding the per-query results:
-      ConcurrentSkipListMap<T, ScoredDoc[]> results = new ConcurrentSkipListMap<>();
       AtomicInteger cnt = new AtomicInteger();
 
       final long start = System.nanoTime();
-      for (Map.Entry<T, Map<String, String>> entry : topics.entrySet()) {
-        T qid = entry.getKey();
-
-        // This is the per-query execution, in parallel.
-        executor.execute(() -> {
-          try {
-            StringBuilder queryString = new StringBuilder();
-            if (args.topicField.contains("+")) {
-              for (String field : args.topicField.split("\\+")) {
-                queryString.append(" ").append(entry.getValue().get(field));
+      // Results are written as soon as they are ready, in order; at most a bounded number of queries is in flight, so
+      // that results of queries that complete early do not pile up in memory while waiting for a slow one.
+      try (OrderedRunOutputWriter<T> out = new OrderedRunOutputWriter<>(
+          new RunOutputWriter<>(outputPath, args.format, args.runtag, args.outputRerankerRequests),
+          order, Math.max(1024, 64 * args.threads))) {
+        for (int i = 0; i < keys.size(); i++) {
+          final int position = i;
+          final T qid = keys.get(i);
+          final Map<String, String> topic = topics.get(qid);
+          out.acquire();
+
+          // This is the per-query execution, in parallel.
+          executor.execute(() -> {
+            boolean written = false;
+            try {
+              StringBuilder queryString = new StringBuilder();
+              if (args.topicField.contains("+")) {
+                for (String field : args.topicField.split("\\+")) {
+                  queryString.append(" ").append(topic.get(field));
+                }
+              } else {
+                queryString = new StringBuilder(topic.get(args.topicField));
               }
-            } else {
-              queryString = new StringBuilder(entry.getValue().get(args.topicField));
-            }
-
-            if (queryEncoder != null) {
-              queryString = new StringBuilder(queryEncoder.encode(queryString.toString()));
-            }
 
-            ScoredDocs queryQrels = null;
-            boolean hasRelDocs = false;
-            String qidString = qid.toString();
-            if (qrels != null) {
-              queryQrels = qrels.get(qidString);
-              if (queriesWithRel.contains(qidString)) {
-                hasRelDocs = true;
+              if (queryEncoder != null) {
+                queryString = new StringBuilder(queryEncoder.encode(queryString.toString()));
               }
-            }
 
-            ScoredDocs docs;
-            if (args.searchTweets) {
-              docs = searcher.searchTweets(qid, queryString.toString(), Long.parseLong(entry.getValue().get("time")), cascade, queryQrels, hasRelDocs);
-            } else if (args.backgroundLinking) {
-              docs = searcher.searchBackgroundLinking(qid, queryString.toString(), cascade);
-            } else {
-              docs = searcher.search(qid, queryString.toString(), cascade, queryQrels, hasRelDocs);
-            }
+              ScoredDocs queryQrels = null;
+              boolean hasRelDocs = false;
+              String qidString = qid.toString();
+              if (qrels != null) {
+                queryQrels = qrels.get(qidString);
+                if (queriesWithRel.contains(qidString)) {
+                  hasRelDocs = true;
+                }
+              }
 
+              ScoredDocs docs;
+              if (args.searchTweets) {
+                docs = searcher.searchTweets(qid, queryString.toString(), Long.parseLong(topic.get("time")), cascade, queryQrels, hasRelDocs);
+              } else if (args.backgroundLinking) {
+                docs = searcher.searchBackgroundLinking(qid, queryString.toString(), cascade);
+              } else {
+                docs = searcher.search(qid, queryString.toString(), cascade, queryQrels, hasRelDocs);
+              }
 
-            // If JSON output is requested, we retain references to the Lucene documents.
-            // Note we do *not* want to retain references to the Lucene documents unless requested since it's a waste of memory.
-            if (args.outputRerankerRequests != null) {
-              results.put(qid, searcher.processScoredDocs(qid, docs, true));
-            } else {
-              results.put(qid, searcher.processScoredDocs(qid, docs, false));
-            }
+              // If JSON output is requested, we retain references to the Lucene documents.
+              // Note we do *not* want to retain references to the Lucene documents unless requested since it's a waste of memory.
+              ScoredDoc[] results = searcher.processScoredDocs(qid, docs, args.outputRerankerRequests != null);
+              // The writer takes the topic even if writing it fails, so it must not be skipped afterwards.
+              written = true;
+              out.write(position, results);
 
-            int n = cnt.incrementAndGet();
-            if (n % 100 == 0) {
-              LOG.info(String.format("%s: %d queries processed", desc, n));
+              int n = cnt.incrementAndGet();
+              if (n % 100 == 0) {
+                LOG.info(String.format("%s: %d queries processed", desc, n));
+              }
+            } catch (Exception e) {
+              throw new CompletionException(e);
+            } finally {
+              // Don't hold back the topics after this one, whatever the task threw.
+              if (!written) {
+                out.skip(position);
+              }
             }
-          }  catch (Exception e) {
-            throw new CompletionException(e);
-          }
-        });
-      }
+          });
+        }
 
-      executor.shutdown();
+        executor.shutdown();
 
-      try {
-        // Wait for existing tasks to terminate.
-        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) ;
-      } catch (InterruptedException ie) {
-        // (Re-)Cancel if current thread also interrupted.
+        try {
+          // Wait for existing tasks to terminate.
+          while (!executor.awaitTermination(1, TimeUnit.MINUTES)) ;
+        } catch (InterruptedException ie) {
+          // (Re-)Cancel if current thread also interrupted.
+          executor.shutdownNow();
+          // Preserve interrupt status.
+          Thread.currentThread().interrupt();
+        }
+      } catch (InterruptedException e) {
         executor.shutdownNow();
-        // Preserve interrupt status.
         Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        throw new RuntimeException(String.format("Error writing runs to \"%s\".", outputPath));
       }
       final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
       LOG.info(desc + ": " + topics.size() + " queries processed in " +
           DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss") +
           String.format(" = ~%.2f q/s", topics.size() / (durationMillis / 1000.0)));
+    }
 
-      // Now we write the results to a run file.
-      try(RunOutputWriter<T> out = new RunOutputWriter<>(outputPath, args.format, args.runtag, args.outputRerankerRequests)) {
-        // Here's a really screwy corner case that we have to manually hack around: for MS MARCO V1, the query file is not
-        // sorted by qid, but the topic representation internally is (i.e., K is a comparable). The original query runner
-        // SearchMsmarco retained the order of the queries; however, this class does not. Thus, the run files list the
-        // results in different orders. Due to the way that the MS MARCO V1 eval scripts are written (they report MRR to
-        // an excessive number of significant digits), different orders yield slightly different metric values (due to
-        // floating point precision issues). Just to retain exactly the same output as SearchMsmarco (which was used to,
-        // for example, generate Anserini leaderboard runs), we add an ugly hack here to dump the results in the order
-        // of the qids in the query files.
-        boolean isMSMARCOv1_passage = topics.firstKey().equals(2) &&
-            topics.get(2).get("title").equals("Androgen receptor define") &&
-            topics.keySet().size() == 6980;
-        boolean isMAMARCOv1_doc = topics.firstKey().equals(2) &&
-            topics.get(2).get("title").equals("androgen receptor define") &&
-            topics.keySet().size() == 5193;
-
-        if (isMSMARCOv1_passage || isMAMARCOv1_doc) {
-          try(InputStream inputStream = isMSMARCOv1_passage ?
-              Files.newInputStream(TopicReader.getTopicPath(Path.of(Topics.MSMARCO_PASSAGE_DEV_SUBSET.path)), StandardOpenOption.READ):
-              Files.newInputStream(TopicReader.getTopicPath(Path.of(Topics.MSMARCO_DOC_DEV.path)), StandardOpenOption.READ) ) {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-            while ((line = reader.readLine()) != null) {
-              line = line.trim();
-              String[] arr = line.split("\\t");
-              out.writeTopic((T) arr[0], arr[1], results.get(Integer.parseInt(arr[0])));
+    @SuppressWarnings("unchecked")
+    private void getOutputOrder(List<T> keys, List<OrderedRunOutputWriter.Entry<T>> order) {
+      // Here's a really screwy corner case that we have to manually hack around: for MS MARCO V1, the query file is not
+      // sorted by qid, but the topic representation internally is (i.e., K is a comparable). The original query runner
+      // SearchMsmarco retained the order of the queries; however, this class does not. Thus, the run files list the
+      // results in different orders. Due to the way that the MS MARCO V1 eval scripts are written (they report MRR to
+      // an excessive number of significant digits), different orders yield slightly different metric values (due to
+      // floating point precision issues). Just to retain exactly the same output as SearchMsmarco (which was used to,
+      // for example, generate Anserini leaderboard runs), we add an ugly hack here to dump the results in the order
+      // of the qids in the query files.
+      boolean isMSMARCOv1_passage = topics.firstKey().equals(2) &&
+          topics.get(2).get("title").equals("Androgen receptor define") &&
+          topics.keySet().size() == 6980;
+      boolean isMAMARCOv1_doc = topics.firstKey().equals(2) &&
+          topics.get(2).get("title").equals("androgen receptor define") &&
+          topics.keySet().size() == 5193;
+
+      if (isMSMARCOv1_passage || isMAMARCOv1_doc) {
+        try(InputStream inputStream = isMSMARCOv1_passage ?
+            Files.newInputStream(TopicReader.getTopicPath(Path.of(Topics.MSMARCO_PASSAGE_DEV_SUBSET.path)), StandardOpenOption.READ):
+            Files.newInputStream(TopicReader.getTopicPath(Path.of(Topics.MSMARCO_DOC_DEV.path)), StandardOpenOption.READ) ) {
+          BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            String[] arr = line.split("\\t");
+            T key = (T) Integer.valueOf(arr[0]);
+            if (topics.containsKey(key)) {
+              keys.add(key);
+              order.add(new OrderedRunOutputWriter.Entry<>((T) arr[0], arr[1]));
             }
-          } catch (IOException e) {
-            throw new RuntimeException(String.format("Error writing output to %s", outputPath));
           }
-        } else {
-            results.forEach((qid, hits) -> {
-              try {
-                  out.writeTopic(qid, topics.get(qid).get("title"), results.get(qid));
-              } catch (JsonProcessingException e) {
-                  // Handle the exception or rethrow as unchecked
-                  throw new RuntimeException(e);
-              }
-          });
+        } catch (IOException e) {
+          throw new RuntimeException(String.format("Error writing output to %s", outputPath));
         }
-      } catch (IOException e) {
-        throw new RuntimeException(String.format("Error writing runs to \"%s\".", outputPath));
+      } else {
+        topics.forEach((qid, topic) -> {
+          keys.add(qid);
+          order.add(new OrderedRunOutputWriter.Entry<>(qid, topic.get("title")));
+        });
       }
     }
   }
@@ -980,6 +1005,7 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
   private final List<TaggedSimilarity> similarities;
   private final List<RerankerCascade> cascades;
   private final boolean isRerank;
+  private final DocumentVectorCache docVectorCache;
   private final SortedMap<K, Map<String, String>> topics;
   private Map<String, ScoredDocs> qrels;
   private Set<String> queriesWithRel;
@@ -1007,7 +1033,7 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
 
     LOG.info("============ Initializing Searcher ============");
     LOG.info("Index: " + indexPath);
-    this.reader = DirectoryReader.open(FSDirectory.open(indexPath));
+    this.reader = IndexReaderRegistry.acquire(indexPath.toString());
 
     LOG.info("Threads: " + args.threads);
     LOG.info("Fields: " + Arrays.toString(args.fields));
@@ -1045,6 +1071,8 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
     LOG.info("Collection class: " + this.collectionClass);
 
     this.isRerank = args.rm3 || args.axiom || args.bm25prf || args.rocchio;
+    this.docVectorCache = (isRerank || args.backgroundLinking) && args.docVectorCache > 0 ?
+        new DocumentVectorCache(args.docVectorCache * 1024L * 1024L) : null;
     this.analyzer = getAnalyzer();
     this.similarities = constructSimilarities();
     this.cascades = constructRerankers();
@@ -1093,7 +1121,10 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
 
   @Override
   public void close() throws IOException {
-    reader.close();
+    for (RerankerCascade cascade : cascades) {
+      cascade.close();
+    }
+    IndexReaderRegistry.release(reader);
   }
 
   private List<TaggedSimilarity> constructSimilarities() {
@@ -1376,6 +1407,10 @@ public final class SearchCollection<K extends Comparable<K>> implements Runnable
       // Preserve interrupt status
       Thread.currentThread().interrupt();
     }
+
+    if (docVectorCache != null) {
+      LOG.info(docVectorCache);
+    }
   }
 
   public static void main(String[] args) throws Exception {
@@ -65,7 +65,7 @@ public final class SearchFlatDenseVectors<K extends Comparable<K>> implements Ru
     @Option(name = "-runtag", metaVar = "[tag]", usage = "runtag")
     public String runtag = "Anserini";
 
-    @Option(name = "-format", metaVar = "[output format]", usage = "Output format, default \"trec\", alternative \"msmarco\".")
+    @Option(name = "-format", metaVar = "[output format]", usage = "Output format, default \"trec\", alternatives \"msmarco\" and \"binary\".")
     public String format = "trec";
 
     @Option(name = "-options", usage = "Print information about options.")
@@ -64,7 +64,7 @@ public final class SearchInvertedDenseVectors<K extends Comparable<K>> implement
     @Option(name = "-runtag", metaVar = "[tag]", usage = "runtag")
     public String runtag = "Anserini";
 
-    @Option(name = "-format", metaVar = "[output format]", usage = "Output format, default \"trec\", alternative \"msmarco\".")
+    @Option(name = "-format", metaVar = "[output format]", usage = "Output format, default \"trec\", alternatives \"msmarco\" and \"binary\".")
     public String format = "trec";
 
     @Option(name = "-options", usage = "Print information about options.")
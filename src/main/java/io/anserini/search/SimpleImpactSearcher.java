@@ -37,8 +37,6 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.FSDirectory;
@@ -65,8 +63,6 @@ import java.util.stream.Collectors;
  * via pyjnius. Note that methods are named according to Python conventions (e.g., snake case instead of camel case).
  */
 public class SimpleImpactSearcher implements Closeable {
-  private static final Sort BREAK_SCORE_TIES_BY_DOCID =
-      new Sort(SortField.FIELD_SCORE, new SortField(Constants.ID, SortField.Type.STRING_VAL));
   private static final Logger LOG = LogManager.getLogger(SimpleImpactSearcher.class);
 
   protected IndexReader reader;
@@ -630,7 +626,7 @@ public class SimpleImpactSearcher implements Closeable {
     if (this.backwardsCompatibilityLucene8) {
       rs = searcher.search(query, k);
     } else {
-      rs = searcher.search(query, k, BREAK_SCORE_TIES_BY_DOCID, true);
+      rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, query, k);
     }
     context = new RerankerContext<>(searcher, null, query, null,
         encodedQuery, queryTokens, null, searchArgs);
@@ -60,8 +60,6 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.search.similarities.LMDirichletSimilarity;
@@ -73,6 +71,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -87,8 +86,6 @@ import java.util.concurrent.TimeUnit;
  * via pyjnius.  Note that methods are named according to Python conventions (e.g., snake case instead of camel case).
  */
 public class SimpleSearcher implements Closeable {
-  private static final Sort BREAK_SCORE_TIES_BY_DOCID =
-      new Sort(SortField.FIELD_SCORE, new SortField(Constants.ID, SortField.Type.STRING_VAL));
   private static final Logger LOG = LogManager.getLogger(SimpleSearcher.class);
 
   protected IndexReader reader;
@@ -101,6 +98,7 @@ public class SimpleSearcher implements Closeable {
   protected boolean backwardsCompatibilityLucene8;
 
   protected IndexSearcher searcher = null;
+  protected QueryResultCache resultCache = null;
 
   protected SimpleSearcher() {
   }
@@ -415,6 +413,35 @@ public class SimpleSearcher implements Closeable {
     searcher.setSimilarity(similarity);
   }
 
+  /**
+   * Sets the cache of search results shared across queries, or disables caching if null. Cached results are keyed by
+   * the analyzed query, the scoring function, the reranker cascade and the number of hits, so changing any of them
+   * (e.g., with {@link #set_bm25} or {@link #set_rm3}) does not return stale results.
+   *
+   * @param resultCache cache of search results
+   */
+  public void set_result_cache(QueryResultCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Returns the cache of search results, or null if results are not cached.
+   *
+   * @return the cache of search results
+   */
+  public QueryResultCache get_result_cache() {
+    return resultCache;
+  }
+
+  /**
+   * Returns the index reader being searched, e.g., to key a {@link QueryResultCache} kept outside of the searcher.
+   *
+   * @return the index reader being searched
+   */
+  public IndexReader get_index_reader() {
+    return reader;
+  }
+
   /**
    * Returns the {@link Similarity} (i.e., scoring function) currently being used.
    *
@@ -625,6 +652,16 @@ public class SimpleSearcher implements Closeable {
 
   // internal implementation
   protected ScoredDoc[] _search(Query query, List<String> queryTokens, String queryString, int k) throws IOException {
+    if (resultCache == null) {
+      return _search_uncached(query, queryTokens, queryString, k);
+    }
+
+    // The similarity and cascade are replaced whenever they are reconfigured, so identity tells configurations apart.
+    return resultCache.get(reader, Arrays.asList(similarity, cascade, backwardsCompatibilityLucene8),
+        Arrays.asList(query, queryTokens), k, () -> _search_uncached(query, queryTokens, queryString, k));
+  }
+
+  private ScoredDoc[] _search_uncached(Query query, List<String> queryTokens, String queryString, int k) throws IOException {
     // Create an IndexSearch only once. Note that the object is thread safe.
     if (searcher == null) {
       searcher = new IndexSearcher(reader);
@@ -640,7 +677,7 @@ public class SimpleSearcher implements Closeable {
     if (this.backwardsCompatibilityLucene8) {
       rs = searcher.search(query, useRM3 ? searchArgs.rerankcutoff : k);
     } else {
-      rs = searcher.search(query, useRM3 ? searchArgs.rerankcutoff : k, BREAK_SCORE_TIES_BY_DOCID, true);
+      rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, query, useRM3 ? searchArgs.rerankcutoff : k);
     }
     context = new RerankerContext<>(searcher, null, query, null,
           queryString, queryTokens, null, searchArgs);
@@ -691,7 +728,7 @@ public class SimpleSearcher implements Closeable {
     if (this.backwardsCompatibilityLucene8) {
       rs = searcher.search(query, useRM3 ? searchArgs.rerankcutoff : k);
     } else {
-      rs = searcher.search(query, useRM3 ? searchArgs.rerankcutoff : k, BREAK_SCORE_TIES_BY_DOCID, true);
+      rs = TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, query, useRM3 ? searchArgs.rerankcutoff : k);
     }
     context = new RerankerContext<>(searcher, null, query, null,
         queryString, queryTokens, null, searchArgs);
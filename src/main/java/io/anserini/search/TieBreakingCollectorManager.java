@@ -0,0 +1,245 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.index.Constants;
+import io.anserini.index.IndexIdRanks;
+import io.anserini.index.generator.TweetGenerator;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Collects the top hits of a query by score, breaking score ties by a numeric doc values field, in the same order
+ * as sorting on the score and then that field. Unlike such a sort, the hits are scored only once, ties are broken by
+ * comparing longs, and the scorer is told the minimum competitive score as soon as k hits are collected, so that
+ * queries can skip documents that cannot make it into the top hits.</p>
+ *
+ * <p>Ties are broken by docid using the ranks stored by {@link IndexIdRanks}, whose order is the order of the docids.
+ * When the index has no ranks, or a document that has to be compared was added after they were computed, searches
+ * fall back to sorting on the docid, so that results are always the same as with {@link
+ * SearchCollection#BREAK_SCORE_TIES_BY_DOCID}.</p>
+ */
+public final class TieBreakingCollectorManager
+    implements CollectorManager<TieBreakingCollectorManager.TieBreakingCollector, TopDocs> {
+
+  /**
+   * Searches for the top hits of a query, breaking score ties by docid.
+   *
+   * @param searcher searcher
+   * @param query query
+   * @param k number of hits
+   * @return top hits, in the same order as with {@link SearchCollection#BREAK_SCORE_TIES_BY_DOCID}
+   * @throws IOException if error encountered during search
+   */
+  public static TopDocs searchBreakingTiesByDocid(IndexSearcher searcher, Query query, int k) throws IOException {
+    if (hasField(searcher, Constants.ID_RANK)) {
+      try {
+        return searcher.search(query, new TieBreakingCollectorManager(searcher, k, Constants.ID_RANK, false));
+      } catch (MissingValueException e) {
+        // A competitive document was added after the ranks were computed.
+      }
+    }
+    return searcher.search(query, k, SearchCollection.BREAK_SCORE_TIES_BY_DOCID, true);
+  }
+
+  /**
+   * Searches for the top hits of a query in a tweet collection, breaking score ties by tweet id, most recent first.
+   *
+   * @param searcher searcher
+   * @param query query
+   * @param k number of hits
+   * @return top hits, in the same order as with {@link SearchCollection#BREAK_SCORE_TIES_BY_TWEETID}
+   * @throws IOException if error encountered during search
+   */
+  public static TopDocs searchBreakingTiesByTweetid(IndexSearcher searcher, Query query, int k) throws IOException {
+    String field = TweetGenerator.TweetField.ID_LONG.name;
+    if (hasField(searcher, field)) {
+      try {
+        return searcher.search(query, new TieBreakingCollectorManager(searcher, k, field, true));
+      } catch (MissingValueException e) {
+        // A competitive document has no tweet id, which the sort treats as 0.
+      }
+    }
+    return searcher.search(query, k, SearchCollection.BREAK_SCORE_TIES_BY_TWEETID, true);
+  }
+
+  private static boolean hasField(IndexSearcher searcher, String field) {
+    return searcher.getIndexReader().leaves().stream()
+        .anyMatch(context -> context.reader().getFieldInfos().fieldInfo(field) != null);
+  }
+
+  // Thrown when a document that has to be compared has no value, so that the search falls back to sorting.
+  private static final class MissingValueException extends RuntimeException {
+    MissingValueException() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final class Hit {
+    float score;
+    long value;
+    int doc;
+
+    Hit(float score, long value, int doc) {
+      this.score = score;
+      this.value = value;
+      this.doc = doc;
+    }
+  }
+
+  private final int k;
+  private final String field;
+  private final boolean reverse;
+
+  /**
+   * Creates a collector manager.
+   *
+   * @param searcher searcher, which bounds the number of hits
+   * @param k number of hits
+   * @param field numeric doc values field whose values break score ties
+   * @param reverse whether larger values come first
+   */
+  public TieBreakingCollectorManager(IndexSearcher searcher, int k, String field, boolean reverse) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("Number of hits must be positive.");
+    }
+    // As IndexSearcher does, so that queues are not larger than the index.
+    this.k = Math.min(k, Math.max(1, searcher.getIndexReader().maxDoc()));
+    this.field = field;
+    this.reverse = reverse;
+  }
+
+  // Orders hits from the best to the worst: by score, then by value, then by Lucene docid.
+  private int compare(float score, long value, int doc, Hit hit) {
+    int cmp = Float.compare(hit.score, score);
+    if (cmp == 0) {
+      cmp = reverse ? Long.compare(hit.value, value) : Long.compare(value, hit.value);
+    }
+    return cmp != 0 ? cmp : Integer.compare(doc, hit.doc);
+  }
+
+  @Override
+  public TieBreakingCollector newCollector() {
+    return new TieBreakingCollector();
+  }
+
+  @Override
+  public TopDocs reduce(Collection<TieBreakingCollector> collectors) {
+    List<Hit> hits = new ArrayList<>();
+    long totalHits = 0;
+    boolean pruned = false;
+    for (TieBreakingCollector collector : collectors) {
+      collector.queue.forEach(hits::add);
+      totalHits += collector.totalHits;
+      pruned |= collector.minCompetitiveScore > 0.0f;
+    }
+    hits.sort((a, b) -> compare(a.score, a.value, a.doc, b));
+
+    ScoreDoc[] scoreDocs = hits.stream().limit(k).map(hit -> new ScoreDoc(hit.doc, hit.score)).toArray(ScoreDoc[]::new);
+    // Once documents may be skipped, not all matches are counted.
+    return new TopDocs(new TotalHits(totalHits,
+        pruned ? TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO : TotalHits.Relation.EQUAL_TO), scoreDocs);
+  }
+
+  /**
+   * Collects the top hits of the segments of a slice.
+   */
+  public final class TieBreakingCollector implements Collector {
+    private final PriorityQueue<Hit> queue = new PriorityQueue<>(k) {
+      @Override
+      protected boolean lessThan(Hit a, Hit b) {
+        return compare(a.score, a.value, a.doc, b) > 0;
+      }
+    };
+    private long totalHits;
+    // Only positive scores are passed on, since scorers require minimum scores that are not negative.
+    private float minCompetitiveScore = 0.0f;
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+      final NumericDocValues values = DocValues.getNumeric(context.reader(), field);
+      final int docBase = context.docBase;
+
+      return new LeafCollector() {
+        private Scorable scorer;
+
+        @Override
+        public void setScorer(Scorable scorer) throws IOException {
+          this.scorer = scorer;
+          if (minCompetitiveScore > 0.0f) {
+            scorer.setMinCompetitiveScore(minCompetitiveScore);
+          }
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+          float score = scorer.score();
+          totalHits++;
+          // A hit with the same score as the worst of the top hits can still win the tie, so it is not skipped.
+          if (queue.size() == k && Float.compare(score, queue.top().score) < 0) {
+            return;
+          }
+          if (!values.advanceExact(doc)) {
+            throw new MissingValueException();
+          }
+
+          long value = values.longValue();
+          if (queue.size() < k) {
+            queue.add(new Hit(score, value, docBase + doc));
+          } else {
+            Hit bottom = queue.top();
+            if (compare(score, value, docBase + doc, bottom) >= 0) {
+              return;
+            }
+            bottom.score = score;
+            bottom.value = value;
+            bottom.doc = docBase + doc;
+            queue.updateTop();
+          }
+
+          // Documents scoring strictly less than the worst of the top hits can no longer make it in.
+          if (queue.size() == k && queue.top().score > minCompetitiveScore) {
+            minCompetitiveScore = queue.top().score;
+            scorer.setMinCompetitiveScore(minCompetitiveScore);
+          }
+        }
+      };
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+      return ScoreMode.TOP_SCORES;
+    }
+  }
+}
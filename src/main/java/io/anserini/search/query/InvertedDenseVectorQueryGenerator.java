@@ -16,7 +16,10 @@
 
 package io.anserini.search.query;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -29,8 +32,13 @@ import io.anserini.index.IndexInvertedDenseVectors;
 import io.anserini.search.InvertedDenseSearcher;
 import io.anserini.search.SearchInvertedDenseVectors;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermFrequencyAttribute;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStates;
 import org.apache.lucene.queries.CommonTermsQuery;
+import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.Query;
 
 import static io.anserini.index.IndexInvertedDenseVectors.FW;
@@ -40,14 +48,17 @@ import static org.apache.lucene.search.BooleanClause.Occur.SHOULD;
 public class InvertedDenseVectorQueryGenerator {
 
   private final Analyzer vectorAnalyzer;
+  private final boolean fakeWords;
   private final boolean jsonConversion;
 
   public InvertedDenseVectorQueryGenerator(InvertedDenseSearcher.Args args, boolean jsonConversion) {
     this.jsonConversion = jsonConversion;
     if (args.encoding.equalsIgnoreCase(FW)) {
-      vectorAnalyzer = new FakeWordsEncoderAnalyzer(args.q);
+      vectorAnalyzer = new FakeWordsEncoderAnalyzer(args.q, true);
+      fakeWords = true;
     } else if (args.encoding.equalsIgnoreCase(LEXLSH)) {
       vectorAnalyzer = new LexicalLshAnalyzer(args.decimals, args.ngrams, args.hashCount, args.bucketCount, args.hashSetSize);
+      fakeWords = false;
     } else {
       throw new RuntimeException(String.format("Invalid encoding scheme \"%s\".", args.encoding));
     }
@@ -66,7 +77,7 @@ public class InvertedDenseVectorQueryGenerator {
     return sb.toString();
   }
 
-  public Query buildQuery(String queryString) throws JsonProcessingException {
+  public Query buildQuery(String queryString) throws IOException {
     String queryText;
     if (jsonConversion) {
       queryText = convertJsonArray(queryString);
@@ -74,10 +85,59 @@ public class InvertedDenseVectorQueryGenerator {
       queryText = queryString;
     }
     float cutoff = 0.999f;
+    if (fakeWords) {
+      FakeWordsQuery simQuery = new FakeWordsQuery(cutoff);
+      try (TokenStream stream = vectorAnalyzer.tokenStream(Constants.VECTOR, queryText)) {
+        CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+        TermFrequencyAttribute termFrequencyAttribute = stream.addAttribute(TermFrequencyAttribute.class);
+        stream.reset();
+        while (stream.incrementToken()) {
+          simQuery.add(new Term(Constants.VECTOR, termAttribute.toString()), termFrequencyAttribute.getTermFrequency());
+        }
+        stream.end();
+      }
+      return simQuery;
+    }
+
     CommonTermsQuery simQuery = new CommonTermsQuery(SHOULD, SHOULD, cutoff);
     for (String token : AnalyzerUtils.analyze(vectorAnalyzer, queryText)) {
       simQuery.add(new Term(Constants.VECTOR, token));
     }
     return simQuery;
   }
-}
\ No newline at end of file
+
+  /**
+   * {@link CommonTermsQuery} in which each fake word is added once, with its term frequency as a boost. Adding a term
+   * repeatedly leads to as many identical clauses, which {@link org.apache.lucene.search.BooleanQuery} rewrites into
+   * a single clause boosted by their count, so this builds the same query without the repeated terms.
+   */
+  private static final class FakeWordsQuery extends CommonTermsQuery {
+    private final Map<Term, Integer> frequencies = new HashMap<>();
+
+    FakeWordsQuery(float maxTermFrequency) {
+      super(SHOULD, SHOULD, maxTermFrequency);
+    }
+
+    void add(Term term, int frequency) {
+      add(term);
+      frequencies.put(term, frequency);
+    }
+
+    @Override
+    protected Query newTermQuery(Term term, TermStates termStates) {
+      Query query = super.newTermQuery(term, termStates);
+      int frequency = frequencies.get(term);
+      return frequency == 1 ? query : new BoostQuery(query, frequency);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return super.equals(other) && frequencies.equals(((FakeWordsQuery) other).frequencies);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * super.hashCode() + frequencies.hashCode();
+    }
+  }
+}
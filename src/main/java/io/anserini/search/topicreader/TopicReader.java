@@ -30,8 +30,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 
 import io.anserini.search.SearchCollection;
@@ -49,6 +52,9 @@ public abstract class TopicReader<K> {
   private static final String CACHE_DIR = Path.of(System.getProperty("user.home"), ".cache", "pyserini", "topics-and-qrels").toString();
   private static final String SERVER_PATH = "https://raw.githubusercontent.com/castorini/anserini-tools/master/topics-and-qrels/";
   private static final Map<String, Class<? extends TopicReader>> TOPIC_FILE_TO_TYPE = new HashMap<>();
+  // Standard topics are read once per JVM, since many searches in a process (e.g., the conditions of a reproduction
+  // run) often use the same topics.
+  private static final Map<Topics, SortedMap<?, Map<String, String>>> TOPICS_CACHE = new ConcurrentHashMap<>();
 
   static {
     // Inverts the "Topic" enum to populate the lookup table that maps topics filename to reader class.
@@ -124,6 +130,20 @@ public abstract class TopicReader<K> {
    */
   @SuppressWarnings("unchecked")
   public static <K> SortedMap<K, Map<String, String>> getTopics(Topics topics) throws IOException {
+    SortedMap<K, Map<String, String>> cached = (SortedMap<K, Map<String, String>>) TOPICS_CACHE.get(topics);
+    if (cached == null) {
+      cached = readTopics(topics);
+      TOPICS_CACHE.put(topics, cached);
+    }
+
+    // Callers may modify the topics they get, so each gets its own copy.
+    SortedMap<K, Map<String, String>> copy = new TreeMap<>(cached.comparator());
+    cached.forEach((qid, topic) -> copy.put(qid, new LinkedHashMap<>(topic)));
+    return copy;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K> SortedMap<K, Map<String, String>> readTopics(Topics topics) throws IOException {
     Path topicPath = getTopicPath(Path.of(topics.path));
 
     try(InputStream inputStream = topicPath.toString().endsWith(".gz") ?
@@ -19,10 +19,22 @@ package io.anserini.server;
 import io.anserini.index.IndexInfo;
 import io.anserini.util.PrebuiltIndexHandler;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.Map;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -33,8 +45,52 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping(path = "/api/v1.0")
 public class ControllerV1_0 {
 
+  private static final Logger LOG = LogManager.getLogger(ControllerV1_0.class);
   private static final String DEFAULT_INDEX = "msmarco-v1-passage";
 
+  // Services are shared by all requests, so that their queries can be batched together.
+  private final Map<String, CompletableFuture<SearchService>> services = new ConcurrentHashMap<>();
+
+  // Services are created outside of the map, since creating one may download an index; requests for other indexes go
+  // ahead meanwhile, and requests for the same index wait for it.
+  private SearchService getSearchService(String index) {
+    CompletableFuture<SearchService> service = services.get(index);
+    if (service == null) {
+      CompletableFuture<SearchService> created = new CompletableFuture<>();
+      service = services.putIfAbsent(index, created);
+      if (service == null) {
+        service = created;
+        try {
+          created.complete(new SearchService(index));
+        } catch (RuntimeException e) {
+          // Later requests try again.
+          services.remove(index, created);
+          created.completeExceptionally(e);
+        }
+      }
+    }
+
+    try {
+      return service.join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+    }
+  }
+
+  @PreDestroy
+  public void close() {
+    for (CompletableFuture<SearchService> service : services.values()) {
+      if (service.isDone() && !service.isCompletedExceptionally()) {
+        try {
+          service.join().close();
+        } catch (IOException e) {
+          LOG.warn("Unable to close search service", e);
+        }
+      }
+    }
+    services.clear();
+  }
+
   @RequestMapping(method = RequestMethod.GET, path = {"/indexes/{index}/search", "/search"})
   public Map<String, Object> searchIndex(@PathVariable(value = "index", required = false) String index,
       @RequestParam("query") String query,
@@ -49,7 +105,7 @@ public class ControllerV1_0 {
       throw new IllegalArgumentException("Index " + index + " not found!");
     }
 
-    SearchService searchService = new SearchService(index);
+    SearchService searchService = getSearchService(index);
     List<Map<String, Object>> candidates = searchService.search(query, hits);
 
     Map<String, Object> queryMap = new LinkedHashMap<>();
@@ -61,7 +117,7 @@ public class ControllerV1_0 {
 
   @RequestMapping(method = RequestMethod.GET, path = "/indexes/{index}/documents/{docid}")
   public Map<String, Object> getDocument(@PathVariable("index") String index, @PathVariable("docid") String docid) {
-    SearchService searchService = new SearchService(index);
+    SearchService searchService = getSearchService(index);
     return searchService.getDocument(docid);
   }
 
@@ -95,4 +151,12 @@ public class ControllerV1_0 {
     return indexList;
   }
 
+  // Clients are asked to back off when the server is saturated, instead of waiting longer and longer.
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<Map<String, Object>> tooManyRequests(RejectedExecutionException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .body(Map.of("error", e.getMessage()));
+  }
+
 }
\ No newline at end of file
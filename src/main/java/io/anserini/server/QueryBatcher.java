@@ -0,0 +1,198 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.server;
+
+import io.anserini.search.ScoredDoc;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Coalesces queries that arrive concurrently into batches, so that they are searched together with the batch search
+ * of a searcher, e.g., {@link io.anserini.search.SimpleSearcher#batch_search} or {@link
+ * io.anserini.search.HnswDenseSearcher#batch_search}. A batch is searched as soon as the previous one is done, and
+ * includes every query that arrived in the meantime, up to a maximum batch size; a query that finds no batch running
+ * waits a short time for others to join it.</p>
+ *
+ * <p>Queries wait in a bounded queue. When the queue is full, queries are rejected immediately, so that clients can
+ * back off, rather than waiting longer and longer as the backlog grows.</p>
+ */
+public class QueryBatcher implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(QueryBatcher.class);
+
+  /**
+   * Searches a batch of queries, as the batch search methods of searchers do.
+   */
+  @FunctionalInterface
+  public interface BatchSearcher {
+    Map<String, ScoredDoc[]> search(List<String> queries, List<String> qids, int k) throws Exception;
+  }
+
+  // How often an idle dispatcher checks whether the batcher is closed.
+  private static final long CLOSE_CHECK_MILLIS = 100;
+
+  private record Request(String query, int k, CompletableFuture<ScoredDoc[]> result) {}
+
+  private final BatchSearcher searcher;
+  private final int maxBatchSize;
+  private final long maxWaitNanos;
+  private final BlockingQueue<Request> queue;
+  private final Thread dispatcher;
+  private volatile boolean closed = false;
+
+  /**
+   * Creates a batcher, with a thread that dispatches its batches.
+   *
+   * @param searcher batch searcher
+   * @param maxBatchSize maximum number of queries in a batch
+   * @param maxWait maximum time that the first query of a batch waits for others to join it
+   * @param capacity maximum number of queries waiting, beyond which queries are rejected
+   */
+  public QueryBatcher(BatchSearcher searcher, int maxBatchSize, Duration maxWait, int capacity) {
+    if (maxBatchSize < 1 || capacity < 1 || maxWait.isNegative()) {
+      throw new IllegalArgumentException("Batch size and capacity must be positive, and wait must not be negative.");
+    }
+    this.searcher = searcher;
+    this.maxBatchSize = maxBatchSize;
+    this.maxWaitNanos = maxWait.toNanos();
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.dispatcher = new Thread(this::dispatch, "query-batcher");
+    this.dispatcher.setDaemon(true);
+    this.dispatcher.start();
+  }
+
+  /**
+   * Submits a query.
+   *
+   * @param query query
+   * @param k number of hits
+   * @return future hits
+   * @throws RejectedExecutionException if too many queries are waiting, or the batcher is closed
+   */
+  public CompletableFuture<ScoredDoc[]> submit(String query, int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("Number of hits must be positive.");
+    }
+    Request request = new Request(query, k, new CompletableFuture<>());
+    if (closed || !queue.offer(request)) {
+      throw new RejectedExecutionException(closed ? "Query batcher is closed." : "Too many queries waiting.");
+    }
+    // The dispatcher may have stopped between the check and the offer, in which case nobody will take the query.
+    if (closed && queue.remove(request)) {
+      throw new RejectedExecutionException("Query batcher is closed.");
+    }
+    return request.result();
+  }
+
+  /**
+   * Returns the number of queries waiting to be searched.
+   *
+   * @return number of queries waiting
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  private void dispatch() {
+    List<Request> batch = new ArrayList<>(maxBatchSize);
+    try {
+      while (!closed) {
+        Request first = queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        // Queries that queued up while the previous batch was searched are searched right away; only a query that
+        // found the dispatcher idle waits for others to join it.
+        if (queue.drainTo(batch, maxBatchSize - batch.size()) == 0) {
+          final long deadline = System.nanoTime() + maxWaitNanos;
+          while (batch.size() < maxBatchSize) {
+            Request request = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (request == null) {
+              break;
+            }
+            batch.add(request);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+          }
+        }
+
+        search(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    RejectedExecutionException rejected = new RejectedExecutionException("Query batcher is closed.");
+    batch.forEach(request -> request.result().completeExceptionally(rejected));
+    Request request;
+    while ((request = queue.poll()) != null) {
+      request.result().completeExceptionally(rejected);
+    }
+  }
+
+  private void search(List<Request> batch) {
+    List<String> queries = new ArrayList<>(batch.size());
+    List<String> qids = new ArrayList<>(batch.size());
+    int k = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      queries.add(batch.get(i).query());
+      qids.add(Integer.toString(i));
+      k = Math.max(k, batch.get(i).k());
+    }
+
+    try {
+      // All queries are searched for the most hits any of them needs; the top hits of the others are a prefix.
+      Map<String, ScoredDoc[]> results = searcher.search(queries, qids, k);
+      for (int i = 0; i < batch.size(); i++) {
+        ScoredDoc[] hits = results.get(qids.get(i));
+        if (hits == null) {
+          batch.get(i).result().completeExceptionally(new IllegalStateException("No results for query " + queries.get(i)));
+        } else {
+          batch.get(i).result().complete(hits.length > batch.get(i).k() ? Arrays.copyOf(hits, batch.get(i).k()) : hits);
+        }
+      }
+    } catch (Exception e) {
+      LOG.error("Unable to search batch of " + batch.size() + " queries", e);
+      batch.forEach(request -> request.result().completeExceptionally(e));
+    }
+  }
+
+  /**
+   * Stops dispatching batches, once the batch being searched is done; queries still waiting are rejected.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      dispatcher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package io.anserini.server;
 
 import io.anserini.index.Constants;
+import io.anserini.search.QueryResultCache;
 import io.anserini.search.ScoredDoc;
 import io.anserini.search.SimpleSearcher;
 import io.anserini.util.PrebuiltIndexHandler;
@@ -24,20 +25,42 @@ import io.anserini.util.PrebuiltIndexHandler;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
-public class SearchService {
+/**
+ * Searches a prebuilt index. Queries from concurrent requests are searched together in batches by a {@link
+ * QueryBatcher}, using one searcher that stays open for the lifetime of the service. Results of repeated queries are
+ * served from a {@link QueryResultCache}, which is looked up before batching, since a batch is searched for the most
+ * hits any of its queries needs.
+ */
+public class SearchService implements Closeable {
+  // Batches of up to this many queries are searched with this many threads.
+  private static final int MAX_BATCH_SIZE = 64;
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+  // The first query of a batch waits up to this long for others to join it.
+  private static final Duration MAX_WAIT = Duration.ofMillis(2);
+  // Queries beyond this many waiting are rejected.
+  private static final int QUEUE_CAPACITY = 1024;
+  // Results of up to this many queries, taking up to this much memory, are cached.
+  private static final int CACHE_ENTRIES = 100_000;
+  private static final long CACHE_BYTES = 256L << 20;
 
   private final String indexDir;
   private final float k1 = 0.9f;
   private final float b = 0.4f;
   private final ObjectMapper mapper = new ObjectMapper();
+  private final SimpleSearcher searcher;
+  private final QueryBatcher batcher;
+  private final QueryResultCache cache = new QueryResultCache(CACHE_BYTES, CACHE_ENTRIES);
 
   public SearchService(String prebuiltIndex) {
     PrebuiltIndexHandler handler = new PrebuiltIndexHandler(prebuiltIndex);
@@ -45,16 +68,27 @@ public class SearchService {
     try {
       handler.download();
       indexDir = handler.decompressIndex();
+      searcher = new SimpleSearcher(indexDir);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
+    searcher.set_bm25(k1, b);
+    batcher = new QueryBatcher((queries, qids, k) -> searcher.batch_search(queries, qids, k, THREADS),
+        MAX_BATCH_SIZE, MAX_WAIT, QUEUE_CAPACITY);
   }
 
+  /**
+   * Searches the index.
+   *
+   * @param query query
+   * @param hits number of hits
+   * @return hits
+   * @throws RejectedExecutionException if too many queries are waiting to be searched
+   */
   public List<Map<String, Object>> search(String query, int hits) {
     try {
-      SimpleSearcher searcher = new SimpleSearcher(indexDir);
-      searcher.set_bm25(k1, b);
-      ScoredDoc[] results = searcher.search(query, hits);
+      ScoredDoc[] results = cache.get(searcher.get_index_reader(), List.of(k1, b), query, hits,
+          () -> batcher.submit(query, hits).join());
       List<Map<String, Object>> candidates = new ArrayList<>();
       for (ScoredDoc r : results) {
         Map<String, Object> candidate = new LinkedHashMap<>();
@@ -73,8 +107,9 @@ public class SearchService {
         }
         candidates.add(candidate);
       }
-      searcher.close();
       return candidates;
+    } catch (RejectedExecutionException e) {
+      throw e;
     } catch (Exception e) {
       e.printStackTrace();
       return List.of();
@@ -83,7 +118,6 @@ public class SearchService {
 
   public Map<String, Object> getDocument(String docid) {
     try {
-      SimpleSearcher searcher = new SimpleSearcher(indexDir);
       String raw = searcher.doc(docid).get(Constants.RAW);
       Map<String, Object> candidate = new LinkedHashMap<>();
       if (raw != null) {
@@ -96,7 +130,6 @@ public class SearchService {
       } else {
         candidate.put("doc", null);
       }
-      searcher.close();
       return candidate;
     } catch (Exception e) {
       e.printStackTrace();
@@ -104,4 +137,14 @@ public class SearchService {
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * Stops batching queries, and closes the searcher.
+   *
+   * @throws IOException if error encountered closing the searcher
+   */
+  @Override
+  public void close() throws IOException {
+    batcher.close();
+    searcher.close();
+  }
+}
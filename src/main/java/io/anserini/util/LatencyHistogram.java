@@ -0,0 +1,200 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.util;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * A histogram of latencies, or of any non-negative values, in the style of HdrHistogram. Values are counted in buckets
+ * whose width grows with their magnitude, so every recorded value is reported to within 1/1024 of itself, however
+ * long the tail of the distribution, in a histogram of fixed size. Recording is thread-safe.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 11;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+  // Values below SUB_BUCKET_COUNT are counted exactly; above, each doubling of magnitude adds half as many buckets,
+  // each twice as wide as the buckets of the previous doubling.
+  private static final int NUM_BUCKETS = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+  private static final int PERCENTILE_TICKS_PER_HALF_DISTANCE = 5;
+
+  private final long[] counts = new long[NUM_BUCKETS];
+  private long totalCount = 0;
+  private long min = Long.MAX_VALUE;
+  private long max = 0;
+  private double sum = 0.0;
+  private double sumOfSquares = 0.0;
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+  }
+
+  // The highest value counted in a bucket.
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    long subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+    return (subBucket << shift) + (1L << shift) - 1;
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value value
+   * @throws IllegalArgumentException if the value is negative
+   */
+  public synchronized void record(long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative value: " + value);
+    }
+    counts[bucketOf(value)]++;
+    totalCount++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    sum += value;
+    sumOfSquares += (double) value * (double) value;
+  }
+
+  /**
+   * Adds the values recorded in another histogram to this one.
+   *
+   * @param other histogram
+   */
+  public void add(LatencyHistogram other) {
+    long[] otherCounts;
+    long otherTotal, otherMin, otherMax;
+    double otherSum, otherSumOfSquares;
+    synchronized (other) {
+      otherCounts = other.counts.clone();
+      otherTotal = other.totalCount;
+      otherMin = other.min;
+      otherMax = other.max;
+      otherSum = other.sum;
+      otherSumOfSquares = other.sumOfSquares;
+    }
+    synchronized (this) {
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        counts[i] += otherCounts[i];
+      }
+      totalCount += otherTotal;
+      min = Math.min(min, otherMin);
+      max = Math.max(max, otherMax);
+      sum += otherSum;
+      sumOfSquares += otherSumOfSquares;
+    }
+  }
+
+  public synchronized long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Returns the smallest value recorded.
+   *
+   * @return smallest value, or 0 if no values have been recorded
+   */
+  public synchronized long getMin() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  public synchronized long getMax() {
+    return max;
+  }
+
+  public synchronized double getMean() {
+    return totalCount == 0 ? 0.0 : sum / totalCount;
+  }
+
+  public synchronized double getStdDeviation() {
+    if (totalCount == 0) {
+      return 0.0;
+    }
+    double mean = sum / totalCount;
+    return Math.sqrt(Math.max(0.0, sumOfSquares / totalCount - mean * mean));
+  }
+
+  /**
+   * Returns the value at a percentile, i.e., the smallest value (to within the precision of the histogram) that is at
+   * least as large as the given percentage of the recorded values.
+   *
+   * @param percentile percentile, between 0 and 100
+   * @return value at the percentile, or 0 if no values have been recorded
+   */
+  public synchronized long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+    long count = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      count += counts[i];
+      if (count >= rank) {
+        return Math.min(highestValueOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  // Number of values recorded up to and including the bucket of a value.
+  private long getCountUpTo(long value) {
+    long count = 0;
+    for (int i = 0; i <= bucketOf(value); i++) {
+      count += counts[i];
+    }
+    return count;
+  }
+
+  /**
+   * Prints the percentile distribution of the recorded values in the format of HdrHistogram (".hgrm"), which its
+   * plotting tools read. Percentiles are printed at ever finer steps towards 100, five per halving of the distance.
+   *
+   * @param out stream
+   * @param scale ratio by which to divide values, e.g., 1000.0 to print values recorded in microseconds as milliseconds
+   */
+  public synchronized void outputPercentileDistribution(PrintStream out, double scale) {
+    out.println(String.format(Locale.US, "%12s %14s %10s %14s\n", "Value", "Percentile", "TotalCount",
+        "1/(1-Percentile)"));
+    if (totalCount > 0) {
+      double percentile = 0.0;
+      while (true) {
+        long value = getValueAtPercentile(percentile);
+        long count = getCountUpTo(value);
+        if (count >= totalCount) {
+          out.println(String.format(Locale.US, "%12.3f %2.12f %10d", value / scale, 1.0, count));
+          break;
+        }
+        out.println(String.format(Locale.US, "%12.3f %2.12f %10d %14.2f", value / scale, percentile / 100.0, count,
+            1.0 / (1.0 - percentile / 100.0)));
+        double ticks = PERCENTILE_TICKS_PER_HALF_DISTANCE *
+            Math.pow(2, Math.floor(Math.log(100.0 / (100.0 - percentile)) / Math.log(2)) + 1);
+        percentile += 100.0 / ticks;
+      }
+    }
+    out.println(String.format(Locale.US, "#[Mean    = %12.3f, StdDeviation   = %12.3f]",
+        getMean() / scale, getStdDeviation() / scale));
+    out.println(String.format(Locale.US, "#[Max     = %12.3f, Total count    = %12d]", max / scale, totalCount));
+    out.println(String.format(Locale.US, "#[Buckets = %12d, SubBuckets     = %12d]",
+        64 - SUB_BUCKET_BITS, SUB_BUCKET_COUNT));
+  }
+}
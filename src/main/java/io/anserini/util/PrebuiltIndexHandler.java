@@ -18,58 +18,97 @@ package io.anserini.util;
 
 import me.tongfei.progressbar.ProgressBar;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.CountingInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import io.anserini.index.IndexInfo;
 
-import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Downloads and installs prebuilt indexes into a cache directory, in the same layout as Pyserini. The tarball is
+ * streamed once: the HTTP body is digested, decompressed and extracted as it arrives, into a temporary directory that
+ * is moved into place only if the MD5 checksum matches. Interrupted transfers are resumed with range requests, and
+ * installs of the same index, by threads or by processes on the same host, wait for each other instead of downloading
+ * it twice.
+ */
 public class PrebuiltIndexHandler {
-  private static final String CACHE_DIR = Path.of(System.getProperty("user.home"), ".cache", "pyserini", "indexes").toString();
+  private static final Logger LOG = LogManager.getLogger(PrebuiltIndexHandler.class);
+
+  private static final Path CACHE_DIR = Path.of(System.getProperty("user.home"), ".cache", "pyserini", "indexes");
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+  private static final int READ_TIMEOUT_MILLIS = 60_000;
+  // Number of times that a read is retried, resuming the transfer, before giving up.
+  private static final int MAX_RESUMES = 5;
+  private static final long RESUME_BACKOFF_MILLIS = 1_000;
 
-  private String indexName;
-  private String saveRootPath;
+  // Installs in this JVM, since file locks are held on behalf of the whole process.
+  private static final ConcurrentHashMap<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+  private final String indexName;
+  private final Path cacheDir;
   private IndexInfo info = null;
   private Path indexFolderPath = null;
   private boolean initialized = false;
-  private Path savePath;
+  private Path installPath;
 
   public PrebuiltIndexHandler(String indexName) {
-    this.indexName = indexName;
-    this.saveRootPath = getCache();
+    this(indexName, CACHE_DIR);
   }
 
-  private String getCache() {
-    return CACHE_DIR;
+  public PrebuiltIndexHandler(String indexName, Path cacheDir) {
+    this.indexName = indexName;
+    this.cacheDir = cacheDir;
   }
 
-  private static boolean checkFileExist(Path path) {
-    return path.toFile().exists();
+  /**
+   * Returns the directory that the index of a tarball is installed into. As in Pyserini, this is the name of the
+   * tarball without extension, followed by its MD5 checksum.
+   *
+   * @param cacheDir cache directory
+   * @param filename name of the tarball
+   * @param md5 MD5 checksum of the tarball
+   * @return installation directory
+   */
+  public static Path getInstallPath(Path cacheDir, String filename, String md5) {
+    String name = filename.replaceFirst("\\.tar(\\.gz)?$", "");
+    return cacheDir.resolve(name + "." + md5);
   }
 
   public boolean checkIndexFileExist() {
     /*
-     * Check if the index file exists. If the index file exists, return true.
+     * Check if the index is installed. If the index is installed, return true.
      * Otherwise, return false.
      */
-    if (checkFileExist(savePath) || checkFileExist(Path.of(savePath.toString().replace(".gz", "")))
-        || checkFileExist(Path.of(savePath.toString().replace(".tar.gz", "")))
-        || checkFileExist(Path.of(savePath.toString() + "." + info.md5))
-        || checkFileExist(Path.of(savePath.toString().replace(".gz", "") + "." + info.md5))
-        || checkFileExist(Path.of(savePath.toString().replace(".tar.gz", "") + "." + info.md5))) {
-      return true;
-    }
-    return false;
+    return Files.isDirectory(installPath);
   }
 
   private static IndexInfo getIndexInfo(String indexName) {
@@ -83,126 +122,265 @@ public class PrebuiltIndexHandler {
     }
   }
 
-  private static boolean checkMD5(InputStream st, String md5) throws IOException {
-    /*
-     * Check the MD5 checksum of the index file.
-     */
-    String generatedChecksum = DigestUtils.md5Hex(st);
-    return generatedChecksum.equals(md5);
-  }
-
   public void initialize() {
     if (initialized) {
       return;
     }
     info = getIndexInfo(indexName);
-    // check if saveRootPath exists
-    if (!checkFileExist(Path.of(saveRootPath))) {
+    installPath = getInstallPath(cacheDir, info.filename, info.md5);
+    initialized = true;
+  }
+
+  public void download() throws IOException {
+    /*
+     * Download and install the index. If the index is already installed, do
+     * nothing. Each URL of the index is tried in turn.
+     */
+    if (!initialized) {
+      throw new IllegalStateException("Handler not initialized!");
+    }
+
+    IOException failure = new IOException(String.format("No download URLs for index \"%s\".", indexName));
+    for (String url : info.urls) {
       try {
-        Files.createDirectories(Path.of(saveRootPath));
+        install(URI.create(url), info.filename, info.md5, cacheDir);
+        return;
       } catch (IOException e) {
-        e.printStackTrace();
+        LOG.warn(String.format("Unable to install index from %s: %s", url, e.getMessage()));
+        failure = e;
       }
     }
-    savePath = Path.of(saveRootPath, info.filename);
-    initialized = true;
+    throw failure;
   }
 
-  public void download() throws IOException, URISyntaxException {
+  public String decompressIndex() throws Exception {
     /*
-     * Download the index file to the save path. If the file already exists, do
-     * nothing. If the file does not exist, download the file and check the MD5
-     * checksum.
+     * Return the folder that the index is installed into. Indexes are extracted
+     * as they are downloaded, so this only checks that the index is installed.
      */
     if (!initialized) {
       throw new IllegalStateException("Handler not initialized!");
     }
-    if (checkIndexFileExist()) {
-      System.out.println("Index file already exists! Skip downloading.");
-      return;
+    if (!checkIndexFileExist()) {
+      throw new Exception("Index file does not exist!");
     }
 
-    URL url = new URI(info.urls[0]).toURL();
-    HttpURLConnection httpConnection = (HttpURLConnection) (url.openConnection());
-    long completeFileSize = httpConnection.getContentLengthLong();
+    this.indexFolderPath = installPath;
+    return installPath.toString();
+  }
 
-    try (InputStream inputStream = url.openStream();
-        CountingInputStream cis = new CountingInputStream(inputStream);
-        FileOutputStream fileOS = new FileOutputStream(savePath.toFile());
-        ProgressBar pb = new ProgressBar(indexName, Math.floorDiv(completeFileSize, 1000))) {
+  public Path getIndexFolderPath() {
+    return this.indexFolderPath;
+  }
 
-      pb.setExtraMessage("Downloading...");
+  /**
+   * Downloads a tarball and extracts it into the cache directory, unless it is already installed there.
+   *
+   * @param uri location of the tarball
+   * @param filename name of the tarball, either {@code .tar.gz} or {@code .tar}
+   * @param md5 MD5 checksum of the tarball
+   * @param cacheDir cache directory
+   * @return installation directory, see {@link #getInstallPath}
+   * @throws IOException if the download fails, the checksum does not match, or the tarball cannot be extracted
+   */
+  public static Path install(URI uri, String filename, String md5, Path cacheDir) throws IOException {
+    Path target = getInstallPath(cacheDir, filename, md5);
+    if (Files.isDirectory(target)) {
+      LOG.info(String.format("Index already installed at %s", target));
+      return target;
+    }
 
-      new Thread(() -> {
-        try {
-          IOUtils.copyLarge(cis, fileOS);
-        } catch (IOException e) {
-          e.printStackTrace();
+    Files.createDirectories(cacheDir);
+    // Different spellings of the same directory share a lock.
+    ReentrantLock lock = LOCKS.computeIfAbsent(target.toAbsolutePath().normalize(), key -> new ReentrantLock());
+    Path lockFile = cacheDir.resolve(target.getFileName() + ".lock");
+    lock.lock();
+    try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+         FileLock ignored = channel.lock()) {
+      // Another job might have installed the index while this one was waiting.
+      if (Files.isDirectory(target)) {
+        LOG.info(String.format("Index already installed at %s", target));
+        return target;
+      }
+
+      // Temporary directories left behind by jobs that did not finish are no longer in use, since they held the lock.
+      try (DirectoryStream<Path> stale = Files.newDirectoryStream(cacheDir, target.getFileName() + ".tmp*")) {
+        for (Path path : stale) {
+          FileUtils.deleteDirectory(path.toFile());
         }
-      }).start();
+      }
 
-      while (cis.getByteCount() < completeFileSize) {
-        pb.stepTo(Math.floorDiv(cis.getByteCount(), 1000));
+      Path tmp = Files.createTempDirectory(cacheDir, target.getFileName() + ".tmp");
+      try {
+        LOG.info(String.format("Downloading and extracting %s...", uri));
+        String checksum = extract(uri, filename, tmp);
+        if (!checksum.equals(md5)) {
+          throw new IOException(String.format("MD5 check failed! Expected %s but got %s.", md5, checksum));
+        }
+
+        // Tarballs hold a single directory, which is the index.
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(tmp)) {
+          children.forEach(entries::add);
+        }
+        Path source = entries.size() == 1 && Files.isDirectory(entries.get(0)) ? entries.get(0) : tmp;
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info(String.format("Index installed at %s", target));
+        // Only once installed is the lock file removed: jobs still waiting on it, or creating a new one, find the index
+        // installed and return. After a failure it stays, so that no two jobs ever extract at the same time.
+        Files.deleteIfExists(lockFile);
+        return target;
+      } finally {
+        if (Files.exists(tmp)) {
+          FileUtils.deleteDirectory(tmp.toFile());
+        }
       }
+    } finally {
+      lock.unlock();
+    }
+  }
 
-      pb.stepTo(Math.floorDiv(cis.getByteCount(), 1000));
-      pb.close();
+  // Streams the tarball into a directory, and returns its MD5 checksum.
+  private static String extract(URI uri, String filename, Path dir) throws IOException {
+    MessageDigest digest = DigestUtils.getMd5Digest();
+    try (ResumingInputStream body = new ResumingInputStream(uri.toURL());
+         ProgressBar pb = new ProgressBar(filename, Math.max(1, Math.floorDiv(body.length(), 1000)))) {
+      body.setProgressBar(pb);
+      // The buffer goes above the digest, since decompression marks and resets the stream it reads.
+      InputStream digested = new BufferedInputStream(new DigestInputStream(body, digest), 1 << 16);
+      InputStream archive = filename.endsWith(".gz") ? new GzipCompressorInputStream(digested, true) : digested;
+      TarArchiveInputStream tar = new TarArchiveInputStream(archive);
 
-      InputStream is = Files.newInputStream(savePath);
-      if (!checkMD5(is, info.md5)) {
-        throw new IOException("MD5 check failed!");
+      for (TarArchiveEntry entry = tar.getNextEntry(); entry != null; entry = tar.getNextEntry()) {
+        Path path = dir.resolve(entry.getName()).normalize();
+        if (!path.startsWith(dir)) {
+          throw new IOException(String.format("Archive entry \"%s\" is outside of the index.", entry.getName()));
+        }
+        if (entry.isDirectory()) {
+          Files.createDirectories(path);
+        } else if (entry.isFile()) {
+          Files.createDirectories(path.getParent());
+          Files.copy(tar, path);
+        }
+        // Other entries, such as links, do not occur in index tarballs, and are skipped.
       }
+
+      // Reads whatever follows the end of the archive, so that the checksum covers the whole tarball.
+      IOUtils.consume(digested);
+      pb.stepTo(pb.getMax());
     }
+    return Hex.encodeHexString(digest.digest());
   }
 
-  public String decompressIndex() throws Exception {
-    /*
-     * Decompress the tar.gz or tar index file to an archive folder. If the folder
-     * already exists, do nothing.
-     */
-    if (!initialized) {
-      throw new IllegalStateException("Handler not initialized!");
+  /**
+   * Thrown when the server does not resume a download with a partial response; retrying does not help.
+   */
+  private static final class ResumeRefusedException extends IOException {
+    ResumeRefusedException(String message) {
+      super(message);
     }
-    if (!checkIndexFileExist()) {
-      throw new Exception("Index file does not exist!");
+  }
+
+  /**
+   * HTTP body that resumes from where it stopped, with a range request, when the connection fails or ends early.
+   */
+  private static final class ResumingInputStream extends InputStream {
+    private final URL url;
+    private long position = 0;
+    private long length = -1;
+    // Ensures that resumed transfers are of the same file.
+    private String validator = null;
+    private InputStream in;
+    private HttpURLConnection connection;
+    private ProgressBar pb = null;
+
+    ResumingInputStream(URL url) throws IOException {
+      this.url = url;
+      open();
     }
 
-    String indexFolder = savePath.toString().replace(".tar.gz", "");
-    if (checkFileExist(Path.of(indexFolder + "." + info.md5))) {
-      System.out.println("Index folder already exists!");
-      return indexFolder + "." + info.md5;
+    long length() {
+      return length;
     }
-    System.out.println("Decompressing index...");
 
-    if (checkFileExist(Path.of(savePath.toString()))) {
-      ProcessBuilder pbGZIP = new ProcessBuilder("gzip", "-d", savePath.toString());
-      Process pGZIP = pbGZIP.start();
-      pGZIP.waitFor();
+    void setProgressBar(ProgressBar pb) {
+      this.pb = pb;
     }
 
-    if (checkFileExist(Path.of(savePath.toString().replace(".gz", "")))) {
-      ProcessBuilder pbTAR = new ProcessBuilder("tar", "-xvf",
-          savePath.toString().substring(0, savePath.toString().length() - 3), "-C", saveRootPath);
-      Process pTar = pbTAR.start();
-      pTar.waitFor();
+    private void open() throws IOException {
+      connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+      connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+      if (position > 0) {
+        connection.setRequestProperty("Range", "bytes=" + position + "-");
+        if (validator != null) {
+          connection.setRequestProperty("If-Range", validator);
+        }
+      }
 
-      // delete the tar file for saving space
-      Files.delete(Path.of(savePath.toString().replace(".gz", "")));
+      int code = connection.getResponseCode();
+      if (position == 0) {
+        if (code != HttpURLConnection.HTTP_OK) {
+          throw new IOException(String.format("Unexpected HTTP response code %d.", code));
+        }
+        length = connection.getContentLengthLong();
+        validator = connection.getHeaderField("ETag") != null ?
+            connection.getHeaderField("ETag") : connection.getHeaderField("Last-Modified");
+      } else if (code != HttpURLConnection.HTTP_PARTIAL) {
+        // The bytes read so far have already been extracted, so the download cannot start over.
+        throw new ResumeRefusedException(String.format("Unable to resume download at byte %d: HTTP response code %d.",
+            position, code));
+      }
+      in = connection.getInputStream();
     }
 
-    System.out.println("Index decompressed successfully!");
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
 
-    // postpend md5 to decompressed index
-    Path oldIndexPath = Path.of(indexFolder);
-    indexFolder += "." + info.md5;
-    this.indexFolderPath = Path.of(indexFolder);
-    if (!checkFileExist(this.indexFolderPath)) {
-      Files.move(oldIndexPath, this.indexFolderPath);
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int resumes = 0;
+      while (true) {
+        try {
+          if (in == null) {
+            open();
+          }
+          int n = in.read(b, off, len);
+          if (n == -1 && length >= 0 && position < length) {
+            throw new EOFException(String.format("Connection closed after %d of %d bytes", position, length));
+          }
+          if (n > 0) {
+            position += n;
+            if (pb != null) {
+              pb.stepTo(Math.floorDiv(position, 1000));
+            }
+          }
+          return n;
+        } catch (ResumeRefusedException e) {
+          throw e;
+        } catch (IOException e) {
+          if (++resumes > MAX_RESUMES) {
+            throw e;
+          }
+          LOG.warn(String.format("Download interrupted at byte %d (%s), resuming...", position, e.getMessage()));
+          connection.disconnect();
+          in = null;
+          try {
+            Thread.sleep(RESUME_BACKOFF_MILLIS * resumes);
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resuming download");
+          }
+        }
+      }
     }
-    return indexFolder;
-  }
 
-  public Path getIndexFolderPath() {
-    return this.indexFolderPath;
+    @Override
+    public void close() {
+      connection.disconnect();
+    }
   }
 }
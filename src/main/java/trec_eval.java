@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.lang.ProcessBuilder.Redirect;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -38,6 +39,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 
 import io.anserini.eval.RelevanceJudgments;
+import io.anserini.search.BinaryRun;
 
 /**
  * The following code is adopted from https://github.com/terrierteam/jtreceval
@@ -156,6 +158,23 @@ public class trec_eval {
     }
     return filePath.toString();
   } 
+
+  // The trec_eval binary only reads text runs, so binary runs are converted to a temporary text run first.
+  String potentiallyConvertRun(String run) {
+    try {
+      Path path = Path.of(run);
+      if (!BinaryRun.isBinaryRun(path)) {
+        return run;
+      }
+      File converted = File.createTempFile("run", ".txt");
+      if (DELETE)
+        converted.deleteOnExit();
+      BinaryRun.toText(path, converted.toPath(), "trec");
+      return converted.toString();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
   
   ProcessBuilder getBuilder(String[] args) {
     List<String> cmd = new ArrayList<String>();
@@ -164,6 +183,8 @@ public class trec_eval {
       // Special case for symbol expansion
       if (i == args.length - 2) {
         cmd.add(potentiallyExpandSymbol(args[i]));
+      } else if (i == args.length - 1) {
+        cmd.add(potentiallyConvertRun(args[i]));
       } else {
         cmd.add(args[i]);
       }
@@ -18,28 +18,46 @@ package io.anserini.analysis.fw;
 
 import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.analysis.fw.FakeWordsEncoderAnalyzer;
+import io.anserini.index.Constants;
+import io.anserini.index.IndexInvertedDenseVectors;
+import io.anserini.search.InvertedDenseSearcher;
+import io.anserini.search.query.InvertedDenseVectorQueryGenerator;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queries.CommonTermsQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import static org.apache.lucene.search.BooleanClause.Occur.SHOULD;
+import static org.apache.lucene.tests.util.LuceneTestCase.getOnlyLeafReader;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class FakeWordsEncoderAnalyzerTest {
 
@@ -82,6 +100,99 @@ public class FakeWordsEncoderAnalyzerTest {
     }
   }
 
+  @Test
+  public void testTermFrequencies() throws Exception {
+    Random random = new Random(42);
+    List<String> vectors = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      StringBuilder builder = new StringBuilder();
+      for (int j = 0; j < 32; j++) {
+        if (builder.length() > 0) {
+          builder.append(' ');
+        }
+        builder.append(random.nextFloat() * 0.6f - 0.1f);
+      }
+      vectors.add(builder.toString());
+    }
+
+    // Fields with custom term frequencies cannot index positions.
+    FieldType fieldType = new FieldType();
+    fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+    fieldType.setTokenized(true);
+    fieldType.freeze();
+
+    String fieldName = Constants.VECTOR;
+    Directory repeatedDirectory = new ByteBuffersDirectory();
+    Directory frequencyDirectory = new ByteBuffersDirectory();
+    try (IndexWriter repeatedWriter = new IndexWriter(repeatedDirectory,
+             new IndexWriterConfig(new FakeWordsEncoderAnalyzer(20)).setMergePolicy(NoMergePolicy.INSTANCE));
+         IndexWriter frequencyWriter = new IndexWriter(frequencyDirectory,
+             new IndexWriterConfig(new FakeWordsEncoderAnalyzer(20, true)).setMergePolicy(NoMergePolicy.INSTANCE))) {
+      for (String vector : vectors) {
+        Document repeated = new Document();
+        repeated.add(new TextField(fieldName, vector, Field.Store.NO));
+        repeatedWriter.addDocument(repeated);
+
+        Document frequency = new Document();
+        frequency.add(new Field(fieldName, vector, fieldType));
+        frequencyWriter.addDocument(frequency);
+      }
+    }
+
+    try (DirectoryReader repeatedReader = DirectoryReader.open(repeatedDirectory);
+         DirectoryReader frequencyReader = DirectoryReader.open(frequencyDirectory)) {
+      // Both index the same terms, with the same term frequencies and norms.
+      LeafReader repeatedLeaf = getOnlyLeafReader(repeatedReader);
+      LeafReader frequencyLeaf = getOnlyLeafReader(frequencyReader);
+      TermsEnum repeatedTerms = repeatedLeaf.terms(fieldName).iterator();
+      TermsEnum frequencyTerms = frequencyLeaf.terms(fieldName).iterator();
+      for (BytesRef term = repeatedTerms.next(); term != null; term = repeatedTerms.next()) {
+        assertEquals(term, frequencyTerms.next());
+        PostingsEnum repeatedPostings = repeatedTerms.postings(null, PostingsEnum.FREQS);
+        PostingsEnum frequencyPostings = frequencyTerms.postings(null, PostingsEnum.FREQS);
+        for (int doc = repeatedPostings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = repeatedPostings.nextDoc()) {
+          assertEquals(doc, frequencyPostings.nextDoc());
+          assertEquals(repeatedPostings.freq(), frequencyPostings.freq());
+        }
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, frequencyPostings.nextDoc());
+      }
+      assertNull(frequencyTerms.next());
+
+      NumericDocValues repeatedNorms = repeatedLeaf.getNormValues(fieldName);
+      NumericDocValues frequencyNorms = frequencyLeaf.getNormValues(fieldName);
+      for (int doc = repeatedNorms.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = repeatedNorms.nextDoc()) {
+        assertEquals(doc, frequencyNorms.nextDoc());
+        assertEquals(repeatedNorms.longValue(), frequencyNorms.longValue());
+      }
+
+      // Queries with each fake word once, boosted by its term frequency, score the same as queries repeating it.
+      InvertedDenseSearcher.Args args = new InvertedDenseSearcher.Args();
+      args.encoding = IndexInvertedDenseVectors.FW;
+      args.q = 20;
+      InvertedDenseVectorQueryGenerator generator = new InvertedDenseVectorQueryGenerator(args, false);
+      IndexSearcher repeatedSearcher = new IndexSearcher(repeatedReader);
+      repeatedSearcher.setSimilarity(new ClassicSimilarity());
+      IndexSearcher frequencySearcher = new IndexSearcher(frequencyReader);
+      frequencySearcher.setSimilarity(new ClassicSimilarity());
+      for (String vector : vectors.subList(0, 10)) {
+        CommonTermsQuery repeatedQuery = new CommonTermsQuery(SHOULD, SHOULD, 0.999f);
+        for (String token : AnalyzerUtils.analyze(new FakeWordsEncoderAnalyzer(20), vector)) {
+          repeatedQuery.add(new Term(fieldName, token));
+        }
+        TopDocs expected = repeatedSearcher.search(repeatedQuery, 20);
+        TopDocs actual = frequencySearcher.search(generator.buildQuery(vector), 20);
+        assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+          assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+          assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0.0f);
+        }
+      }
+    } finally {
+      repeatedDirectory.close();
+      frequencyDirectory.close();
+    }
+  }
+
   private void assertSimQuery(Analyzer analyzer, String fieldName, String text, DirectoryReader reader) throws IOException {
     IndexSearcher searcher = new IndexSearcher(reader);
     CommonTermsQuery simQuery = new CommonTermsQuery(SHOULD, SHOULD, 1);
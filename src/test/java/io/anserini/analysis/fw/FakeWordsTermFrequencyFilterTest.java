@@ -0,0 +1,58 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.analysis.fw;
+
+import io.anserini.analysis.FeatureVectorsTokenizer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermFrequencyAttribute;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FakeWordsTermFrequencyFilter}
+ */
+public class FakeWordsTermFrequencyFilterTest {
+
+  @Test
+  public void testFiltering() throws Exception {
+    StringReader reader = new StringReader("-0.10 0.20 0.30 0.40");
+    Tokenizer stream = new FeatureVectorsTokenizer();
+    stream.setReader(reader);
+    FakeWordsTermFrequencyFilter filter = new FakeWordsTermFrequencyFilter(stream, 20);
+    filter.reset();
+    CharTermAttribute charTermAttribute = filter.getAttribute(CharTermAttribute.class);
+    TermFrequencyAttribute termFrequencyAttribute = filter.getAttribute(TermFrequencyAttribute.class);
+
+    // The first value quantizes to zero, and is dropped.
+    String[] expectedTokens = {"f2", "f3", "f4"};
+    int[] expectedFrequencies = {4, 6, 8};
+    for (int i = 0; i < expectedTokens.length; i++) {
+      assertTrue(filter.incrementToken());
+      assertEquals(expectedTokens[i], charTermAttribute.toString());
+      assertEquals(expectedFrequencies[i], termFrequencyAttribute.getTermFrequency());
+    }
+    assertFalse(filter.incrementToken());
+    filter.close();
+  }
+
+}
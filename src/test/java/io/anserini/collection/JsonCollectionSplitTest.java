@@ -0,0 +1,66 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.collection;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Splitting JSON Lines files into byte ranges: every document must be read exactly once, in order, no matter where
+// the range boundaries fall.
+public class JsonCollectionSplitTest extends LuceneTestCase {
+
+  @Test
+  public void testSplits() throws Exception {
+    Path dir = createTempDir();
+    Path file = dir.resolve("segment.jsonl");
+    // Note the multi-byte characters and the missing newline at the end of the file.
+    Files.writeString(file,
+        "{\"id\": \"doc1\", \"contents\": \"first\"}\n" +
+        "{\"id\": \"doc2\", \"contents\": \"zweite über\"}\n" +
+        "{\"id\": \"doc3\", \"contents\": \"第三\"}\n" +
+        "{\"id\": \"doc4\", \"contents\": \"4\"}", StandardCharsets.UTF_8);
+    long size = Files.size(file);
+
+    JsonCollection collection = new JsonCollection(dir);
+    assertTrue(collection.isSplittable(file));
+    assertFalse(collection.isSplittable(dir.resolve("segment.json")));
+
+    for (long splitSize = 1; splitSize <= size; splitSize++) {
+      List<String> ids = new ArrayList<>();
+      List<String> contents = new ArrayList<>();
+      for (long start = 0; start < size; start += splitSize) {
+        try (FileSegment<JsonCollection.Document> segment =
+                 collection.createFileSegment(file, start, Math.min(start + splitSize, size))) {
+          for (JsonCollection.Document doc : segment) {
+            ids.add(doc.id());
+            contents.add(doc.contents());
+          }
+          assertFalse(segment.getErrorStatus());
+        }
+      }
+
+      assertEquals("split size " + splitSize, List.of("doc1", "doc2", "doc3", "doc4"), ids);
+      assertEquals(List.of("first", "zweite über", "第三", "4"), contents);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.collection;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentPartitionerTest {
+
+  @Test
+  public void testBalanced() {
+    Map<Path, Long> sizes = new HashMap<>();
+    List<Path> paths = new ArrayList<>();
+    long[] weights = {100, 90, 80, 70, 60, 50, 40, 30, 20, 10, 10, 10};
+    for (int i = 0; i < weights.length; i++) {
+      Path p = Paths.get("collection", "file" + i);
+      paths.add(p);
+      sizes.put(p, weights[i]);
+    }
+
+    List<List<Path>> shards = SegmentPartitioner.partition(paths, 3, sizes::get);
+    assertEquals(3, shards.size());
+
+    Set<Path> seen = new HashSet<>();
+    for (List<Path> shard : shards) {
+      long total = shard.stream().mapToLong(sizes::get).sum();
+      // Total weight is 570, so a perfect split is 190 per shard.
+      assertTrue(total >= 180 && total <= 200);
+      seen.addAll(shard);
+    }
+    assertEquals(paths.size(), seen.size());
+
+    // Partitioning is deterministic.
+    assertEquals(shards, SegmentPartitioner.partition(paths, 3, sizes::get));
+  }
+
+  @Test
+  public void testMoreShardsThanSegments() {
+    List<Path> paths = List.of(Paths.get("a"), Paths.get("b"));
+    List<List<Path>> shards = SegmentPartitioner.partition(paths, 4, p -> 1L);
+
+    assertEquals(4, shards.size());
+    assertEquals(List.of(Paths.get("a")), shards.get(0));
+    assertEquals(List.of(Paths.get("b")), shards.get(1));
+    assertTrue(shards.get(2).isEmpty());
+    assertTrue(shards.get(3).isEmpty());
+  }
+
+  @Test
+  public void testCollectionShards() {
+    TrecCollection collection = new TrecCollection(Paths.get("src/test/resources/sample_docs/trec/collection2"));
+
+    Set<Path> all = new HashSet<>(collection.getSegmentPaths());
+    Set<Path> sharded = new HashSet<>();
+    for (int i = 0; i < 2; i++) {
+      List<Path> shard = collection.getSegmentPaths(2, i);
+      assertTrue(!shard.isEmpty());
+      sharded.addAll(shard);
+    }
+    assertEquals(all, sharded);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidShard() {
+    new TrecCollection(Paths.get("src/test/resources/sample_docs/trec/collection2")).getSegmentPaths(2, 2);
+  }
+}
@@ -17,9 +17,14 @@
 package io.anserini.collection;
 
 import org.junit.Before;
+import org.junit.Test;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class TweetCollectionTest extends DocumentCollectionTest<TweetCollection.Document> {
@@ -52,6 +57,27 @@ public class TweetCollectionTest extends DocumentCollectionTest<TweetCollection.
             "timestamp_ms", "1362038400000"));
   }
 
+  @Test
+  public void testUnparsableCreationTime() throws Exception {
+    String json = "{\"id_str\":\"123\",\"text\":\"bad date\",\"user\":{\"screen_name\":\"foo\"," +
+        "\"followers_count\":1,\"friends_count\":1,\"statuses_count\":1},\"created_at\":\"yesterday\"}";
+    Path path = createTempDir().resolve("tweets.jsonl");
+    Files.writeString(path, json + "\n");
+
+    // The tweet is still read from collections, with an unknown timestamp, although it counts as skipped.
+    List<TweetCollection.Document> docs = new ArrayList<>();
+    try (TweetCollection.Segment segment = new TweetCollection.Segment(path)) {
+      segment.iterator().forEachRemaining(docs::add);
+      assertEquals(1, segment.getSkippedCount());
+    }
+    assertEquals(1, docs.size());
+    assertEquals("123", docs.get(0).id());
+    assertEquals(-1L, docs.get(0).getTimestampMs().getAsLong());
+
+    // Parsing a single tweet is strict.
+    expectThrows(ParseException.class, () -> TweetCollection.Document.fromString(json));
+  }
+
   @Override
   void checkDocument(SourceDocument doc, Map<String, String> expected) {
     assertTrue(doc.indexable());
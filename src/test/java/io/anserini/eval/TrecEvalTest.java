@@ -0,0 +1,149 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import io.anserini.search.BinaryRun;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TrecEvalTest extends LuceneTestCase {
+  private TrecEval eval;
+  private String qrels;
+  private String run;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    eval = new TrecEval(2);
+
+    Path qrelsPath = createTempFile();
+    Files.write(qrelsPath, List.of(
+        "q1 0 d1 2",
+        "q1 0 d2 0",
+        "q1 0 d3 1",
+        "q1 0 d4 1",
+        "q2 0 d5 1",
+        "q3 0 d9 0"));
+    qrels = qrelsPath.toString();
+
+    // d1 and d3 tie, and are ranked by decreasing docid, as in trec_eval.
+    Path runPath = createTempFile();
+    Files.write(runPath, List.of(
+        "q1 Q0 d2 1 3.0 t",
+        "q1 Q0 d1 2 2.0 t",
+        "q1 Q0 d3 3 2.0 t",
+        "q1 Q0 d9 4 1.0 t",
+        "q2 Q0 d6 1 1.0 t",
+        "q2 Q0 d5 2 0.5 t",
+        "q4 Q0 d1 1 1.0 t"));
+    run = runPath.toString();
+  }
+
+  @After
+  @Override
+  public void tearDown() throws Exception {
+    eval.close();
+    super.tearDown();
+  }
+
+  @Test
+  public void testOutput() throws Exception {
+    // Expected output is that of trec_eval 9.0.7.
+    assertEquals(List.of(
+        "map                   \tq1\t0.3889",
+        "P_2                   \tq1\t0.5000",
+        "P_32                  \tq1\t0.0625",
+        "ndcg_cut_3            \tq1\t0.5209",
+        "map                   \tq2\t0.5000",
+        "P_2                   \tq2\t0.5000",
+        // 1/32 is a tie at the fourth decimal place, rounded to even.
+        "P_32                  \tq2\t0.0312",
+        "ndcg_cut_3            \tq2\t0.6309",
+        "num_q                 \tall\t3",
+        "map                   \tall\t0.2963",
+        "P_2                   \tall\t0.3333",
+        "P_32                  \tall\t0.0312",
+        "ndcg_cut_3            \tall\t0.3839"),
+        eval.evaluate(new String[] {"-q", "-c", "-m", "ndcg_cut.3", "-m", "map", "-m", "P.32,2", "-m", "num_q",
+            qrels, run}));
+  }
+
+  @Test
+  public void testOptions() throws Exception {
+    assertEquals("0.4444", eval.runAndGetOutput(new String[] {"-m", "map", qrels, run})[0][2]);
+    assertEquals("0.1111", eval.runAndGetOutput(new String[] {"-c", "-l", "2", "-m", "map", qrels, run})[0][2]);
+    assertEquals("0.0000", eval.runAndGetOutput(new String[] {"-M", "1", "-m", "recip_rank", qrels, run})[0][2]);
+    assertEquals("0.5000", eval.runAndGetOutput(new String[] {"-M2", "-mrecip_rank", qrels, run})[0][2]);
+
+    String[][] output = eval.runAndGetOutput(new String[] {"-m", "judged.1,4", "-m", "recall.2", qrels, run});
+    assertEquals("recall_2", output[0][0]);
+    assertEquals("0.6667", output[0][2]);
+    assertEquals("judged_1", output[1][0]);
+    assertEquals("0.5000", output[1][2]);
+    assertEquals("judged_4", output[2][0]);
+    assertEquals("0.5000", output[2][2]);
+  }
+
+  @Test
+  public void testBinaryRun() throws Exception {
+    Path binary = createTempFile();
+    try (BinaryRun.Writer writer = new BinaryRun.Writer(binary, BinaryRun.ScoreType.FLOAT)) {
+      List<String> lines = Files.readAllLines(Path.of(run));
+      for (int i = 0; i < lines.size(); ) {
+        String qid = lines.get(i).split(" ")[0];
+        int end = i;
+        while (end < lines.size() && lines.get(end).startsWith(qid + " ")) {
+          end++;
+        }
+        writer.beginTopic(qid, "t", end - i, false);
+        for (String line : lines.subList(i, end)) {
+          String[] arr = line.split(" ");
+          writer.writeHit(arr[2], Integer.parseInt(arr[3]), Double.parseDouble(arr[4]));
+        }
+        i = end;
+      }
+    }
+    String[] measures = {"-q", "-c", "-m", "map", "-m", "ndcg_cut.3", "-m", "P.2"};
+
+    String[] textArgs = new String[measures.length + 2];
+    String[] binaryArgs = new String[measures.length + 2];
+    System.arraycopy(measures, 0, textArgs, 0, measures.length);
+    System.arraycopy(measures, 0, binaryArgs, 0, measures.length);
+    textArgs[measures.length] = binaryArgs[measures.length] = qrels;
+    textArgs[measures.length + 1] = run;
+    binaryArgs[measures.length + 1] = binary.toString();
+    assertEquals(eval.evaluate(textArgs), eval.evaluate(binaryArgs));
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    expectThrows(IllegalArgumentException.class, () -> eval.evaluate(new String[] {"-m", "bpref", qrels, run}));
+    expectThrows(IllegalArgumentException.class, () -> eval.evaluate(new String[] {qrels, run}));
+
+    Path duplicates = createTempFile();
+    Files.write(duplicates, List.of("q1 Q0 d1 1 2.0 t", "q1 Q0 d1 2 1.0 t"));
+    expectThrows(IllegalArgumentException.class,
+        () -> eval.evaluate(new String[] {"-m", "map", qrels, duplicates.toString()}));
+  }
+}
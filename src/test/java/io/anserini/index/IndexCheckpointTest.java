@@ -0,0 +1,93 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class IndexCheckpointTest extends LuceneTestCase {
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(AbstractIndexer.class.getName(), Level.ERROR);
+    Configurator.setLevel(IndexCollection.class.getName(), Level.ERROR);
+  }
+
+  private static void index(Path collection, Path index, boolean resume) throws Exception {
+    IndexCollection.main(resume ?
+        new String[] {"-collection", "JsonCollection", "-input", collection.toString(), "-index", index.toString(),
+            "-threads", "1", "-storeContents", "-resume"} :
+        new String[] {"-collection", "JsonCollection", "-input", collection.toString(), "-index", index.toString(),
+            "-threads", "1", "-storeContents"});
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    Path tmp = createTempDir();
+    Path collection = Files.createDirectory(tmp.resolve("collection"));
+    Path index = tmp.resolve("index");
+
+    Files.writeString(collection.resolve("doc1.json"), "{\"id\": \"doc1\", \"contents\": \"contents of document 1.\"}");
+    Files.writeString(collection.resolve("doc2.json"), "{\"id\": \"doc2\", \"contents\": \"contents of document 2.\"}");
+    index(collection, index, false);
+
+    try (FSDirectory dir = FSDirectory.open(index)) {
+      assertEquals(2, IndexCheckpoint.load(dir, collection).size());
+      try (IndexReader reader = DirectoryReader.open(dir)) {
+        assertEquals(2, reader.maxDoc());
+      }
+    }
+
+    // Resuming a completed index with a new file only indexes the new file.
+    Files.writeString(collection.resolve("doc3.json"), "{\"id\": \"doc3\", \"contents\": \"contents of document 3.\"}");
+    index(collection, index, true);
+
+    try (FSDirectory dir = FSDirectory.open(index)) {
+      assertEquals(3, IndexCheckpoint.load(dir, collection).size());
+      try (IndexReader reader = DirectoryReader.open(dir)) {
+        assertEquals(3, reader.maxDoc());
+        assertEquals(3, reader.numDocs());
+      }
+    }
+
+    // A modified file is indexed again, replacing its documents rather than duplicating them.
+    Path doc1 = collection.resolve("doc1.json");
+    Files.writeString(doc1, "{\"id\": \"doc1\", \"contents\": \"updated contents of document 1.\"}");
+    Files.setLastModifiedTime(doc1, FileTime.fromMillis(Files.getLastModifiedTime(doc1).toMillis() + 1000));
+    index(collection, index, true);
+
+    try (FSDirectory dir = FSDirectory.open(index); IndexReader reader = DirectoryReader.open(dir)) {
+      assertEquals(3, reader.numDocs());
+      IndexSearcher searcher = new IndexSearcher(reader);
+      assertEquals(1, searcher.count(new TermQuery(new Term(Constants.CONTENTS, "updat"))));
+      assertEquals(1, searcher.count(new TermQuery(new Term(Constants.ID, "doc1"))));
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+
+public class IndexReaderRegistryTest extends LuceneTestCase {
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(AbstractIndexer.class.getName(), Level.ERROR);
+    Configurator.setLevel(IndexCollection.class.getName(), Level.ERROR);
+    Configurator.setLevel(IndexReaderRegistry.class.getName(), Level.ERROR);
+  }
+
+  @Test
+  public void testSharedReader() throws Exception {
+    Path index = createTempDir();
+    IndexCollection.main(new String[] {
+        "-collection", "JsonCollection",
+        "-input", "src/test/resources/sample_docs/json/collection1",
+        "-index", index.toString(),
+        "-generator", "DefaultLuceneDocumentGenerator",
+        "-threads", "1"});
+
+    // The same index through an equivalent path is the same reader.
+    IndexReader first = IndexReaderRegistry.acquire(index.toString());
+    IndexReader second = IndexReaderRegistry.acquire(index.resolve(".").toString());
+    assertSame(first, second);
+    assertEquals(2, IndexReaderRegistry.getRefCount(index.toString()));
+
+    IndexReaderRegistry.release(first);
+    assertEquals(1, IndexReaderRegistry.getRefCount(index.toString()));
+    assertEquals(2, second.numDocs());
+
+    IndexReaderRegistry.release(second);
+    assertEquals(0, IndexReaderRegistry.getRefCount(index.toString()));
+    expectThrows(AlreadyClosedException.class, second::leaves);
+    expectThrows(IllegalArgumentException.class, () -> IndexReaderRegistry.release(second));
+
+    // Once closed, acquiring the index opens it again.
+    IndexReader third = IndexReaderRegistry.acquire(index.toString());
+    assertNotSame(first, third);
+    IndexReaderRegistry.release(third);
+  }
+
+  @Test
+  public void testIdleReaders() throws Exception {
+    Path[] indexes = new Path[2];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = createTempDir();
+      IndexCollection.main(new String[] {
+          "-collection", "JsonCollection",
+          "-input", "src/test/resources/sample_docs/json/collection1",
+          "-index", indexes[i].toString(),
+          "-generator", "DefaultLuceneDocumentGenerator",
+          "-threads", "1"});
+    }
+
+    try {
+      IndexReaderRegistry.setMaxIdle(1);
+      IndexReader first = IndexReaderRegistry.acquire(indexes[0].toString());
+      IndexReaderRegistry.release(first);
+      // The reader stays open without holders, and is handed out again.
+      assertEquals(2, first.numDocs());
+      assertSame(first, IndexReaderRegistry.acquire(indexes[0].toString()));
+      IndexReaderRegistry.release(first);
+      expectThrows(IllegalArgumentException.class, () -> IndexReaderRegistry.release(first));
+
+      // Another idle index evicts the least recently released one.
+      IndexReader second = IndexReaderRegistry.acquire(indexes[1].toString());
+      IndexReaderRegistry.release(second);
+      expectThrows(AlreadyClosedException.class, first::leaves);
+      assertEquals(2, second.numDocs());
+
+      IndexReaderRegistry.setMaxIdle(0);
+      expectThrows(AlreadyClosedException.class, second::leaves);
+    } finally {
+      IndexReaderRegistry.setMaxIdle(0);
+    }
+  }
+
+  @Test
+  public void testMissingIndex() {
+    expectThrows(IllegalArgumentException.class,
+        () -> IndexReaderRegistry.acquire(createTempDir().resolve("missing").toString()));
+  }
+}
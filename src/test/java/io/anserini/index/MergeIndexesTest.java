@@ -0,0 +1,106 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MergeIndexesTest extends LuceneTestCase {
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(AbstractIndexer.class.getName(), Level.ERROR);
+    Configurator.setLevel(IndexCollection.class.getName(), Level.ERROR);
+    Configurator.setLevel(MergeIndexes.class.getName(), Level.ERROR);
+  }
+
+  @Test
+  public void testShardAndMerge() throws Exception {
+    Path tmp = createTempDir();
+    Path manifest = tmp.resolve("manifest.json");
+
+    for (int i = 0; i < 2; i++) {
+      IndexCollection.main(new String[] {
+          "-collection", "JsonCollection",
+          "-input", "src/test/resources/sample_docs/json/collection1",
+          "-index", tmp.resolve("shard" + i).toString(),
+          "-shard.count", "2",
+          "-shard.current", String.valueOf(i),
+          "-shard.manifest", manifest.toString(),
+          "-threads", "1"
+      });
+    }
+
+    assertTrue(Files.exists(manifest));
+    ShardManifest m = ShardManifest.read(manifest);
+    assertEquals(2, m.getShardCount());
+    assertEquals("size", m.getWeight());
+
+    // Both files of the collection are of similar size, so each shard should get one of them.
+    assertEquals(1, m.getSegmentPaths(Path.of("src/test/resources/sample_docs/json/collection1"), 0).size());
+    assertEquals(1, m.getSegmentPaths(Path.of("src/test/resources/sample_docs/json/collection1"), 1).size());
+
+    int total = 0;
+    for (int i = 0; i < 2; i++) {
+      try (IndexReader reader = DirectoryReader.open(FSDirectory.open(tmp.resolve("shard" + i)))) {
+        assertTrue(reader.numDocs() > 0);
+        total += reader.numDocs();
+      }
+    }
+
+    MergeIndexes.main(new String[] {
+        "-input", tmp.resolve("shard0").toString(), tmp.resolve("shard1").toString(),
+        "-index", tmp.resolve("merged").toString(),
+        "-maxSegments", "1",
+        "-threads", "2"
+    });
+
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(tmp.resolve("merged")))) {
+      assertEquals(total, reader.numDocs());
+      assertEquals(1, reader.leaves().size());
+    }
+  }
+
+  @Test
+  public void testCollectionSharding() {
+    // C4Collection shards by file number, which a manifest or document-count weights would silently replace.
+    for (int i = 0; i < 2; i++) {
+      IndexCollection.Args args = new IndexCollection.Args();
+      args.collectionClass = "C4Collection";
+      args.input = "src/test/resources/sample_docs/c4";
+      args.index = createTempDir().toString();
+      args.shardCount = 2;
+      args.shardCurrent = 0;
+      if (i == 0) {
+        args.shardWeight = "docs";
+      } else {
+        args.shardManifest = createTempDir().resolve("manifest.json").toString();
+      }
+      IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new IndexCollection(args));
+      assertTrue(e.getMessage().contains("C4Collection"));
+    }
+  }
+}
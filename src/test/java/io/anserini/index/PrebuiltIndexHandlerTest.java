@@ -16,16 +16,58 @@
 
 package io.anserini.index;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import io.anserini.util.PrebuiltIndexHandler;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
 public class PrebuiltIndexHandlerTest {
+  private static final String FILENAME = "lucene-index.test.tar.gz";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private PrebuiltIndexHandler handler;
+  private HttpServer server;
+  private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+  private final AtomicInteger requests = new AtomicInteger();
+  // Number of bytes after which the first response is cut off, or -1 to send it whole.
+  private volatile int cutOff = -1;
+  // Whether range requests are answered with the whole file.
+  private volatile boolean ignoreRange = false;
+  private byte[] tarball;
+  private byte[] segments;
 
   @Test
   public void testHandler() throws Exception {
@@ -41,14 +83,147 @@ public class PrebuiltIndexHandlerTest {
     }
   }
 
+  @Test
+  public void testInstall() throws Exception {
+    Path cache = folder.newFolder().toPath();
+    Path path = PrebuiltIndexHandler.install(uri(), FILENAME, DigestUtils.md5Hex(tarball), cache);
+
+    assertEquals(cache.resolve("lucene-index.test." + DigestUtils.md5Hex(tarball)), path);
+    assertArrayEquals(segments, Files.readAllBytes(path.resolve("segments_1")));
+    assertEquals("0123456789", Files.readString(path.resolve("_0.si")));
+    assertEquals(1, requests.get());
+    // The lock is removed once the index is installed.
+    try (var files = Files.list(cache)) {
+      assertEquals(List.of(path), files.toList());
+    }
+
+    // Installed indexes are not downloaded again.
+    assertEquals(path, PrebuiltIndexHandler.install(uri(), FILENAME, DigestUtils.md5Hex(tarball), cache));
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    Path cache = folder.newFolder().toPath();
+    cutOff = tarball.length / 2;
+    Path path = PrebuiltIndexHandler.install(uri(), FILENAME, DigestUtils.md5Hex(tarball), cache);
+
+    assertArrayEquals(segments, Files.readAllBytes(path.resolve("segments_1")));
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void testResumeRefused() throws Exception {
+    Path cache = folder.newFolder().toPath();
+    cutOff = tarball.length / 2;
+    ignoreRange = true;
+    String md5 = DigestUtils.md5Hex(tarball);
+    IOException e = assertThrows(IOException.class, () -> PrebuiltIndexHandler.install(uri(), FILENAME, md5, cache));
+
+    // The bytes read so far were already extracted, so a server that cannot resume is not asked again.
+    assertTrue(e.getMessage().startsWith("Unable to resume download"));
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void testChecksumMismatch() throws Exception {
+    Path cache = folder.newFolder().toPath();
+    String md5 = DigestUtils.md5Hex("something else");
+    IOException e = assertThrows(IOException.class, () -> PrebuiltIndexHandler.install(uri(), FILENAME, md5, cache));
+
+    assertTrue(e.getMessage().startsWith("MD5 check failed!"));
+    // Nothing is left behind but the lock.
+    try (var files = Files.list(cache)) {
+      assertEquals(List.of(cache.resolve("lucene-index.test." + md5 + ".lock")), files.toList());
+    }
+  }
+
+  @Test
+  public void testConcurrentInstalls() throws Exception {
+    Path cache = folder.newFolder().toPath();
+    String md5 = DigestUtils.md5Hex(tarball);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Path>> futures = new ArrayList<>();
+      // Half the jobs spell the cache directory differently, and still wait for the others.
+      Path other = cache.resolve("..").resolve(cache.getFileName());
+      for (int i = 0; i < 4; i++) {
+        Path dir = i % 2 == 0 ? cache : other;
+        futures.add(executor.submit(() -> PrebuiltIndexHandler.install(uri(), FILENAME, md5, dir)));
+      }
+      for (Future<Path> future : futures) {
+        assertEquals(cache.resolve("lucene-index.test." + md5), future.get().normalize());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(1, requests.get());
+    try (var files = Files.list(cache)) {
+      assertFalse(files.anyMatch(path -> path.getFileName().toString().contains(".tmp")));
+    }
+  }
+
+  private URI uri() {
+    return URI.create("http://localhost:" + server.getAddress().getPort() + "/" + FILENAME);
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    int request = requests.incrementAndGet();
+    String range = ignoreRange ? null : exchange.getRequestHeaders().getFirst("Range");
+    int start = range == null ? 0 : Integer.parseInt(range.replaceAll("bytes=(\\d+)-", "$1"));
+    exchange.getResponseHeaders().add("ETag", "\"test\"");
+    exchange.sendResponseHeaders(range == null ? 200 : 206, tarball.length - start);
+
+    OutputStream out = exchange.getResponseBody();
+    if (request == 1 && cutOff >= 0) {
+      out.write(tarball, 0, cutOff);
+      out.flush();
+      // The server drops the connection when a handler fails, here in the middle of the body.
+      throw new IOException("Cut off");
+    }
+    out.write(tarball, start, tarball.length - start);
+    out.close();
+  }
+
   @Before
   public void setUp() throws Exception {
     handler = new PrebuiltIndexHandler("cacm"); // we use a lightweight index for testing
     handler.initialize();
+
+    segments = new byte[100_000];
+    new Random(42).nextBytes(segments);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+      addEntry(tar, "lucene-index.test/", null);
+      addEntry(tar, "lucene-index.test/segments_1", segments);
+      addEntry(tar, "lucene-index.test/_0.si", "0123456789".getBytes(StandardCharsets.UTF_8));
+    }
+    tarball = bytes.toByteArray();
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", this::serve);
+    server.setExecutor(serverExecutor);
+    server.start();
+  }
+
+  // Writes an entry, which is a directory if there is no content.
+  private static void addEntry(TarArchiveOutputStream out, String name, byte[] content) throws IOException {
+    TarArchiveEntry entry = new TarArchiveEntry(name);
+    if (content != null) {
+      entry.setSize(content.length);
+    }
+    out.putArchiveEntry(entry);
+    if (content != null) {
+      out.write(content);
+    }
+    out.closeArchiveEntry();
   }
 
   @After
   public void tearDown() throws Exception {
+    server.stop(0);
+    serverExecutor.shutdownNow();
     // delete the index downloaded
     if (handler.getIndexFolderPath() != null && handler.getIndexFolderPath().toFile().exists()) {
       handler.getIndexFolderPath().toFile().delete();
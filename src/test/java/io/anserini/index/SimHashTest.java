@@ -0,0 +1,115 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import io.anserini.analysis.AnalyzerUtils;
+import io.anserini.analysis.DefaultEnglishAnalyzer;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class SimHashTest extends LuceneTestCase {
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(AbstractIndexer.class.getName(), Level.ERROR);
+    Configurator.setLevel(IndexCollection.class.getName(), Level.ERROR);
+  }
+
+  private static Map<String, Long> randomVector(Random random, int terms) {
+    Map<String, Long> vector = new HashMap<>();
+    for (int i = 0; i < terms; i++) {
+      vector.put("t" + random.nextInt(10 * terms), 1L + random.nextInt(5));
+    }
+    return vector;
+  }
+
+  @Test
+  public void testBytes() {
+    long[] sketch = SimHash.compute(randomVector(new Random(42), 50));
+    assertArrayEquals(sketch, SimHash.fromBytesRef(SimHash.toBytesRef(sketch)));
+  }
+
+  @Test
+  public void testGetBits() {
+    long[] sketch = new long[] {0xF000000000000000L, 0x5L, 0L, 0x8000000000000000L};
+    assertEquals(0xF, SimHash.getBits(sketch, 60, 4));
+    // Straddles the first two words.
+    assertEquals(0x5F, SimHash.getBits(sketch, 60, 8));
+    assertEquals(0, SimHash.getBits(sketch, 128, 12));
+    assertEquals(0x800, SimHash.getBits(sketch, 244, 12));
+  }
+
+  @Test
+  public void testDistance() {
+    Random random = new Random(42);
+    Map<String, Long> doc = randomVector(random, 200);
+    Map<String, Long> same = new HashMap<>(doc);
+    assertEquals(0, SimHash.distance(SimHash.compute(doc), SimHash.compute(same)));
+
+    // A near-duplicate is much closer than an unrelated document.
+    Map<String, Long> near = new HashMap<>(doc);
+    near.put("extra", 2L);
+    near.merge("t0", 1L, Long::sum);
+    Map<String, Long> other = randomVector(random, 200);
+    int nearDistance = SimHash.distance(SimHash.compute(doc), SimHash.compute(near));
+    int otherDistance = SimHash.distance(SimHash.compute(doc), SimHash.compute(other));
+    assertTrue(nearDistance < 20);
+    assertTrue(otherDistance > 80);
+  }
+
+  @Test
+  public void testStoredSketches() throws Exception {
+    Path index = createTempDir();
+    IndexCollection.main(new String[] {
+        "-collection", "JsonCollection",
+        "-input", "src/test/resources/sample_docs/json/collection1",
+        "-index", index.toString(),
+        "-generator", "DefaultLuceneDocumentGenerator",
+        "-threads", "1",
+        "-storeSimHash"});
+
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+      int docid = IndexReaderUtils.convertDocidToLuceneDocid(reader, "doc1");
+      Map<String, Long> vector = AnalyzerUtils.computeDocumentVector(DefaultEnglishAnalyzer.newDefaultInstance(),
+          "contents of document 1.");
+      assertArrayEquals(SimHash.compute(vector), SimHash.read(reader, docid));
+    }
+
+    // Without the option, there are no sketches.
+    Path plain = createTempDir();
+    IndexCollection.main(new String[] {
+        "-collection", "JsonCollection",
+        "-input", "src/test/resources/sample_docs/json/collection1",
+        "-index", plain.toString(),
+        "-generator", "DefaultLuceneDocumentGenerator",
+        "-threads", "1"});
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(plain))) {
+      assertNull(SimHash.read(reader, 0));
+    }
+  }
+}
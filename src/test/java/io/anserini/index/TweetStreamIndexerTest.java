@@ -0,0 +1,199 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import io.anserini.search.ScoredDocs;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class TweetStreamIndexerTest extends LuceneTestCase {
+  // Start of Thu Aug 11 2016, in milliseconds since the epoch.
+  private static final long DAY = 1470873600000L;
+  private static final long HOUR = 3600000L;
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(TweetStreamIndexer.class.getName(), Level.ERROR);
+  }
+
+  private static String tweet(long id, int hour, String text) {
+    return String.format(Locale.ROOT, "{\"created_at\":\"Thu Aug 11 %02d:30:00 +0000 2016\",\"id\":%d,\"id_str\":\"%d\",\"text\":\"%s\"," +
+        "\"user\":{\"screen_name\":\"user\",\"followers_count\":0,\"friends_count\":0,\"statuses_count\":0}}", hour, id, id, text);
+  }
+
+  private static String retweet(long id, int hour, String text, long retweetedId) {
+    String tweet = tweet(id, hour, text);
+    return tweet.substring(0, tweet.length() - 1) + ",\"retweeted_status\":{\"id\":" + retweetedId +
+        ",\"user\":{\"id\":1}},\"retweet_count\":1}";
+  }
+
+  private static TweetStreamIndexer open(Path index, Duration refreshInterval) throws Exception {
+    IndexCollection.Args args = new IndexCollection.Args();
+    args.index = index.toString();
+    return new TweetStreamIndexer(args, Duration.ofHours(1), refreshInterval);
+  }
+
+  private static List<String> ids(ScoredDocs docs) {
+    return Arrays.asList(docs.docids);
+  }
+
+  @Test
+  public void testPartitions() throws Exception {
+    Path index = createTempDir();
+    try (TweetStreamIndexer indexer = open(index, Duration.ofHours(1))) {
+      // Tweets of three hours, with ids increasing over time.
+      assertTrue(indexer.addRawTweet(tweet(10, 1, "lucene search")));
+      assertTrue(indexer.addRawTweet(tweet(11, 1, "unrelated")));
+      assertTrue(indexer.addRawTweet(tweet(20, 2, "lucene rocks")));
+      assertTrue(indexer.addRawTweet(tweet(21, 2, "lucene more")));
+      assertTrue(indexer.addRawTweet(tweet(30, 3, "lucene again")));
+      // Retweets and deletes are skipped.
+      assertFalse(indexer.addRawTweet(retweet(31, 3, "lucene retweet", 30)));
+      assertFalse(indexer.addRawTweet("{\"delete\":{\"status\":{\"id\":10,\"id_str\":\"10\",\"user_id\":1," +
+          "\"user_id_str\":\"1\"}}}"));
+      assertEquals(List.of(DAY + HOUR, DAY + 2 * HOUR, DAY + 3 * HOUR), indexer.getPartitions());
+
+      // Nothing is searchable until the partitions are refreshed.
+      assertEquals(0, indexer.search("lucene", Long.MAX_VALUE, 10).docids.length);
+      indexer.refresh();
+
+      try (TweetStreamIndexer.Snapshot snapshot = indexer.acquire(Long.MAX_VALUE)) {
+        assertEquals(3, snapshot.partitions());
+        assertFalse(snapshot.isFiltered());
+      }
+      // Later partitions are skipped, and partitions that are all earlier are not filtered.
+      try (TweetStreamIndexer.Snapshot snapshot = indexer.acquire(21)) {
+        assertEquals(2, snapshot.partitions());
+        assertFalse(snapshot.isFiltered());
+      }
+      try (TweetStreamIndexer.Snapshot snapshot = indexer.acquire(20)) {
+        assertEquals(2, snapshot.partitions());
+        assertTrue(snapshot.isFiltered());
+      }
+      try (TweetStreamIndexer.Snapshot snapshot = indexer.acquire(5)) {
+        assertEquals(0, snapshot.partitions());
+      }
+
+      // All tweets score the same, so hits are ordered by tweet id, most recent first; the retweet is not among them,
+      // and the delete notice did not delete tweet 10.
+      assertEquals(List.of("30", "21", "20", "10"), ids(indexer.search("lucene", Long.MAX_VALUE, 10)));
+      List<String> hits = new ArrayList<>(ids(indexer.search("lucene", 20, 10)));
+      hits.sort(null);
+      assertEquals(List.of("10", "20"), hits);
+      assertEquals(0, indexer.search("lucene", 5, 10).docids.length);
+
+      indexer.deleteTweet(21);
+      indexer.refresh();
+      assertEquals(List.of("30", "20", "10"), ids(indexer.search("lucene", Long.MAX_VALUE, 10)));
+    }
+
+    // Partitions are opened again, sealed until they are written to, and appended to.
+    try (TweetStreamIndexer indexer = open(index, Duration.ofHours(1))) {
+      assertEquals(List.of(DAY + HOUR, DAY + 2 * HOUR, DAY + 3 * HOUR), indexer.getPartitions());
+      assertEquals(List.of(), indexer.getWritablePartitions());
+      assertTrue(indexer.addRawTweet(tweet(40, 4, "lucene news")));
+      indexer.refresh();
+      assertEquals(List.of("40", "30", "20", "10"), ids(indexer.search("lucene", Long.MAX_VALUE, 10)));
+    }
+  }
+
+  @Test
+  public void testSeal() throws Exception {
+    try (TweetStreamIndexer indexer = open(createTempDir(), Duration.ofHours(1))) {
+      assertTrue(indexer.addRawTweet(tweet(10, 1, "lucene search")));
+      assertTrue(indexer.addRawTweet(tweet(11, 1, "lucene more")));
+      assertTrue(indexer.addRawTweet(tweet(20, 2, "lucene rocks")));
+      assertTrue(indexer.addRawTweet(tweet(30, 3, "lucene again")));
+      indexer.refresh();
+
+      // Partitions before the bucket preceding the latest one are sealed, and still searched.
+      indexer.seal();
+      assertEquals(List.of(DAY + 2 * HOUR, DAY + 3 * HOUR), indexer.getWritablePartitions());
+      assertEquals(List.of("30", "20", "11", "10"), ids(indexer.search("lucene", Long.MAX_VALUE, 10)));
+      // A sealed partition whose tweets all come later is not searched.
+      try (TweetStreamIndexer.Snapshot snapshot = indexer.acquire(5)) {
+        assertEquals(0, snapshot.partitions());
+      }
+
+      // Deleting a tweet that a sealed partition cannot hold leaves it sealed.
+      indexer.deleteTweet(25);
+      assertEquals(List.of(DAY + 2 * HOUR, DAY + 3 * HOUR), indexer.getWritablePartitions());
+      indexer.deleteTweet(11);
+      assertEquals(List.of(DAY + HOUR, DAY + 2 * HOUR, DAY + 3 * HOUR), indexer.getWritablePartitions());
+      indexer.seal();
+
+      // Late tweets reopen a sealed partition.
+      assertTrue(indexer.addRawTweet(tweet(12, 1, "lucene late")));
+      assertEquals(List.of(DAY + HOUR, DAY + 2 * HOUR, DAY + 3 * HOUR), indexer.getWritablePartitions());
+      indexer.refresh();
+      assertEquals(List.of("30", "20", "12", "10"), ids(indexer.search("lucene", Long.MAX_VALUE, 10)));
+    }
+  }
+
+  @Test
+  public void testReadersReleased() throws Exception {
+    try (TweetStreamIndexer indexer = open(createTempDir(), Duration.ofHours(1))) {
+      assertTrue(indexer.addRawTweet(tweet(10, 1, "lucene search")));
+      indexer.refresh();
+
+      IndexReader reader;
+      try (TweetStreamIndexer.Snapshot snapshot = indexer.acquire(Long.MAX_VALUE)) {
+        reader = snapshot.searcher().getIndexReader().getContext().children().get(0).reader();
+      }
+      for (int i = 0; i < 3; i++) {
+        assertEquals(List.of("10"), ids(indexer.search("lucene", Long.MAX_VALUE, 10)));
+      }
+      // Held by the partition only, until a refresh replaces it.
+      assertEquals(1, reader.getRefCount());
+
+      assertTrue(indexer.addRawTweet(tweet(11, 1, "lucene more")));
+      indexer.refresh();
+      assertEquals(List.of("11", "10"), ids(indexer.search("lucene", Long.MAX_VALUE, 10)));
+      assertEquals(0, reader.getRefCount());
+    }
+  }
+
+  @Test
+  public void testRefreshInBackground() throws Exception {
+    try (TweetStreamIndexer indexer = open(createTempDir(), Duration.ofMillis(10))) {
+      assertTrue(indexer.addRawTweet(tweet(1, 1, "near real time search")));
+      long deadline = System.currentTimeMillis() + 10000;
+      while (indexer.search("real", Long.MAX_VALUE, 10).docids.length == 0) {
+        assertTrue("Tweet not searchable after 10 seconds", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    IndexCollection.Args args = new IndexCollection.Args();
+    args.index = createTempDir().toString();
+    expectThrows(IllegalArgumentException.class, () -> new TweetStreamIndexer(args, Duration.ZERO, Duration.ofSeconds(1)));
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index.codecs;
+
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.VectorUtil;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AnseriniLucene99LowBitQuantizedVectorsFormatTest extends LuceneTestCase {
+  private static final int DOCS = 60;
+  private static final int DIMENSION = 64;
+
+  private static float[] randomVector() {
+    float[] vector = new float[DIMENSION];
+    for (int i = 0; i < DIMENSION; i++) {
+      vector[i] = random().nextFloat() * 2 - 1;
+    }
+    return VectorUtil.l2normalize(vector);
+  }
+
+  // Estimated scores of all live documents, by id.
+  private static Map<String, Float> search(Directory dir, float[] query) throws IOException {
+    Map<String, Float> scores = new HashMap<>();
+    try (DirectoryReader reader = DirectoryReader.open(dir)) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      for (ScoreDoc hit : searcher.search(new KnnFloatVectorQuery("vector", query, DOCS), DOCS).scoreDocs) {
+        scores.put(searcher.storedFields().document(hit.doc).get("id"), hit.score);
+      }
+    }
+    return scores;
+  }
+
+  @Test
+  public void testFlushAndMerge() throws Exception {
+    for (int bits : new int[] {4, 1}) {
+      for (VectorSimilarityFunction similarity : VectorSimilarityFunction.values()) {
+        float[][] vectors = new float[DOCS][];
+        float[] query = randomVector();
+
+        try (Directory dir = newDirectory()) {
+          // The index sort exercises the reordering of codes when segments are flushed.
+          IndexWriterConfig config = new IndexWriterConfig()
+              .setIndexSort(new Sort(new SortField("sort", SortField.Type.INT)))
+              .setCodec(new Lucene99Codec() {
+                @Override
+                public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                  return new AnseriniLucene99LowBitQuantizedVectorsFormat(bits);
+                }
+              });
+
+          try (IndexWriter writer = new IndexWriter(dir, config)) {
+            for (int i = 0; i < DOCS; i++) {
+              vectors[i] = randomVector();
+              Document doc = new Document();
+              doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+              doc.add(new NumericDocValuesField("sort", random().nextInt(1000)));
+              doc.add(new KnnFloatVectorField("vector", vectors[i], similarity));
+              writer.addDocument(doc);
+              if (i % 20 == 19) {
+                writer.commit();
+              }
+            }
+            writer.deleteDocuments(new Term("id", "7"));
+            writer.commit();
+          }
+
+          Map<String, Float> flushed = search(dir, query);
+          assertEquals(DOCS - 1, flushed.size());
+          assertFalse(flushed.containsKey("7"));
+          if (bits == 4) {
+            for (Map.Entry<String, Float> entry : flushed.entrySet()) {
+              float exact = similarity.compare(query, vectors[Integer.parseInt(entry.getKey())]);
+              assertEquals(exact, entry.getValue(), 0.05f);
+            }
+          }
+
+          try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setCodec(config.getCodec())
+              .setIndexSort(config.getIndexSort()))) {
+            writer.forceMerge(1);
+          }
+
+          // Codes are quantized again from the same vectors when merged.
+          assertEquals(flushed, search(dir, query));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testVisitedCount() throws Exception {
+    try (Directory dir = newDirectory()) {
+      IndexWriterConfig config = new IndexWriterConfig().setCodec(new Lucene99Codec() {
+        @Override
+        public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+          return new AnseriniLucene99LowBitQuantizedVectorsFormat(4);
+        }
+      });
+      try (IndexWriter writer = new IndexWriter(dir, config)) {
+        for (int i = 0; i < DOCS; i++) {
+          Document doc = new Document();
+          doc.add(new KnnFloatVectorField("vector", randomVector(), VectorSimilarityFunction.DOT_PRODUCT));
+          writer.addDocument(doc);
+        }
+      }
+
+      // Every document scored by the scan counts as visited.
+      AtomicLong visited = new AtomicLong();
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        new IndexSearcher(reader).search(new KnnFloatVectorQuery("vector", randomVector(), 10) {
+          @Override
+          protected TopDocs approximateSearch(LeafReaderContext context, Bits acceptDocs, int visitedLimit)
+              throws IOException {
+            TopDocs topDocs = super.approximateSearch(context, acceptDocs, visitedLimit);
+            visited.addAndGet(topDocs.totalHits.value);
+            return topDocs;
+          }
+        }, 10);
+      }
+      assertEquals(DOCS, visited.get());
+    }
+  }
+
+  @Test
+  public void testInvalidBits() {
+    expectThrows(IllegalArgumentException.class, () -> new AnseriniLucene99LowBitQuantizedVectorsFormat(8));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.ltr;
+
+import io.anserini.ltr.feature.IbmModel1;
+import io.anserini.ltr.feature.TranslationTable;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TranslationTableTest extends LuceneTestCase {
+  private Path dir;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = createTempDir();
+    Files.writeString(dir.resolve(TranslationTable.SOURCE_VOCAB), "1 cat 10\n2 dog 5\n3 pet 3\n");
+    Files.writeString(dir.resolve(TranslationTable.TARGET_VOCAB), "1 cat 10\n2 animal 4\n3 pet 2\n");
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(dir.resolve(TranslationTable.GIZA_TABLE)))) {
+      writeEntry(out, 0, 2, 0.1f);
+      writeEntry(out, 1, 1, 0.6f);
+      writeEntry(out, 1, 2, 0.3f);
+      writeEntry(out, 2, 2, 0.5f);
+      writeEntry(out, 2, 3, 0.2f);
+      writeEntry(out, 3, 3, 0.9f);
+      // A duplicate entry replaces the earlier one.
+      writeEntry(out, 1, 2, 0.4f);
+    }
+  }
+
+  private static void writeEntry(DataOutputStream out, int source, int target, float prob) throws IOException {
+    out.writeInt(source);
+    out.writeInt(target);
+    out.writeFloat(prob);
+  }
+
+  private static void assertTable(TranslationTable table) {
+    assertEquals(6, table.size());
+    assertEquals(0.6f * 0.95f + 0.05f, table.getProbability("cat", "cat"), 1e-6f);
+    assertEquals(0.4f * 0.95f, table.getProbability("cat", "animal"), 1e-6f);
+    assertEquals(0.5f * 0.95f, table.getProbability("dog", "animal"), 1e-6f);
+    assertEquals(0.2f * 0.95f, table.getProbability("dog", "pet"), 1e-6f);
+    assertEquals(0.9f * 0.95f + 0.05f, table.getProbability("pet", "pet"), 1e-6f);
+    // The null word is not discounted, and words not in the source vocabulary translate as the null word.
+    assertEquals(0.1f, table.getProbability(TranslationTable.NULL_WORD, "animal"), 1e-6f);
+    assertEquals(0.1f, table.getProbability("zebra", "animal"), 1e-6f);
+
+    assertEquals(0.0f, table.getProbability("cat", "pet"), 0.0f);
+    assertEquals(0.0f, table.getProbability("cat", "zebra"), 0.0f);
+    assertEquals(-1, table.getTargetId("zebra"));
+  }
+
+  @Test
+  public void testFromGiza() throws IOException {
+    assertTable(TranslationTable.fromGiza(dir, 0.05));
+  }
+
+  @Test
+  public void testRescale() throws IOException {
+    // Probabilities are identical to those of the original rescaling in IbmModel1, which discounted by a float and
+    // added the self-translation probability as a double.
+    TranslationTable table = TranslationTable.fromGiza(dir, IbmModel1.SELF_TRANS);
+    assertEquals(rescale(0.6f, true), table.getProbability("cat", "cat"), 0.0f);
+    assertEquals(rescale(0.4f, false), table.getProbability("cat", "animal"), 0.0f);
+    assertEquals(rescale(0.2f, false), table.getProbability("dog", "pet"), 0.0f);
+    assertEquals(rescale(0.9f, true), table.getProbability("pet", "pet"), 0.0f);
+  }
+
+  private static float rescale(float tranProb, boolean self) {
+    double selfTrans = IbmModel1.SELF_TRANS;
+    float adjustMult = (float) (1 - selfTrans);
+    tranProb *= adjustMult;
+    if (self) {
+      tranProb += selfTrans;
+    }
+    return tranProb;
+  }
+
+  @Test
+  public void testWriteAndLoad() throws IOException {
+    Path file = dir.resolve(TranslationTable.COMPACT_TABLE);
+    TranslationTable.fromGiza(dir, 0.05).write(file);
+
+    assertTable(TranslationTable.load(file, false));
+    assertTable(TranslationTable.load(file, true));
+  }
+
+  @Test
+  public void testConvert() throws Exception {
+    Path file = dir.resolve("table.csr");
+    TranslationTable.main(new String[] {"-input", dir.toString(), "-output", file.toString()});
+    assertTable(TranslationTable.load(file, true));
+  }
+
+  @Test
+  public void testComputeQuery() throws IOException {
+    Map<String, Long> termFreqs = new HashMap<>();
+    termFreqs.put("cat", 2L);
+    termFreqs.put("dog", 1L);
+    termFreqs.put("zebra", 1L);
+
+    IbmModel1 giza = new IbmModel1(dir.toString(), "contents", "test", "analyzed");
+    double animal = 0.38 * 0.5 + 0.475 * 0.25 + 0.1 * 0.25;
+    assertEquals(IbmModel1.calculate_score(0.01, (float) animal, 0.1),
+        giza.computeQuery("animal", termFreqs, 4L, 0.01), 1e-5f);
+    assertEquals(IbmModel1.calculate_score(0.01, 0.62f * 0.5f, 0.1),
+        giza.computeQuery("cat", termFreqs, 4L, 0.01), 1e-5f);
+    // Query words not in the target vocabulary have no translations, not even to themselves.
+    assertEquals(IbmModel1.calculate_score(0.01, 0.0f, 0.1),
+        giza.computeQuery("zebra", termFreqs, 4L, 0.01), 1e-5f);
+
+    // Once converted, the compact table is picked up and gives identical scores.
+    TranslationTable.fromGiza(dir, IbmModel1.SELF_TRANS).write(dir.resolve(TranslationTable.COMPACT_TABLE));
+    IbmModel1 compact = new IbmModel1(dir.toString(), "contents", "test", "analyzed");
+    for (String word : new String[] {"animal", "cat", "dog", "pet", "zebra"}) {
+      assertEquals(giza.computeQuery(word, termFreqs, 4L, 0.01), compact.computeQuery(word, termFreqs, 4L, 0.01), 0.0f);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.reproduce;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RunReproTest {
+  private static final String COLLECTION = "sample_docs";
+  private static final String MISSING = "sample_docs_missing_index";
+  private static final String QRELS = "src/test/resources/sample_qrels/Trec";
+
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+  private PrintStream save;
+  private boolean runsExisted;
+
+  @Before
+  public void setUp() {
+    runsExisted = new File("runs").exists();
+    save = System.out;
+    System.setOut(new PrintStream(output));
+  }
+
+  @After
+  public void tearDown() {
+    System.setOut(save);
+    for (String condition : new String[] {"bm25", "qld"}) {
+      new File(String.format("runs/run.%s.%s.Trec.txt", COLLECTION, condition)).delete();
+    }
+    new File(String.format("runs/run.%s.bm25.Trec.txt", MISSING)).delete();
+    if (!runsExisted) {
+      new File("runs").delete();
+    }
+  }
+
+  @Test
+  public void testInProcess() throws Exception {
+    RunRepro.TrecEvalMetricDefinitions metrics = new RunRepro.TrecEvalMetricDefinitions();
+    metrics.getMetricDefinitions().put(COLLECTION, Map.of(QRELS, Map.of("MAP", "-c -m map")));
+
+    Configurator.setLevel("io.anserini", Level.INFO);
+    new RunRepro(COLLECTION, metrics, true, 2).run();
+    // Logging silenced while the runs were in progress is restored.
+    assertEquals(Level.INFO, LogManager.getLogger("io.anserini").getLevel());
+
+    String printed = output.toString();
+    assertEquals(2, printed.split("Run successfully completed!", -1).length - 1);
+    assertEquals(2, printed.split("\\[OK\\]", -1).length - 1);
+    assertFalse(printed.contains("[FAIL]"));
+    assertTrue(new File(String.format("runs/run.%s.bm25.Trec.txt", COLLECTION)).exists());
+    assertTrue(new File(String.format("runs/run.%s.qld.Trec.txt", COLLECTION)).exists());
+  }
+
+  @Test
+  public void testInProcessFailure() throws Exception {
+    RunRepro.TrecEvalMetricDefinitions metrics = new RunRepro.TrecEvalMetricDefinitions();
+    metrics.getMetricDefinitions().put(MISSING, Map.of(QRELS, Map.of("MAP", "-c -m map")));
+
+    // The searcher reports the missing index without throwing, and writes no run.
+    new RunRepro(MISSING, metrics, true, 1).run();
+    String printed = output.toString();
+    assertFalse(printed.contains("Run successfully completed!"));
+    assertTrue(printed.contains("Run failed! (No run written to runs/run." + MISSING + ".bm25.Trec.txt)"));
+    assertFalse(printed.contains("[OK]"));
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.rerank;
+
+import io.anserini.collection.JsonCollection;
+import io.anserini.index.AbstractIndexer;
+import io.anserini.index.Constants;
+import io.anserini.index.IndexCollection;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+
+public class DocumentVectorCacheTest extends LuceneTestCase {
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(AbstractIndexer.class.getName(), Level.ERROR);
+    Configurator.setLevel(IndexCollection.class.getName(), Level.ERROR);
+  }
+
+  private static Path buildIndex(boolean storeDocvectors) throws Exception {
+    Path index = createTempDir();
+    IndexCollection.main(new String[] {
+        "-collection", "JsonCollection",
+        "-input", "src/test/resources/sample_docs/json/collection1",
+        "-index", index.toString(),
+        "-generator", "DefaultLuceneDocumentGenerator",
+        "-threads", "1",
+        "-storeRaw",
+        storeDocvectors ? "-storeDocvectors" : "-storeContents"});
+    return index;
+  }
+
+  private static void assertSameVector(DocumentVectorCache.DocumentVector expected,
+                                       DocumentVectorCache.DocumentVector actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.getTerm(i), actual.getTerm(i));
+      assertEquals(expected.getFreq(i), actual.getFreq(i));
+    }
+  }
+
+  @Test
+  public void testHitsAndMisses() throws Exception {
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(buildIndex(true)))) {
+      DocumentVectorCache cache = new DocumentVectorCache(1024 * 1024);
+
+      DocumentVectorCache.DocumentVector expected = DocumentVectorCache.read(reader, Constants.CONTENTS, 0, null, null);
+      assertNotNull(expected);
+      assertTrue(expected.size() > 0);
+
+      DocumentVectorCache.DocumentVector first = cache.get(reader, Constants.CONTENTS, 0, null, null);
+      assertSameVector(expected, first);
+      assertEquals(0, cache.getHits());
+      assertEquals(1, cache.getMisses());
+
+      assertSame(first, cache.get(reader, Constants.CONTENTS, 0, null, null));
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+
+      cache.get(reader, Constants.CONTENTS, 1, null, null);
+      assertEquals(2, cache.getMisses());
+      assertEquals(0, cache.getEvictions());
+      assertTrue(cache.ramBytesUsed() > 0);
+    }
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(buildIndex(true)))) {
+      // A budget too small to hold any vector evicts every vector as soon as it is added.
+      DocumentVectorCache cache = new DocumentVectorCache(16);
+      cache.get(reader, Constants.CONTENTS, 0, null, null);
+      cache.get(reader, Constants.CONTENTS, 0, null, null);
+      assertEquals(0, cache.getHits());
+      assertEquals(2, cache.getMisses());
+      assertEquals(2, cache.getEvictions());
+    }
+  }
+
+  @Test
+  public void testWithoutTermVectors() throws Exception {
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(buildIndex(false)))) {
+      DocumentVectorCache cache = new DocumentVectorCache(1024 * 1024);
+      assertNull(cache.get(reader, Constants.CONTENTS, 0, null, null));
+
+      // Falls back to re-analyzing the raw field.
+      DocumentVectorCache.DocumentVector vector = cache.get(reader, Constants.CONTENTS, 0,
+          new StandardAnalyzer(), JsonCollection.class);
+      assertNotNull(vector);
+      assertTrue(vector.size() > 0);
+      assertSame(vector, cache.get(reader, Constants.CONTENTS, 0, null, null));
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.rerank.lib;
+
+import io.anserini.index.SimHash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimHashBucketsTest {
+  @Test
+  public void testCandidates() {
+    Random random = new Random(42);
+    int docs = 500;
+    List<Map<String, Long>> vectors = new ArrayList<>();
+    for (int i = 0; i < docs; i++) {
+      Map<String, Long> vector = new HashMap<>();
+      for (int t = 0; t < 100; t++) {
+        vector.put("t" + random.nextInt(100000), 1L + random.nextInt(3));
+      }
+      vectors.add(vector);
+    }
+    // Plant near-duplicates: document 10 reappears at 20 and 30 with a single extra term.
+    for (int i : new int[] {20, 30}) {
+      Map<String, Long> copy = new HashMap<>(vectors.get(10));
+      copy.put("extra" + i, 1L);
+      vectors.set(i, copy);
+    }
+
+    List<long[]> sketches = new ArrayList<>();
+    vectors.forEach(v -> sketches.add(SimHash.compute(v)));
+    SimHashBuckets buckets = new SimHashBuckets(sketches);
+
+    assertArrayEquals(new int[] {20, 30}, buckets.getCandidates(10));
+    assertArrayEquals(new int[] {30}, buckets.getCandidates(20));
+    assertEquals(0, buckets.getCandidates(30).length);
+    // Unrelated documents rarely collide, so far fewer than all pairs need to be verified.
+    long pairs = buckets.countCandidatePairs();
+    assertTrue(pairs >= 3);
+    assertTrue("pairs: " + pairs, pairs < (long) docs * (docs - 1) / 2 / 100);
+  }
+}
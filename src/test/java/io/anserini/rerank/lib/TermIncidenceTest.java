@@ -0,0 +1,142 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.rerank.lib;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TermIncidenceTest {
+  @Test
+  public void testIsCandidate() {
+    for (String term : new String[] {"ab", "hello", "zz"}) {
+      assertTrue(term, TermIncidence.isCandidate(term));
+      assertTrue(term, TermIncidence.isCandidate(new BytesRef(term)));
+    }
+    for (String term : new String[] {"", "a", "ab1", "Ab", "42", "café", "a-b"}) {
+      assertFalse(term, TermIncidence.isCandidate(term));
+      assertFalse(term, TermIncidence.isCandidate(new BytesRef(term)));
+    }
+  }
+
+  @Test
+  public void testCounts() {
+    TermIncidence.Builder builder = new TermIncidence.Builder(4);
+    builder.nextDocument();
+    builder.addTerm("aa");
+    builder.addTerm("bb");
+    builder.nextDocument();
+    builder.addTerm("bb");
+    builder.nextDocument(); // A document without terms does not count.
+    builder.nextDocument();
+    builder.addTerm("aa");
+    builder.addTerm("cc");
+    TermIncidence incidence = builder.build();
+
+    assertEquals(3, incidence.size());
+    assertEquals(3, incidence.getDocCount());
+    int aa = incidence.getOrdinal("aa");
+    int bb = incidence.getOrdinal("bb");
+    int cc = incidence.getOrdinal("cc");
+    assertEquals(-1, incidence.getOrdinal("dd"));
+    assertEquals("bb", incidence.getTerm(bb));
+    assertEquals(2, incidence.getDocFreq(aa));
+    assertEquals(2, incidence.getDocFreq(bb));
+    assertEquals(1, incidence.getDocFreq(cc));
+    assertEquals(1, incidence.getCooccurrence(aa, bb));
+    assertEquals(1, incidence.getCooccurrence(aa, cc));
+    assertEquals(0, incidence.getCooccurrence(bb, cc));
+  }
+
+  @Test
+  public void testMutualInformationMatchesSets() {
+    Random random = new Random(42);
+    int docs = 1000;
+    int terms = 50;
+    TermIncidence.Builder builder = new TermIncidence.Builder(docs);
+    @SuppressWarnings("unchecked")
+    Set<Integer>[] postings = new Set[terms];
+    Set<Integer> allDocs = new HashSet<>();
+    for (int t = 0; t < terms; t++) {
+      postings[t] = new HashSet<>();
+    }
+    for (int d = 0; d < docs; d++) {
+      builder.nextDocument();
+      for (int t = 0; t < terms; t++) {
+        if (random.nextInt(terms) < t / 2) {
+          builder.addTerm("t" + t);
+          postings[t].add(d);
+          allDocs.add(d);
+        }
+      }
+    }
+    TermIncidence incidence = builder.build();
+    assertEquals(allDocs.size(), incidence.getDocCount());
+
+    for (int x = 0; x < terms; x++) {
+      for (int y = 0; y < terms; y++) {
+        int ox = incidence.getOrdinal("t" + x);
+        int oy = incidence.getOrdinal("t" + y);
+        if (ox == -1 || oy == -1) {
+          continue;
+        }
+        assertEquals(mutualInformation(postings[x], postings[y], allDocs.size()),
+            incidence.getMutualInformation(ox, oy), 0.0);
+      }
+    }
+  }
+
+  // Reference implementation over sets of document ids.
+  private static double mutualInformation(Set<Integer> docidsX, Set<Integer> docidsY, int totalDocCount) {
+    int x1 = docidsX.size(), y1 = docidsY.size();
+    int x0 = totalDocCount - x1, y0 = totalDocCount - y1;
+    if (x1 == 0 || x0 == 0 || y1 == 0 || y0 == 0) {
+      return 0;
+    }
+
+    float pX0 = 1.0f * x0 / totalDocCount;
+    float pX1 = 1.0f * x1 / totalDocCount;
+    float pY0 = 1.0f * y0 / totalDocCount;
+    float pY1 = 1.0f * y1 / totalDocCount;
+
+    Set<Integer> both = new HashSet<>(docidsX);
+    both.retainAll(docidsY);
+    int numXY11 = both.size();
+    int numXY10 = x1 - numXY11;
+    int numXY01 = y1 - numXY11;
+    int numXY00 = totalDocCount - numXY11 - numXY10 - numXY01;
+
+    float pXY11 = 1.0f * numXY11 / totalDocCount;
+    float pXY10 = 1.0f * numXY10 / totalDocCount;
+    float pXY01 = 1.0f * numXY01 / totalDocCount;
+    float pXY00 = 1.0f * numXY00 / totalDocCount;
+
+    double m00 = 0, m01 = 0, m10 = 0, m11 = 0;
+    if (pXY00 != 0) m00 = pXY00 * Math.log(pXY00 / (pX0 * pY0));
+    if (pXY01 != 0) m01 = pXY01 * Math.log(pXY01 / (pX0 * pY1));
+    if (pXY10 != 0) m10 = pXY10 * Math.log(pXY10 / (pX1 * pY0));
+    if (pXY11 != 0) m11 = pXY11 * Math.log(pXY11 / (pX1 * pY1));
+    return m00 + m10 + m01 + m11;
+  }
+}
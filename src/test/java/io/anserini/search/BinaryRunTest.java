@@ -0,0 +1,86 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.fusion.TrecRun;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+public class BinaryRunTest extends LuceneTestCase {
+
+  private static void writeRun(Path path, String format, Random random) throws Exception {
+    try (RunOutputWriter<String> out = new RunOutputWriter<>(path.toString(), format, "test", null)) {
+      for (int topic = 1; topic <= 20; topic++) {
+        ScoredDoc[] hits = new ScoredDoc[random.nextInt(50)];
+        float score = random.nextFloat() * 30;
+        for (int i = 0; i < hits.length; i++) {
+          // Docids recur across topics, to exercise the dictionary.
+          hits[i] = new ScoredDoc("doc" + random.nextInt(200), i, score, null);
+          score -= random.nextFloat();
+        }
+        out.writeTopic(String.valueOf(topic), "query", hits);
+      }
+    }
+  }
+
+  @Test
+  public void testRunOutputWriter() throws Exception {
+    for (String format : new String[] {"trec", "msmarco"}) {
+      Path text = createTempFile();
+      Path binary = createTempFile();
+      Path converted = createTempFile();
+      writeRun(text, format, new Random(42));
+      writeRun(binary, "binary", new Random(42));
+
+      assertTrue(BinaryRun.isBinaryRun(binary));
+      assertFalse(BinaryRun.isBinaryRun(text));
+      assertTrue(Files.size(binary) < Files.size(text));
+
+      BinaryRun.toText(binary, converted, format);
+      assertArrayEquals(Files.readAllBytes(text), Files.readAllBytes(converted));
+    }
+  }
+
+  @Test
+  public void testTrecRun() throws Exception {
+    Path input = createTempFile();
+    Path text = createTempFile();
+    Path binary = createTempFile();
+    Path converted = createTempFile();
+    Files.write(input, List.of(
+        "2 Q0 d3 1 7.250000 a",
+        "2 Q0 d1 2 3.125000 a",
+        "1 Q0 d1 1 4.000000 a",
+        "1 Q0 d2 2 3.999999 b",
+        "1 Q0 d3 3 -1.500000 a"));
+
+    new TrecRun(input).saveToTxt(text, null);
+    new TrecRun(input).saveToBinary(binary, null);
+    BinaryRun.toText(binary, converted, "trec");
+    assertArrayEquals(Files.readAllBytes(text), Files.readAllBytes(converted));
+
+    // Binary runs are read back as they were written.
+    Path resaved = createTempFile();
+    new TrecRun(binary).saveToTxt(resaved, null);
+    assertArrayEquals(Files.readAllBytes(text), Files.readAllBytes(resaved));
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Shared fixture for the tests of filtered dense vector search.
+ */
+final class DenseMetadataFixture {
+  private DenseMetadataFixture() {}
+
+  // Writes a copy of the sample documents into a directory, with a tenant keyword and a year to filter on.
+  static Path createMetadataCollection(Path dir) throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    List<String> lines = new ArrayList<>();
+    for (String line : Files.readAllLines(Path.of("src/test/resources/sample_docs/openai_ada2/json_vector/sample100.json"))) {
+      ObjectNode doc = (ObjectNode) mapper.readTree(line);
+      int id = doc.get("docid").asInt();
+      doc.put("tenant", "t" + id % 4);
+      doc.put("year", 2000 + id % 10);
+      lines.add(mapper.writeValueAsString(doc));
+    }
+    Files.write(dir.resolve("docs.jsonl"), lines);
+    return dir;
+  }
+
+  // Keeps the hits of an unfiltered ranked list that match a filter, up to k.
+  static List<String> postFilter(ScoredDoc[] results, Predicate<Integer> filter, int k) {
+    return Arrays.stream(results).map(result -> result.docid)
+        .filter(docid -> filter.test(Integer.parseInt(docid))).limit(k).toList();
+  }
+
+  static List<String> docids(ScoredDoc[] results) {
+    return Arrays.stream(results).map(result -> result.docid).toList();
+  }
+}
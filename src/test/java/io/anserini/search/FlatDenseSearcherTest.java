@@ -22,16 +22,26 @@ import io.anserini.search.topicreader.TopicReader;
 import io.anserini.search.topicreader.TsvIntTopicReader;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 
+import static io.anserini.search.DenseMetadataFixture.createMetadataCollection;
+import static io.anserini.search.DenseMetadataFixture.docids;
+import static io.anserini.search.DenseMetadataFixture.postFilter;
 import static org.junit.Assert.assertEquals;
 
 public class FlatDenseSearcherTest {
@@ -41,6 +51,9 @@ public class FlatDenseSearcherTest {
     Configurator.setLevel(FlatDenseSearcher.class.getName(), Level.ERROR);
   }
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void testAda2() throws Exception {
     String indexPath = "target/idx-sample-hnsw" + System.currentTimeMillis();
@@ -194,6 +207,96 @@ public class FlatDenseSearcherTest {
     }
   }
 
+  @Test
+  public void testAda2Quantized() throws Exception {
+    String indexPath = "target/idx-sample-flat" + System.currentTimeMillis();
+    IndexFlatDenseVectors.main(new String[] {
+        "-collection", "JsonDenseVectorCollection",
+        "-input", "src/test/resources/sample_docs/openai_ada2/json_vector",
+        "-index", indexPath,
+        "-threads", "1"
+    });
+
+    TopicReader<Integer> topicReader = new JsonIntVectorTopicReader(
+        Path.of("src/test/resources/sample_topics/sample-topics.msmarco-passage-dev-openai-ada2.jsonl"));
+    SortedMap<Integer, Map<String, String>> topics = topicReader.read();
+
+    FlatDenseSearcher.Args args = new FlatDenseSearcher.Args();
+    args.index = indexPath;
+    Map<Integer, ScoredDoc[]> expected = new HashMap<>();
+    try (FlatDenseSearcher<Integer> searcher = new FlatDenseSearcher<>(args)) {
+      for (int qid : topics.keySet()) {
+        expected.put(qid, searcher.search(qid, topics.get(qid).get("vector"), 10));
+      }
+    }
+
+    for (String quantization : new String[] {"-quantize.int4", "-quantize.binary"}) {
+      String quantizedIndexPath = indexPath + quantization;
+      IndexFlatDenseVectors.main(new String[] {
+          "-collection", "JsonDenseVectorCollection",
+          "-input", "src/test/resources/sample_docs/openai_ada2/json_vector",
+          "-index", quantizedIndexPath,
+          "-threads", "1", quantization
+      });
+      args.index = quantizedIndexPath;
+      // With the default oversampling, re-scoring recovers the exact top hits and scores.
+      try (FlatDenseSearcher<Integer> searcher = new FlatDenseSearcher<>(args)) {
+        for (int qid : topics.keySet()) {
+          ScoredDoc[] results = searcher.search(qid, topics.get(qid).get("vector"), 10);
+          assertEquals(10, results.length);
+          for (int i = 0; i < 10; i++) {
+            assertEquals(expected.get(qid)[i].docid, results[i].docid);
+            assertEquals(expected.get(qid)[i].score, results[i].score, 10e-6);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFilter() throws Exception {
+    Path docs = createMetadataCollection(folder.newFolder("docs").toPath());
+    TopicReader<Integer> topicReader = new JsonIntVectorTopicReader(
+        Path.of("src/test/resources/sample_topics/sample-topics.msmarco-passage-dev-openai-ada2.jsonl"));
+    SortedMap<Integer, Map<String, String>> topics = topicReader.read();
+
+    String indexPath = folder.newFolder("index").toString();
+    FlatDenseSearcher.Args args = new FlatDenseSearcher.Args();
+    // The filter applies both to float vectors and to the shortlist of an int4 index that is re-scored.
+    for (String quantization : new String[] {"-storeVectors", "-quantize.int4"}) {
+      args.index = indexPath + quantization;
+      IndexFlatDenseVectors.main(new String[] {
+          "-collection", "JsonDenseVectorCollection",
+          "-input", docs.toString(),
+          "-index", args.index,
+          "-threads", "1",
+          "-fields", "tenant",
+          "-fields.long", "year",
+          quantization
+      });
+
+      try (FlatDenseSearcher<Integer> searcher = new FlatDenseSearcher<>(args)) {
+        for (int qid : topics.keySet()) {
+          String vector = topics.get(qid).get("vector");
+          ScoredDoc[] all = searcher.search(qid, vector, 100);
+          assertEquals(100, all.length);
+
+          ScoredDoc[] results = searcher.search(qid, vector, 5, new TermQuery(new Term("tenant", "t1")));
+          assertEquals(postFilter(all, id -> id % 4 == 1, 5), docids(results));
+          assertEquals("t1", results[0].lucene_document.get("tenant"));
+
+          results = searcher.search(qid, vector, 5, LongField.newRangeQuery("year", 2003, 2004));
+          assertEquals(postFilter(all, id -> id % 10 == 3 || id % 10 == 4, 5), docids(results));
+
+          // Only as many hits as there are documents in the allowlist.
+          results = searcher.search(qid, vector, 10, Set.of("3", "45", "97"));
+          assertEquals(postFilter(all, id -> id == 3 || id == 45 || id == 97, 10), docids(results));
+          assertEquals(3, results.length);
+        }
+      }
+    }
+  }
+
   @Test
   public void testCosDpr() throws Exception {
     String indexPath = "target/idx-sample-hnsw" + System.currentTimeMillis();
@@ -22,16 +22,25 @@ import io.anserini.search.topicreader.TopicReader;
 import io.anserini.search.topicreader.TsvIntTopicReader;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 
+import static io.anserini.search.DenseMetadataFixture.createMetadataCollection;
+import static io.anserini.search.DenseMetadataFixture.docids;
+import static io.anserini.search.DenseMetadataFixture.postFilter;
 import static org.junit.Assert.assertEquals;
 
 public class HnswDenseSearcherTest {
@@ -41,6 +50,9 @@ public class HnswDenseSearcherTest {
     Configurator.setLevel(HnswDenseSearcher.class.getName(), Level.ERROR);
   }
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void testAda2() throws Exception {
     String indexPath = "target/idx-sample-hnsw" + System.currentTimeMillis();
@@ -196,6 +208,48 @@ public class HnswDenseSearcherTest {
     }
   }
 
+  @Test
+  public void testFilter() throws Exception {
+    Path docs = createMetadataCollection(folder.newFolder("docs").toPath());
+    TopicReader<Integer> topicReader = new JsonIntVectorTopicReader(
+        Path.of("src/test/resources/sample_topics/sample-topics.msmarco-passage-dev-openai-ada2.jsonl"));
+    SortedMap<Integer, Map<String, String>> topics = topicReader.read();
+
+    String indexPath = folder.newFolder("index").toString();
+    IndexHnswDenseVectors.main(new String[] {
+        "-collection", "JsonDenseVectorCollection",
+        "-input", docs.toString(),
+        "-index", indexPath,
+        "-threads", "1",
+        "-M", "16", "-efC", "100",
+        "-fields", "tenant",
+        "-fields.long", "year"
+    });
+
+    HnswDenseSearcher.Args args = new HnswDenseSearcher.Args();
+    args.index = indexPath;
+    try (HnswDenseSearcher<Integer> searcher = new HnswDenseSearcher<>(args)) {
+      for (int qid : topics.keySet()) {
+        String vector = topics.get(qid).get("vector");
+        // With efSearch as large as the collection, the unfiltered search ranks every document.
+        ScoredDoc[] all = searcher.search(qid, vector, 100);
+        assertEquals(100, all.length);
+
+        ScoredDoc[] results = searcher.search(qid, vector, 5, new TermQuery(new Term("tenant", "t1")));
+        assertEquals(postFilter(all, id -> id % 4 == 1, 5), docids(results));
+        assertEquals("t1", results[0].lucene_document.get("tenant"));
+
+        results = searcher.search(qid, vector, 5, LongField.newRangeQuery("year", 2003, 2004));
+        assertEquals(postFilter(all, id -> id % 10 == 3 || id % 10 == 4, 5), docids(results));
+
+        // Only as many hits as there are documents in the allowlist.
+        results = searcher.search(qid, vector, 10, Set.of("3", "45", "97"));
+        assertEquals(postFilter(all, id -> id == 3 || id == 45 || id == 97, 10), docids(results));
+        assertEquals(3, results.length);
+      }
+    }
+  }
+
   @Test
   public void testCosDpr() throws Exception {
     String indexPath = "target/idx-sample-hnsw" + System.currentTimeMillis();
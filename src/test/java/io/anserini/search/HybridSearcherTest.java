@@ -0,0 +1,197 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.anserini.index.IndexCollection;
+import io.anserini.index.IndexHnswDenseVectors;
+import io.anserini.search.topicreader.JsonIntVectorTopicReader;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class HybridSearcherTest {
+  private static final String DOCS = "src/test/resources/sample_docs/openai_ada2/json_vector";
+
+  private static String sparseIndex;
+  private static String denseIndex;
+  private static SortedMap<Integer, Map<String, String>> topics;
+
+  @BeforeClass
+  public static void setupClass() throws Exception {
+    Configurator.setLevel(IndexCollection.class.getName(), Level.ERROR);
+    Configurator.setLevel(IndexHnswDenseVectors.class.getName(), Level.ERROR);
+    Configurator.setLevel(HnswDenseSearcher.class.getName(), Level.ERROR);
+    Configurator.setLevel(HybridSearcher.class.getName(), Level.ERROR);
+
+    // The same documents, for the sparse leg, in a collection with their text only.
+    Path sparseDocs = Files.createTempDirectory("hybrid");
+    ObjectMapper mapper = new ObjectMapper();
+    List<String> lines = new ArrayList<>();
+    for (String line : Files.readAllLines(Path.of(DOCS, "sample100.json"))) {
+      JsonNode doc = mapper.readTree(line);
+      lines.add(mapper.writeValueAsString(Map.of("id", doc.get("docid").asText(), "contents", doc.get("contents").asText())));
+    }
+    Files.write(sparseDocs.resolve("docs.jsonl"), lines);
+
+    sparseIndex = "target/idx-sample-hybrid-sparse" + System.currentTimeMillis();
+    IndexCollection.main(new String[] {
+        "-collection", "JsonCollection",
+        "-input", sparseDocs.toString(),
+        "-index", sparseIndex,
+        "-generator", "DefaultLuceneDocumentGenerator",
+        "-threads", "1",
+        "-storeContents"
+    });
+
+    denseIndex = "target/idx-sample-hybrid-dense" + System.currentTimeMillis();
+    IndexHnswDenseVectors.main(new String[] {
+        "-collection", "JsonDenseVectorCollection",
+        "-input", DOCS,
+        "-index", denseIndex,
+        "-generator", "DenseVectorDocumentGenerator",
+        "-threads", "1",
+        "-M", "16", "-efC", "100"
+    });
+
+    topics = new JsonIntVectorTopicReader(
+        Path.of("src/test/resources/sample_topics/sample-topics.msmarco-passage-dev-openai-ada2.jsonl")).read();
+  }
+
+  private static HybridSearcher.Args args() {
+    HybridSearcher.Args args = new HybridSearcher.Args();
+    args.sparseIndex = sparseIndex;
+    args.denseIndex = denseIndex;
+    return args;
+  }
+
+  @Test
+  public void testRrf() throws Exception {
+    try (HybridSearcher<Integer> searcher = new HybridSearcher<>(args())) {
+      // The dense leg ranks 45, 44, 40, 48, 41 at the top, and the sparse leg matches only doc 45.
+      ScoredDoc[] results = searcher.search(160885, "45", topics.get(160885).get("vector"), 3);
+      assertEquals(3, results.length);
+      assertEquals("45", results[0].docid);
+      assertEquals("44", results[1].docid);
+      assertEquals("40", results[2].docid);
+
+      assertEquals(2.0f / 61, results[0].score, 10e-6);
+      assertEquals(1.0f / 62, results[1].score, 10e-6);
+      assertEquals(1.0f / 63, results[2].score, 10e-6);
+
+      // Fused hits carry the documents of the sparse leg, which has the contents.
+      assertEquals("contents 45", results[0].lucene_document.get("contents"));
+    }
+  }
+
+  @Test
+  public void testInterpolation() throws Exception {
+    HybridSearcher.Args args = args();
+    args.fusion = HybridSearcher.METHOD_INTERPOLATION;
+    args.alpha = 0.2;
+    args.normalize = true;
+
+    try (HybridSearcher<Integer> searcher = new HybridSearcher<>(args)) {
+      ScoredDoc[] results = searcher.search(160885, "45", topics.get(160885).get("vector"), 2);
+      assertEquals(2, results.length);
+      // Doc 45 tops both legs, so its normalized scores are both 1.
+      assertEquals("45", results[0].docid);
+      assertEquals(1.0f, results[0].score, 10e-6);
+      // Doc 44 is only retrieved by the dense leg, so it gets at most the dense weight.
+      assertEquals("44", results[1].docid);
+      assertTrue(results[1].score > 0.0f && results[1].score < 0.8f);
+    }
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    List<Integer> qids = List.copyOf(topics.keySet());
+    List<String> sparseQueries = List.of("45", "10");
+    List<String> denseQueries = qids.stream().map(qid -> topics.get(qid).get("vector")).toList();
+
+    try (HybridSearcher<Integer> searcher = new HybridSearcher<>(args())) {
+      SortedMap<Integer, ScoredDoc[]> allResults = searcher.batch_search(sparseQueries, denseQueries, qids, 5, 2);
+      assertEquals(qids, List.copyOf(allResults.keySet()));
+      for (int i = 0; i < qids.size(); i++) {
+        ScoredDoc[] expected = searcher.search(qids.get(i), sparseQueries.get(i), denseQueries.get(i), 5);
+        ScoredDoc[] results = allResults.get(qids.get(i));
+        assertArrayEquals(
+            Arrays.stream(expected).map(doc -> doc.docid).toArray(),
+            Arrays.stream(results).map(doc -> doc.docid).toArray());
+      }
+      assertEquals("10", allResults.get(867490)[0].docid);
+    }
+  }
+
+  @Test
+  public void testFusion() {
+    ScoredDoc[] first = {
+        new ScoredDoc("a", 0, 3.0f, null), new ScoredDoc("b", 1, 2.0f, null), new ScoredDoc("c", 2, 1.0f, null)};
+    ScoredDoc[] second = {new ScoredDoc("c", 5, 0.9f, null), new ScoredDoc("d", 6, 0.5f, null)};
+
+    ScoredDoc[] results = HybridSearcher.reciprocalRankFusion(List.of(first, second), 60, 1000, 10);
+    assertEquals(4, results.length);
+    assertEquals("c", results[0].docid);
+    assertEquals(1.0f / 63 + 1.0f / 61, results[0].score, 10e-6);
+    // The document of a fused hit is that of the first ranked list that has it.
+    assertEquals(2, results[0].lucene_docid);
+    // Ties are broken by docid.
+    assertEquals("a", results[1].docid);
+    assertEquals("b", results[2].docid);
+    assertEquals("d", results[3].docid);
+
+    // Only the top hit of each list is considered.
+    results = HybridSearcher.reciprocalRankFusion(List.of(first, second), 60, 1, 10);
+    assertEquals(2, results.length);
+
+    results = HybridSearcher.interpolation(List.of(first, second), 0.5, 1000, 2);
+    assertEquals(2, results.length);
+    assertEquals("a", results[0].docid);
+    assertEquals(1.5f, results[0].score, 10e-6);
+    assertEquals("b", results[1].docid);
+
+    results = HybridSearcher.average(
+        List.of(HybridSearcher.normalize(first), HybridSearcher.normalize(second)), 1000, 10);
+    assertEquals("c", results[1].docid);
+    assertEquals(0.5f, results[1].score, 10e-6);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> HybridSearcher.interpolation(List.<ScoredDoc[]>of(first), 0.5, 1000, 10));
+  }
+
+  @Test
+  public void testInvalidFusion() {
+    HybridSearcher.Args args = args();
+    args.fusion = "max";
+    assertThrows(IllegalArgumentException.class, () -> new HybridSearcher<Integer>(args));
+  }
+}
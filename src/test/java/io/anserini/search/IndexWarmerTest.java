@@ -0,0 +1,110 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IndexWarmerTest extends LuceneTestCase {
+  private static final Path INDEX = Path.of("src/test/resources/prebuilt_indexes/lucene9-index.sample_docs_trec_collection2");
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(IndexWarmer.class.getName(), Level.ERROR);
+    Configurator.setLevel(ReplayQueries.class.getName(), Level.ERROR);
+  }
+
+  @Test
+  public void testPreload() throws Exception {
+    long expected = 0;
+    for (String name : List.of("_0_Lucene90_0.tim", "_0_Lucene90_0.tip", "_0_Lucene90_0.doc", "_0_Lucene90_0.dvd", "_0.nvd")) {
+      expected += Files.size(INDEX.resolve(name));
+    }
+    assertEquals(expected, IndexWarmer.preload(INDEX, List.of(IndexWarmer.DEFAULT_PRELOAD)));
+    assertEquals(0, IndexWarmer.preload(INDEX, List.of()));
+  }
+
+  @Test
+  public void testResidency() throws Exception {
+    IndexWarmer.preload(INDEX, List.of("tim", "pos"));
+    SortedMap<String, IndexWarmer.Residency> residency = IndexWarmer.residency(INDEX);
+
+    assertEquals(Files.size(INDEX.resolve("_0_Lucene90_0.pos")), residency.get("pos").bytes());
+    // Files without an extension, such as the segments file, are reported together.
+    assertEquals(Files.size(INDEX.resolve("segments_1")), residency.get("").bytes());
+    for (IndexWarmer.Residency r : residency.values()) {
+      assertTrue(r.residentBytes() >= 0 && r.residentBytes() <= r.bytes());
+      assertTrue(r.fraction() >= 0.0 && r.fraction() <= 1.0);
+    }
+    // Pages just read are in the page cache, unless memory is very tight.
+    assertEquals(1.0, residency.get("tim").fraction(), 0.0);
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    AtomicInteger count = new AtomicInteger();
+    List<String> queries = List.of("a", "b", "c", "d");
+
+    // The first round is slow, as with a cold index, after which latency is stable.
+    IndexWarmer.Replay replay = IndexWarmer.replay(queries, query -> {
+      Thread.sleep(count.getAndIncrement() < queries.size() ? 20 : 5);
+    }, 10, 0.5);
+    assertTrue(replay.stable());
+    assertTrue(replay.p99s().size() >= 3 && replay.p99s().size() <= 10);
+    assertTrue(replay.p99s().get(0) >= 20_000);
+    assertTrue(replay.p99s().get(replay.p99s().size() - 1) < 20_000);
+    assertEquals(replay.p99s().size() * queries.size(), count.get());
+
+    // Failed queries are counted, and latency that keeps changing does not stabilize.
+    count.set(0);
+    replay = IndexWarmer.replay(queries, query -> {
+      Thread.sleep(1 << (count.getAndIncrement() / queries.size()));
+      throw new RuntimeException();
+    }, 3, 0.1);
+    assertFalse(replay.stable());
+    assertEquals(3, replay.p99s().size());
+
+    expectThrows(IllegalArgumentException.class, () -> IndexWarmer.replay(List.of(), query -> {}, 10, 0.1));
+  }
+
+  @Test
+  public void testWarmUp() throws Exception {
+    Path topics = createTempFile();
+    Files.write(topics, List.of("q1\ttext", "q2\tsimple text", "q3\tlucene"));
+
+    IndexWarmer.Args args = new IndexWarmer.Args();
+    args.index = INDEX.toString();
+    args.topics = topics.toString();
+    args.residency = true;
+    args.rounds = 3;
+    IndexWarmer.Replay replay = IndexWarmer.warmUp(args);
+    assertTrue(replay.p99s().size() >= 1 && replay.p99s().size() <= 3);
+
+    args.topics = null;
+    args.noPreload = true;
+    assertNull(IndexWarmer.warmUp(args));
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class OrderedRunOutputWriterTest extends LuceneTestCase {
+
+  private static ScoredDoc[] hits(String qid) {
+    return new ScoredDoc[] {
+        new ScoredDoc(qid + "-a", 0, 2.5f, null),
+        new ScoredDoc(qid + "-b", 1, 0.1234565f, null)};
+  }
+
+  @Test
+  public void testOutOfOrderCompletion() throws Exception {
+    Path run = createTempFile();
+    List<OrderedRunOutputWriter.Entry<Integer>> order = new ArrayList<>();
+    for (int qid : new int[] {3, 1, 2}) {
+      order.add(new OrderedRunOutputWriter.Entry<>(qid, "query " + qid));
+    }
+
+    try (OrderedRunOutputWriter<Integer> out = new OrderedRunOutputWriter<>(
+        new RunOutputWriter<>(run.toString(), "trec", "test", null), order, 3)) {
+      for (int i = 0; i < 3; i++) {
+        out.acquire();
+      }
+      out.write(2, hits("2"));
+      out.write(1, hits("1"));
+      // Nothing can be written until the first topic completes.
+      assertEquals(2, out.getPendingCount());
+      out.write(0, hits("3"));
+      assertEquals(0, out.getPendingCount());
+    }
+
+    List<String> lines = Files.readAllLines(run);
+    assertEquals(6, lines.size());
+    assertEquals("3 Q0 3-a 1 2.500000 test", lines.get(0));
+    assertEquals("3 Q0 3-b 2 0.123457 test", lines.get(1));
+    assertEquals("1 Q0 1-a 1 2.500000 test", lines.get(2));
+    assertEquals("2 Q0 2-b 2 0.123457 test", lines.get(5));
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    Path run = createTempFile();
+    List<OrderedRunOutputWriter.Entry<String>> order = new ArrayList<>();
+    order.add(new OrderedRunOutputWriter.Entry<>("q1", "query 1"));
+    order.add(new OrderedRunOutputWriter.Entry<>("q2", "query 2"));
+
+    try (OrderedRunOutputWriter<String> out = new OrderedRunOutputWriter<>(
+        new RunOutputWriter<>(run.toString(), "msmarco", "test", null), order, 1)) {
+      out.acquire();
+      out.skip(0);
+      // The slot of the failed topic is released.
+      out.acquire();
+      out.write(1, hits("q2"));
+    }
+
+    List<String> lines = Files.readAllLines(run);
+    assertEquals(2, lines.size());
+    assertEquals("q2\tq2-a\t1", lines.get(0));
+    assertEquals("q2\tq2-b\t2", lines.get(1));
+  }
+
+  @Test
+  public void testWriteFailure() throws Exception {
+    Path run = createTempFile();
+    List<OrderedRunOutputWriter.Entry<String>> order = new ArrayList<>();
+    for (String qid : new String[] {"q1", "q2", "q3"}) {
+      order.add(new OrderedRunOutputWriter.Entry<>(qid, "query"));
+    }
+
+    RunOutputWriter<String> writer = new RunOutputWriter<>(run.toString(), "msmarco", "test", null) {
+      @Override
+      public void writeTopic(String qid, String query, ScoredDoc[] results) throws JsonProcessingException {
+        if (qid.equals("q1")) {
+          throw new JsonProcessingException("Unable to write q1") {};
+        }
+        super.writeTopic(qid, query, results);
+      }
+    };
+    try (OrderedRunOutputWriter<String> out = new OrderedRunOutputWriter<>(writer, order, 2)) {
+      out.acquire();
+      out.acquire();
+      out.write(1, hits("q2"));
+      // The failure is passed on to the writer of the failed topic, once the topics after it are written.
+      JsonProcessingException e = expectThrows(JsonProcessingException.class, () -> out.write(0, hits("q1")));
+      assertTrue(e.getMessage().startsWith("Unable to write q1"));
+      assertEquals(0, out.getPendingCount());
+
+      // Both slots are released, and later topics are written.
+      out.acquire();
+      out.acquire();
+      out.write(2, hits("q3"));
+    }
+
+    List<String> lines = Files.readAllLines(run);
+    assertEquals(4, lines.size());
+    assertEquals("q2\tq2-a\t1", lines.get(0));
+    assertEquals("q3\tq3-b\t2", lines.get(3));
+  }
+
+  @Test
+  public void testAppendScore() {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder();
+    List<Float> scores = new ArrayList<>(List.of(0f, -0f, 1e-7f, -1e-7f, 5e-7f, 0.5f, 1.0000005f, 999999.94f, 1e6f,
+        1e10f, -3.25f, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.MIN_VALUE));
+    for (int i = 0; i < 100000; i++) {
+      scores.add(random.nextFloat() * 50);
+      scores.add(Float.intBitsToFloat(random.nextInt()));
+      // Values near rounding ties.
+      scores.add((float) (random.nextInt(100000000) / 1e6 + 5e-7));
+    }
+
+    for (float score : scores) {
+      sb.setLength(0);
+      RunOutputWriter.appendScore(sb, score);
+      assertEquals(String.format(Locale.US, "%f", score), sb.toString());
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.index.IndexerTestBase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QueryResultCacheTest extends IndexerTestBase {
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private ScoredDoc[] load(String docid) {
+    loads.incrementAndGet();
+    return new ScoredDoc[] {new ScoredDoc(docid, 0, 1.0f, null)};
+  }
+
+  private IndexReader open() throws Exception {
+    return DirectoryReader.open(FSDirectory.open(tempDir1));
+  }
+
+  @Test
+  public void testHitsAndMisses() throws Exception {
+    QueryResultCache cache = new QueryResultCache(1 << 20, 100);
+    try (IndexReader reader = open()) {
+      ScoredDoc[] results = cache.get(reader, "bm25", "query", 10, () -> load("doc1"));
+      assertEquals("doc1", results[0].docid);
+      // Callers may modify the array they get without affecting the cache.
+      results[0] = null;
+
+      assertEquals("doc1", cache.get(reader, "bm25", "query", 10, () -> load("other"))[0].docid);
+      // The configuration, query and number of hits are all part of the key.
+      assertEquals("doc2", cache.get(reader, "qld", "query", 10, () -> load("doc2"))[0].docid);
+      assertEquals("doc2", cache.get(reader, "bm25", "other", 10, () -> load("doc2"))[0].docid);
+      assertEquals("doc2", cache.get(reader, "bm25", "query", 100, () -> load("doc2"))[0].docid);
+
+      assertEquals(4, loads.get());
+      assertEquals(1, cache.getHits());
+      assertEquals(4, cache.getMisses());
+      assertEquals(4, cache.size());
+      assertTrue(cache.ramBytesUsed() > 0);
+
+      cache.clear();
+      assertEquals(0, cache.size());
+      assertEquals(0, cache.ramBytesUsed());
+    }
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    try (IndexReader reader = open()) {
+      // Each stripe holds a single result.
+      QueryResultCache cache = new QueryResultCache(1 << 20, 16);
+      for (int i = 0; i < 100; i++) {
+        cache.get(reader, "bm25", "query" + i, 10, () -> load("doc1"));
+      }
+      assertTrue(cache.size() <= 16);
+      assertEquals(100 - cache.size(), cache.getEvictions());
+
+      // Results larger than the memory budget are not kept.
+      cache = new QueryResultCache(16, 100);
+      cache.get(reader, "bm25", "query", 10, () -> load("doc1"));
+      assertEquals(0, cache.size());
+      assertEquals(1, cache.getEvictions());
+    }
+  }
+
+  @Test
+  public void testExpiration() throws Exception {
+    QueryResultCache cache = new QueryResultCache(1 << 20, 100, Duration.ofMillis(1));
+    try (IndexReader reader = open()) {
+      cache.get(reader, "bm25", "query", 10, () -> load("doc1"));
+      Thread.sleep(10);
+      assertEquals("doc2", cache.get(reader, "bm25", "query", 10, () -> load("doc2"))[0].docid);
+      assertEquals(1, cache.getExpirations());
+      assertEquals(0, cache.getHits());
+    }
+  }
+
+  @Test
+  public void testInvalidation() throws Exception {
+    QueryResultCache cache = new QueryResultCache(1 << 20, 100);
+    IndexReader reader = open();
+    cache.get(reader, "bm25", "query", 10, () -> load("doc1"));
+    cache.get(reader, "bm25", "other", 10, () -> load("doc1"));
+
+    // Results are dropped when their reader is closed, and a reader opened again does not see them.
+    reader.close();
+    assertEquals(0, cache.size());
+    assertEquals(2, cache.getInvalidations());
+    try (IndexReader reopened = open()) {
+      assertEquals("doc2", cache.get(reopened, "bm25", "query", 10, () -> load("doc2"))[0].docid);
+    }
+    assertEquals(0, cache.getHits());
+  }
+
+  @Test
+  public void testReaderClosedDuringSearch() throws Exception {
+    QueryResultCache cache = new QueryResultCache(1 << 20, 100);
+    IndexReader reader = open();
+    // Results of a reader closed while they are computed are returned, but not kept.
+    ScoredDoc[] results = cache.get(reader, "bm25", "query", 10, () -> {
+      reader.close();
+      return load("doc1");
+    });
+    assertEquals("doc1", results[0].docid);
+    assertEquals(0, cache.size());
+
+    // Nor are results of a reader already closed.
+    assertEquals("doc1", cache.get(reader, "bm25", "other", 10, () -> load("doc1"))[0].docid);
+    assertEquals(0, cache.size());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testReaderWithoutCacheKey() throws Exception {
+    QueryResultCache cache = new QueryResultCache(1 << 20, 100);
+    try (IndexReader reader = open(); IndexReader other = open();
+         MultiReader multi = new MultiReader(new IndexReader[] {reader, other}, false)) {
+      cache.get(multi, "bm25", "query", 10, () -> load("doc1"));
+      cache.get(multi, "bm25", "query", 10, () -> load("doc1"));
+      assertEquals(2, loads.get());
+      assertEquals(0, cache.size());
+    }
+  }
+
+  @Test
+  public void testSimpleSearcher() throws Exception {
+    QueryResultCache cache = new QueryResultCache(1 << 20, 100);
+    try (SimpleSearcher searcher = new SimpleSearcher(tempDir1.toString());
+         SimpleSearcher uncached = new SimpleSearcher(tempDir1.toString())) {
+      searcher.set_result_cache(cache);
+      assertSame(cache, searcher.get_result_cache());
+
+      ScoredDoc[] expected = uncached.search("text", 10);
+      ScoredDoc[] first = searcher.search("text", 10);
+      // Queries that analyze the same share results.
+      ScoredDoc[] second = searcher.search("TEXT", 10);
+      assertEquals(expected.length, first.length);
+      assertEquals(first.length, second.length);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i].docid, first[i].docid);
+        assertEquals(expected[i].score, first[i].score, 1e-6f);
+        assertEquals(expected[i].docid, second[i].docid);
+      }
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+
+      // Changing the scoring function changes the key.
+      searcher.set_qld(100.0f);
+      uncached.set_qld(100.0f);
+      assertEquals(uncached.search("text", 10)[0].score, searcher.search("text", 10)[0].score, 1e-6f);
+      assertEquals(2, cache.getMisses());
+    }
+    // Results are dropped when the searcher is closed.
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.util.LatencyHistogram;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedMap;
+
+public class ReplayQueriesTest extends LuceneTestCase {
+  private static final String INDEX = "src/test/resources/prebuilt_indexes/lucene9-index.sample_docs_trec_collection2";
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(ReplayQueries.class.getName(), Level.ERROR);
+  }
+
+  private ReplayQueries.Args topicsArgs() throws Exception {
+    Path topics = createTempFile();
+    Files.write(topics, List.of("q1\ttext", "q2\tsimple text", "q3\tlucene"));
+
+    ReplayQueries.Args args = new ReplayQueries.Args();
+    args.index = INDEX;
+    args.topics = topics.toString();
+    return args;
+  }
+
+  @Test
+  public void testClosedLoop() throws Exception {
+    ReplayQueries.Args args = topicsArgs();
+    args.clients = 2;
+    args.queries = 20;
+
+    try (ReplayQueries replay = new ReplayQueries(args)) {
+      SortedMap<String, LatencyHistogram> results = replay.run();
+      assertEquals(List.of(ReplayQueries.ALL_TYPES, ReplayQueries.DEFAULT_TYPE), List.copyOf(results.keySet()));
+      assertEquals(20, results.get(ReplayQueries.ALL_TYPES).getTotalCount());
+      assertEquals(0, replay.getErrors(ReplayQueries.ALL_TYPES));
+
+      // By default, the topics are replayed once.
+      args.queries = 0;
+      assertEquals(3, replay.run().get(ReplayQueries.ALL_TYPES).getTotalCount());
+    }
+  }
+
+  @Test
+  public void testOpenLoop() throws Exception {
+    ReplayQueries.Args args = topicsArgs();
+    args.rate = 2000.0;
+    args.queries = 50;
+
+    try (ReplayQueries replay = new ReplayQueries(args)) {
+      assertEquals(50, replay.run().get(ReplayQueries.ALL_TYPES).getTotalCount());
+    }
+
+    args.arrival = "uniform";
+    args.queries = 0;
+    args.duration = 0.01;
+    try (ReplayQueries replay = new ReplayQueries(args)) {
+      // 20 arrivals fit in 10 ms, but there are only 3 topics.
+      assertEquals(3, replay.run().get(ReplayQueries.ALL_TYPES).getTotalCount());
+    }
+  }
+
+  @Test
+  public void testQueryLog() throws Exception {
+    Path log = createTempFile();
+    Files.write(log, List.of(
+        "1000\thead\ttext", "1010\ttail\tsimple text", "1020\thead\ttext", "1030\ttail\tlucene",
+        "1040\thead\ttext", "1050\ttail\tlucene", "1060\thead\ttext", "1070\ttail\tsimple"));
+
+    ReplayQueries.Args args = new ReplayQueries.Args();
+    args.index = INDEX;
+    args.queryLog = log.toString();
+    args.speedup = 2.0;
+    // The first three queries arrive within the warmup, at 0, 5 and 10 ms.
+    args.warmup = 0.0125;
+
+    try (ReplayQueries replay = new ReplayQueries(args)) {
+      SortedMap<String, LatencyHistogram> results = replay.run();
+      assertEquals(List.of(ReplayQueries.ALL_TYPES, "head", "tail"), List.copyOf(results.keySet()));
+      assertEquals(2, results.get("head").getTotalCount());
+      assertEquals(3, results.get("tail").getTotalCount());
+      assertEquals(5, results.get(ReplayQueries.ALL_TYPES).getTotalCount());
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      replay.printReport(results, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+      String[] lines = bytes.toString(StandardCharsets.UTF_8).split("\n");
+      assertEquals(4, lines.length);
+      assertTrue(lines[0].startsWith("type"));
+      assertTrue(lines[2].matches("head +2 +0 .*"));
+
+      Path dir = createTempDir();
+      ReplayQueries.writeHistograms(results, dir);
+      assertTrue(Files.exists(dir.resolve("tail.hgrm")));
+      assertTrue(Files.readString(dir.resolve("all.hgrm")).contains("Total count    =            5"));
+    }
+
+    Files.write(log, List.of("1000\ttext", "900\ttext"));
+    expectThrows(IllegalArgumentException.class, () -> new ReplayQueries(args));
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    ReplayQueries.Args args = topicsArgs();
+    args.searcher = "http";
+    args.index = null;
+    // Nothing listens on port 1, so every query fails.
+    args.url = "http://localhost:1/api/v1.0/search";
+
+    try (ReplayQueries replay = new ReplayQueries(args)) {
+      SortedMap<String, LatencyHistogram> results = replay.run();
+      assertEquals(0, results.get(ReplayQueries.ALL_TYPES).getTotalCount());
+      assertEquals(3, replay.getErrors(ReplayQueries.DEFAULT_TYPE));
+      assertEquals(3, replay.getErrors(ReplayQueries.ALL_TYPES));
+    }
+
+    args.searcher = "bm25";
+    expectThrows(IllegalArgumentException.class, () -> new ReplayQueries(args));
+    args.searcher = "unknown";
+    args.index = INDEX;
+    expectThrows(IllegalArgumentException.class, () -> new ReplayQueries(args));
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.index.Constants;
+import io.anserini.index.IndexIdRanks;
+import io.anserini.index.generator.TweetGenerator;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.tests.util.TestUtil;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TieBreakingCollectorManagerTest extends LuceneTestCase {
+  private static final String[] TERMS = {"a", "b", "c", "d"};
+
+  private static final List<Query> QUERIES = List.of(
+      new TermQuery(new Term(Constants.CONTENTS, "a")),
+      new BooleanQuery.Builder()
+          .add(new TermQuery(new Term(Constants.CONTENTS, "a")), BooleanClause.Occur.SHOULD)
+          .add(new TermQuery(new Term(Constants.CONTENTS, "b")), BooleanClause.Occur.SHOULD)
+          .add(new TermQuery(new Term(Constants.CONTENTS, "c")), BooleanClause.Occur.SHOULD).build(),
+      new BooleanQuery.Builder()
+          .add(new TermQuery(new Term(Constants.CONTENTS, "a")), BooleanClause.Occur.MUST)
+          .add(new TermQuery(new Term(Constants.CONTENTS, "d")), BooleanClause.Occur.SHOULD).build());
+
+  // Documents have one to three terms out of four, so that many of them have the same score.
+  private static void addDocuments(IndexWriter writer, List<String> ids, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      // Some docids are repeated.
+      String id = ids.isEmpty() || random().nextInt(10) > 0 ?
+          TestUtil.randomRealisticUnicodeString(random(), 1, 8) : ids.get(random().nextInt(ids.size()));
+      ids.add(id);
+
+      StringBuilder contents = new StringBuilder();
+      for (int j = random().nextInt(3); j >= 0; j--) {
+        contents.append(TERMS[random().nextInt(TERMS.length)]).append(' ');
+      }
+
+      Document doc = new Document();
+      doc.add(new StringField(Constants.ID, id, Field.Store.YES));
+      doc.add(new BinaryDocValuesField(Constants.ID, new BytesRef(id)));
+      doc.add(new TextField(Constants.CONTENTS, contents.toString(), Field.Store.NO));
+      doc.add(new NumericDocValuesField(TweetGenerator.TweetField.ID_LONG.name, random().nextInt(50)));
+      writer.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        writer.commit();
+      }
+    }
+  }
+
+  private static void assertSameTopDocs(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+      assertEquals(Float.floatToIntBits(expected.scoreDocs[i].score), Float.floatToIntBits(actual.scoreDocs[i].score));
+    }
+  }
+
+  private static void assertSameAsSort(IndexSearcher searcher, boolean ranked) throws IOException {
+    for (Query query : QUERIES) {
+      for (int k : new int[] {1, 10, 100, 10000}) {
+        TopDocs expected = searcher.search(query, k, SearchCollection.BREAK_SCORE_TIES_BY_DOCID, true);
+        assertSameTopDocs(expected, TieBreakingCollectorManager.searchBreakingTiesByDocid(searcher, query, k));
+        if (ranked) {
+          // Without falling back to the sort.
+          assertSameTopDocs(expected,
+              searcher.search(query, new TieBreakingCollectorManager(searcher, k, Constants.ID_RANK, false)));
+        }
+
+        expected = searcher.search(query, k, SearchCollection.BREAK_SCORE_TIES_BY_TWEETID, true);
+        assertSameTopDocs(expected, TieBreakingCollectorManager.searchBreakingTiesByTweetid(searcher, query, k));
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsSort() throws Exception {
+    List<String> ids = new ArrayList<>();
+    try (Directory dir = newDirectory();
+         IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      addDocuments(writer, ids, 500);
+      for (int i = 0; i < 20; i++) {
+        writer.deleteDocuments(new Term(Constants.ID, ids.get(random().nextInt(ids.size()))));
+      }
+      writer.commit();
+
+      // Without ranks, searches sort on the docid.
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        assertSameAsSort(new IndexSearcher(reader), false);
+      }
+
+      IndexIdRanks.write(writer);
+      writer.commit();
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        assertSameAsSort(new IndexSearcher(reader), true);
+      }
+
+      // Documents added after the ranks were computed have none, and searches that need them sort on the docid.
+      addDocuments(writer, ids, 50);
+      writer.commit();
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        assertSameAsSort(new IndexSearcher(reader), false);
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidHits() throws Exception {
+    try (Directory dir = newDirectory();
+         IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new WhitespaceAnalyzer()));
+         DirectoryReader reader = DirectoryReader.open(writer)) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      expectThrows(IllegalArgumentException.class,
+          () -> new TieBreakingCollectorManager(searcher, 0, Constants.ID_RANK, false));
+    }
+  }
+}
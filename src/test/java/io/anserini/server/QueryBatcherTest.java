@@ -0,0 +1,199 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.server;
+
+import io.anserini.search.ScoredDoc;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class QueryBatcherTest {
+  private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @BeforeClass
+  public static void setupClass() {
+    Configurator.setLevel(QueryBatcher.class.getName(), Level.OFF);
+  }
+
+  // Returns k hits per query, whose docids are the query, and blocks on the first batch until released.
+  private Map<String, ScoredDoc[]> search(List<String> queries, List<String> qids, int k) throws InterruptedException {
+    batches.add(List.copyOf(queries));
+    started.countDown();
+    assertTrue(release.await(10, TimeUnit.SECONDS));
+
+    Map<String, ScoredDoc[]> results = new HashMap<>();
+    for (int i = 0; i < queries.size(); i++) {
+      if (queries.get(i).equals("fail")) {
+        throw new IllegalStateException("Failed");
+      }
+      ScoredDoc[] hits = new ScoredDoc[k];
+      for (int j = 0; j < k; j++) {
+        hits[j] = new ScoredDoc(queries.get(i), j, k - j, null);
+      }
+      results.put(qids.get(i), hits);
+    }
+    return results;
+  }
+
+  @Test
+  public void testBatching() throws Exception {
+    try (QueryBatcher batcher = new QueryBatcher(this::search, 4, Duration.ZERO, 100)) {
+      CompletableFuture<ScoredDoc[]> first = batcher.submit("first", 1);
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+
+      // Queries that arrive while a batch is searched are searched together, up to the maximum batch size.
+      List<CompletableFuture<ScoredDoc[]>> futures = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        futures.add(batcher.submit("q" + i, i + 1));
+      }
+      assertEquals(6, batcher.getQueueSize());
+      release.countDown();
+
+      assertEquals(1, first.get(10, TimeUnit.SECONDS).length);
+      for (int i = 0; i < 6; i++) {
+        ScoredDoc[] hits = futures.get(i).get(10, TimeUnit.SECONDS);
+        // Each query gets the number of hits it asked for, although batches are searched for the most hits.
+        assertEquals(i + 1, hits.length);
+        assertEquals("q" + i, hits[0].docid);
+      }
+      assertEquals(List.of(List.of("first"), List.of("q0", "q1", "q2", "q3"), List.of("q4", "q5")), batches);
+    }
+  }
+
+  @Test
+  public void testWait() throws Exception {
+    release.countDown();
+    try (QueryBatcher batcher = new QueryBatcher(this::search, 4, Duration.ofSeconds(10), 100)) {
+      // A query that finds the dispatcher idle waits for others to join it, until the batch is full.
+      List<CompletableFuture<ScoredDoc[]>> futures = new ArrayList<>();
+      futures.add(batcher.submit("q0", 1));
+      while (batcher.getQueueSize() > 0) {
+        Thread.sleep(1);
+      }
+      // Gives the dispatcher time to find that no other query is waiting.
+      Thread.sleep(50);
+      for (int i = 1; i < 4; i++) {
+        futures.add(batcher.submit("q" + i, 1));
+      }
+      for (CompletableFuture<ScoredDoc[]> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+      assertEquals(List.of(List.of("q0", "q1", "q2", "q3")), batches);
+    }
+  }
+
+  @Test
+  public void testNoWaitWithBacklog() throws Exception {
+    try (QueryBatcher batcher = new QueryBatcher(this::search, 4, Duration.ofSeconds(30), 100)) {
+      List<CompletableFuture<ScoredDoc[]>> first = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        first.add(batcher.submit("first" + i, 1));
+      }
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+
+      // Queries that queue up while a batch is searched do not wait for the batch to fill up.
+      CompletableFuture<ScoredDoc[]> q0 = batcher.submit("q0", 1);
+      CompletableFuture<ScoredDoc[]> q1 = batcher.submit("q1", 1);
+      release.countDown();
+      for (CompletableFuture<ScoredDoc[]> future : first) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+      q0.get(10, TimeUnit.SECONDS);
+      q1.get(10, TimeUnit.SECONDS);
+      assertTrue(batches.get(batches.size() - 1).containsAll(List.of("q0", "q1")));
+    }
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    try (QueryBatcher batcher = new QueryBatcher(this::search, 4, Duration.ZERO, 2)) {
+      CompletableFuture<ScoredDoc[]> first = batcher.submit("first", 1);
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+
+      CompletableFuture<ScoredDoc[]> second = batcher.submit("second", 1);
+      CompletableFuture<ScoredDoc[]> third = batcher.submit("third", 1);
+      // The queue is full.
+      assertThrows(RejectedExecutionException.class, () -> batcher.submit("fourth", 1));
+      release.countDown();
+
+      first.get(10, TimeUnit.SECONDS);
+      second.get(10, TimeUnit.SECONDS);
+      third.get(10, TimeUnit.SECONDS);
+      batcher.submit("fourth", 1).get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    release.countDown();
+    try (QueryBatcher batcher = new QueryBatcher(this::search, 4, Duration.ZERO, 100)) {
+      CompletionException e = assertThrows(CompletionException.class, () -> batcher.submit("fail", 1).join());
+      assertTrue(e.getCause() instanceof IllegalStateException);
+      // Later batches are searched.
+      assertEquals(1, batcher.submit("q", 1).get(10, TimeUnit.SECONDS).length);
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    QueryBatcher batcher = new QueryBatcher(this::search, 4, Duration.ZERO, 100);
+    CompletableFuture<ScoredDoc[]> first = batcher.submit("first", 1);
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    CompletableFuture<ScoredDoc[]> second = batcher.submit("second", 1);
+
+    // Closing waits for the batch being searched.
+    Thread closer = new Thread(batcher::close);
+    closer.start();
+    // New queries are rejected once the batcher is closing.
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (true) {
+      try {
+        batcher.submit("third", 1);
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+      assertTrue(System.nanoTime() < deadline);
+      Thread.sleep(1);
+    }
+    release.countDown();
+    closer.join(10000);
+
+    assertEquals(1, first.get(10, TimeUnit.SECONDS).length);
+    // Queries still waiting are rejected.
+    CompletionException e = assertThrows(CompletionException.class, second::join);
+    assertTrue(e.getCause() instanceof RejectedExecutionException);
+  }
+}
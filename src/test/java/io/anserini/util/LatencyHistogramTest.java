@@ -0,0 +1,110 @@
+/*
+ * Anserini: A Lucene toolkit for reproducible information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.util;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class LatencyHistogramTest extends LuceneTestCase {
+
+  @Test
+  public void testBuckets() {
+    // Every value maps to a bucket whose range contains it, and buckets are contiguous and in order.
+    long previous = -1;
+    for (int bucket = 0; bucket < 10_000; bucket++) {
+      long highest = LatencyHistogram.highestValueOf(bucket);
+      assertEquals(bucket, LatencyHistogram.bucketOf(previous + 1));
+      assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+      previous = highest;
+    }
+    for (int i = 0; i < 1000; i++) {
+      long value = random().nextLong() & Long.MAX_VALUE;
+      long highest = LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value));
+      assertTrue(highest >= value);
+      assertTrue(highest - value <= value / 1024);
+    }
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(99.0));
+
+    long[] values = new long[10_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random().nextInt(10_000_000);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    assertEquals(values.length, histogram.getTotalCount());
+    assertEquals(values[0], histogram.getMin());
+    assertEquals(values[values.length - 1], histogram.getMax());
+    assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100.0));
+    assertEquals(Arrays.stream(values).average().orElseThrow(), histogram.getMean(), 1e-6);
+    for (double percentile : new double[] {0.0, 50.0, 90.0, 99.0, 99.9}) {
+      long expected = values[Math.max(0, (int) Math.ceil(percentile / 100.0 * values.length) - 1)];
+      long actual = histogram.getValueAtPercentile(percentile);
+      assertTrue(actual >= expected);
+      assertTrue(actual - expected <= expected / 1024);
+    }
+
+    expectThrows(IllegalArgumentException.class, () -> histogram.record(-1));
+  }
+
+  @Test
+  public void testAdd() {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.record(5);
+    a.record(7);
+    b.record(1_000_000);
+
+    LatencyHistogram all = new LatencyHistogram();
+    all.add(a);
+    all.add(b);
+    assertEquals(3, all.getTotalCount());
+    assertEquals(5, all.getMin());
+    assertEquals(1_000_000, all.getMax());
+    assertEquals(7, all.getValueAtPercentile(66.0));
+  }
+
+  @Test
+  public void testPercentileDistribution() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    histogram.outputPercentileDistribution(new PrintStream(bytes, true, StandardCharsets.UTF_8), 1000.0);
+    String[] lines = bytes.toString(StandardCharsets.UTF_8).split("\n");
+
+    assertEquals("Value", lines[0].trim().split("\\s+")[0]);
+    assertEquals("1.000 0.000000000000 1 1.00", lines[2].trim().replaceAll("\\s+", " "));
+    // The last value is the maximum, at which all values have been counted.
+    String last = lines[lines.length - 4].trim().replaceAll("\\s+", " ");
+    assertEquals("100.000 1.000000000000 100", last);
+    assertTrue(lines[lines.length - 2].contains("Total count    =          100"));
+  }
+}